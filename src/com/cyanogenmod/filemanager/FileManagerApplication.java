@@ -35,6 +35,7 @@ import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
+import com.cyanogenmod.filemanager.ui.ThumbnailCache;
 import com.cyanogenmod.filemanager.util.AIDHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 
@@ -204,6 +205,24 @@ public final class FileManagerApplication extends Application {
         super.onTerminate();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailCache.trimMemory(level);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        ThumbnailCache.trimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
     /**
      * Method that register the application context.
      */
@@ -92,6 +92,7 @@ import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.StorageHelper;
+import com.cyanogenmod.filemanager.util.SuggestionIndex;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -172,6 +173,13 @@ public class NavigationActivity extends Activity
     public static final String EXTRA_NAVIGATE_TO =
             "extra_navigate_to"; //$NON-NLS-1$
 
+    /**
+     * Constant for the action that requests a navigation to the directory of the
+     * intent data (a directory suggestion of the search).
+     */
+    public static final String ACTION_NAVIGATE_TO =
+            "com.cyanogenmod.filemanager.actions.NAVIGATE_TO"; //$NON-NLS-1$
+
     // The timeout needed to reset the exit status for back button
     // After this time user need to tap 2 times the back button to
     // exit, and the toast is shown again after the first tap.
@@ -667,6 +675,9 @@ public class NavigationActivity extends Activity
         // Check if request navigation to directory (use as default), and
         // ensure chrooted and absolute path
         String navigateTo = intent.getStringExtra(EXTRA_NAVIGATE_TO);
+        if (ACTION_NAVIGATE_TO.equals(intent.getAction()) && intent.getData() != null) {
+            navigateTo = intent.getData().getPath();
+        }
         if (navigateTo != null && navigateTo.length() > 0) {
             initialDir = navigateTo;
         }
@@ -764,6 +775,16 @@ public class NavigationActivity extends Activity
      * @hide
      */
     void checkIntent(Intent intent) {
+        //Navigate action (the initial navigation already applies it)
+        if (ACTION_NAVIGATE_TO.equals(intent.getAction()) && intent.getData() != null) {
+            String path = intent.getData().getPath();
+            NavigationView navigationView = getCurrentNavigationView();
+            if (path != null && navigationView.getCurrentDir() != null) {
+                navigationView.changeCurrentDir(path);
+            }
+            return;
+        }
+
         //Search action
         if (Intent.ACTION_SEARCH.equals(intent.getAction())) {
             Intent searchIntent = new Intent(this, SearchActivity.class);
@@ -883,14 +904,16 @@ public class NavigationActivity extends Activity
                 if (this.mChRooted) {
                     showSettingsPopUp(view,
                             Arrays.asList(new FileManagerSettings[]{
-                                    FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST}));
+                                    FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST,
+                                    FileManagerSettings.SETTINGS_SHOW_FOLDER_SIZES}));
                 } else {
                     showSettingsPopUp(view,
                             Arrays.asList(new FileManagerSettings[]{
                                     FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST,
                                     FileManagerSettings.SETTINGS_SHOW_HIDDEN,
                                     FileManagerSettings.SETTINGS_SHOW_SYSTEM,
-                                    FileManagerSettings.SETTINGS_SHOW_SYMLINKS}));
+                                    FileManagerSettings.SETTINGS_SHOW_SYMLINKS,
+                                    FileManagerSettings.SETTINGS_SHOW_FOLDER_SIZES}));
                 }
 
                 break;
@@ -1004,6 +1027,10 @@ public class NavigationActivity extends Activity
         //Recollect information about current status
         History history = new History(this.mHistory.size(), navigable);
         this.mHistory.add(history);
+        if (navigable instanceof NavigationViewInfoParcelable) {
+            SuggestionIndex.getInstance(this).recordHistory(
+                    ((NavigationViewInfoParcelable)navigable).getCurrentDir());
+        }
         getActionBar().setDisplayHomeAsUpEnabled(true);
         getActionBar().setHomeButtonEnabled(true);
     }
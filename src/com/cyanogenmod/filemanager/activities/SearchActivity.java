@@ -26,6 +26,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Configuration;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.preference.PreferenceActivity;
@@ -36,6 +37,8 @@ import android.util.Log;
 import android.view.KeyEvent;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.AdapterView.OnItemLongClickListener;
@@ -56,6 +59,8 @@ import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.RelaunchableException;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.ContentQuery;
 import com.cyanogenmod.filemanager.model.Directory;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
@@ -64,10 +69,12 @@ import com.cyanogenmod.filemanager.model.SearchResult;
 import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.parcelables.SearchInfoParcelable;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
+import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.providers.RecentSearchesContentProvider;
 import com.cyanogenmod.filemanager.tasks.SearchResultDrawingAsyncTask;
+import com.cyanogenmod.filemanager.tasks.SearchResultMergingAsyncTask;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.ui.dialogs.ActionsDialog;
@@ -83,14 +90,23 @@ import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+import com.cyanogenmod.filemanager.util.SearchHelper;
+import com.cyanogenmod.filemanager.util.SearchResultCollector;
 import com.cyanogenmod.filemanager.util.StorageHelper;
+import com.cyanogenmod.filemanager.util.SuggestionIndex;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * An activity for search files and folders.
+ * An activity for search files and folders, by their name or by their content.
  */
 public class SearchActivity extends Activity
     implements AsyncResultListener, OnItemClickListener,
@@ -120,6 +136,13 @@ public class SearchActivity extends Activity
     //Minimum characters to allow query
     private static final int MIN_CHARS_SEARCH = 3;
 
+    // The max number of results kept in memory when the results are limited
+    private static final int MAX_RESULTS_IN_MEMORY = 1000;
+    // The number of spilled results loaded every time the list reaches the end
+    private static final int SPILLED_RESULTS_PAGE = 200;
+    // The file where spill the results that aren't kept in memory
+    private static final String SPILL_FILE = "search_results.spill"; //$NON-NLS-1$
+
     private final BroadcastReceiver mNotificationReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -211,6 +234,23 @@ public class SearchActivity extends Activity
         }
     };
 
+    /**
+     * A listener that loads the spilled results when the list reaches the end
+     */
+    private final OnScrollListener mOnScrollListener = new OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(AbsListView view, int scrollState) {/**NON BLOCK**/}
+
+        @Override
+        public void onScroll(
+                AbsListView view, int firstVisibleItem, int visibleItemCount,
+                int totalItemCount) {
+            if (firstVisibleItem + visibleItemCount >= totalItemCount - visibleItemCount) {
+                loadSpilledResults();
+            }
+        }
+    };
+
     /**
      * @hide
      */
@@ -255,6 +295,21 @@ public class SearchActivity extends Activity
 
     private SearchResultDrawingAsyncTask mDrawingSearchResultTask;
 
+    /**
+     * The most relevant results, when the results are limited
+     * @hide
+     */
+    SearchResultCollector mCollector;
+    /**
+     * The files with matches, when the search is in the content of the files
+     * @hide
+     */
+    Set<String> mContentMatchedFiles;
+    /**
+     * @hide
+     */
+    boolean mLoadingSpilledResults;
+
     /**
      * @hide
      */
@@ -330,6 +385,12 @@ public class SearchActivity extends Activity
             /**NON BLOCK**/
         }
 
+        // Release the collected results
+        if (this.mCollector != null) {
+            this.mCollector.dispose();
+            this.mCollector = null;
+        }
+
         //All destroy. Continue
         super.onDestroy();
     }
@@ -437,6 +498,7 @@ public class SearchActivity extends Activity
         this.mSearchListView = (ListView)findViewById(R.id.search_listview);
         this.mSearchListView.setOnItemClickListener(this);
         this.mSearchListView.setOnItemLongClickListener(this);
+        this.mSearchListView.setOnScrollListener(this.mOnScrollListener);
 
         // If we should set the listview to response to flinger gesture detection
         boolean useFlinger =
@@ -604,8 +666,10 @@ public class SearchActivity extends Activity
             if (!voiceQuery) {
                 List<String> queries = query.getQueries();
                 int cc = queries.size();
+                SuggestionIndex index = SuggestionIndex.getInstance(this);
                 for (int i = 0; i < cc; i++) {
                     suggestions.saveRecentQuery(queries.get(i), null);
+                    index.recordSearch(queries.get(i));
                 }
             }
         }
@@ -615,6 +679,24 @@ public class SearchActivity extends Activity
             ((SearchResultAdapter)this.mSearchListView.getAdapter()).dispose();
         }
         this.mResultList = new ArrayList<FileSystemObject>();
+        if (this.mCollector != null) {
+            this.mCollector.dispose();
+            this.mCollector = null;
+        }
+        boolean limitResults = Preferences.getSharedPreferences().getBoolean(
+                FileManagerSettings.SETTINGS_LIMIT_SEARCH_RESULTS.getId(),
+                ((Boolean)FileManagerSettings.SETTINGS_LIMIT_SEARCH_RESULTS.
+                        getDefaultValue()).booleanValue());
+        if (limitResults) {
+            this.mCollector = new SearchResultCollector(
+                    this.mQuery, MAX_RESULTS_IN_MEMORY, new File(getCacheDir(), SPILL_FILE));
+        }
+        final boolean searchContents = Preferences.getSharedPreferences().getBoolean(
+                FileManagerSettings.SETTINGS_SEARCH_CONTENTS.getId(),
+                ((Boolean)FileManagerSettings.SETTINGS_SEARCH_CONTENTS.
+                        getDefaultValue()).booleanValue());
+        this.mContentMatchedFiles = searchContents ? new HashSet<String>() : null;
+        this.mLoadingSpilledResults = false;
         SearchResultAdapter adapter =
                 new SearchResultAdapter(this,
                         new ArrayList<SearchResult>(), R.layout.search_item, this.mQuery);
@@ -667,13 +749,23 @@ public class SearchActivity extends Activity
                     SearchActivity.this.mDialog.show();
 
                     //Execute the query (search are process in background)
-                    SearchActivity.this.mExecutable =
-                            CommandHelper.findFiles(
-                                    SearchActivity.this,
-                                    searchDirectory,
-                                    SearchActivity.this.mQuery,
-                                    SearchActivity.this,
-                                    null);
+                    if (searchContents) {
+                        SearchActivity.this.mExecutable =
+                                CommandHelper.searchContents(
+                                        SearchActivity.this,
+                                        searchDirectory,
+                                        createContentQuery(SearchActivity.this.mQuery),
+                                        SearchActivity.this,
+                                        null);
+                    } else {
+                        SearchActivity.this.mExecutable =
+                                CommandHelper.findFiles(
+                                        SearchActivity.this,
+                                        searchDirectory,
+                                        SearchActivity.this.mQuery,
+                                        SearchActivity.this,
+                                        null);
+                    }
 
                 } catch (Throwable ex) {
                     //Remove all elements
@@ -701,6 +793,26 @@ public class SearchActivity extends Activity
         });
     }
 
+    /**
+     * Method that creates the query of a search in the content of the files, with the
+     * terms of a search by name.
+     *
+     * @param query The query of the search
+     * @return ContentQuery The query of the search in the content of the files
+     */
+    private static ContentQuery createContentQuery(Query query) {
+        ContentQuery contentQuery = new ContentQuery();
+        List<String> terms = query.getQueries();
+        int cc = terms.size();
+        for (int i = 0; i < cc; i++) {
+            String term = terms.get(i).trim();
+            if (term.length() > 0) {
+                contentQuery.addTerm(term);
+            }
+        }
+        return contentQuery;
+    }
+
     /**
      * Method that restore the activity from the cached data.
      */
@@ -712,7 +824,8 @@ public class SearchActivity extends Activity
                 List<SearchResult> list = SearchActivity.this.mRestoreState.getSearchResultList();
                 String directory = SearchActivity.this.mRestoreState.getSearchDirectory();
                 SearchActivity.this.toggleResults(list.size() > 0, true);
-                setFoundItems(list.size(), directory);
+                setFoundItems(
+                        SearchActivity.this.mRestoreState.getSearchResultCount(), directory);
 
                 //Set terms
                 Query query = SearchActivity.this.mRestoreState.getSearchQuery();
@@ -1145,12 +1258,39 @@ public class SearchActivity extends Activity
                         SearchActivity.this.mDialog.dismiss();
                     }
 
+                    // Only the most relevant results were kept
+                    if (SearchActivity.this.mCollector != null) {
+                        drawCollectedResults();
+                        return;
+                    }
+
                     // Resolve the symlinks
                     FileHelper.resolveSymlinks(
                                 SearchActivity.this, SearchActivity.this.mResultList);
 
-                    // Draw the results
-                    drawResults();
+                    // The results were merged while they were found. Wait for the
+                    // pending merges and refresh the drawn items
+                    final SearchResultAdapter adapter =
+                            (SearchResultAdapter)SearchActivity.this.
+                                mSearchListView.getAdapter();
+                    if (adapter == null) {
+                        drawResults();
+                        return;
+                    }
+                    new SearchResultMergingAsyncTask(
+                            adapter,
+                            new ArrayList<FileSystemObject>(),
+                            SearchActivity.this.mQuery,
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    adapter.notifyDataSetChanged();
+                                    int count = adapter.getCount();
+                                    toggleResults(count > 0, true);
+                                    setFoundItems(
+                                            count, SearchActivity.this.mSearchDirectory);
+                                }
+                            }).execute();
 
                 } catch (Throwable ex) {
                     Log.e(TAG, "onAsyncEnd method fails", ex); //$NON-NLS-1$
@@ -1165,14 +1305,52 @@ public class SearchActivity extends Activity
     @Override
     @SuppressWarnings("unchecked")
     public void onPartialResult(final Object partialResults) {
-        //Saved in the global result list, for save at the end
+        final List<FileSystemObject> partialFiles;
         if (partialResults instanceof FileSystemObject) {
-            SearchActivity.this.mResultList.add((FileSystemObject)partialResults);
+            partialFiles = new ArrayList<FileSystemObject>(1);
+            partialFiles.add((FileSystemObject)partialResults);
+        } else if (this.mContentMatchedFiles != null) {
+            // Every file is a result, whatever the number of matches in it
+            partialFiles = getContentMatchedFiles((List<ContentMatch>)partialResults);
+            if (partialFiles.isEmpty()) {
+                return;
+            }
         } else {
-            SearchActivity.this.mResultList.addAll((List<FileSystemObject>)partialResults);
+            partialFiles = (List<FileSystemObject>)partialResults;
         }
 
-        //Notify progress
+        // Keep only the most relevant results, and merge the changes of the batch with
+        // the drawn results
+        final SearchResultCollector collector = this.mCollector;
+        if (collector != null) {
+            final List<SearchResult> added = new ArrayList<SearchResult>();
+            final List<FileSystemObject> evicted = new ArrayList<FileSystemObject>();
+            collector.add(applyDisplayPreferences(partialFiles), added, evicted);
+            this.mSearchListView.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (SearchActivity.this.mDialog != null) {
+                        setProgressMsg(collector.getCount());
+                    }
+                    SearchResultAdapter adapter =
+                            (SearchResultAdapter)SearchActivity.this.
+                                mSearchListView.getAdapter();
+                    if (adapter != null && collector == SearchActivity.this.mCollector) {
+                        adapter.removeResults(evicted);
+                        adapter.mergeResults(
+                                added,
+                                SearchHelper.getResultComparator(
+                                        SearchHelper.getSortResultMode()));
+                    }
+                }
+            });
+            return;
+        }
+
+        //Saved in the global result list, for save at the end
+        SearchActivity.this.mResultList.addAll(partialFiles);
+
+        //Notify progress and merge the new results with the drawn results
         this.mSearchListView.post(new Runnable() {
             @Override
             public void run() {
@@ -1180,10 +1358,34 @@ public class SearchActivity extends Activity
                     int progress = SearchActivity.this.mResultList.size();
                     setProgressMsg(progress);
                 }
+                SearchResultAdapter adapter =
+                        (SearchResultAdapter)SearchActivity.this.mSearchListView.getAdapter();
+                if (adapter != null) {
+                    new SearchResultMergingAsyncTask(
+                            adapter, partialFiles, SearchActivity.this.mQuery, null).execute();
+                }
             }
         });
     }
 
+    /**
+     * Method that returns the files of the content matches that weren't found before.
+     *
+     * @param matches The content matches
+     * @return List<FileSystemObject> The new files with matches
+     */
+    private List<FileSystemObject> getContentMatchedFiles(List<ContentMatch> matches) {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        int cc = matches.size();
+        for (int i = 0; i < cc; i++) {
+            String path = matches.get(i).getPath();
+            if (this.mContentMatchedFiles.add(path)) {
+                files.add(FileHelper.createFileSystemObject(new File(path)));
+            }
+        }
+        return files;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1206,7 +1408,7 @@ public class SearchActivity extends Activity
     void drawResults() {
         //Toggle results
         this.toggleResults(this.mResultList.size() > 0, true);
-        setFoundItems(this.mResultList.size(), this.mSearchDirectory);
+        setFoundItems(getResultCount(), this.mSearchDirectory);
 
         //Create the task for drawing the data
         this.mDrawingSearchResultTask =
@@ -1218,6 +1420,97 @@ public class SearchActivity extends Activity
         this.mDrawingSearchResultTask.execute();
     }
 
+    /**
+     * Method that ends the drawing of the most relevant results collected by the
+     * search (they were merged while they were found).
+     * @hide
+     */
+    void drawCollectedResults() {
+        this.mCollector.finish();
+        List<SearchResult> results = this.mCollector.getTopResults();
+        this.mResultList = new ArrayList<FileSystemObject>(results.size());
+        int cc = results.size();
+        for (int i = 0; i < cc; i++) {
+            this.mResultList.add(results.get(i).getFso());
+        }
+
+        // Resolve the symlinks
+        FileHelper.resolveSymlinks(this, this.mResultList);
+
+        SearchResultAdapter adapter = (SearchResultAdapter)this.mSearchListView.getAdapter();
+        if (adapter == null) {
+            drawResults();
+            return;
+        }
+        adapter.notifyDataSetChanged();
+        toggleResults(adapter.getCount() > 0, true);
+        setFoundItems(getResultCount(), this.mSearchDirectory);
+    }
+
+    /**
+     * Method that loads the next page of the spilled results, if any. The results are
+     * appended at the end of the list, so the drawn items don't move.
+     * @hide
+     */
+    void loadSpilledResults() {
+        final SearchResultCollector collector = this.mCollector;
+        final SearchResultAdapter adapter =
+                (SearchResultAdapter)this.mSearchListView.getAdapter();
+        if (collector == null || adapter == null || this.mLoadingSpilledResults
+                || !collector.hasMoreSpilled()) {
+            return;
+        }
+        this.mLoadingSpilledResults = true;
+        new AsyncTask<Void, Void, List<SearchResult>>() {
+            @Override
+            protected List<SearchResult> doInBackground(Void... params) {
+                return collector.readSpilled(SPILLED_RESULTS_PAGE);
+            }
+
+            @Override
+            protected void onPostExecute(List<SearchResult> results) {
+                SearchActivity.this.mLoadingSpilledResults = false;
+                if (collector != SearchActivity.this.mCollector) {
+                    // A new search was started
+                    return;
+                }
+                int cc = results.size();
+                for (int i = 0; i < cc; i++) {
+                    SearchActivity.this.mResultList.add(results.get(i).getFso());
+                }
+                adapter.mergeResults(results, null);
+            }
+        }.execute();
+    }
+
+    /**
+     * Method that returns the number of results found (including the ones not
+     * kept in memory).
+     *
+     * @return int The number of results found
+     */
+    private int getResultCount() {
+        if (this.mCollector != null) {
+            return this.mCollector.getCount();
+        }
+        return this.mResultList.size();
+    }
+
+    /**
+     * Method that removes the files that the user doesn't want to display.
+     *
+     * @param files The files
+     * @return List<FileSystemObject> The files to display
+     */
+    private List<FileSystemObject> applyDisplayPreferences(List<FileSystemObject> files) {
+        Map<DisplayRestrictions, Object> restrictions =
+                new HashMap<DisplayRestrictions, Object>();
+        restrictions.put(
+                DisplayRestrictions.MIME_TYPE_RESTRICTION, MimeTypeHelper.ALL_MIME_TYPES);
+        return FileHelper.applyUserPreferences(
+                new ArrayList<FileSystemObject>(files), restrictions, true, this.mChRooted);
+    }
+
     /**
      * Method that creates a {@link SearchInfoParcelable} reference from
      * the current data.
@@ -1230,6 +1523,9 @@ public class SearchActivity extends Activity
         parcel.setSearchResultList(
                 ((SearchResultAdapter)this.mSearchListView.getAdapter()).getData());
         parcel.setSearchQuery(this.mQuery);
+        if (this.mCollector != null) {
+            parcel.setSearchResultCount(this.mCollector.getCount());
+        }
         return parcel;
     }
 
@@ -34,6 +34,7 @@ import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.providers.RecentSearchesContentProvider;
 import com.cyanogenmod.filemanager.util.DialogHelper;
+import com.cyanogenmod.filemanager.util.SuggestionIndex;
 
 /**
  * A class that manages the search options
@@ -51,6 +52,8 @@ public class SearchPreferenceFragment extends TitlePreferenceFragment {
     private CheckBoxPreference mHighlightTerms;
     private CheckBoxPreference mShowRelevanceWidget;
     private ListPreference mSortSearchResultMode;
+    private CheckBoxPreference mSearchContents;
+    private CheckBoxPreference mLimitSearchResults;
     private CheckBoxPreference mSaveSearchTerms;
     private Preference mRemoveSearchTerms;
 
@@ -159,6 +162,18 @@ public class SearchPreferenceFragment extends TitlePreferenceFragment {
                                 defaultValue);
         this.mOnChangeListener.onPreferenceChange(this.mSortSearchResultMode, value);
 
+        // Search contents
+        this.mSearchContents =
+                (CheckBoxPreference)findPreference(
+                        FileManagerSettings.SETTINGS_SEARCH_CONTENTS.getId());
+        this.mSearchContents.setOnPreferenceChangeListener(this.mOnChangeListener);
+
+        // Limit search results
+        this.mLimitSearchResults =
+                (CheckBoxPreference)findPreference(
+                        FileManagerSettings.SETTINGS_LIMIT_SEARCH_RESULTS.getId());
+        this.mLimitSearchResults.setOnPreferenceChangeListener(this.mOnChangeListener);
+
         // Saved search terms
         this.mSaveSearchTerms =
                 (CheckBoxPreference)findPreference(
@@ -183,6 +198,7 @@ public class SearchPreferenceFragment extends TitlePreferenceFragment {
                         RecentSearchesContentProvider.AUTHORITY,
                         RecentSearchesContentProvider.MODE);
         suggestions.clearHistory();
+        SuggestionIndex.getInstance(getActivity()).clear(SuggestionIndex.KIND.SEARCH);
         Preferences.setLastSearch(null);
     }
 
@@ -55,6 +55,33 @@ public class CheckableListAdapter extends ArrayAdapter<CheckableListAdapter.Chec
         String mLabel;
         boolean mCheckable;
         boolean mChecked;
+
+        /**
+         * Method that returns if the item has a check.
+         *
+         * @return boolean If the item has a check
+         */
+        public boolean isCheckable() {
+            return this.mCheckable;
+        }
+
+        /**
+         * Method that returns if the item is checked.
+         *
+         * @return boolean If the item is checked
+         */
+        public boolean isChecked() {
+            return this.mChecked;
+        }
+
+        /**
+         * Method that sets if the item is checked.
+         *
+         * @param checked If the item is checked
+         */
+        public void setChecked(boolean checked) {
+            this.mChecked = checked;
+        }
     }
 
     /**
@@ -30,6 +30,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.model.Directory;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
@@ -38,6 +39,7 @@ import com.cyanogenmod.filemanager.ui.IconHolder;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FolderSizeCache;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 
 import java.util.ArrayList;
@@ -210,6 +212,11 @@ public class FileSystemObjectAdapter
         Theme theme = ThemeManager.getCurrentTheme(getContext());
         Resources res = getContext().getResources();
         int cc = getCount();
+        boolean showFolderSizes = Preferences.getSharedPreferences().getBoolean(
+                FileManagerSettings.SETTINGS_SHOW_FOLDER_SIZES.getId(),
+                ((Boolean)FileManagerSettings.SETTINGS_SHOW_FOLDER_SIZES.
+                        getDefaultValue()).booleanValue());
+        FolderSizeCache folderSizes = FolderSizeCache.getInstance(getContext());
 
         this.mData = new DataHolder[cc];
 
@@ -246,6 +253,13 @@ public class FileSystemObjectAdapter
             this.mData[i].mName = fso.getName();
             this.mData[i].mSummary = sbSummary.toString();
             this.mData[i].mSize = FileHelper.getHumanReadableSize(fso);
+            if (showFolderSizes && fso instanceof Directory && !(fso instanceof ParentDirectory)) {
+                // Only the known sizes. The cache is refreshed by the navigation view
+                long size = folderSizes.getSize(fso.getFullPath());
+                if (size != -1) {
+                    this.mData[i].mSize = FileHelper.getHumanReadableSize(size);
+                }
+            }
         }
     }
 
@@ -295,7 +309,8 @@ public class FileSystemObjectAdapter
             // Cancel load for previous usage
             mIconHolder.cancelLoad(viewHolder.mIvIcon);
         }
-        mIconHolder.loadDrawable(viewHolder.mIvIcon, getItem(position), dataHolder.mDwIcon);
+        mIconHolder.loadDrawable(
+                viewHolder.mIvIcon, getItem(position), dataHolder.mDwIcon, position);
 
         viewHolder.mTvName.setText(dataHolder.mName);
         theme.setTextColor(getContext(), viewHolder.mTvName, "text_color"); //$NON-NLS-1$
@@ -330,6 +345,56 @@ public class FileSystemObjectAdapter
         return v;
     }
 
+    /**
+     * Method that should be invoked when the visible items of the view changed, so the
+     * thumbnails of the visible items are loaded first.
+     *
+     * @param first The first visible position
+     * @param last The last visible position
+     */
+    public void setVisibleRange(int first, int last) {
+        if (this.mIconHolder != null) {
+            this.mIconHolder.setVisibleRange(first, last);
+        }
+    }
+
+    /**
+     * Method that loads in background the thumbnails of items that aren't displayed yet.
+     *
+     * @param from The first position to prefetch
+     * @param to The last position to prefetch (could be lower than from to prefetch
+     * backwards)
+     * @return int The last position prefetched (the prefetch stops when the budget
+     * is spent), or <code>from - step</code> if none
+     */
+    public int prefetch(int from, int to) {
+        final int step = from <= to ? 1 : -1;
+        int last = from - step;
+        if (this.mIconHolder == null) {
+            return last;
+        }
+        final int count = getCount();
+        for (int i = from; i != to + step; i += step) {
+            if (i < 0 || i >= count) {
+                break;
+            }
+            if (!this.mIconHolder.prefetch(getItem(i), i)) {
+                break;
+            }
+            last = i;
+        }
+        return last;
+    }
+
+    /**
+     * Method that cancels the pending prefetches of thumbnails.
+     */
+    public void cancelPrefetch() {
+        if (this.mIconHolder != null) {
+            this.mIconHolder.cancelPrefetch();
+        }
+    }
+
     /**
      * Method that returns if the item of the passed position is selected.
      *
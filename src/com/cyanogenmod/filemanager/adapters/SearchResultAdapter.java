@@ -36,10 +36,12 @@ import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.ui.widgets.RelevanceView;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+import com.cyanogenmod.filemanager.util.QueryMatcher;
 import com.cyanogenmod.filemanager.util.SearchHelper;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -82,14 +84,15 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
 
     private static final int MESSAGE_REDRAW = 1;
 
-    private DataHolder[] mData;
+    private List<DataHolder> mData;
     private IconHolder mIconHolder;
     private final int mItemViewResourceId;
 
     private final boolean mHighlightTerms;
     private final boolean mShowRelevanceWidget;
 
-    private final List<String> mQueries;
+    private final QueryMatcher mMatcher;
+    private int mHighlightedColor;
 
     private boolean mDisposed;
 
@@ -120,7 +123,7 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
                 ((Boolean)FileManagerSettings.SETTINGS_DISPLAY_THUMBS.getDefaultValue()).booleanValue());
         this.mIconHolder = new IconHolder(context, displayThumbs);
         this.mItemViewResourceId = itemViewResourceId;
-        this.mQueries = queries.getQueries();
+        this.mMatcher = QueryMatcher.compile(queries);
 
         // Load settings
         this.mHighlightTerms = Preferences.getSharedPreferences().getBoolean(
@@ -171,39 +174,127 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
     }
 
     /**
-     * Method that process the data before use {@link #getView} method.
+     * Method that process the data before use {@link #getView} method. The data of
+     * every item is built the first time that the item is drawn.
      */
     private void processData() {
         Theme theme = ThemeManager.getCurrentTheme(getContext());
-        int highlightedColor =
+        this.mHighlightedColor =
                 theme.getColor(getContext(), "search_highlight_color"); //$NON-NLS-1$
 
-        this.mData = new DataHolder[getCount()];
         int cc = getCount();
+        this.mData = new ArrayList<DataHolder>(cc);
         for (int i = 0; i < cc; i++) {
-            //File system object info
-            SearchResult result = getItem(i);
-
-            //Build the data holder
-            final FileSystemObject fso = result.getFso();
-            this.mData[i] = new SearchResultAdapter.DataHolder();
-            this.mData[i].mDwIcon = this.mIconHolder.getDrawable(
-                    MimeTypeHelper.getIcon(getContext(), fso));
-            if (this.mHighlightTerms) {
-                this.mData[i].mName =
-                        SearchHelper.getHighlightedName(result, this.mQueries, highlightedColor);
-            } else {
-                this.mData[i].mName = SearchHelper.getNonHighlightedName(result);
+            this.mData.add(null);
+        }
+    }
+
+    /**
+     * Method that returns the data of an item, building it if it wasn't built yet.
+     *
+     * @param position The position of the item
+     * @return DataHolder The data of the item
+     */
+    private DataHolder getDataHolder(int position) {
+        DataHolder holder = this.mData.get(position);
+        if (holder != null) {
+            return holder;
+        }
+
+        //File system object info
+        SearchResult result = getItem(position);
+
+        //Build the data holder
+        final FileSystemObject fso = result.getFso();
+        holder = new SearchResultAdapter.DataHolder();
+        holder.mDwIcon = this.mIconHolder.getDrawable(
+                MimeTypeHelper.getIcon(getContext(), fso));
+        if (this.mHighlightTerms) {
+            holder.mName =
+                    SearchHelper.getHighlightedName(
+                            result, this.mMatcher, this.mHighlightedColor);
+        } else {
+            holder.mName = SearchHelper.getNonHighlightedName(result);
+        }
+        holder.mParentDir = new File(result.getFso().getFullPath()).getParent();
+        if (this.mShowRelevanceWidget) {
+            holder.mRelevance =
+                    Float.valueOf(
+                            (float)(result.getRelevance() * 100) / SearchResult.MAX_RELEVANCE);
+        } else {
+            holder.mRelevance = null;
+        }
+        this.mData.set(position, holder);
+        return holder;
+    }
+
+    /**
+     * Method that merges new results in the adapter. Every result is inserted in its
+     * sorted position (after the results that compare equal), and only the data of
+     * the inserted items is invalidated, so the cost of a merge doesn't depend on the
+     * results already in the adapter.
+     *
+     * @param results The new results
+     * @param comparator The order of the results, or null to append them
+     */
+    public void mergeResults(List<SearchResult> results, Comparator<SearchResult> comparator) {
+        if (this.mDisposed || results.isEmpty()) {
+            return;
+        }
+        setNotifyOnChange(false);
+        int cc = results.size();
+        for (int i = 0; i < cc; i++) {
+            SearchResult result = results.get(i);
+            int pos = comparator == null ? getCount() : getInsertPosition(result, comparator);
+            insert(result, pos);
+            this.mData.add(pos, null);
+        }
+        // Notify without rebuild the data of the rest of the items
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Method that removes results from the adapter. Only the data of the removed items
+     * is discarded.
+     *
+     * @param files The files of the results to remove
+     */
+    public void removeResults(List<FileSystemObject> files) {
+        if (this.mDisposed || files.isEmpty()) {
+            return;
+        }
+        setNotifyOnChange(false);
+        int cc = files.size();
+        for (int i = 0; i < cc; i++) {
+            int pos = getPosition(files.get(i));
+            if (pos != -1) {
+                remove(getItem(pos));
+                this.mData.remove(pos);
             }
-            this.mData[i].mParentDir = new File(result.getFso().getFullPath()).getParent();
-            if (this.mShowRelevanceWidget) {
-                this.mData[i].mRelevance =
-                        Float.valueOf(
-                                (float)(result.getRelevance() * 100) / SearchResult.MAX_RELEVANCE);
+        }
+        // Notify without rebuild the data of the rest of the items
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Method that returns the position where insert a result to keep the items sorted.
+     *
+     * @param result The result
+     * @param comparator The order of the results
+     * @return int The position after the last item that isn't greater than the result
+     */
+    private int getInsertPosition(SearchResult result, Comparator<SearchResult> comparator) {
+        int low = 0;
+        int high = getCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(getItem(mid), result) <= 0) {
+                low = mid + 1;
             } else {
-                this.mData[i].mRelevance = null;
+                high = mid;
             }
         }
+        return low;
     }
 
     /**
@@ -270,7 +361,7 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
         }
 
         //Retrieve data holder
-        final DataHolder dataHolder = this.mData[position];
+        final DataHolder dataHolder = getDataHolder(position);
 
         //Retrieve the view holder
         ViewHolder viewHolder = (ViewHolder)v.getTag();
@@ -281,7 +372,7 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
             mIconHolder.cancelLoad(viewHolder.mIvIcon);
         }
         mIconHolder.loadDrawable(viewHolder.mIvIcon,
-                getItem(position).getFso(), dataHolder.mDwIcon);
+                getItem(position).getFso(), dataHolder.mDwIcon, position);
 
         viewHolder.mTvName.setText(dataHolder.mName, TextView.BufferType.SPANNABLE);
         viewHolder.mTvParentDir.setText(dataHolder.mParentDir);
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands;
+
+/**
+ * An interface that represents an executable for make a search over
+ * the content of the files of the filesystem. The partial results are lists
+ * of {@link com.cyanogenmod.filemanager.model.ContentMatch}.
+ */
+public interface ContentSearchExecutable extends AsyncResultExecutable {
+    /**NON BLOCK**/
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands;
+
+import com.cyanogenmod.filemanager.model.Duplicates;
+
+/**
+ * An interface that represents an executable for search the duplicate files of one or
+ * more folders
+ */
+public interface DuplicatesExecutable extends AsyncResultExecutable {
+
+    /**
+     * Method that returns the duplicates found so far.
+     *
+     * @return Duplicates The duplicates found so far
+     */
+    Duplicates getDuplicates();
+}
@@ -20,6 +20,7 @@ import com.cyanogenmod.filemanager.commands.ListExecutable.LIST_MODE;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.ContentQuery;
 import com.cyanogenmod.filemanager.model.Group;
 import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.model.Permissions;
@@ -77,6 +78,26 @@ public interface ExecutableCreator {
     CopyExecutable createCopyExecutable(String src, String dst) throws CommandNotFoundException,
     NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for copy a file system object to
+     * other file system object, reporting the progress of the operation.
+     *
+     * @param src The absolute path to the source file system object
+     * @param dst The absolute path to the destination file system object
+     * @param resume If the copy must resume an interrupted copy of the same source and
+     * destination (only if the implementation supports it)
+     * @param asyncResultListener The listener where to return the progress
+     * @return AsyncCopyExecutable A {@link AsyncCopyExecutable} executable implementation
+     * reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    AsyncCopyExecutable createAsyncCopyExecutable(
+            String src, String dst, boolean resume, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for create a new directory.
      *
@@ -200,6 +221,23 @@ public interface ExecutableCreator {
             throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for make searches over the content of the files.
+     *
+     * @param directory The directory where to search
+     * @param query The terms and the filters of the search
+     * @param asyncResultListener The listener where to return partial results
+     * @return ContentSearchExecutable A {@link ContentSearchExecutable} executable
+     * implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    ContentSearchExecutable createContentSearchExecutable(
+            String directory, ContentQuery query, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for compute the disk usage of a folder.
      *
@@ -216,6 +254,39 @@ public interface ExecutableCreator {
             throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for analyze the storage used by a folder.
+     *
+     * @param directory The directory to analyze
+     * @param asyncResultListener The listener where to return partial results
+     * @return StorageAnalysisExecutable A {@link StorageAnalysisExecutable} executable
+     * implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    StorageAnalysisExecutable createStorageAnalysisExecutable(
+            String directory, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
+    /**
+     * Method that creates an executable for search the duplicate files of one or
+     * more folders.
+     *
+     * @param directories The directories where to search
+     * @param asyncResultListener The listener where to return partial results
+     * @return DuplicatesExecutable A {@link DuplicatesExecutable} executable
+     * implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    DuplicatesExecutable createDuplicatesExecutable(
+            String[] directories, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for retrieve the groups of the current user.
      *
@@ -322,6 +393,24 @@ public interface ExecutableCreator {
     MoveExecutable createMoveExecutable(String src, String dst) throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for move a file system object to
+     * other file system object, reporting the progress of the operation.
+     *
+     * @param src The absolute path to the source file system object
+     * @param dst The absolute path to the destination file system object
+     * @param asyncResultListener The listener where to return the progress
+     * @return AsyncMoveExecutable A {@link AsyncMoveExecutable} executable implementation
+     * reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    AsyncMoveExecutable createAsyncMoveExecutable(
+            String src, String dst, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for retrieve the parent directory
      * of a file system object.
@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncCopyExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.CopyProgress;
+import com.cyanogenmod.filemanager.util.CopyJournal;
+import com.cyanogenmod.filemanager.util.CopyProgressMeter;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for copy a file or directory, reporting the progress of the copy.<br/>
+ * <br/>
+ * The size of the source is measured first, and then the files are copied in chunks.
+ * The copy can be cancelled between two chunks, and the partial file is deleted.<br/>
+ * <br/>
+ * If the copy has a journal, it can be resumed after an interruption. A cancelled copy
+ * keeps its partial file, so the resumed copy continues after it.
+ *
+ * @see CopyJournal
+ */
+public class AsyncCopyCommand extends Program implements AsyncCopyExecutable {
+
+    private static final String TAG = "AsyncCopyCommand"; //$NON-NLS-1$
+
+    private final String mSrc;
+    private final String mDst;
+    private final boolean mMove;
+    private final File mJournalFile;
+    private final boolean mResume;
+    private final AsyncResultListener mAsyncResultListener;
+
+    private CopyProgressMeter mMeter;
+    private volatile CopyProgress mProgress;
+    private Boolean mResult;
+    /**
+     * @hide
+     */
+    volatile boolean mCancelled;
+
+    private final FileHelper.OnCopyProgressListener mCopyListener =
+            new FileHelper.OnCopyProgressListener() {
+        @Override
+        public void onFileStarted(File src) {
+            getMeter().onFileStarted(src.getAbsolutePath());
+        }
+
+        @Override
+        public boolean onBytesCopied(long bytes) {
+            getMeter().onBytesCopied(bytes);
+            report(false);
+            return !AsyncCopyCommand.this.mCancelled;
+        }
+
+        @Override
+        public boolean onFileCopied(File src) {
+            getMeter().onFileCopied();
+            report(false);
+            return !AsyncCopyCommand.this.mCancelled;
+        }
+    };
+
+    /**
+     * Constructor of <code>AsyncCopyCommand</code>.
+     *
+     * @param src The name of the file or directory to be copied
+     * @param dst The name of the file or directory in which copy the source file or directory
+     * @param asyncResultListener The partial result listener
+     */
+    public AsyncCopyCommand(String src, String dst, AsyncResultListener asyncResultListener) {
+        this(src, dst, asyncResultListener, false, null, false);
+    }
+
+    /**
+     * Constructor of <code>AsyncCopyCommand</code>.
+     *
+     * @param src The name of the file or directory to be copied
+     * @param dst The name of the file or directory in which copy the source file or directory
+     * @param asyncResultListener The partial result listener
+     * @param journal The journal file of the copy
+     * @param resume If the copy must resume the interrupted copy recorded in the journal
+     */
+    public AsyncCopyCommand(
+            String src, String dst, AsyncResultListener asyncResultListener,
+            File journal, boolean resume) {
+        this(src, dst, asyncResultListener, false, journal, resume);
+    }
+
+    /**
+     * Constructor of <code>AsyncCopyCommand</code>.
+     *
+     * @param src The name of the file or directory to be copied
+     * @param dst The name of the file or directory in which copy the source file or directory
+     * @param asyncResultListener The partial result listener
+     * @param move If the source must be moved instead of copied
+     * @param journal The journal file of the copy (optional)
+     * @param resume If the copy must resume the interrupted copy recorded in the journal
+     */
+    AsyncCopyCommand(
+            String src, String dst, AsyncResultListener asyncResultListener, boolean move,
+            File journal, boolean resume) {
+        super();
+        this.mSrc = src;
+        this.mDst = dst;
+        this.mMove = move;
+        this.mJournalFile = journal;
+        this.mResume = resume;
+        this.mAsyncResultListener = asyncResultListener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("%s from %s to %s", //$NON-NLS-1$
+                            this.mMove ? "Moving" : "Copying", //$NON-NLS-1$ //$NON-NLS-2$
+                            this.mSrc, this.mDst));
+        }
+
+        this.mMeter = new CopyProgressMeter(System.currentTimeMillis());
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        boolean cancelled = false;
+        int exitCode = 0;
+        CopyJournal journal = null;
+        try {
+            File s = new File(this.mSrc);
+            File d = new File(this.mDst);
+            if (!s.exists()) {
+                throw new NoSuchFileOrDirectory(this.mSrc);
+            }
+
+            // A move in the same mount point only renames the source
+            if (this.mMove && FileHelper.renameRecursive(s, d)) {
+                this.mMeter.setTotals(1, 0);
+                this.mMeter.onFileStarted(s.getAbsolutePath());
+                this.mMeter.onFileCopied();
+
+            } else {
+                long[] totals = new long[2];
+                measure(s, totals);
+                this.mMeter.setTotals(totals[0], totals[1]);
+                report(true);
+
+                if (this.mMove) {
+                    if (!FileHelper.moveRecursive(
+                            s, d, getBufferSize(), this.mCopyListener)) {
+                        throw new InsufficientPermissionsException();
+                    }
+                } else {
+                    journal = openJournal();
+                    if (!FileHelper.copyRecursive(
+                            s, d, getBufferSize(), this.mCopyListener, journal)) {
+                        throw new InsufficientPermissionsException();
+                    }
+                    if (journal != null) {
+                        journal.delete();
+                        journal = null;
+                    }
+                }
+            }
+            this.mResult = Boolean.TRUE;
+            report(true);
+
+            if (isTrace()) {
+                Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+            }
+
+        } catch (InterruptedException ie) {
+            cancelled = true;
+            exitCode = 143;
+            this.mResult = Boolean.FALSE;
+            if (isTrace()) {
+                Log.v(TAG, "Result: CANCELLED"); //$NON-NLS-1$
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG,
+                    String.format("Fail to copy from %s to %s", //$NON-NLS-1$
+                            this.mSrc, this.mDst), e);
+            exitCode = 1;
+            this.mResult = Boolean.FALSE;
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(e);
+            }
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL"); //$NON-NLS-1$
+            }
+        }
+
+        // Keep the journal of an interrupted copy, for resume it
+        if (journal != null) {
+            journal.close();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(cancelled);
+            this.mAsyncResultListener.onAsyncExitCode(exitCode);
+        }
+    }
+
+    /**
+     * Method that opens the journal of the copy.
+     *
+     * @return CopyJournal The journal, or null if the copy hasn't a journal
+     */
+    private CopyJournal openJournal() {
+        if (this.mJournalFile == null) {
+            return null;
+        }
+        CopyJournal journal = new CopyJournal(this.mJournalFile, this.mSrc, this.mDst);
+        try {
+            journal.open(this.mResume);
+            return journal;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open the journal. The copy can't be resumed", e); //$NON-NLS-1$
+            journal.close();
+            return null;
+        }
+    }
+
+    /**
+     * Method that measures the files and bytes to copy. The symlinks to directories
+     * aren't followed (they are counted as a file), so a link cycle can't loop.
+     *
+     * @param root The file or folder to measure
+     * @param totals The number of files and bytes measured so far
+     * @throws InterruptedException If the operation was cancelled
+     */
+    private void measure(File root, long[] totals) throws InterruptedException {
+        List<File> pending = new ArrayList<File>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            if (this.mCancelled) {
+                throw new InterruptedException();
+            }
+            File dir = pending.remove(pending.size() - 1);
+            if (!dir.isDirectory()) {
+                totals[0]++;
+                totals[1] += dir.length();
+                continue;
+            }
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            String prefix = null;
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].isDirectory()) {
+                    try {
+                        if (prefix == null) {
+                            prefix = FileHelper.addTrailingSlash(dir.getCanonicalPath());
+                        }
+                        if (files[i].getCanonicalPath().equals(prefix + files[i].getName())) {
+                            pending.add(files[i]);
+                            continue;
+                        }
+                    } catch (IOException ex) {/**NON BLOCK**/}
+                    totals[0]++;
+                    continue;
+                }
+                totals[0]++;
+                totals[1] += files[i].length();
+            }
+        }
+    }
+
+    /**
+     * Method that reports the current progress, if the last report is old enough. The
+     * files of a folder are copied concurrently, so it's invoked from several threads.
+     *
+     * @param force Report the progress even if the last report is recent
+     * @hide
+     */
+    synchronized void report(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!this.mMeter.isReportNeeded(now) && !force) {
+            return;
+        }
+        this.mProgress = this.mMeter.getProgress(now);
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onPartialResult(this.mProgress);
+        }
+    }
+
+    /**
+     * Method that returns the meter of the progress.
+     *
+     * @return CopyProgressMeter The meter of the progress
+     * @hide
+     */
+    CopyProgressMeter getMeter() {
+        return this.mMeter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CopyProgress getProgress() {
+        return this.mProgress;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        return this.mCancelled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        this.mCancelled = true;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        return cancel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import com.cyanogenmod.filemanager.commands.AsyncMoveExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+
+/**
+ * A class for move a file or directory, reporting the progress of the move.<br/>
+ * <br/>
+ * The source is renamed if possible. Otherwise it's copied (reporting the progress of
+ * the copy) and deleted.
+ *
+ * @see AsyncCopyCommand
+ */
+public class AsyncMoveCommand extends AsyncCopyCommand implements AsyncMoveExecutable {
+
+    /**
+     * Constructor of <code>AsyncMoveCommand</code>.
+     *
+     * @param src The name of the file or directory to be moved
+     * @param dst The name of the file or directory in which move the source file or directory
+     * @param asyncResultListener The partial result listener
+     */
+    public AsyncMoveCommand(String src, String dst, AsyncResultListener asyncResultListener) {
+        super(src, dst, asyncResultListener, true, null, false);
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ContentSearchExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.ContentQuery;
+import com.cyanogenmod.filemanager.util.ContentMatcher;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for search in the content of the files.<br/>
+ * <br/>
+ * The tree is walked in parallel by a {@link DirectoryWalker}, and every worker scans
+ * the files it finds with a {@link ContentMatcher}. Big files are memory mapped by windows
+ * and small files are read in a direct buffer of the worker, so the content is never
+ * copied to the java heap. The scan of a file ends when the max number of matches of the
+ * file is reached. The matches are reported in batches, one batch at a time. A batch is
+ * reported when it's full or, while the search continues, when it's older than
+ * {@link #RESULTS_BATCH_TIME}.
+ */
+public class ContentSearchCommand extends Program implements ContentSearchExecutable {
+
+    private static final String TAG = "ContentSearchCommand"; //$NON-NLS-1$
+
+    // The max number of results and time before report a batch
+    private static final int RESULTS_BATCH = 50;
+    private static final long RESULTS_BATCH_TIME = 250L;
+
+    // The files of this size or bigger are memory mapped
+    private static final long MAP_THRESHOLD = 256L * 1024L;
+    // The size of the mapped windows of a file
+    private static final long MAP_WINDOW = 8L * 1024L * 1024L;
+    // The size of the read buffer of every worker
+    private static final int READ_BUFFER = 64 * 1024;
+    // The bytes checked to ignore binary files
+    private static final int BINARY_CHECK = 4096;
+
+    private final String mDirectory;
+    private final ContentQuery mQuery;
+    private final ContentMatcher mMatcher;
+    private final AsyncResultListener mAsyncResultListener;
+    private final int mParallelism;
+
+    private final ThreadLocal<ByteBuffer> mBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(READ_BUFFER);
+        }
+    };
+    private final ThreadLocal<ContentMatcher.Scanner> mScanners =
+            new ThreadLocal<ContentMatcher.Scanner>() {
+        @Override
+        protected ContentMatcher.Scanner initialValue() {
+            return ContentSearchCommand.this.mMatcher.newScanner();
+        }
+    };
+
+    private List<ContentMatch> mBatch;
+    private volatile long mLastReport;
+    private final Object mBatchSync = new Object();
+
+    private DirectoryWalker mWalker;
+    private boolean mCancelled;
+    private boolean mEnded;
+    private boolean mFinished;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>ContentSearchCommand</code>.
+     *
+     * @param directory The absolute directory where start the search
+     * @param query The terms and the filters of the search
+     * @param asyncResultListener The partial result listener
+     */
+    public ContentSearchCommand(
+            String directory, ContentQuery query, AsyncResultListener asyncResultListener) {
+        this(directory, query, asyncResultListener, DirectoryWalker.getDefaultParallelism());
+    }
+
+    /**
+     * Constructor of <code>ContentSearchCommand</code>.
+     *
+     * @param directory The absolute directory where start the search
+     * @param query The terms and the filters of the search
+     * @param asyncResultListener The partial result listener
+     * @param parallelism The number of workers that walk the tree and scan the files
+     */
+    public ContentSearchCommand(String directory, ContentQuery query,
+            AsyncResultListener asyncResultListener, int parallelism) {
+        super();
+        this.mDirectory = directory;
+        this.mQuery = query;
+        this.mMatcher = ContentMatcher.compile(query);
+        this.mAsyncResultListener = asyncResultListener;
+        this.mParallelism = parallelism;
+        this.mBatch = new ArrayList<ContentMatch>(RESULTS_BATCH);
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Searching in the content of %s the terms %s", //$NON-NLS-1$
+                            this.mDirectory, this.mQuery.getTerms()));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        File f = new File(this.mDirectory);
+        if (!f.exists()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(new NoSuchFileOrDirectory(this.mDirectory));
+            }
+        }
+        if (!f.isDirectory()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(
+                        new ExecutionException("path exists but it's not a folder")); //$NON-NLS-1$
+            }
+        }
+
+        // Search the data
+        DirectoryWalker walker = new DirectoryWalker(new DirectoryWalker.Visitor() {
+            @Override
+            public boolean onEntry(File file) {
+                return checkEntry(file);
+            }
+        }, this.mParallelism);
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+        this.mLastReport = System.currentTimeMillis();
+        walker.walk(f);
+        synchronized (this.mBatchSync) {
+            flush();
+        }
+        synchronized (this.mSync) {
+            this.mFinished = true;
+            this.mSync.notifyAll();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that scans an entry of the tree if it's a file accepted by the filters of
+     * the query. This method is invoked from the workers of the walk.
+     *
+     * @param file The entry
+     * @return boolean If the entry is a directory
+     */
+    boolean checkEntry(File file) {
+        flushIfNeeded();
+        if (file.isDirectory()) {
+            return true;
+        }
+        try {
+            long size = file.length();
+            if (size == 0 || size > this.mQuery.getMaxSize() || !file.isFile()) {
+                return false;
+            }
+            if (this.mQuery.hasCategories()
+                    && !this.mQuery.acceptsCategory(MimeTypeHelper.getCategory(null, file))) {
+                return false;
+            }
+            scan(file, size);
+        } catch (Exception e) {
+            if (isTrace()) {
+                Log.w(TAG, "Failed to scan " + file, e); //$NON-NLS-1$
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that scans the content of a file.
+     *
+     * @param file The file
+     * @param size The size of the file
+     * @throws IOException If the file can't be read
+     */
+    private void scan(File file, long size) throws IOException {
+        final String path = file.getAbsolutePath();
+        final int max = this.mQuery.getMaxMatchesPerFile();
+        final int[] matches = new int[1];
+        ContentMatcher.Listener listener = new ContentMatcher.Listener() {
+            @Override
+            public boolean onMatch(int term, int line, int column, long offset, String text) {
+                addMatch(new ContentMatch(path, term, line, column, offset, text));
+                matches[0]++;
+                return matches[0] < max && !ContentSearchCommand.this.mWalker.isCancelled();
+            }
+        };
+
+        ContentMatcher.Scanner scanner = this.mScanners.get();
+        scanner.reset();
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            long offset = 0;
+            while (offset < size) {
+                ByteBuffer window;
+                if (size >= MAP_THRESHOLD) {
+                    window = channel.map(FileChannel.MapMode.READ_ONLY,
+                            offset, Math.min(MAP_WINDOW, size - offset));
+                } else {
+                    window = this.mBuffers.get();
+                    window.clear();
+                    if (channel.read(window, offset) <= 0) {
+                        break;
+                    }
+                    window.flip();
+                }
+                if (offset == 0 && ContentMatcher.isBinary(window, BINARY_CHECK)) {
+                    return;
+                }
+                if (!scanner.scan(window, offset, listener)) {
+                    return;
+                }
+                offset += window.remaining();
+                // The scan of a big file can take a while
+                flushIfNeeded();
+            }
+            scanner.finish(listener);
+        } finally {
+            try {
+                fis.close();
+            } catch (Throwable ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that adds a match to the pending batch, and reports the batch when it's full
+     * or too old.
+     *
+     * @param match The match
+     */
+    void addMatch(ContentMatch match) {
+        if (isTrace()) {
+            Log.v(TAG, String.valueOf(match));
+        }
+        synchronized (this.mBatchSync) {
+            this.mBatch.add(match);
+            long now = System.currentTimeMillis();
+            if (this.mBatch.size() >= RESULTS_BATCH
+                    || now - this.mLastReport >= RESULTS_BATCH_TIME) {
+                flush();
+                this.mLastReport = now;
+            }
+        }
+    }
+
+    /**
+     * Method that reports the pending results if the last check is old enough, so a
+     * match is reported by time even if no more matches are found. It only takes the
+     * batch lock once every {@link #RESULTS_BATCH_TIME}.
+     */
+    private void flushIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - this.mLastReport < RESULTS_BATCH_TIME) {
+            return;
+        }
+        synchronized (this.mBatchSync) {
+            if (now - this.mLastReport < RESULTS_BATCH_TIME) {
+                return;
+            }
+            flush();
+            this.mLastReport = now;
+        }
+    }
+
+    /**
+     * Method that reports the pending results. Must be invoked with the batch lock held,
+     * so the listener receives the batches one by one.
+     */
+    private void flush() {
+        if (this.mBatch.isEmpty()) {
+            return;
+        }
+        List<ContentMatch> batch = this.mBatch;
+        this.mBatch = new ArrayList<ContentMatch>(RESULTS_BATCH);
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onPartialResult(batch);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                this.mCancelled = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class that walks a directory tree with a pool of workers.<br/>
+ * <br/>
+ * Every worker has its own deque of pending directories. A worker pushes the
+ * subdirectories it finds to its own deque and takes the next one from the same end
+ * (depth first, keeping the dentries of the same branch hot), and when it runs out of work
+ * it steals from the other end of the deque of another worker (the oldest, and usually
+ * biggest, subtrees). The walk ends when there are no pending directories.<br/>
+ * <br/>
+ * Symlinks to directories are only followed if their target is outside the branch of the
+ * walked tree (neither inside the tree nor a parent of its root) and wasn't visited before,
+ * so cycles are never walked.
+ */
+public class DirectoryWalker {
+
+    private static final String TAG = "DirectoryWalker"; //$NON-NLS-1$
+
+    // Max wait of an idle worker before recheck the deques
+    private static final long IDLE_WAIT = 20L;
+
+    /**
+     * The interface that receives the entries of the walk.
+     */
+    public interface Visitor {
+        /**
+         * Method invoked, from any of the workers, for every entry found in the tree.
+         *
+         * @param file The entry
+         * @return boolean If the entry is a directory that must be walked
+         */
+        boolean onEntry(File file);
+    }
+
+    /**
+     * A visitor that lists the directories of the walk itself (for example, from a
+     * cache), instead of the walker listing them with {@link File#listFiles()}.
+     */
+    public interface ListingVisitor extends Visitor {
+        /**
+         * Method invoked, from any of the workers, to list a directory of the tree.
+         *
+         * @param dir The directory
+         * @return File[] The entries to visit, or null if the directory can't be listed
+         */
+        File[] list(File dir);
+    }
+
+    /**
+     * A pending directory.
+     */
+    private static class Node {
+        Node(File dir, String canonical, boolean viaLink) {
+            super();
+            this.mDir = dir;
+            this.mCanonical = canonical;
+            this.mViaLink = viaLink;
+        }
+        final File mDir;
+        final String mCanonical;
+        final boolean mViaLink;
+    }
+
+    private final Visitor mVisitor;
+    private final int mParallelism;
+    private final ArrayDeque<Node>[] mDeques;
+    private final AtomicInteger mPending;
+    private final Set<String> mVisitedLinks;
+    private final Object mIdleSync = new Object();
+    private int mIdle;
+    private String mRootCanonical;
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>DirectoryWalker</code>.
+     *
+     * @param visitor The visitor of the entries
+     * @param parallelism The number of workers
+     */
+    @SuppressWarnings("unchecked")
+    public DirectoryWalker(Visitor visitor, int parallelism) {
+        super();
+        this.mVisitor = visitor;
+        this.mParallelism = Math.max(1, parallelism);
+        this.mDeques = new ArrayDeque[this.mParallelism];
+        for (int i = 0; i < this.mParallelism; i++) {
+            this.mDeques[i] = new ArrayDeque<Node>();
+        }
+        this.mPending = new AtomicInteger();
+        this.mVisitedLinks = new HashSet<String>();
+    }
+
+    /**
+     * Method that returns the default number of workers. The walk is bound to the
+     * filesystem, so it's worth to use more than one worker on single core devices.
+     *
+     * @return int The default number of workers
+     */
+    public static int getDefaultParallelism() {
+        return Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Method that walks a tree. The calling thread takes part of the walk and the method
+     * returns when the walk has ended or was cancelled.
+     *
+     * @param root The root directory of the tree (isn't passed to the visitor)
+     */
+    public void walk(File root) {
+        try {
+            this.mRootCanonical = root.getCanonicalPath();
+        } catch (IOException ex) {
+            this.mRootCanonical = root.getAbsolutePath();
+        }
+        push(0, new Node(root, this.mRootCanonical, false));
+
+        Thread[] workers = new Thread[this.mParallelism - 1];
+        for (int i = 0; i < workers.length; i++) {
+            final int worker = i + 1;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    work(worker);
+                }
+            }, TAG + "-" + worker); //$NON-NLS-1$
+            workers[i].start();
+        }
+        work(0);
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that cancels the walk. The workers stop after the entry they are visiting.
+     */
+    public void cancel() {
+        this.mCancelled = true;
+        synchronized (this.mIdleSync) {
+            this.mIdleSync.notifyAll();
+        }
+    }
+
+    /**
+     * Method that returns if the walk was cancelled.
+     *
+     * @return boolean If the walk was cancelled
+     */
+    public boolean isCancelled() {
+        return this.mCancelled;
+    }
+
+    /**
+     * The worker loop.
+     *
+     * @param worker The index of the worker
+     */
+    private void work(int worker) {
+        while (!this.mCancelled) {
+            Node node = take(worker);
+            if (node == null) {
+                synchronized (this.mIdleSync) {
+                    if (this.mPending.get() == 0 || this.mCancelled) {
+                        this.mIdleSync.notifyAll();
+                        return;
+                    }
+                    this.mIdle++;
+                    try {
+                        this.mIdleSync.wait(IDLE_WAIT);
+                    } catch (InterruptedException ex) {
+                        return;
+                    } finally {
+                        this.mIdle--;
+                    }
+                }
+                continue;
+            }
+            try {
+                visit(worker, node);
+            } catch (Throwable ex) {
+                Log.w(TAG, "Failed to walk " + node.mDir, ex); //$NON-NLS-1$
+            } finally {
+                if (this.mPending.decrementAndGet() == 0) {
+                    synchronized (this.mIdleSync) {
+                        this.mIdleSync.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that takes the next directory of a worker: the newest of its own deque, or
+     * the oldest of the deque of other worker.
+     *
+     * @param worker The index of the worker
+     * @return Node The directory or null if there is no pending work
+     */
+    private Node take(int worker) {
+        ArrayDeque<Node> own = this.mDeques[worker];
+        synchronized (own) {
+            Node node = own.pollLast();
+            if (node != null) {
+                return node;
+            }
+        }
+        for (int i = 1; i < this.mParallelism; i++) {
+            ArrayDeque<Node> victim = this.mDeques[(worker + i) % this.mParallelism];
+            synchronized (victim) {
+                Node node = victim.pollFirst();
+                if (node != null) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that adds a pending directory to the deque of a worker.
+     *
+     * @param worker The index of the worker
+     * @param node The directory
+     */
+    private void push(int worker, Node node) {
+        this.mPending.incrementAndGet();
+        ArrayDeque<Node> own = this.mDeques[worker];
+        synchronized (own) {
+            own.addLast(node);
+        }
+        synchronized (this.mIdleSync) {
+            if (this.mIdle > 0) {
+                this.mIdleSync.notify();
+            }
+        }
+    }
+
+    /**
+     * Method that visits the entries of a directory.
+     *
+     * @param worker The index of the worker
+     * @param node The directory
+     */
+    private void visit(int worker, Node node) {
+        File[] files = this.mVisitor instanceof ListingVisitor
+                ? ((ListingVisitor)this.mVisitor).list(node.mDir)
+                : node.mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        String prefix = node.mCanonical.endsWith(File.separator)
+                ? node.mCanonical
+                : node.mCanonical + File.separator;
+        for (int i = 0; i < files.length; i++) {
+            if (this.mCancelled) {
+                return;
+            }
+            if (!this.mVisitor.onEntry(files[i])) {
+                continue;
+            }
+
+            // Check that the directory isn't a link to a directory already walked
+            String canonical;
+            try {
+                canonical = files[i].getCanonicalPath();
+            } catch (IOException ex) {
+                continue;
+            }
+            boolean link = !canonical.equals(prefix + files[i].getName());
+            if ((link || node.mViaLink) && isInRootBranch(canonical)) {
+                // The real directory is (or will be) walked from the root
+                continue;
+            }
+            if (link) {
+                synchronized (this.mVisitedLinks) {
+                    if (!this.mVisitedLinks.add(canonical)) {
+                        continue;
+                    }
+                }
+            }
+            push(worker, new Node(files[i], canonical, link || node.mViaLink));
+        }
+    }
+
+    /**
+     * Method that returns if a canonical path is part of the walked tree or one of the
+     * parents of its root (walking them would walk the tree again).
+     *
+     * @param canonical The canonical path
+     * @return boolean If the path is inside the root of the walk or is a parent of it
+     */
+    private boolean isInRootBranch(String canonical) {
+        return isParentOrSelf(this.mRootCanonical, canonical)
+                || isParentOrSelf(canonical, this.mRootCanonical);
+    }
+
+    /**
+     * Method that returns if a path is the same or a parent of other path.
+     */
+    private static boolean isParentOrSelf(String parent, String path) {
+        if (path.equals(parent)) {
+            return true;
+        }
+        String prefix = parent.endsWith(File.separator) ? parent : parent + File.separator;
+        return path.startsWith(prefix);
+    }
+}
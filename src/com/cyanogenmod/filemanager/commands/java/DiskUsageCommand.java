@@ -59,7 +59,7 @@ public class DiskUsageCommand extends Program implements DiskUsageExecutable {
     public DiskUsageCommand(String mountsFile, String dir) {
         super();
         this.mMountsFile = mountsFile;
-        this.mSrc = null;
+        this.mSrc = dir;
         this.mDisksUsage = new ArrayList<DiskUsage>();
     }
 
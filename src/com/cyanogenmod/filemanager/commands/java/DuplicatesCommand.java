@@ -0,0 +1,806 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.android.internal.util.HexDump;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable.CHECKSUMS;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.Duplicates;
+import com.cyanogenmod.filemanager.model.Duplicates.STAGE;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class for search the duplicate files of one or more folders.<br/>
+ * <br/>
+ * The files are compared in stages, so the content is only read when it's needed:
+ * <ol>
+ * <li>The trees are walked counting the files of every size (only the sizes are kept,
+ * in a map of primitives).</li>
+ * <li>The trees are walked again, collecting only the files whose size isn't unique.</li>
+ * <li>The files of the same size are compared by the checksum of their first and last
+ * {@link #PARTIAL_CHECKSUM_SIZE} bytes, and the ones that still match by the checksum of
+ * their whole content. The sizes are compared in parallel, largest first, and every
+ * group of duplicates is reported as soon as it's confirmed.</li>
+ * </ol>
+ * Empty files and symbolic links are ignored.
+ */
+public class DuplicatesCommand extends Program implements DuplicatesExecutable {
+
+    private static final String TAG = "DuplicatesCommand"; //$NON-NLS-1$
+
+    // The min time between partial results
+    private static final long PARTIAL_RESULT_INTERVAL = 250L;
+
+    /**
+     * The bytes of the head and the tail of a file that are compared before the
+     * whole content.
+     */
+    static final int PARTIAL_CHECKSUM_SIZE = 4096;
+
+    private static final CHECKSUMS CHECKSUM = CHECKSUMS.SHA1;
+
+    /**
+     * A map of sizes to number of files, with open addressing over primitive arrays.
+     * The size 0 marks the free slots (the empty files are never added).
+     */
+    static final class SizeCounts {
+        private long[] mKeys = new long[64];
+        private int[] mCounts = new int[64];
+        private int mSize;
+
+        /**
+         * Method that adds files of a size.
+         *
+         * @param size The size (greater than 0)
+         * @param count The number of files
+         */
+        void add(long size, int count) {
+            int slot = slot(this.mKeys, size);
+            if (this.mKeys[slot] == 0) {
+                this.mKeys[slot] = size;
+                this.mSize++;
+                if (this.mSize * 2 > this.mKeys.length) {
+                    grow();
+                    slot = slot(this.mKeys, size);
+                }
+            }
+            this.mCounts[slot] += count;
+        }
+
+        /**
+         * Method that returns the number of files of a size.
+         *
+         * @param size The size
+         * @return int The number of files
+         */
+        int get(long size) {
+            return this.mCounts[slot(this.mKeys, size)];
+        }
+
+        /**
+         * Method that adds all the sizes of other map.
+         *
+         * @param other The other map
+         */
+        void addAll(SizeCounts other) {
+            for (int i = 0; i < other.mKeys.length; i++) {
+                if (other.mKeys[i] != 0) {
+                    add(other.mKeys[i], other.mCounts[i]);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] keys = this.mKeys;
+            int[] counts = this.mCounts;
+            this.mKeys = new long[keys.length * 2];
+            this.mCounts = new int[keys.length * 2];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    int slot = slot(this.mKeys, keys[i]);
+                    this.mKeys[slot] = keys[i];
+                    this.mCounts[slot] = counts[i];
+                }
+            }
+        }
+
+        private static int slot(long[] keys, long size) {
+            int mask = keys.length - 1;
+            long h = size * 0x9E3779B97F4A7C15L;
+            int slot = (int)(h ^ (h >>> 32)) & mask;
+            while (keys[slot] != 0 && keys[slot] != size) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * A file that shares its size with another file.
+     */
+    static final class Candidate {
+        final long mSize;
+        final String mPath;
+
+        Candidate(long size, String path) {
+            super();
+            this.mSize = size;
+            this.mPath = path;
+        }
+    }
+
+    /**
+     * The state of a worker of the walks.
+     */
+    static final class Worker {
+        final SizeCounts mCounts = new SizeCounts();
+        final List<Candidate> mCandidates = new ArrayList<Candidate>();
+    }
+
+    private final String[] mDirectories;
+    private final AsyncResultListener mAsyncResultListener;
+    private final int mParallelism;
+
+    // The workers of the current walk
+    /**
+     * @hide
+     */
+    final List<Worker> mWorkers = new CopyOnWriteArrayList<Worker>();
+    private ThreadLocal<Worker> mWorker;
+    private SizeCounts mSizes;
+
+    private volatile STAGE mStage;
+    private final AtomicLong mScannedFiles = new AtomicLong();
+    private long mCandidateFiles;
+    private final AtomicLong mCheckedFiles = new AtomicLong();
+    private final List<Duplicates.Group> mGroups;
+    private volatile Duplicates mDuplicates;
+    private long mLastReport;
+    private final Object mReportSync = new Object();
+
+    private DirectoryWalker mWalker;
+    private boolean mCancelled;
+    private boolean mEnded;
+    private volatile boolean mStopped;
+    private boolean mFinished;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>DuplicatesCommand</code>.
+     *
+     * @param directories The absolute directories where to search
+     * @param asyncResultListener The partial result listener
+     */
+    public DuplicatesCommand(String[] directories, AsyncResultListener asyncResultListener) {
+        this(directories, asyncResultListener, DirectoryWalker.getDefaultParallelism());
+    }
+
+    /**
+     * Constructor of <code>DuplicatesCommand</code>.
+     *
+     * @param directories The absolute directories where to search
+     * @param asyncResultListener The partial result listener
+     * @param parallelism The number of threads that walk the trees and read the files
+     */
+    public DuplicatesCommand(
+            String[] directories, AsyncResultListener asyncResultListener, int parallelism) {
+        super();
+        this.mDirectories = directories;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mParallelism = parallelism;
+        this.mGroups = new ArrayList<Duplicates.Group>();
+        this.mStage = STAGE.SIZES;
+        this.mDuplicates = snapshot();
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Duplicates getDuplicates() {
+        return this.mDuplicates;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Searching duplicates in %d folders", //$NON-NLS-1$
+                            Integer.valueOf(this.mDirectories.length)));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        List<File> roots = getRoots();
+
+        // 1.- Count the files of every size
+        walk(roots);
+        this.mSizes = new SizeCounts();
+        for (Worker worker : this.mWorkers) {
+            this.mSizes.addAll(worker.mCounts);
+        }
+
+        // 2.- Collect the files whose size isn't unique (largest first)
+        this.mStage = STAGE.CANDIDATES;
+        walk(roots);
+        this.mSizes = null;
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (Worker worker : this.mWorkers) {
+            candidates.addAll(worker.mCandidates);
+        }
+        this.mWorkers.clear();
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate lhs, Candidate rhs) {
+                if (lhs.mSize != rhs.mSize) {
+                    return lhs.mSize < rhs.mSize ? 1 : -1;
+                }
+                return lhs.mPath.compareTo(rhs.mPath);
+            }
+        });
+        this.mCandidateFiles = candidates.size();
+
+        // 3.- Compare the checksums of the files of every size
+        this.mStage = STAGE.CHECKSUMS;
+        reportNow();
+        compare(candidates);
+
+        // The final result
+        this.mStage = STAGE.DONE;
+        reportNow();
+        synchronized (this.mSync) {
+            this.mFinished = true;
+            this.mSync.notifyAll();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that returns the folders to walk. The folders that don't exist are reported,
+     * and the ones inside other folder are discarded, so no file is found twice.
+     *
+     * @return List<File> The folders to walk
+     */
+    private List<File> getRoots() {
+        List<File> roots = new ArrayList<File>();
+        List<String> canonicals = new ArrayList<String>();
+        for (String directory : this.mDirectories) {
+            File f = new File(directory);
+            if (!f.isDirectory()) {
+                if (isTrace()) {
+                    Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+                }
+                if (this.mAsyncResultListener != null) {
+                    this.mAsyncResultListener.onException(new NoSuchFileOrDirectory(directory));
+                }
+                continue;
+            }
+            String canonical;
+            try {
+                canonical = f.getCanonicalPath();
+            } catch (IOException ex) {
+                canonical = f.getAbsolutePath();
+            }
+            if (!canonical.endsWith(File.separator)) {
+                canonical += File.separator;
+            }
+            boolean nested = false;
+            for (int i = canonicals.size() - 1; i >= 0; i--) {
+                if (canonical.startsWith(canonicals.get(i))) {
+                    nested = true;
+                    break;
+                }
+                if (canonicals.get(i).startsWith(canonical)) {
+                    canonicals.remove(i);
+                    roots.remove(i);
+                }
+            }
+            if (!nested) {
+                canonicals.add(canonical);
+                roots.add(f);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Method that walks the folders in parallel, for the current stage.
+     *
+     * @param roots The folders to walk
+     */
+    private void walk(List<File> roots) {
+        this.mWorkers.clear();
+        this.mWorker = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                Worker worker = new Worker();
+                DuplicatesCommand.this.mWorkers.add(worker);
+                return worker;
+            }
+        };
+        for (File root : roots) {
+            DirectoryWalker walker = new DirectoryWalker(new DirectoryWalker.ListingVisitor() {
+                @Override
+                public File[] list(File dir) {
+                    return scanFolder(dir);
+                }
+                @Override
+                public boolean onEntry(File file) {
+                    // Only the subfolders are listed
+                    return true;
+                }
+            }, this.mParallelism);
+            synchronized (this.mSync) {
+                if (this.mCancelled || this.mEnded) {
+                    return;
+                }
+                this.mWalker = walker;
+            }
+            walker.walk(root);
+        }
+    }
+
+    /**
+     * Method that scans the files of a folder for the current stage.
+     *
+     * @param dir The folder
+     * @return File[] The subfolders to walk, or null if the folder can't be listed
+     */
+    File[] scanFolder(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        String prefix;
+        try {
+            prefix = dir.getCanonicalPath();
+        } catch (IOException ex) {
+            return null;
+        }
+        if (!prefix.endsWith(File.separator)) {
+            prefix += File.separator;
+        }
+
+        Worker worker = this.mWorker.get();
+        boolean collect = this.mStage == STAGE.CANDIDATES;
+        List<File> subfolders = new ArrayList<File>();
+        int scanned = 0;
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            if (file.isDirectory()) {
+                if (isCanonical(file, prefix)) {
+                    subfolders.add(file);
+                }
+                continue;
+            }
+            long size = file.length();
+            if (size == 0 || !file.isFile()) {
+                continue;
+            }
+            scanned++;
+            if (!collect) {
+                worker.mCounts.add(size, 1);
+            } else if (this.mSizes.get(size) > 1 && isCanonical(file, prefix)) {
+                worker.mCandidates.add(new Candidate(size, file.getAbsolutePath()));
+            }
+        }
+        if (!collect) {
+            this.mScannedFiles.addAndGet(scanned);
+        }
+        reportIfNeeded();
+        return subfolders.toArray(new File[subfolders.size()]);
+    }
+
+    /**
+     * Method that returns if a file isn't a symbolic link (nor is inside a linked folder).
+     *
+     * @param file The file
+     * @param prefix The canonical path of its parent, ended with a separator
+     * @return boolean If the file isn't a symbolic link
+     */
+    private static boolean isCanonical(File file, String prefix) {
+        try {
+            return file.getCanonicalPath().equals(prefix + file.getName());
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Method that compares the candidates in parallel, one size at a time.
+     *
+     * @param candidates The candidates, sorted by size
+     */
+    private void compare(final List<Candidate> candidates) {
+        // The start of every size
+        final List<Integer> starts = new ArrayList<Integer>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i == 0 || candidates.get(i).mSize != candidates.get(i - 1).mSize) {
+                starts.add(Integer.valueOf(i));
+            }
+        }
+        starts.add(Integer.valueOf(candidates.size()));
+
+        final AtomicInteger next = new AtomicInteger();
+        Runnable work = new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[Math.max(getBufferSize(), PARTIAL_CHECKSUM_SIZE)];
+                int size;
+                while (!isStopped() && (size = next.getAndIncrement()) < starts.size() - 1) {
+                    compareSize(candidates.subList(
+                            starts.get(size).intValue(),
+                            starts.get(size + 1).intValue()), buffer);
+                }
+            }
+        };
+        Thread[] workers = new Thread[this.mParallelism - 1];
+        for (int i = 0; i < workers.length; i++) {
+            final Runnable r = work;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, TAG + "-" + (i + 1)); //$NON-NLS-1$
+            workers[i].start();
+        }
+        work.run();
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that compares the files of a size, by the checksum of their head and tail
+     * first, and then by the checksum of their content.
+     *
+     * @param files The files of the same size
+     * @param buffer The buffer of the current thread
+     * @hide
+     */
+    void compareSize(List<Candidate> files, byte[] buffer) {
+        long size = files.get(0).mSize;
+        boolean whole = size <= PARTIAL_CHECKSUM_SIZE * 2;
+        Map<String, List<String>> partials = new HashMap<String, List<String>>();
+        for (Candidate file : files) {
+            if (isStopped()) {
+                return;
+            }
+            String checksum = checksum(file.mPath, size, !whole, buffer);
+            if (checksum != null) {
+                put(partials, checksum, file.mPath);
+            }
+            if (whole) {
+                this.mCheckedFiles.incrementAndGet();
+            }
+        }
+
+        for (Map.Entry<String, List<String>> partial : partials.entrySet()) {
+            List<String> paths = partial.getValue();
+            if (whole) {
+                // The checksum of the head and the tail is the checksum of the content
+                if (paths.size() > 1) {
+                    addGroup(new Duplicates.Group(size, partial.getKey(), paths));
+                }
+                continue;
+            }
+            Map<String, List<String>> checksums = new HashMap<String, List<String>>();
+            if (paths.size() > 1) {
+                for (String path : paths) {
+                    if (isStopped()) {
+                        return;
+                    }
+                    String checksum = checksum(path, size, false, buffer);
+                    if (checksum != null) {
+                        put(checksums, checksum, path);
+                    }
+                    this.mCheckedFiles.incrementAndGet();
+                }
+            } else {
+                this.mCheckedFiles.incrementAndGet();
+            }
+            for (Map.Entry<String, List<String>> e : checksums.entrySet()) {
+                if (e.getValue().size() > 1) {
+                    addGroup(new Duplicates.Group(size, e.getKey(), e.getValue()));
+                }
+            }
+        }
+        reportIfNeeded();
+    }
+
+    /**
+     * Method that adds a path to the list of a checksum.
+     *
+     * @param map The paths by checksum
+     * @param checksum The checksum
+     * @param path The path
+     */
+    private static void put(Map<String, List<String>> map, String checksum, String path) {
+        List<String> paths = map.get(checksum);
+        if (paths == null) {
+            paths = new ArrayList<String>(2);
+            map.put(checksum, paths);
+        }
+        paths.add(path);
+    }
+
+    /**
+     * Method that adds a group of duplicates.
+     *
+     * @param group The group
+     */
+    private void addGroup(Duplicates.Group group) {
+        Collections.sort(group.getPaths());
+        synchronized (this.mGroups) {
+            this.mGroups.add(group);
+        }
+    }
+
+    /**
+     * Method that returns the checksum of a file, or of its head and its tail.
+     *
+     * @param path The path of the file
+     * @param size The expected size of the file
+     * @param partial Whether only the head and the tail are read
+     * @param buffer The buffer of the current thread
+     * @return String The checksum, or null if the file can't be read or the read
+     * was stopped
+     */
+    private String checksum(String path, long size, boolean partial, byte[] buffer) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(CHECKSUM.name());
+            if (partial) {
+                RandomAccessFile raf = new RandomAccessFile(path, "r"); //$NON-NLS-1$
+                try {
+                    raf.readFully(buffer, 0, PARTIAL_CHECKSUM_SIZE);
+                    md.update(buffer, 0, PARTIAL_CHECKSUM_SIZE);
+                    raf.seek(size - PARTIAL_CHECKSUM_SIZE);
+                    raf.readFully(buffer, 0, PARTIAL_CHECKSUM_SIZE);
+                    md.update(buffer, 0, PARTIAL_CHECKSUM_SIZE);
+                } finally {
+                    raf.close();
+                }
+            } else {
+                InputStream is = new FileInputStream(path);
+                try {
+                    long total = 0;
+                    int read = 0;
+                    while ((read = is.read(buffer, 0, buffer.length)) != -1) {
+                        if (isStopped()) {
+                            return null;
+                        }
+                        md.update(buffer, 0, read);
+                        total += read;
+                    }
+                    if (total != size) {
+                        // The file changed
+                        return null;
+                    }
+                } finally {
+                    is.close();
+                }
+            }
+            return HexDump.toHexString(md.digest()).toLowerCase(Locale.ROOT);
+        } catch (Exception e) {
+            if (isTrace()) {
+                Log.v(TAG, String.format("Can't read %s", path), e); //$NON-NLS-1$
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Method that returns if the command was cancelled or ended.
+     *
+     * @return boolean If the command was cancelled or ended
+     * @hide
+     */
+    boolean isStopped() {
+        return this.mStopped;
+    }
+
+    /**
+     * Method that returns the current state of the search.
+     *
+     * @return Duplicates The current state of the search
+     */
+    private Duplicates snapshot() {
+        List<Duplicates.Group> groups;
+        synchronized (this.mGroups) {
+            groups = new ArrayList<Duplicates.Group>(this.mGroups);
+        }
+        return new Duplicates(
+                this.mStage, this.mScannedFiles.get(), this.mCandidateFiles,
+                this.mCheckedFiles.get(), groups);
+    }
+
+    /**
+     * Method that reports a partial result if the last one is old enough. Only one
+     * thread reports at a time, the rest continue.
+     */
+    private void reportIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - this.mLastReport < PARTIAL_RESULT_INTERVAL) {
+            return;
+        }
+        synchronized (this.mReportSync) {
+            if (now - this.mLastReport < PARTIAL_RESULT_INTERVAL) {
+                return;
+            }
+            this.mLastReport = now;
+            report();
+        }
+    }
+
+    /**
+     * Method that reports a partial result now (a stage changed).
+     */
+    private void reportNow() {
+        synchronized (this.mReportSync) {
+            this.mLastReport = System.currentTimeMillis();
+            report();
+        }
+    }
+
+    /**
+     * Method that reports the current state. Must be invoked with the report lock held,
+     * so the listener receives the results one by one.
+     */
+    private void report() {
+        Duplicates duplicates = snapshot();
+        this.mDuplicates = duplicates;
+
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(duplicates);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                this.mCancelled = true;
+                this.mStopped = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                this.mStopped = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
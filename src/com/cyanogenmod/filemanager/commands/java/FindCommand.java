@@ -26,24 +26,41 @@ import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.util.FileHelper;
-import com.cyanogenmod.filemanager.util.SearchHelper;
+import com.cyanogenmod.filemanager.util.QueryMatcher;
 
 import java.io.File;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * A class for search files.
+ * A class for search files.<br/>
+ * <br/>
+ * The tree is walked in parallel by a {@link DirectoryWalker}. The results found by the
+ * workers are reported in batches, one batch at a time. A batch is reported when it's
+ * full or, while the walk continues, when it's older than {@link #RESULTS_BATCH_TIME}.
  */
 public class FindCommand extends Program implements FindExecutable {
 
     private static final String TAG = "FindCommand"; //$NON-NLS-1$
 
+    // The max number of results and time before report a batch
+    private static final int RESULTS_BATCH = 50;
+    private static final long RESULTS_BATCH_TIME = 250L;
+
     private final String mDirectory;
-    private final String[] mQueryRegExp;
+    private final Query mQuery;
+    private final QueryMatcher mMatcher;
     private final AsyncResultListener mAsyncResultListener;
+    private final int mParallelism;
+
+    private List<FileSystemObject> mBatch;
+    private volatile long mLastReport;
+    private final Object mBatchSync = new Object();
 
+    private DirectoryWalker mWalker;
     private boolean mCancelled;
     private boolean mEnded;
+    private boolean mFinished;
     private final Object mSync = new Object();
 
     /**
@@ -54,10 +71,26 @@ public class FindCommand extends Program implements FindExecutable {
      * @param asyncResultListener The partial result listener
      */
     public FindCommand(String directory, Query query, AsyncResultListener asyncResultListener) {
+        this(directory, query, asyncResultListener, DirectoryWalker.getDefaultParallelism());
+    }
+
+    /**
+     * Constructor of <code>FindCommand</code>.
+     *
+     * @param directory The absolute directory where start the search
+     * @param query The terms to be searched
+     * @param asyncResultListener The partial result listener
+     * @param parallelism The number of workers that walk the tree
+     */
+    public FindCommand(String directory, Query query, AsyncResultListener asyncResultListener,
+            int parallelism) {
         super();
         this.mDirectory = directory;
-        this.mQueryRegExp = createRegexp(directory, query);
+        this.mQuery = query;
+        this.mMatcher = QueryMatcher.compile(query);
         this.mAsyncResultListener = asyncResultListener;
+        this.mParallelism = parallelism;
+        this.mBatch = new ArrayList<FileSystemObject>(RESULTS_BATCH);
         this.mCancelled = false;
         this.mEnded = false;
     }
@@ -79,7 +112,7 @@ public class FindCommand extends Program implements FindExecutable {
         if (isTrace()) {
             Log.v(TAG,
                     String.format("Finding in %s the query %s", //$NON-NLS-1$
-                            this.mDirectory, Arrays.toString(this.mQueryRegExp)));
+                            this.mDirectory, this.mQuery.getTerms()));
         }
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncStart();
@@ -105,7 +138,27 @@ public class FindCommand extends Program implements FindExecutable {
         }
 
         // Find the data
-        findRecursive(f);
+        DirectoryWalker walker = new DirectoryWalker(new DirectoryWalker.Visitor() {
+            @Override
+            public boolean onEntry(File file) {
+                return checkEntry(file);
+            }
+        }, this.mParallelism);
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+        this.mLastReport = System.currentTimeMillis();
+        walker.walk(f);
+        synchronized (this.mBatchSync) {
+            flush();
+        }
+        synchronized (this.mSync) {
+            this.mFinished = true;
+            this.mSync.notifyAll();
+        }
 
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
@@ -120,49 +173,68 @@ public class FindCommand extends Program implements FindExecutable {
     }
 
     /**
-     * Method that search files recursively
+     * Method that checks if an entry of the tree matches the query. This method is
+     * invoked from the workers of the walk.
      *
-     * @param folder The folder where to start the search
+     * @param file The entry
+     * @return boolean If the entry is a directory
      */
-    private void findRecursive(File folder) {
-        // Obtains the files and folders of the folders
-        File[] files = folder.listFiles();
-        if (files != null) {
-            int cc = files.length;
-            for (int i = 0; i < cc; i++) {
-                if (files[i].isDirectory()) {
-                    findRecursive(files[i]);
-                }
-
-                // Check if the file or folder matches the regexp
-                try {
-                    int ccc = this.mQueryRegExp.length;
-                    for (int j = 0; j < ccc; j++) {
-                        if (files[i].getName().matches(this.mQueryRegExp[j])) {
-                            FileSystemObject fso =
-                                    FileHelper.createFileSystemObject(files[i]);
-                            if (fso != null) {
-                                if (isTrace()) {
-                                    Log.v(TAG, String.valueOf(fso));
-                                }
-                                if (this.mAsyncResultListener != null) {
-                                    this.mAsyncResultListener.onPartialResult(fso);
-                                }
-                            }
-                        }
+    boolean checkEntry(File file) {
+        // Check if the file or folder matches any term of the query
+        try {
+            if (this.mMatcher.matches(file.getName())) {
+                FileSystemObject fso = FileHelper.createFileSystemObject(file);
+                if (fso != null) {
+                    if (isTrace()) {
+                        Log.v(TAG, String.valueOf(fso));
                     }
-                } catch (Exception e) {/**NON-BLOCK**/}
-
-                // Check if the process was cancelled
-                try {
-                    synchronized (this.mSync) {
-                        if (this.mCancelled  || this.mEnded) {
-                            this.mSync.notify();
-                            break;
+                    synchronized (this.mBatchSync) {
+                        this.mBatch.add(fso);
+                        long now = System.currentTimeMillis();
+                        if (this.mBatch.size() >= RESULTS_BATCH
+                                || now - this.mLastReport >= RESULTS_BATCH_TIME) {
+                            flush();
+                            this.mLastReport = now;
                         }
                     }
-                } catch (Exception e) {/**NON BLOCK**/}
+                }
             }
+        } catch (Exception e) {/**NON-BLOCK**/}
+        flushIfNeeded();
+        return file.isDirectory();
+    }
+
+    /**
+     * Method that reports the pending results if the last check is old enough, so a
+     * result is reported by time even if no more results are found. It's invoked for
+     * every entry, and only takes the batch lock once every {@link #RESULTS_BATCH_TIME}.
+     */
+    private void flushIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - this.mLastReport < RESULTS_BATCH_TIME) {
+            return;
+        }
+        synchronized (this.mBatchSync) {
+            if (now - this.mLastReport < RESULTS_BATCH_TIME) {
+                return;
+            }
+            flush();
+            this.mLastReport = now;
+        }
+    }
+
+    /**
+     * Method that reports the pending results. Must be invoked with the batch lock held,
+     * so the listener receives the batches one by one.
+     */
+    private void flush() {
+        if (this.mBatch.isEmpty()) {
+            return;
+        }
+        List<FileSystemObject> batch = this.mBatch;
+        this.mBatch = new ArrayList<FileSystemObject>(RESULTS_BATCH);
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onPartialResult(batch);
         }
     }
 
@@ -184,7 +256,12 @@ public class FindCommand extends Program implements FindExecutable {
         try {
             synchronized (this.mSync) {
                 this.mCancelled = true;
-                this.mSync.wait(5000L);
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
             }
         } catch (Exception e) {/**NON BLOCK**/}
         return true;
@@ -198,7 +275,12 @@ public class FindCommand extends Program implements FindExecutable {
         try {
             synchronized (this.mSync) {
                 this.mEnded = true;
-                this.mSync.wait(5000L);
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
             }
         } catch (Exception e) {/**NON BLOCK**/}
         return true;
@@ -235,21 +317,4 @@ public class FindCommand extends Program implements FindExecutable {
     public AsyncResultListener getAsyncResultListener() {
         return this.mAsyncResultListener;
     }
-
-    /**
-     * Method that create the regexp of this command, using the directory and
-     * arguments and creating the regular expressions of the search.
-     *
-     * @param directory The directory where to search
-     * @param query The query make for user
-     * @return String[] The regexp for filtering files
-     */
-    private static String[] createRegexp(String directory, Query query) {
-        String[] args = new String[query.getSlotsCount()];
-        int cc = query.getSlotsCount();
-        for (int i = 0; i < cc; i++) {
-            args[i] = SearchHelper.toIgnoreCaseRegExp(query.getSlot(i), true);
-        }
-        return args;
-    }
 }
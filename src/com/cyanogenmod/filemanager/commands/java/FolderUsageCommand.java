@@ -24,24 +24,62 @@ import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.model.FolderUsage;
-import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+import com.cyanogenmod.filemanager.util.FolderSizeCache;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * A class for retrieve the disk usage of a folder.
+ * A class for retrieve the disk usage of a folder.<br/>
+ * <br/>
+ * The tree is walked in parallel by a {@link DirectoryWalker}. Every worker accumulates
+ * its own counters (only written by the worker, so they are never contended), and the
+ * counters of all the workers are summed when a partial result is reported, at most
+ * every {@link #PARTIAL_RESULT_INTERVAL} milliseconds. The directories are listed through
+ * the {@link FolderSizeCache}, so the directories that didn't change since the last
+ * computation aren't listed again.
  */
 public class FolderUsageCommand extends Program implements FolderUsageExecutable {
 
     private static final String TAG = "FolderUsage"; //$NON-NLS-1$
 
+    // The min time between partial results
+    private static final long PARTIAL_RESULT_INTERVAL = 100L;
+
+    // The positions of the counters of a worker (the categories follow)
+    private static final int FOLDERS = 0;
+    private static final int FILES = 1;
+    private static final int SIZE = 2;
+    private static final int CATEGORIES = 3;
+
+    private static final MimeTypeCategory[] CATEGORY_VALUES = MimeTypeCategory.values();
+
     private final String mDirectory;
     private final AsyncResultListener mAsyncResultListener;
-    private final FolderUsage mFolderUsage;
+    private final FolderSizeCache mCache;
+    private final int mParallelism;
+    private volatile FolderUsage mFolderUsage;
 
+    private final List<AtomicLongArray> mCounters;
+    private final ThreadLocal<AtomicLongArray> mWorkerCounters =
+            new ThreadLocal<AtomicLongArray>() {
+        @Override
+        protected AtomicLongArray initialValue() {
+            AtomicLongArray counters = new AtomicLongArray(CATEGORIES + CATEGORY_VALUES.length);
+            FolderUsageCommand.this.mCounters.add(counters);
+            return counters;
+        }
+    };
+    private long mLastReport;
+    private final Object mReportSync = new Object();
+
+    private DirectoryWalker mWalker;
     private boolean mCancelled;
     private boolean mEnded;
+    private boolean mFinished;
     private final Object mSync = new Object();
 
     /**
@@ -49,13 +87,31 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
      *
      * @param directory The absolute directory to compute
      * @param asyncResultListener The partial result listener
+     * @param cache The cache of the usage of the directories
      */
     public FolderUsageCommand(
-            String directory, AsyncResultListener asyncResultListener) {
+            String directory, AsyncResultListener asyncResultListener, FolderSizeCache cache) {
+        this(directory, asyncResultListener, cache, DirectoryWalker.getDefaultParallelism());
+    }
+
+    /**
+     * Constructor of <code>FolderUsageCommand</code>.
+     *
+     * @param directory The absolute directory to compute
+     * @param asyncResultListener The partial result listener
+     * @param cache The cache of the usage of the directories
+     * @param parallelism The number of workers that walk the tree
+     */
+    public FolderUsageCommand(
+            String directory, AsyncResultListener asyncResultListener,
+            FolderSizeCache cache, int parallelism) {
         super();
         this.mDirectory = directory;
         this.mAsyncResultListener = asyncResultListener;
+        this.mCache = cache;
+        this.mParallelism = parallelism;
         this.mFolderUsage = new FolderUsage(directory);
+        this.mCounters = new CopyOnWriteArrayList<AtomicLongArray>();
         this.mCancelled = false;
         this.mEnded = false;
     }
@@ -110,12 +166,35 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
             }
         }
 
-        // Compute data recursively
-        computeRecursive(f);
+        // Compute data in parallel
+        DirectoryWalker walker = new DirectoryWalker(new DirectoryWalker.ListingVisitor() {
+            @Override
+            public File[] list(File dir) {
+                return computeDirectory(dir);
+            }
+            @Override
+            public boolean onEntry(File file) {
+                // Only the subdirectories are listed
+                return true;
+            }
+        }, this.mParallelism);
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+        this.mLastReport = System.currentTimeMillis();
+        walker.walk(f);
+        this.mCache.save();
 
+        // The final result
+        synchronized (this.mReportSync) {
+            report();
+        }
         synchronized (this.mSync) {
-            this.mEnded = true;
-            this.mSync.notify();
+            this.mFinished = true;
+            this.mSync.notifyAll();
         }
 
         if (this.mAsyncResultListener != null) {
@@ -131,55 +210,85 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
     }
 
     /**
-     * Method that computes the folder usage recursively
+     * Method that adds the files of a directory to the counters of the current worker.
+     * The usage of the directory comes from the cache if it didn't change.
      *
-     * @param folder The folder where to start the computation
+     * @param dir The directory
+     * @return File[] The subdirectories to walk, or null if the directory can't be listed
      */
-    private void computeRecursive(File folder) {
-        // Obtains the files and folders of the folders
-        try {
-            File[] files = folder.listFiles();
-            int c = 0;
-            if (files != null) {
-                int cc = files.length;
-                for (int i = 0; i < cc; i++) {
-                    if (files[i].isDirectory()) {
-                        this.mFolderUsage.addFolder();
-                        computeRecursive(files[i]);
-                    } else {
-                        this.mFolderUsage.addFile();
-                        // Compute statistics and size
-                        MimeTypeCategory category =
-                                MimeTypeHelper.getCategory(null, files[i]);
-                        this.mFolderUsage.addFileToCategory(category);
-                        this.mFolderUsage.addSize(files[i].length());
-                    }
-
-                    // Partial notification
-                    if (c % 5 == 0) {
-                        //If a listener is defined, then send the partial result
-                        if (getAsyncResultListener() != null) {
-                            getAsyncResultListener().onPartialResult(this.mFolderUsage);
-                        }
-                    }
-
-                    // Check if the process was cancelled
-                    try {
-                        synchronized (this.mSync) {
-                            if (this.mCancelled  || this.mEnded) {
-                                this.mSync.notify();
-                                break;
-                            }
-                        }
-                    } catch (Exception e) {/**NON BLOCK**/}
-                }
+    File[] computeDirectory(File dir) {
+        FolderSizeCache.Entry entry = this.mCache.scan(dir);
+        if (entry == null) {
+            return null;
+        }
+        AtomicLongArray counters = this.mWorkerCounters.get();
+        String[] dirs = entry.getDirectories();
+        counters.lazySet(FOLDERS, counters.get(FOLDERS) + dirs.length);
+        counters.lazySet(FILES, counters.get(FILES) + entry.getNumberOfFiles());
+        counters.lazySet(SIZE, counters.get(SIZE) + entry.getSize());
+        for (int i = 0; i < CATEGORY_VALUES.length; i++) {
+            int pos = CATEGORIES + i;
+            counters.lazySet(pos, counters.get(pos) + entry.getNumberOfFiles(CATEGORY_VALUES[i]));
+        }
+        reportIfNeeded();
+
+        File[] files = new File[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            files[i] = new File(dir, dirs[i]);
+        }
+        return files;
+    }
+
+    /**
+     * Method that reports a partial result if the last one is old enough. Only one
+     * worker reports at a time, the rest continue the walk.
+     */
+    private void reportIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - this.mLastReport < PARTIAL_RESULT_INTERVAL) {
+            return;
+        }
+        synchronized (this.mReportSync) {
+            if (now - this.mLastReport < PARTIAL_RESULT_INTERVAL) {
+                return;
             }
-        } finally {
-            //If a listener is defined, then send the partial result
-            if (getAsyncResultListener() != null) {
-                getAsyncResultListener().onPartialResult(this.mFolderUsage);
+            this.mLastReport = now;
+            report();
+        }
+    }
+
+    /**
+     * Method that sums the counters of the workers and reports them. Must be invoked with
+     * the report lock held, so the listener receives the results one by one.
+     */
+    private void report() {
+        long folders = 0;
+        long files = 0;
+        long size = 0;
+        long[] categories = new long[CATEGORY_VALUES.length];
+        for (AtomicLongArray counters : this.mCounters) {
+            folders += counters.get(FOLDERS);
+            files += counters.get(FILES);
+            size += counters.get(SIZE);
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] += counters.get(CATEGORIES + i);
             }
         }
+
+        // A new object, so the listener can read it while the walk continues
+        FolderUsage usage = new FolderUsage(this.mDirectory);
+        usage.setNumberOfFolders((int)folders);
+        usage.setNumberOfFiles((int)files);
+        usage.setTotalSize(size);
+        for (int i = 0; i < categories.length; i++) {
+            usage.setStatisticsForCategory(CATEGORY_VALUES[i], categories[i]);
+        }
+        this.mFolderUsage = usage;
+
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(usage);
+        }
     }
 
     /**
@@ -199,12 +308,13 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
     public boolean cancel() {
         try {
             synchronized (this.mSync) {
-                if (this.mEnded || this.mCancelled) {
-                    this.mCancelled = true;
-                    return true;
-                }
                 this.mCancelled = true;
-                this.mSync.wait(5000L);
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
             }
         } catch (Exception e) {/**NON BLOCK**/}
         return true;
@@ -218,7 +328,12 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
         try {
             synchronized (this.mSync) {
                 this.mEnded = true;
-                this.mSync.wait(5000L);
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
             }
         } catch (Exception e) {/**NON BLOCK**/}
         return true;
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.FindExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FileNameIndex;
+import com.cyanogenmod.filemanager.util.QueryMatcher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A class for search files using the {@link FileNameIndex}.<br/>
+ * <br/>
+ * The directories of the index are revalidated by their modification time before
+ * returning their entries. The entries of the modified directories are read live, and
+ * the new subdirectories (not present in the index) are searched with {@link FindCommand}.
+ * When the search finds modified directories, a refresh of the index is requested.
+ */
+public class IndexedFindCommand extends Program implements FindExecutable {
+
+    private static final String TAG = "IndexedFindCommand"; //$NON-NLS-1$
+
+    // The number of results reported at once
+    private static final int RESULTS_BATCH = 50;
+
+    private static final byte DIR_OUT_OF_SCOPE = 0;
+    private static final byte DIR_VALID = 1;
+    private static final byte DIR_MODIFIED = 2;
+    private static final byte DIR_DELETED = 3;
+
+    private final FileNameIndex mIndex;
+    private final String mDirectory;
+    private final Query mQuery;
+    private final QueryMatcher mMatcher;
+    private final AsyncResultListener mAsyncResultListener;
+
+    private List<FileSystemObject> mBatch;
+    private FindCommand mLiveFind;
+
+    private boolean mCancelled;
+    private boolean mEnded;
+    private boolean mFinished;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>IndexedFindCommand</code>.
+     *
+     * @param index The filename index
+     * @param directory The absolute directory where start the search
+     * @param query The terms to be searched
+     * @param asyncResultListener The partial result listener
+     */
+    public IndexedFindCommand(FileNameIndex index, String directory, Query query,
+            AsyncResultListener asyncResultListener) {
+        super();
+        this.mIndex = index;
+        this.mDirectory = directory;
+        this.mQuery = query;
+        this.mMatcher = QueryMatcher.compile(query);
+        this.mAsyncResultListener = asyncResultListener;
+        this.mBatch = new ArrayList<FileSystemObject>(RESULTS_BATCH);
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Finding in index %s the query %s", //$NON-NLS-1$
+                            this.mDirectory, this.mQuery.getTerms()));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        FileNameIndex.Snapshot snapshot = this.mIndex.getSnapshot();
+        int root = snapshot != null ? snapshot.getDirectory(this.mDirectory) : -1;
+        if (root == -1) {
+            // Not indexed. Search live
+            findLive(this.mDirectory);
+        } else {
+            findInIndex(snapshot);
+        }
+        flush();
+        synchronized (this.mSync) {
+            this.mFinished = true;
+            this.mSync.notifyAll();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that search the files in the index.
+     *
+     * @param snapshot The index
+     */
+    private void findInIndex(FileNameIndex.Snapshot snapshot) {
+        // Revalidate the directories of the subtree
+        String prefix = this.mDirectory.endsWith(File.separator)
+                ? this.mDirectory
+                : this.mDirectory + File.separator;
+        int dirs = snapshot.getDirectoryCount();
+        byte[] state = new byte[dirs];
+        List<String> modified = new ArrayList<String>();
+        for (int i = 0; i < dirs; i++) {
+            String path = snapshot.getDirectoryPath(i);
+            if (!path.equals(this.mDirectory) && !path.startsWith(prefix)) {
+                continue;
+            }
+            long lastModified = new File(path).lastModified();
+            if (lastModified == 0) {
+                state[i] = DIR_DELETED;
+            } else if (lastModified != snapshot.getDirectoryModified(i)) {
+                // Changed, or modified just before it was indexed
+                state[i] = DIR_MODIFIED;
+                modified.add(path);
+            } else {
+                state[i] = DIR_VALID;
+            }
+            if (isInterrupted()) {
+                return;
+            }
+        }
+
+        // The entries of the valid directories
+        BitSet candidates = snapshot.getCandidates(this.mQuery);
+        for (int e = candidates.nextSetBit(0); e >= 0; e = candidates.nextSetBit(e + 1)) {
+            int dir = snapshot.getEntryDirectory(e);
+            if (state[dir] != DIR_VALID) {
+                continue;
+            }
+            CharSequence name = snapshot.getEntryName(e);
+            if (this.mMatcher.matches(name)) {
+                report(new File(snapshot.getDirectoryPath(dir), name.toString()));
+            }
+            if (isInterrupted()) {
+                return;
+            }
+        }
+
+        // The modified directories are read live
+        int cc = modified.size();
+        for (int i = 0; i < cc; i++) {
+            File[] files = new File(modified.get(i)).listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (int j = 0; j < files.length; j++) {
+                if (this.mMatcher.matches(files[j].getName())) {
+                    report(files[j]);
+                }
+                if (files[j].isDirectory()
+                        && snapshot.getDirectory(files[j].getAbsolutePath()) == -1) {
+                    // A new directory. The index knows nothing about it
+                    findLive(files[j].getAbsolutePath());
+                }
+                if (isInterrupted()) {
+                    return;
+                }
+            }
+        }
+        if (!modified.isEmpty()) {
+            this.mIndex.refresh();
+        }
+    }
+
+    /**
+     * Method that search a subtree with the live {@link FindCommand}.
+     *
+     * @param directory The directory where to start the search
+     */
+    private void findLive(String directory) {
+        FindCommand find = new FindCommand(directory, this.mQuery, new AsyncResultListener() {
+            @Override
+            public void onAsyncStart() {/**NON BLOCK**/}
+            @Override
+            public void onAsyncEnd(boolean cancelled) {/**NON BLOCK**/}
+            @Override
+            public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+            @Override
+            public void onException(Exception cause) {/**NON BLOCK**/}
+            @Override
+            public void onPartialResult(Object result) {
+                if (IndexedFindCommand.this.mAsyncResultListener != null) {
+                    IndexedFindCommand.this.mAsyncResultListener.onPartialResult(result);
+                }
+            }
+        });
+        find.setTrace(isTrace());
+        synchronized (this.mSync) {
+            if (this.mCancelled || this.mEnded) {
+                return;
+            }
+            this.mLiveFind = find;
+        }
+        flush();
+        try {
+            find.execute();
+        } catch (Exception ex) {
+            Log.w(TAG, "Live search failed in " + directory, ex); //$NON-NLS-1$
+        } finally {
+            synchronized (this.mSync) {
+                this.mLiveFind = null;
+            }
+        }
+    }
+
+    /**
+     * Method that reports a result (in batches).
+     *
+     * @param file The file found
+     */
+    private void report(File file) {
+        FileSystemObject fso = FileHelper.createFileSystemObject(file);
+        if (fso == null) {
+            return;
+        }
+        if (isTrace()) {
+            Log.v(TAG, String.valueOf(fso));
+        }
+        this.mBatch.add(fso);
+        if (this.mBatch.size() >= RESULTS_BATCH) {
+            flush();
+        }
+    }
+
+    /**
+     * Method that reports the pending results.
+     */
+    private void flush() {
+        if (this.mBatch.isEmpty()) {
+            return;
+        }
+        List<FileSystemObject> batch = this.mBatch;
+        this.mBatch = new ArrayList<FileSystemObject>(RESULTS_BATCH);
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onPartialResult(batch);
+        }
+    }
+
+    /**
+     * Method that checks if the process was cancelled or ended.
+     *
+     * @return boolean If the search must stop
+     */
+    private boolean isInterrupted() {
+        synchronized (this.mSync) {
+            if (this.mCancelled || this.mEnded) {
+                this.mSync.notify();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        FindCommand find;
+        synchronized (this.mSync) {
+            this.mCancelled = true;
+            find = this.mLiveFind;
+        }
+        if (find != null) {
+            find.cancel();
+        }
+        try {
+            synchronized (this.mSync) {
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        FindCommand find;
+        synchronized (this.mSync) {
+            this.mEnded = true;
+            find = this.mLiveFind;
+        }
+        if (find != null) {
+            find.end();
+        }
+        try {
+            synchronized (this.mSync) {
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -17,17 +17,21 @@
 package com.cyanogenmod.filemanager.commands.java;
 
 import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.AsyncCopyExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncMoveExecutable;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.commands.CompressExecutable;
+import com.cyanogenmod.filemanager.commands.ContentSearchExecutable;
 import com.cyanogenmod.filemanager.commands.CopyExecutable;
 import com.cyanogenmod.filemanager.commands.CreateDirExecutable;
 import com.cyanogenmod.filemanager.commands.CreateFileExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteDirExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteFileExecutable;
 import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
 import com.cyanogenmod.filemanager.commands.EchoExecutable;
 import com.cyanogenmod.filemanager.commands.ExecExecutable;
 import com.cyanogenmod.filemanager.commands.ExecutableCreator;
@@ -48,16 +52,22 @@ import com.cyanogenmod.filemanager.commands.ReadExecutable;
 import com.cyanogenmod.filemanager.commands.ResolveLinkExecutable;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.commands.SendSignalExecutable;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
 import com.cyanogenmod.filemanager.commands.UncompressExecutable;
 import com.cyanogenmod.filemanager.commands.WriteExecutable;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.java.JavaConsole;
+import com.cyanogenmod.filemanager.model.ContentQuery;
 import com.cyanogenmod.filemanager.model.Group;
 import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.model.Permissions;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.preferences.CompressionMode;
+import com.cyanogenmod.filemanager.util.CopyJournal;
+import com.cyanogenmod.filemanager.util.FolderSizeCache;
+
+import java.io.File;
 
 /**
  * A class for create shell {@link "Executable"} objects.
@@ -103,6 +113,17 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new CopyCommand(src, dst);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncCopyExecutable createAsyncCopyExecutable(
+            String src, String dst, boolean resume, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        File journal = CopyJournal.getJournalFile(this.mConsole.getCtx(), src, dst);
+        return new AsyncCopyCommand(src, dst, asyncResultListener, journal, resume);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -185,6 +206,16 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new FindCommand(directory, query, asyncResultListener);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ContentSearchExecutable createContentSearchExecutable(
+            String directory, ContentQuery query, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new ContentSearchCommand(directory, query, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -192,7 +223,28 @@ public class JavaExecutableCreator implements ExecutableCreator {
     public FolderUsageExecutable createFolderUsageExecutable(
             String directory, AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        return new FolderUsageCommand(directory, asyncResultListener);
+        return new FolderUsageCommand(directory, asyncResultListener,
+                FolderSizeCache.getInstance(this.mConsole.getCtx()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StorageAnalysisExecutable createStorageAnalysisExecutable(
+            String directory, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new StorageAnalysisCommand(directory, asyncResultListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DuplicatesExecutable createDuplicatesExecutable(
+            String[] directories, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new DuplicatesCommand(directories, asyncResultListener);
     }
 
     /**
@@ -267,6 +319,16 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new MoveCommand(src, dst);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncMoveExecutable createAsyncMoveExecutable(
+            String src, String dst, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new AsyncMoveCommand(src, dst, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -79,34 +79,22 @@ public class MoveCommand extends Program implements MoveExecutable {
             throw new NoSuchFileOrDirectory(this.mSrc);
         }
 
-        //Move or copy recursively
-        if (d.exists()) {
-            if (!FileHelper.copyRecursive(s, d, getBufferSize())) {
+        // Rename if the source and the destination are in the same mount point.
+        // Otherwise, copy every file and delete its source
+        if (!FileHelper.renameRecursive(s, d)) {
+            boolean moved;
+            try {
+                moved = FileHelper.moveRecursive(s, d, getBufferSize(), null);
+            } catch (InterruptedException e) {
+                // Without a listener the move can't be cancelled
+                moved = false;
+            }
+            if (!moved) {
                 if (isTrace()) {
                     Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
                 }
                 throw new InsufficientPermissionsException();
             }
-            if (!FileHelper.deleteFolder(s)) {
-                if (isTrace()) {
-                    Log.v(TAG, "Result: OK. WARNING. Source not deleted."); //$NON-NLS-1$
-                }
-            }
-        } else {
-            // Move between filesystem is not allow. If rename fails then use copy operation
-            if (!s.renameTo(d)) {
-                if (!FileHelper.copyRecursive(s, d, getBufferSize())) {
-                    if (isTrace()) {
-                        Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
-                    }
-                    throw new InsufficientPermissionsException();
-                }
-                if (!FileHelper.deleteFolder(s)) {
-                    if (isTrace()) {
-                        Log.v(TAG, "Result: OK. WARNING. Source not deleted."); //$NON-NLS-1$
-                    }
-                }
-            }
         }
 
         if (isTrace()) {
@@ -0,0 +1,452 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class for analyze the storage used by a folder.<br/>
+ * <br/>
+ * The tree is walked in parallel by a {@link DirectoryWalker}, and every worker adds the
+ * files to its own {@link StorageAnalyzer.Accumulator}. The size of a folder is known when
+ * its listing and the trees of all its subfolders are complete; then it's added to its
+ * parent, and it's forgotten. So only the folders being walked are in memory, not the
+ * whole tree. The symbolic links to folders are not followed.
+ */
+public class StorageAnalysisCommand extends Program implements StorageAnalysisExecutable {
+
+    private static final String TAG = "StorageAnalysis"; //$NON-NLS-1$
+
+    // The min time between partial results (every result merges the accumulators)
+    private static final long PARTIAL_RESULT_INTERVAL = 250L;
+
+    /**
+     * A folder of the walk, with the size of its tree walked so far.
+     */
+    static final class Folder extends File {
+        private static final long serialVersionUID = 5403124387810163247L;
+
+        final Folder mParent;
+        final String mCanonical;
+        final int mDepth;
+        final AtomicLong mSize = new AtomicLong();
+        final AtomicLong mFiles = new AtomicLong();
+        // The listing of the folder plus the subfolders not completed yet
+        final AtomicInteger mPending = new AtomicInteger(1);
+
+        Folder(Folder parent, String path, String canonical) {
+            super(path);
+            this.mParent = parent;
+            this.mCanonical = canonical;
+            this.mDepth = parent == null ? 0 : parent.mDepth + 1;
+        }
+    }
+
+    private final String mDirectory;
+    private final AsyncResultListener mAsyncResultListener;
+    private final int mParallelism;
+    private final StorageAnalyzer mAnalyzer;
+    private volatile StorageAnalysis mStorageAnalysis;
+
+    private final ThreadLocal<StorageAnalyzer.Accumulator> mAccumulator =
+            new ThreadLocal<StorageAnalyzer.Accumulator>() {
+        @Override
+        protected StorageAnalyzer.Accumulator initialValue() {
+            return StorageAnalysisCommand.this.mAnalyzer.newAccumulator();
+        }
+    };
+    // The folders being walked
+    private final Set<Folder> mLive;
+    private long mLastReport;
+    private final Object mReportSync = new Object();
+
+    private DirectoryWalker mWalker;
+    private boolean mCancelled;
+    private boolean mEnded;
+    private boolean mFinished;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>StorageAnalysisCommand</code>.
+     *
+     * @param directory The absolute directory to analyze
+     * @param asyncResultListener The partial result listener
+     */
+    public StorageAnalysisCommand(String directory, AsyncResultListener asyncResultListener) {
+        this(directory, asyncResultListener,
+                StorageAnalyzer.DEFAULT_TOP_SIZE, DirectoryWalker.getDefaultParallelism());
+    }
+
+    /**
+     * Constructor of <code>StorageAnalysisCommand</code>.
+     *
+     * @param directory The absolute directory to analyze
+     * @param asyncResultListener The partial result listener
+     * @param topSize The number of largest files and folders
+     * @param parallelism The number of workers that walk the tree
+     */
+    public StorageAnalysisCommand(
+            String directory, AsyncResultListener asyncResultListener,
+            int topSize, int parallelism) {
+        super();
+        this.mDirectory = directory;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mParallelism = parallelism;
+        this.mAnalyzer = new StorageAnalyzer(directory, topSize);
+        this.mStorageAnalysis = this.mAnalyzer.getAnalysis();
+        this.mLive = Collections.newSetFromMap(new ConcurrentHashMap<Folder, Boolean>());
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StorageAnalysis getStorageAnalysis() {
+        return this.mStorageAnalysis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Analyzing the storage of folder %s", //$NON-NLS-1$
+                            this.mDirectory));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        File f = new File(this.mDirectory);
+        if (!f.exists()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(new NoSuchFileOrDirectory(this.mDirectory));
+            }
+        }
+        if (!f.isDirectory()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(
+                        new ExecutionException("path exists but it's not a folder")); //$NON-NLS-1$
+            }
+        }
+
+        String canonical;
+        try {
+            canonical = f.getCanonicalPath();
+        } catch (IOException ex) {
+            canonical = f.getAbsolutePath();
+        }
+        Folder root = new Folder(null, f.getAbsolutePath(), canonical);
+        this.mLive.add(root);
+
+        // Analyze in parallel
+        DirectoryWalker walker = new DirectoryWalker(new DirectoryWalker.ListingVisitor() {
+            @Override
+            public File[] list(File dir) {
+                return analyzeFolder((Folder)dir);
+            }
+            @Override
+            public boolean onEntry(File file) {
+                // Only the subfolders are listed
+                return true;
+            }
+        }, this.mParallelism);
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+        this.mLastReport = System.currentTimeMillis();
+        walker.walk(root);
+        if (!walker.isCancelled()) {
+            completeSkippedFolders();
+        }
+
+        // The final result
+        synchronized (this.mReportSync) {
+            report();
+        }
+        synchronized (this.mSync) {
+            this.mFinished = true;
+            this.mSync.notifyAll();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that adds the files of a folder to the accumulator of the current worker.
+     *
+     * @param folder The folder
+     * @return File[] The subfolders to walk, or null if the folder can't be listed
+     */
+    File[] analyzeFolder(Folder folder) {
+        StorageAnalyzer.Accumulator accumulator = this.mAccumulator.get();
+        File[] files = folder.listFiles();
+        if (files == null) {
+            complete(folder, accumulator);
+            return null;
+        }
+
+        String path = folder.getPath();
+        String prefix = folder.mCanonical.endsWith(File.separator)
+                ? folder.mCanonical
+                : folder.mCanonical + File.separator;
+        List<File> subfolders = new ArrayList<File>();
+        long size = 0;
+        long count = 0;
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            String name = file.getName();
+            if (file.isDirectory()) {
+                // Don't follow the links to folders
+                String canonical;
+                try {
+                    canonical = file.getCanonicalPath();
+                } catch (IOException ex) {
+                    continue;
+                }
+                if (!canonical.equals(prefix + name)) {
+                    continue;
+                }
+                Folder subfolder = new Folder(folder, file.getPath(), canonical);
+                folder.mPending.incrementAndGet();
+                this.mLive.add(subfolder);
+                subfolders.add(subfolder);
+            } else {
+                long length = file.length();
+                accumulator.addFile(path, name, length);
+                size += length;
+                count++;
+            }
+        }
+        folder.mSize.addAndGet(size);
+        folder.mFiles.addAndGet(count);
+        complete(folder, accumulator);
+        reportIfNeeded();
+        return subfolders.toArray(new File[subfolders.size()]);
+    }
+
+    /**
+     * Method that marks as done a pending part of a folder (its listing or one of its
+     * subfolders). When no parts are pending, the folder is added to the analysis and to
+     * its parent, and so on up the tree.
+     *
+     * @param folder The folder
+     * @param accumulator The accumulator of the current worker
+     */
+    private void complete(Folder folder, StorageAnalyzer.Accumulator accumulator) {
+        Folder f = folder;
+        while (f != null && f.mPending.decrementAndGet() == 0) {
+            this.mLive.remove(f);
+            Folder parent = f.mParent;
+            if (parent != null) {
+                // The analyzed folder itself isn't part of the results
+                long size = f.mSize.get();
+                long files = f.mFiles.get();
+                accumulator.addFolder(f.getPath(), size, files);
+                parent.mSize.addAndGet(size);
+                parent.mFiles.addAndGet(files);
+            }
+            f = parent;
+        }
+    }
+
+    /**
+     * Method that completes the folders that the walker didn't list (it couldn't resolve
+     * their paths), deepest first, so their parents get the size walked so far.
+     */
+    private void completeSkippedFolders() {
+        if (this.mLive.isEmpty()) {
+            return;
+        }
+        List<Folder> skipped = new ArrayList<Folder>(this.mLive);
+        Collections.sort(skipped, new Comparator<Folder>() {
+            @Override
+            public int compare(Folder lhs, Folder rhs) {
+                return rhs.mDepth - lhs.mDepth;
+            }
+        });
+        StorageAnalyzer.Accumulator accumulator = this.mAccumulator.get();
+        for (Folder folder : skipped) {
+            if (this.mLive.contains(folder)) {
+                folder.mPending.set(1);
+                complete(folder, accumulator);
+            }
+        }
+    }
+
+    /**
+     * Method that reports a partial result if the last one is old enough. Only one
+     * worker reports at a time, the rest continue the walk.
+     */
+    private void reportIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - this.mLastReport < PARTIAL_RESULT_INTERVAL) {
+            return;
+        }
+        synchronized (this.mReportSync) {
+            if (now - this.mLastReport < PARTIAL_RESULT_INTERVAL) {
+                return;
+            }
+            this.mLastReport = now;
+            report();
+        }
+    }
+
+    /**
+     * Method that merges the accumulators and reports the analysis. Must be invoked with
+     * the report lock held, so the listener receives the results one by one.
+     */
+    private void report() {
+        StorageAnalysis analysis = this.mAnalyzer.getAnalysis();
+        this.mStorageAnalysis = analysis;
+
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(analysis);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                this.mCancelled = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (!this.mFinished) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncCopyExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.CopyProgress;
+import com.cyanogenmod.filemanager.util.CopyProgressMeter;
+
+import java.io.File;
+
+/**
+ * A class for copy a file or directory, reporting the progress of the copy.<br/>
+ * <br/>
+ * The command prints the number of files and bytes to copy (<code>T files bytes</code>),
+ * and then copies the files one by one, printing the size and destination of every file
+ * before the copy (<code>S size path</code>) and a mark after it (<code>E</code>). The
+ * records end with a NUL, as the names of the files could have new lines. If the
+ * command is cancelled, the file that was being copied is deleted.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?cp"}
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?find"}
+ */
+public class AsyncCopyCommand extends AsyncResultProgram implements AsyncCopyExecutable {
+
+    private static final String TAG = "AsyncCopyCommand"; //$NON-NLS-1$
+
+    private static final String ID = "cpprogress";  //$NON-NLS-1$
+
+    // The end of the records of the output
+    private static final char RECORD_END = '\0';
+
+    private Boolean mResult;
+    private CopyProgressMeter mMeter;
+    private CopyProgress mProgress;
+    private String mCurrentFile;
+    private long mCurrentSize;
+    private String mPartial;
+
+    /**
+     * Constructor of <code>AsyncCopyCommand</code>.
+     *
+     * @param src The name of the file or directory to be copied
+     * @param dst The name of the file or directory in which copy the source file or directory
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public AsyncCopyCommand(String src, String dst, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        this(ID, src, dst, asyncResultListener);
+    }
+
+    /**
+     * Constructor of <code>AsyncCopyCommand</code>.
+     *
+     * @param id The resource identifier of the command
+     * @param src The name of the file or directory to be copied
+     * @param dst The name of the file or directory in which copy the source file or directory
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    AsyncCopyCommand(
+            String id, String src, String dst, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        // The destination paths are built by replacing the source prefix, so the
+        // source can't end with a separator
+        super(id, asyncResultListener, removeTrailingSeparator(src), dst);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mResult = Boolean.FALSE;
+        this.mMeter = new CopyProgressMeter(System.currentTimeMillis());
+        this.mProgress = null;
+        this.mCurrentFile = null;
+        this.mCurrentSize = 0;
+        this.mPartial = ""; //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        // Parse the last record
+        if (this.mPartial != null && this.mPartial.length() > 0) {
+            parseLine(this.mPartial);
+        }
+        this.mPartial = ""; //$NON-NLS-1$
+
+        // Don't leave a partial file
+        if (cancelled && this.mCurrentFile != null) {
+            File partial = new File(this.mCurrentFile);
+            if (partial.isFile() && !partial.delete()) {
+                Log.w(TAG,
+                        String.format(
+                                "Failed to delete partial file %s", //$NON-NLS-1$
+                                this.mCurrentFile));
+            }
+        }
+        report(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+        if (partialIn == null || partialIn.length() ==0) return;
+
+        // Parse all the complete records (the pending data is the start of the first)
+        String data = this.mPartial + partialIn;
+        int pos = 0;
+        int end = data.indexOf(RECORD_END);
+        while (end != -1) {
+            parseLine(data.substring(pos, end));
+            pos = end + 1;
+            end = data.indexOf(RECORD_END, pos);
+        }
+
+        // Save the partial for next calls
+        this.mPartial = data.substring(pos);
+        report(false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * Method that parses a record of the output of the command.
+     *
+     * @param line The record to parse
+     */
+    private void parseLine(String line) {
+        try {
+            if (line.startsWith("T ")) { //$NON-NLS-1$
+                // T files bytes
+                String[] totals = line.substring(2).trim().split(" "); //$NON-NLS-1$
+                this.mMeter.setTotals(
+                        Long.parseLong(totals[0]), Long.parseLong(totals[1]));
+
+            } else if (line.startsWith("S ")) { //$NON-NLS-1$
+                // S size path
+                int pos = line.indexOf(' ', 2);
+                this.mCurrentSize = Long.parseLong(line.substring(2, pos));
+                this.mCurrentFile = line.substring(pos + 1);
+                this.mMeter.onFileStarted(this.mCurrentFile);
+
+            } else if (line.equals("E")) { //$NON-NLS-1$
+                this.mMeter.onBytesCopied(this.mCurrentSize);
+                this.mMeter.onFileCopied();
+                this.mCurrentFile = null;
+                this.mCurrentSize = 0;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, String.format("Failed to parse line: %s", line), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that reports the current progress, if the last report is old enough.
+     *
+     * @param force Report the progress even if the last report is recent
+     */
+    private void report(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!this.mMeter.isReportNeeded(now) && !force) {
+            return;
+        }
+        this.mProgress = this.mMeter.getProgress(now);
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(this.mProgress);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CopyProgress getProgress() {
+        return this.mProgress;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode != 0 && exitCode != 143 && exitCode != 137) {
+            throw new ExecutionException(
+                        "exitcode != 0 && != 143 && != 137"); //$NON-NLS-1$
+        }
+
+        // Correct
+        this.mResult = Boolean.valueOf(exitCode == 0);
+    }
+
+    /**
+     * Method that removes the trailing separator of a path.
+     *
+     * @param path The path
+     * @return String The path without the trailing separator
+     */
+    private static String removeTrailingSeparator(String path) {
+        if (path.length() > 1 && path.endsWith(File.separator)) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+}
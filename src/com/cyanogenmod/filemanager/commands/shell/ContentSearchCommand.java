@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ContentSearchExecutable;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.ContentQuery;
+import com.cyanogenmod.filemanager.util.ContentMatcher;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for search in the content of the files.<br/>
+ * <br/>
+ * The regular files of the tree are passed to <code>grep</code> in batches
+ * (<code>find -print0</code> piped to <code>xargs -0</code>), which stops reading a file
+ * after the max number of matches of the query. <code>grep</code> doesn't report the
+ * byte offset of the matches, so the offset of the results is unknown (-1).
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?grep"}
+ */
+public class ContentSearchCommand extends AsyncResultProgram implements ContentSearchExecutable {
+
+    private static final String TAG = "ContentSearchCommand"; //$NON-NLS-1$
+
+    private static final String ID = "contentsearch";  //$NON-NLS-1$
+
+    // The max length of the text of a match
+    private static final int MAX_TEXT_LENGTH = 256;
+
+    private final String mDirectory;
+    private final ContentQuery mQuery;
+    private final ContentMatcher mMatcher;
+
+    // The last file of the output, and if it's accepted by the categories of the query
+    private String mLastPath;
+    private boolean mLastAccepted;
+
+    /**
+     * Constructor of <code>ContentSearchCommand</code>.
+     *
+     * @param directory The absolute path of the directory where do the search
+     * @param query The terms and the filters of the search
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public ContentSearchCommand(
+            String directory, ContentQuery query, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID, asyncResultListener,
+                FileHelper.addTrailingSlash(directory),
+                String.valueOf(query.getMaxSize() + 1),
+                String.valueOf(query.getMaxMatchesPerFile()));
+        this.mDirectory = FileHelper.addTrailingSlash(directory);
+        this.mQuery = query;
+        this.mMatcher = ContentMatcher.compile(query);
+        addExpandedArguments(createGrepArgs(query), true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mLastPath = null;
+        this.mLastAccepted = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        this.mLastPath = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+
+        // Check the in buffer to extract information. Only complete lines are received
+        final List<ContentMatch> partialMatches = new ArrayList<ContentMatch>();
+        int pos = 0;
+        final int len = partialIn.length();
+        while (pos < len) {
+            int eol = partialIn.indexOf(FileHelper.NEWLINE, pos);
+            if (eol == -1) {
+                eol = len;
+            }
+            String line = partialIn.substring(pos, eol);
+            pos = eol + 1;
+
+            ContentMatch match = parseLine(line);
+            if (match != null) {
+                partialMatches.add(match);
+            } else if (line.length() > 0 && isTrace()) {
+                Log.w(TAG,
+                    String.format(
+                            "Failed to parse output: %s", //$NON-NLS-1$
+                            line));
+            }
+        }
+
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null && !partialMatches.isEmpty()) {
+            getAsyncResultListener().onPartialResult(partialMatches);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIgnoreShellStdErrCheck() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+
+        //No matches, or a file without permissions, returns 1, but this
+        //not must be treated as an error
+        //Ignore exit code 123 (xargs, a grep returned 1)
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode != 0 && exitCode != 1 && exitCode != 123
+                && exitCode != 143 && exitCode != 137) {
+            throw new ExecutionException(
+                        "exitcode != 0 && != 1 && != 123 && != 143 && != 137"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that parses a line of the output of <code>grep</code>
+     * (<code>path:line:text</code>).
+     *
+     * @param line The line
+     * @return ContentMatch The match, or null if the line isn't a match or its file isn't
+     * accepted by the query
+     */
+    private ContentMatch parseLine(String line) {
+        if (!line.startsWith(this.mDirectory)) {
+            return null;
+        }
+
+        // The path ends at a ":<digits>:" after the directory. The name of the file could
+        // have one too, so prefer the first one that ends at an existing file (the app
+        // can't check the files of the privileged paths)
+        int sep = -1;
+        int end = -1;
+        int candidate = line.indexOf(':', this.mDirectory.length());
+        while (candidate != -1) {
+            int candidateEnd = getLineNumberEnd(line, candidate);
+            if (candidateEnd != -1) {
+                if (sep == -1) {
+                    sep = candidate;
+                    end = candidateEnd;
+                }
+                if (new File(line.substring(0, candidate)).isFile()) {
+                    sep = candidate;
+                    end = candidateEnd;
+                    break;
+                }
+            }
+            candidate = line.indexOf(':', candidate + 1);
+        }
+        if (sep == -1) {
+            return null;
+        }
+
+        String path = line.substring(0, sep);
+        if (!isAccepted(path)) {
+            return null;
+        }
+        int lineNumber;
+        try {
+            lineNumber = Integer.parseInt(line.substring(sep + 1, end));
+        } catch (NumberFormatException nfEx) {
+            return null;
+        }
+        String text = line.substring(end + 1);
+        int[] column = new int[1];
+        int term = this.mMatcher.matchLine(text, column);
+        if (term == -1) {
+            // grep folds the case of non ASCII letters too
+            term = 0;
+            column[0] = -1;
+        }
+        if (text.length() > MAX_TEXT_LENGTH) {
+            int start = Math.max(0, column[0] - (MAX_TEXT_LENGTH / 2));
+            text = text.substring(start,
+                    Math.min(text.length(), start + MAX_TEXT_LENGTH));
+            column[0] = column[0] == -1 ? -1 : column[0] - start;
+        }
+        return new ContentMatch(path, term, lineNumber, column[0], -1, text.trim());
+    }
+
+    /**
+     * Method that returns the end of the line number that follows a separator.
+     *
+     * @param line The line of the output
+     * @param sep The position of the separator
+     * @return int The position of the ':' after the digits, or -1 if the separator isn't
+     * followed by <code>&lt;digits&gt;:</code>
+     */
+    private static int getLineNumberEnd(String line, int sep) {
+        int end = sep + 1;
+        while (end < line.length() && Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+        if (end > sep + 1 && end < line.length() && line.charAt(end) == ':') {
+            return end;
+        }
+        return -1;
+    }
+
+    /**
+     * Method that returns if a file is accepted by the mime/type categories of the query.
+     *
+     * @param path The absolute path of the file
+     * @return boolean If the file is accepted
+     */
+    private boolean isAccepted(String path) {
+        if (!this.mQuery.hasCategories()) {
+            return true;
+        }
+        // The matches of a file are consecutive
+        if (!path.equals(this.mLastPath)) {
+            this.mLastPath = path;
+            this.mLastAccepted = this.mQuery.acceptsCategory(
+                    MimeTypeHelper.getCategory(null, new File(path)));
+        }
+        return this.mLastAccepted;
+    }
+
+    /**
+     * Method that creates the arguments of <code>grep</code> from the query.
+     *
+     * @param query The query
+     * @return String[] The arguments of <code>grep</code>
+     */
+    private static String[] createGrepArgs(ContentQuery query) {
+        List<String> args = new ArrayList<String>();
+        if (query.isIgnoreCase()) {
+            args.add("-i"); //$NON-NLS-1$
+        }
+        args.add(query.isRegExp() ? "-E" : "-F"); //$NON-NLS-1$ //$NON-NLS-2$
+        List<String> terms = query.getTerms();
+        int cc = terms.size();
+        for (int i = 0; i < cc; i++) {
+            args.add("-e"); //$NON-NLS-1$
+            args.add(terms.get(i));
+        }
+        return args.toArray(new String[args.size()]);
+    }
+}
@@ -30,14 +30,19 @@ import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.ParseHelper;
 import com.cyanogenmod.filemanager.util.SearchHelper;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
- * A class for search files.
+ * A class for search files.<br/>
+ * <br/>
+ * The matched files are passed to <code>stat</code> in batches (<code>find -print0</code>
+ * piped to <code>xargs -0</code>) instead of forking a <code>stat</code> process per file,
+ * and its terse output is parsed as it arrives. A file name can contain new lines, so a
+ * line that isn't a complete terse record is joined with the next one.
  *
  * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?find"}
  */
@@ -47,7 +52,15 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
 
     private static final String ID = "find";  //$NON-NLS-1$
 
+    // The number of fields of a terse stat record after the file name
+    private static final int TERSE_STAT_FIELDS = 14;
+
+    // The max length of an incomplete record (a file name can't be longer than PATH_MAX)
+    private static final int MAX_RECORD_LENGTH = 4096 + 256;
+
     private final File mDirectory;
+    private final StringBuilder mRecord;
+    private final Set<String> mReported;
 
     /**
      * Constructor of <code>FindCommand</code>.
@@ -62,6 +75,8 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
             throws InvalidCommandDefinitionException {
         super(ID, asyncResultListener, createArgs(FileHelper.addTrailingSlash(directory), query));
         this.mDirectory = new File(directory);
+        this.mRecord = new StringBuilder();
+        this.mReported = new HashSet<String>();
     }
 
     /**
@@ -69,7 +84,8 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
      */
     @Override
     public void onStartParsePartialResult() {
-        //$NON-NLS-1$
+        this.mRecord.setLength(0);
+        this.mReported.clear();
     }
 
     /**
@@ -77,7 +93,14 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
      */
     @Override
     public void onEndParsePartialResult(boolean cancelled) {
-        //$NON-NLS-1$
+        if (this.mRecord.length() > 0 && isTrace()) {
+            Log.w(TAG,
+                    String.format(
+                            "Incomplete output: %s", //$NON-NLS-1$
+                            this.mRecord.toString()));
+        }
+        this.mRecord.setLength(0);
+        this.mReported.clear();
     }
 
     /**
@@ -86,58 +109,63 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
     @Override
     public void onParsePartialResult(final String partialIn) {
 
-        // Check the in buffer to extract information
+        // Check the in buffer to extract information. Only complete lines are received
         final List<FileSystemObject> partialFiles = new ArrayList<FileSystemObject>();
-        BufferedReader br = null;
-        try {
-            //Read the partial + previous partial and clean partial
-            br = new BufferedReader(new StringReader(partialIn));
-
-            //Add all lines to an array
-            String line = null;
-            while ((line = br.readLine()) != null) {
-                //Checks that there is some text in the line. Otherwise ignore it
-                if (line.trim().length() == 0) {
-                    break;
-                }
+        final String dir = this.mDirectory.getAbsolutePath();
+        int pos = 0;
+        final int len = partialIn.length();
+        while (pos < len) {
+            int eol = partialIn.indexOf(FileHelper.NEWLINE, pos);
+            if (eol == -1) {
+                eol = len;
+            }
+            String line = partialIn.substring(pos, eol);
+            pos = eol + 1;
 
-                // Add to the list
-                try {
-                    FileSystemObject fso = ParseHelper.parseStatOutput(line);
-
-                    // Search directory is not part of the search
-                    if (fso.getFullPath().compareTo(this.mDirectory.getAbsolutePath()) != 0) {
-                        partialFiles.add(fso);
-                    }
-
-                } catch (Exception e) {
-                    // Log the parsing error
-                    if (isTrace()) {
-                        Log.w(TAG,
-                            String.format(
-                                    "Failed to parse output: %s", //$NON-NLS-1$
-                                    String.valueOf(line)));
-                    }
+            // Join the line with the start of the record (a file name with new lines)
+            String record = line;
+            if (this.mRecord.length() > 0) {
+                record = this.mRecord.append(FileHelper.NEWLINE).append(line).toString();
+                this.mRecord.setLength(0);
+            }
+            if (!isTerseStatRecord(record)) {
+                if (record.length() > 0 && record.length() < MAX_RECORD_LENGTH) {
+                    this.mRecord.append(record);
+                } else if (record.length() > 0 && isTrace()) {
+                    Log.w(TAG,
+                        String.format(
+                                "Failed to parse output: %s", //$NON-NLS-1$
+                                record));
                 }
+                continue;
             }
 
-            //If a listener is defined, then send the partial result
-            if (getAsyncResultListener() != null) {
-                getAsyncResultListener().onPartialResult(partialFiles);
-            }
+            // Add to the list
+            try {
+                FileSystemObject fso = ParseHelper.parseStatOutput(record);
 
-        } catch (Exception ex) {
-            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+                // Search directory is not part of the search, and every file is
+                // reported only once
+                String path = fso.getFullPath();
+                if (path.compareTo(dir) != 0 && this.mReported.add(path)) {
+                    partialFiles.add(fso);
+                }
 
-        } finally {
-            try {
-                if (br != null) {
-                    br.close();
+            } catch (Exception e) {
+                // Log the parsing error
+                if (isTrace()) {
+                    Log.w(TAG,
+                        String.format(
+                                "Failed to parse output: %s", //$NON-NLS-1$
+                                record));
                 }
-            } catch (Throwable ex) {
-                /**NON BLOCK**/
             }
         }
+
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null && !partialFiles.isEmpty()) {
+            getAsyncResultListener().onPartialResult(partialFiles);
+        }
     }
 
     /**
@@ -171,12 +199,43 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
 
         //Search in a subdirectory without permissions returns 1, but this
         //not must be treated as an error
+        //Ignore exit code 123 (xargs, a file was deleted before stat it)
         //Ignore exit code 143 (cancelled)
         //Ignore exit code 137 (kill -9)
-        if (exitCode != 0 && exitCode != 1 && exitCode != 143 && exitCode != 137) {
+        if (exitCode != 0 && exitCode != 1 && exitCode != 123
+                && exitCode != 143 && exitCode != 137) {
             throw new ExecutionException(
-                        "exitcode != 0 && != 1 && != 143 && != 137"); //$NON-NLS-1$
+                        "exitcode != 0 && != 1 && != 123 && != 143 && != 137"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that returns if a line is a complete terse stat record (a file name followed
+     * by the numeric fields of the terse format).
+     *
+     * @param record The line
+     * @return boolean If the line is a complete terse stat record
+     */
+    private static boolean isTerseStatRecord(String record) {
+        int fields = 0;
+        int end = record.length();
+        for (int i = end - 1; i >= 0; i--) {
+            char c = record.charAt(i);
+            if (c == ' ') {
+                if (i == end - 1) {
+                    return false;
+                }
+                fields++;
+                if (fields == TERSE_STAT_FIELDS) {
+                    // There must be a file name before the fields
+                    return i > 0;
+                }
+                end = i;
+            } else if (Character.digit(c, 16) == -1) {
+                return false;
+            }
         }
+        return false;
     }
 
     /**
@@ -35,11 +35,6 @@ import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * A class for retrieve the disk usage of a folder
  *
@@ -90,130 +85,141 @@ public class FolderUsageCommand extends AsyncResultProgram implements FolderUsag
      */
     @Override
     public void onParsePartialResult(final String partialIn) {
-
-        // Check the in buffer to extract information
-        BufferedReader br = null;
         try {
-            // Parse the line. We expect a ls -l output line
-            // -rw-r--r-- root     root            7 2012-12-30 00:49 test.txt
-            //
-            // (1) permissions
-            // (2) number of links and directories
-            // (3) owner
-            // (4) group
-            // (5) size
-            // (6) date
-            // (7) name
+            // Only complete lines are received
+            parse(partialIn, this.mFolderUsage);
+        } catch (Exception ex) {
+            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
 
-            //Partial contains full lines
-            br = new BufferedReader(new StringReader(partialIn));
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(this.mFolderUsage);
+        }
+    }
 
-            //Add all lines to an array
-            List<String> lines = new ArrayList<String>();
-            String line = null;
-            while ((line = br.readLine()) != null) {
-                // Discard empty, paths, and folder links
-                if (line.length() == 0 ||
-                    line.startsWith(FileHelper.ROOT_DIRECTORY) ||
-                    line.startsWith(FileHelper.CURRENT_DIRECTORY) ||
-                    line.startsWith(FileHelper.PARENT_DIRECTORY)) {
-                    continue;
-                }
-                lines.add(line);
+    /**
+     * Method that adds to the usage the entries of a chunk of complete lines of a
+     * <code>ls -alR</code> output, in a single pass and without split the lines.<br/>
+     * <br/>
+     * We expect <code>ls -l</code> output lines, between the paths of the directories:<br/>
+     * <code>-rw-r--r--    1 root     root          7 Dec 30 00:49 test.txt</code>
+     * <ol>
+     * <li>permissions</li>
+     * <li>number of links and directories</li>
+     * <li>owner</li>
+     * <li>group</li>
+     * <li>size</li>
+     * <li>date (3 fields)</li>
+     * <li>name</li>
+     * </ol>
+     *
+     * @param in The complete lines
+     * @param usage The usage where to add the entries
+     */
+    static void parse(String in, FolderUsage usage) {
+        final int len = in.length();
+        int pos = 0;
+        while (pos < len) {
+            int eol = in.indexOf('\n', pos);
+            if (eol == -1) {
+                eol = len;
             }
+            parseLine(in, pos, eol, usage);
+            pos = eol + 1;
+        }
+    }
 
-            int c = 0;
-            try {
-                while (lines.size() > 0) {
-                    // Retrieve the info
-                    String szLine = lines.remove(0).trim();
-                    try {
-                        // Clean the line (we don't care about names, only need the extension)
-                        // so remove spaces is safe here
-                        while (szLine.indexOf("  ") != -1) { //$NON-NLS-1$
-                            szLine = szLine.replaceAll("  ", " "); //$NON-NLS-1$ //$NON-NLS-2$
-                        }
-
-                        // Don't compute . and ..
-                        // This is not secure, but we don't need a exact precission on this
-                        // method
-                        if (szLine.length() == 0 ||
-                            szLine.endsWith(" " + FileHelper.CURRENT_DIRECTORY) || //$NON-NLS-1$
-                            szLine.endsWith(" " + FileHelper.PARENT_DIRECTORY)) { //$NON-NLS-1$
-                            c++;
-                            continue;
-                        }
-
-                        char type = szLine.charAt(0);
-                        if (type == Symlink.UNIX_ID ||
-                                type == BlockDevice.UNIX_ID ||
-                                type == CharacterDevice.UNIX_ID ||
-                                type == DomainSocket.UNIX_ID ||
-                                type == NamedPipe.UNIX_ID) {
-                            // File + Category
-                            this.mFolderUsage.addFile();
-                            if (type == Symlink.UNIX_ID) {
-                                this.mFolderUsage.addFileToCategory(MimeTypeCategory.NONE);
-                            } else {
-                                this.mFolderUsage.addFileToCategory(MimeTypeCategory.SYSTEM);
-                            }
-
-                        } else if (type == Directory.UNIX_ID) {
-                            // Folder
-                            this.mFolderUsage.addFolder();
-
-                        } else {
-                            // File + Category + Size
-                            try {
-                                // we need a valid line
-                                String[] fields = szLine.split(" "); //$NON-NLS-1$
-                                if (fields.length < 8) {
-                                    continue;
-                                }
+    /**
+     * Method that adds to the usage the entry of a <code>ls -l</code> line.
+     *
+     * @param in The buffer
+     * @param start The start of the line
+     * @param end The end of the line (exclusive)
+     * @param usage The usage where to add the entry
+     */
+    private static void parseLine(String in, int start, int end, FolderUsage usage) {
+        // Trim the line
+        while (start < end && in.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && in.charAt(end - 1) <= ' ') {
+            end--;
+        }
 
-                                long size = Long.parseLong(fields[4]);
-                                String name = fields[fields.length-1];// We only need the extension
-                                String ext = FileHelper.getExtension(name);
-                                MimeTypeCategory category =
-                                        MimeTypeHelper.getCategoryFromExt(null, ext);
-                                this.mFolderUsage.addFile();
-                                this.mFolderUsage.addFileToCategory(category);
-                                this.mFolderUsage.addSize(size);
-                            } catch (Exception e) {/**NON BLOCK**/}
-                        }
-                        c++;
+        // Discard empty lines, the paths of the directories and the . and .. entries
+        // (this is not secure, but we don't need an exact precision on this method)
+        if (start == end) {
+            return;
+        }
+        char type = in.charAt(start);
+        if (type == '/' || type == '.') {
+            return;
+        }
+        int lastSpace = in.lastIndexOf(' ', end - 1);
+        if (lastSpace < start) {
+            return;
+        }
+        int nameLength = end - lastSpace - 1;
+        if (in.charAt(end - 1) == '.'
+                && (nameLength == 1 || (nameLength == 2 && in.charAt(end - 2) == '.'))) {
+            return;
+        }
 
-                    } catch (Exception e) {
-                        // Ignore.
-                    }
+        if (type == Symlink.UNIX_ID ||
+                type == BlockDevice.UNIX_ID ||
+                type == CharacterDevice.UNIX_ID ||
+                type == DomainSocket.UNIX_ID ||
+                type == NamedPipe.UNIX_ID) {
+            // File + Category
+            usage.addFile();
+            if (type == Symlink.UNIX_ID) {
+                usage.addFileToCategory(MimeTypeCategory.NONE);
+            } else {
+                usage.addFileToCategory(MimeTypeCategory.SYSTEM);
+            }
+            return;
+        }
+        if (type == Directory.UNIX_ID) {
+            // Folder
+            usage.addFolder();
+            return;
+        }
 
-                    // Partial notification
-                    if (c % 5 == 0) {
-                        //If a listener is defined, then send the partial result
-                        if (getAsyncResultListener() != null) {
-                            getAsyncResultListener().onPartialResult(this.mFolderUsage);
-                        }
+        // File + Category + Size. Walk the fields up to the size, and check that there
+        // are at least 8 fields (the name is the last one; we only need the extension)
+        int p = start;
+        long size = -1;
+        for (int field = 0; field < 7 && p < end; field++) {
+            if (field == 4) {
+                size = 0;
+                while (p < end && in.charAt(p) != ' ') {
+                    char c = in.charAt(p++);
+                    if (c < '0' || c > '9') {
+                        return;
                     }
+                    size = size * 10 + (c - '0');
                 }
-            } catch (Exception ex) { /**NON BLOCK **/ }
-
-            //If a listener is defined, then send the partial result
-            if (getAsyncResultListener() != null) {
-                getAsyncResultListener().onPartialResult(this.mFolderUsage);
-            }
-
-        } catch (Exception ex) {
-            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
-
-        } finally {
-            try {
-                if (br != null) {
-                    br.close();
+            } else {
+                while (p < end && in.charAt(p) != ' ') {
+                    p++;
                 }
-            } catch (Throwable ex) {
-                /**NON BLOCK**/
             }
+            while (p < end && in.charAt(p) == ' ') {
+                p++;
+            }
+        }
+        if (size == -1 || p >= end) {
+            return;
+        }
+        String ext = null;
+        int dot = in.lastIndexOf('.', end - 1);
+        if (dot > lastSpace + 1) {
+            ext = FileHelper.getExtension(in.substring(lastSpace + 1, end));
         }
+        usage.addFile();
+        usage.addFileToCategory(MimeTypeHelper.getCategoryFromExt(null, ext));
+        usage.addSize(size);
     }
 
     /**
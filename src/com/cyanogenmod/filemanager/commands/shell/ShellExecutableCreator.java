@@ -16,17 +16,21 @@
 
 package com.cyanogenmod.filemanager.commands.shell;
 
+import com.cyanogenmod.filemanager.commands.AsyncCopyExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncMoveExecutable;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.commands.CompressExecutable;
+import com.cyanogenmod.filemanager.commands.ContentSearchExecutable;
 import com.cyanogenmod.filemanager.commands.CopyExecutable;
 import com.cyanogenmod.filemanager.commands.CreateDirExecutable;
 import com.cyanogenmod.filemanager.commands.CreateFileExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteDirExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteFileExecutable;
 import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
 import com.cyanogenmod.filemanager.commands.EchoExecutable;
 import com.cyanogenmod.filemanager.commands.ExecExecutable;
 import com.cyanogenmod.filemanager.commands.ExecutableCreator;
@@ -46,12 +50,14 @@ import com.cyanogenmod.filemanager.commands.ReadExecutable;
 import com.cyanogenmod.filemanager.commands.ResolveLinkExecutable;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.commands.SendSignalExecutable;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
 import com.cyanogenmod.filemanager.commands.UncompressExecutable;
 import com.cyanogenmod.filemanager.commands.WriteExecutable;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.shell.ShellConsole;
+import com.cyanogenmod.filemanager.model.ContentQuery;
 import com.cyanogenmod.filemanager.model.Group;
 import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.model.Permissions;
@@ -115,6 +121,21 @@ public class ShellExecutableCreator implements ExecutableCreator {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncCopyExecutable createAsyncCopyExecutable(
+            String src, String dst, boolean resume, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        // The shell copy can't be resumed. It always copies the whole source
+        try {
+            return new AsyncCopyCommand(src, dst, asyncResultListener);
+        } catch (InvalidCommandDefinitionException icdEx) {
+            throw new CommandNotFoundException("AsyncCopyCommand", icdEx); //$NON-NLS-1$
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -231,6 +252,20 @@ public class ShellExecutableCreator implements ExecutableCreator {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ContentSearchExecutable createContentSearchExecutable(
+            String directory, ContentQuery query, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        try {
+            return new ContentSearchCommand(directory, query, asyncResultListener);
+        } catch (InvalidCommandDefinitionException icdEx) {
+            throw new CommandNotFoundException("ContentSearchCommand", icdEx); //$NON-NLS-1$
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -245,6 +280,30 @@ public class ShellExecutableCreator implements ExecutableCreator {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StorageAnalysisExecutable createStorageAnalysisExecutable(
+            String directory, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        try {
+            return new StorageAnalysisCommand(directory, asyncResultListener);
+        } catch (InvalidCommandDefinitionException icdEx) {
+            throw new CommandNotFoundException("StorageAnalysisCommand", icdEx); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DuplicatesExecutable createDuplicatesExecutable(
+            String[] directories, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        throw new CommandNotFoundException("Not implemented"); //$NON-NLS-1$
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -347,6 +406,20 @@ public class ShellExecutableCreator implements ExecutableCreator {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncMoveExecutable createAsyncMoveExecutable(
+            String src, String dst, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        try {
+            return new AsyncMoveCommand(src, dst, asyncResultListener);
+        } catch (InvalidCommandDefinitionException icdEx) {
+            throw new CommandNotFoundException("AsyncMoveCommand", icdEx); //$NON-NLS-1$
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for analyze the storage used by a folder.<br/>
+ * <br/>
+ * <code>ls -alR</code> lists every folder after its parent, and before the next sibling of
+ * its parent, so the size of a folder is known when the listing of a folder outside its
+ * tree starts. Only the chain of folders from the root to the current one is kept in
+ * memory.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?ls"}
+ */
+public class StorageAnalysisCommand extends AsyncResultProgram
+    implements StorageAnalysisExecutable {
+
+    private static final String TAG = "StorageAnalysisCommand"; //$NON-NLS-1$
+
+    private static final String ID = "storageanalysis"; //$NON-NLS-1$
+
+    /**
+     * A parser of the <code>ls -alR</code> output, that adds the files and the completed
+     * folders to an accumulator.
+     */
+    static final class Parser {
+        private final StorageAnalyzer.Accumulator mAccumulator;
+        // The folders from the root to the current one, with their size and files
+        private final List<String> mPaths;
+        private final List<long[]> mUsages;
+
+        /**
+         * Constructor of <code>Parser</code>.
+         *
+         * @param accumulator The accumulator of the analysis
+         */
+        Parser(StorageAnalyzer.Accumulator accumulator) {
+            super();
+            this.mAccumulator = accumulator;
+            this.mPaths = new ArrayList<String>();
+            this.mUsages = new ArrayList<long[]>();
+        }
+
+        /**
+         * Method that parses a chunk of complete lines.
+         *
+         * @param in The complete lines
+         */
+        void parse(String in) {
+            final int len = in.length();
+            int pos = 0;
+            while (pos < len) {
+                int eol = in.indexOf('\n', pos);
+                if (eol == -1) {
+                    eol = len;
+                }
+                parseLine(in, pos, eol);
+                pos = eol + 1;
+            }
+        }
+
+        /**
+         * Method that completes the folders still open, once the output ended.
+         */
+        void finish() {
+            while (!this.mPaths.isEmpty()) {
+                pop();
+            }
+        }
+
+        /**
+         * Method that parses a line: the path of a folder followed by ':', or a
+         * <code>ls -l</code> line:<br/>
+         * <code>-rw-r--r--    1 root     root          7 Dec 30 00:49 test.txt</code>
+         *
+         * @param in The buffer
+         * @param start The start of the line
+         * @param end The end of the line (exclusive)
+         */
+        private void parseLine(String in, int start, int end) {
+            // Trim the line
+            while (start < end && in.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && in.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+
+            // A new folder. Complete the folders that don't contain it
+            char type = in.charAt(start);
+            if (type == '/' && in.charAt(end - 1) == ':') {
+                String path = in.substring(start, end - 1);
+                while (!this.mPaths.isEmpty() && !isParent(peek(), path)) {
+                    pop();
+                }
+                this.mPaths.add(path);
+                this.mUsages.add(new long[2]);
+                return;
+            }
+
+            // Only the regular files have a size. Walk the permissions, links, owner,
+            // group, size and date (3 fields) up to the name
+            if (type != '-' || this.mPaths.isEmpty()) {
+                return;
+            }
+            int p = start;
+            long size = -1;
+            for (int field = 0; field < 8 && p < end; field++) {
+                if (field == 4) {
+                    size = 0;
+                    while (p < end && in.charAt(p) != ' ') {
+                        char c = in.charAt(p++);
+                        if (c < '0' || c > '9') {
+                            return;
+                        }
+                        size = size * 10 + (c - '0');
+                    }
+                } else {
+                    while (p < end && in.charAt(p) != ' ') {
+                        p++;
+                    }
+                }
+                while (p < end && in.charAt(p) == ' ') {
+                    p++;
+                }
+            }
+            if (size == -1 || p >= end) {
+                return;
+            }
+            long[] usage = this.mUsages.get(this.mUsages.size() - 1);
+            usage[0] += size;
+            usage[1]++;
+            this.mAccumulator.addFile(peek(), in.substring(p, end), size);
+        }
+
+        /**
+         * Method that returns the current folder.
+         *
+         * @return String The path of the current folder
+         */
+        private String peek() {
+            return this.mPaths.get(this.mPaths.size() - 1);
+        }
+
+        /**
+         * Method that completes the current folder, and adds its usage to its parent.
+         */
+        private void pop() {
+            int last = this.mPaths.size() - 1;
+            String path = this.mPaths.remove(last);
+            long[] usage = this.mUsages.remove(last);
+            if (last > 0) {
+                // The analyzed folder itself isn't part of the results
+                this.mAccumulator.addFolder(path, usage[0], usage[1]);
+                long[] parent = this.mUsages.get(last - 1);
+                parent[0] += usage[0];
+                parent[1] += usage[1];
+            }
+        }
+
+        /**
+         * Method that returns if a folder contains a path.
+         *
+         * @param parent The folder
+         * @param path The path
+         * @return boolean If the folder contains the path
+         */
+        private static boolean isParent(String parent, String path) {
+            if (parent.endsWith("/")) { //$NON-NLS-1$
+                return path.startsWith(parent);
+            }
+            return path.length() > parent.length()
+                    && path.charAt(parent.length()) == '/'
+                    && path.startsWith(parent);
+        }
+    }
+
+    private final String mDirectory;
+    private StorageAnalyzer mAnalyzer;
+    private Parser mParser;
+    private StorageAnalysis mStorageAnalysis;
+
+    /**
+     * Constructor of <code>StorageAnalysisCommand</code>.
+     *
+     * @param directory The absolute directory to analyze
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public StorageAnalysisCommand(
+            String directory, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID, asyncResultListener, new String[]{directory});
+        this.mDirectory = directory;
+        onStartParsePartialResult();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mAnalyzer = new StorageAnalyzer(this.mDirectory, StorageAnalyzer.DEFAULT_TOP_SIZE);
+        this.mParser = new Parser(this.mAnalyzer.newAccumulator());
+        this.mStorageAnalysis = this.mAnalyzer.getAnalysis();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        // The folders still open are complete, unless the listing was cancelled
+        if (!cancelled) {
+            this.mParser.finish();
+        }
+        this.mStorageAnalysis = this.mAnalyzer.getAnalysis();
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(this.mStorageAnalysis);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+        try {
+            // Only complete lines are received
+            this.mParser.parse(partialIn);
+        } catch (Exception ex) {
+            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
+        this.mStorageAnalysis = this.mAnalyzer.getAnalysis();
+
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(this.mStorageAnalysis);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StorageAnalysis getStorageAnalysis() {
+        return this.mStorageAnalysis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIgnoreShellStdErrCheck() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+
+        //Access a subdirectory without permissions returns 1, but this
+        //not must be treated as an error
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode != 0 && exitCode != 1 && exitCode != 143 && exitCode != 137) {
+            throw new ExecutionException(
+                        "exitcode != 0 && != 1 && != 143 && != 137"); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+
+/**
+ * A class that represents a match of a search over the content of the files.
+ */
+public class ContentMatch implements Serializable {
+
+    private static final long serialVersionUID = 6147287411926510348L;
+
+    private final String mPath;
+    private final int mTerm;
+    private final int mLine;
+    private final int mColumn;
+    private final long mOffset;
+    private final String mText;
+
+    /**
+     * Constructor of <code>ContentMatch</code>.
+     *
+     * @param path The absolute path of the file
+     * @param term The index of the matched term
+     * @param line The number of the line (starting at 1)
+     * @param column The position of the match in the line, or -1 if it's unknown
+     * @param offset The byte offset of the match in the file, or -1 if it's unknown
+     * @param text The text of the line
+     */
+    public ContentMatch(
+            String path, int term, int line, int column, long offset, String text) {
+        super();
+        this.mPath = path;
+        this.mTerm = term;
+        this.mLine = line;
+        this.mColumn = column;
+        this.mOffset = offset;
+        this.mText = text;
+    }
+
+    /**
+     * Method that returns the absolute path of the file.
+     *
+     * @return String The absolute path of the file
+     */
+    public String getPath() {
+        return this.mPath;
+    }
+
+    /**
+     * Method that returns the index of the matched term.
+     *
+     * @return int The index of the matched term
+     */
+    public int getTerm() {
+        return this.mTerm;
+    }
+
+    /**
+     * Method that returns the number of the line (starting at 1).
+     *
+     * @return int The number of the line
+     */
+    public int getLine() {
+        return this.mLine;
+    }
+
+    /**
+     * Method that returns the position of the match in the line.
+     *
+     * @return int The position of the match in the line, or -1 if it's unknown
+     */
+    public int getColumn() {
+        return this.mColumn;
+    }
+
+    /**
+     * Method that returns the byte offset of the match in the file.
+     *
+     * @return long The byte offset of the match, or -1 if it's unknown
+     */
+    public long getOffset() {
+        return this.mOffset;
+    }
+
+    /**
+     * Method that returns the text of the line (could be truncated).
+     *
+     * @return String The text of the line
+     */
+    public String getText() {
+        return this.mText;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ContentMatch [path=" + this.mPath //$NON-NLS-1$
+                + ", term=" + this.mTerm //$NON-NLS-1$
+                + ", line=" + this.mLine //$NON-NLS-1$
+                + ", column=" + this.mColumn //$NON-NLS-1$
+                + ", offset=" + this.mOffset //$NON-NLS-1$
+                + ", text=" + this.mText + "]"; //$NON-NLS-1$//$NON-NLS-2$
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import android.text.TextUtils;
+
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A class that holds the terms and the filters of a search over the content
+ * of the files.
+ */
+public class ContentQuery implements Serializable {
+
+    private static final long serialVersionUID = -2360518270950478516L;
+
+    /**
+     * The default max size of the files to search in.
+     */
+    public static final long DEFAULT_MAX_SIZE = 16L * 1024L * 1024L;
+
+    /**
+     * The default max number of matches reported per file.
+     */
+    public static final int DEFAULT_MAX_MATCHES_PER_FILE = 10;
+
+    private final List<String> mTerms;
+    private boolean mRegExp;
+    private boolean mIgnoreCase;
+    private long mMaxSize;
+    private int mMaxMatchesPerFile;
+    private final Set<MimeTypeCategory> mCategories;
+
+    /**
+     * Constructor of <code>ContentQuery</code>.
+     */
+    public ContentQuery() {
+        super();
+        this.mTerms = new ArrayList<String>();
+        this.mRegExp = false;
+        this.mIgnoreCase = true;
+        this.mMaxSize = DEFAULT_MAX_SIZE;
+        this.mMaxMatchesPerFile = DEFAULT_MAX_MATCHES_PER_FILE;
+        this.mCategories = EnumSet.noneOf(MimeTypeCategory.class);
+    }
+
+    /**
+     * Method that adds a term to search.
+     *
+     * @param term The term (a literal text, or a regular expression in regexp mode)
+     * @return ContentQuery The query reference
+     */
+    public ContentQuery addTerm(String term) {
+        if (term != null && term.length() > 0) {
+            this.mTerms.add(term);
+        }
+        return this;
+    }
+
+    /**
+     * Method that returns the terms to search.
+     *
+     * @return List<String> The terms to search
+     */
+    public List<String> getTerms() {
+        return new ArrayList<String>(this.mTerms);
+    }
+
+    /**
+     * Method that returns if the terms are regular expressions.
+     *
+     * @return boolean If the terms are regular expressions
+     */
+    public boolean isRegExp() {
+        return this.mRegExp;
+    }
+
+    /**
+     * Method that sets if the terms are regular expressions.
+     *
+     * @param regExp If the terms are regular expressions
+     * @return ContentQuery The query reference
+     */
+    public ContentQuery setRegExp(boolean regExp) {
+        this.mRegExp = regExp;
+        return this;
+    }
+
+    /**
+     * Method that returns if the search ignores the case of the terms.
+     *
+     * @return boolean If the search ignores the case of the terms
+     */
+    public boolean isIgnoreCase() {
+        return this.mIgnoreCase;
+    }
+
+    /**
+     * Method that sets if the search ignores the case of the terms.
+     *
+     * @param ignoreCase If the search ignores the case of the terms
+     * @return ContentQuery The query reference
+     */
+    public ContentQuery setIgnoreCase(boolean ignoreCase) {
+        this.mIgnoreCase = ignoreCase;
+        return this;
+    }
+
+    /**
+     * Method that returns the max size of the files to search in.
+     *
+     * @return long The max size in bytes
+     */
+    public long getMaxSize() {
+        return this.mMaxSize;
+    }
+
+    /**
+     * Method that sets the max size of the files to search in.
+     *
+     * @param maxSize The max size in bytes
+     * @return ContentQuery The query reference
+     */
+    public ContentQuery setMaxSize(long maxSize) {
+        this.mMaxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Method that returns the max number of matches reported per file.
+     *
+     * @return int The max number of matches reported per file
+     */
+    public int getMaxMatchesPerFile() {
+        return this.mMaxMatchesPerFile;
+    }
+
+    /**
+     * Method that sets the max number of matches reported per file (the search of a file
+     * ends when the max is reached).
+     *
+     * @param maxMatchesPerFile The max number of matches reported per file
+     * @return ContentQuery The query reference
+     */
+    public ContentQuery setMaxMatchesPerFile(int maxMatchesPerFile) {
+        this.mMaxMatchesPerFile = Math.max(1, maxMatchesPerFile);
+        return this;
+    }
+
+    /**
+     * Method that adds a mime/type category of the files to search in. If there are
+     * no categories, all the files are searched.
+     *
+     * @param category The mime/type category
+     * @return ContentQuery The query reference
+     */
+    public ContentQuery addCategory(MimeTypeCategory category) {
+        this.mCategories.add(category);
+        return this;
+    }
+
+    /**
+     * Method that returns if the files of a mime/type category must be searched.
+     *
+     * @param category The mime/type category
+     * @return boolean If the files of the category must be searched
+     */
+    public boolean acceptsCategory(MimeTypeCategory category) {
+        return this.mCategories.isEmpty() || this.mCategories.contains(category);
+    }
+
+    /**
+     * Method that returns if the query is filtered by mime/type categories.
+     *
+     * @return boolean If the query is filtered by mime/type categories
+     */
+    public boolean hasCategories() {
+        return !this.mCategories.isEmpty();
+    }
+
+    /**
+     * Method that returns the terms of the query in a single string separated by ", " string.
+     *
+     * @return String The terms of the query
+     */
+    public String getTermsString() {
+        return TextUtils.join(", ", this.mTerms); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+
+/**
+ * A class that holds the progress of a copy or move operation.
+ */
+public class CopyProgress implements Serializable {
+
+    private static final long serialVersionUID = -2157396421706184218L;
+
+    /**
+     * The value of an unknown ETA.
+     */
+    public static final long UNKNOWN_ETA = -1;
+
+    private final String mCurrentFile;
+    private final long mFilesDone;
+    private final long mFilesTotal;
+    private final long mBytesDone;
+    private final long mBytesTotal;
+    private final long mThroughput;
+    private final long mEta;
+
+    /**
+     * Constructor of <code>CopyProgress</code>.
+     *
+     * @param currentFile The absolute path of the file being copied
+     * @param filesDone The number of files copied
+     * @param filesTotal The number of files to copy
+     * @param bytesDone The number of bytes copied
+     * @param bytesTotal The number of bytes to copy
+     * @param throughput The current throughput, in bytes per second
+     * @param eta The estimated time to end, in ms, or {@link #UNKNOWN_ETA}
+     */
+    public CopyProgress(
+            String currentFile, long filesDone, long filesTotal,
+            long bytesDone, long bytesTotal, long throughput, long eta) {
+        super();
+        this.mCurrentFile = currentFile;
+        this.mFilesDone = filesDone;
+        this.mFilesTotal = filesTotal;
+        this.mBytesDone = bytesDone;
+        this.mBytesTotal = bytesTotal;
+        this.mThroughput = throughput;
+        this.mEta = eta;
+    }
+
+    /**
+     * Method that returns the absolute path of the file being copied.
+     *
+     * @return String The file being copied, or null if it's unknown
+     */
+    public String getCurrentFile() {
+        return this.mCurrentFile;
+    }
+
+    /**
+     * Method that returns the number of files copied.
+     *
+     * @return long The number of files copied
+     */
+    public long getFilesDone() {
+        return this.mFilesDone;
+    }
+
+    /**
+     * Method that returns the number of files to copy.
+     *
+     * @return long The number of files to copy
+     */
+    public long getFilesTotal() {
+        return this.mFilesTotal;
+    }
+
+    /**
+     * Method that returns the number of bytes copied.
+     *
+     * @return long The number of bytes copied
+     */
+    public long getBytesDone() {
+        return this.mBytesDone;
+    }
+
+    /**
+     * Method that returns the number of bytes to copy.
+     *
+     * @return long The number of bytes to copy
+     */
+    public long getBytesTotal() {
+        return this.mBytesTotal;
+    }
+
+    /**
+     * Method that returns the current throughput.
+     *
+     * @return long The current throughput, in bytes per second
+     */
+    public long getThroughput() {
+        return this.mThroughput;
+    }
+
+    /**
+     * Method that returns the estimated time to end.
+     *
+     * @return long The estimated time to end, in ms, or {@link #UNKNOWN_ETA}
+     */
+    public long getEta() {
+        return this.mEta;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "CopyProgress [currentFile=" + this.mCurrentFile + //$NON-NLS-1$
+                ", filesDone=" + this.mFilesDone + //$NON-NLS-1$
+                ", filesTotal=" + this.mFilesTotal + //$NON-NLS-1$
+                ", bytesDone=" + this.mBytesDone + //$NON-NLS-1$
+                ", bytesTotal=" + this.mBytesTotal + //$NON-NLS-1$
+                ", throughput=" + this.mThroughput + //$NON-NLS-1$
+                ", eta=" + this.mEta + "]"; //$NON-NLS-1$//$NON-NLS-2$
+    }
+}
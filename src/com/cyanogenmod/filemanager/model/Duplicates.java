@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A class that holds the progress and the results of a search of duplicate files.
+ */
+public class Duplicates implements Serializable {
+
+    private static final long serialVersionUID = 7729043358761260915L;
+
+    /**
+     * The stages of the search
+     */
+    public enum STAGE {
+        /**
+         * Counting the files of every size
+         */
+        SIZES,
+        /**
+         * Collecting the files that share their size with another file
+         */
+        CANDIDATES,
+        /**
+         * Comparing the checksums of the candidates
+         */
+        CHECKSUMS,
+        /**
+         * The search ended
+         */
+        DONE
+    }
+
+    /**
+     * A group of files with the same content.
+     */
+    public static class Group implements Serializable {
+
+        private static final long serialVersionUID = -3650727541470413878L;
+
+        private final long mSize;
+        private final String mChecksum;
+        private final List<String> mPaths;
+
+        /**
+         * Constructor of <code>Group</code>.
+         *
+         * @param size The size of every file
+         * @param checksum The checksum of the content
+         * @param paths The absolute paths of the files, sorted
+         */
+        public Group(long size, String checksum, List<String> paths) {
+            super();
+            this.mSize = size;
+            this.mChecksum = checksum;
+            this.mPaths = paths;
+        }
+
+        /**
+         * Method that returns the size of every file.
+         *
+         * @return long The size of every file
+         */
+        public long getSize() {
+            return this.mSize;
+        }
+
+        /**
+         * Method that returns the checksum of the content.
+         *
+         * @return String The checksum of the content
+         */
+        public String getChecksum() {
+            return this.mChecksum;
+        }
+
+        /**
+         * Method that returns the absolute paths of the files, sorted.
+         *
+         * @return List<String> The absolute paths of the files
+         */
+        public List<String> getPaths() {
+            return this.mPaths;
+        }
+
+        /**
+         * Method that returns the space that is freed if only one file is kept.
+         *
+         * @return long The wasted space
+         */
+        public long getWastedSize() {
+            return this.mSize * (this.mPaths.size() - 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Group [size=" + this.mSize + //$NON-NLS-1$
+                    ", checksum=" + this.mChecksum + //$NON-NLS-1$
+                    ", paths=" + this.mPaths + "]"; //$NON-NLS-1$//$NON-NLS-2$
+        }
+    }
+
+    private final STAGE mStage;
+    private final long mScannedFiles;
+    private final long mCandidateFiles;
+    private final long mCheckedFiles;
+    private final List<Group> mGroups;
+
+    /**
+     * Constructor of <code>Duplicates</code>.
+     *
+     * @param stage The current stage
+     * @param scannedFiles The number of files scanned
+     * @param candidateFiles The number of files that share their size with another file
+     * @param checkedFiles The number of candidates already compared
+     * @param groups The groups of duplicates found so far
+     */
+    public Duplicates(
+            STAGE stage, long scannedFiles, long candidateFiles,
+            long checkedFiles, List<Group> groups) {
+        super();
+        this.mStage = stage;
+        this.mScannedFiles = scannedFiles;
+        this.mCandidateFiles = candidateFiles;
+        this.mCheckedFiles = checkedFiles;
+        this.mGroups = groups;
+    }
+
+    /**
+     * Method that returns the current stage.
+     *
+     * @return STAGE The current stage
+     */
+    public STAGE getStage() {
+        return this.mStage;
+    }
+
+    /**
+     * Method that returns the number of files scanned.
+     *
+     * @return long The number of files scanned
+     */
+    public long getScannedFiles() {
+        return this.mScannedFiles;
+    }
+
+    /**
+     * Method that returns the number of files that share their size with another file.
+     *
+     * @return long The number of candidates
+     */
+    public long getCandidateFiles() {
+        return this.mCandidateFiles;
+    }
+
+    /**
+     * Method that returns the number of candidates already compared.
+     *
+     * @return long The number of candidates compared
+     */
+    public long getCheckedFiles() {
+        return this.mCheckedFiles;
+    }
+
+    /**
+     * Method that returns the groups of duplicates found so far, in the order they
+     * were found.
+     *
+     * @return List<Group> The groups of duplicates
+     */
+    public List<Group> getGroups() {
+        return this.mGroups;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Duplicates [stage=" + this.mStage + //$NON-NLS-1$
+                ", scannedFiles=" + this.mScannedFiles + //$NON-NLS-1$
+                ", candidateFiles=" + this.mCandidateFiles + //$NON-NLS-1$
+                ", checkedFiles=" + this.mCheckedFiles + //$NON-NLS-1$
+                ", groups=" + this.mGroups.size() + "]"; //$NON-NLS-1$//$NON-NLS-2$
+    }
+}
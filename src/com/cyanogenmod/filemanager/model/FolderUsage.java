@@ -92,6 +92,34 @@ public class FolderUsage implements Serializable, Cloneable {
         this.mStatistics.put(category.ordinal(), Long.valueOf(count));
     }
 
+    /**
+     * Method that sets the total number of folders.
+     *
+     * @param numberOfFolders The total number of folders
+     */
+    public void setNumberOfFolders(int numberOfFolders) {
+        this.mNumberOfFolders = numberOfFolders;
+    }
+
+    /**
+     * Method that sets the total number of files.
+     *
+     * @param numberOfFiles The total number of files
+     */
+    public void setNumberOfFiles(int numberOfFiles) {
+        this.mNumberOfFiles = numberOfFiles;
+    }
+
+    /**
+     * Method that sets the number of files of a category.
+     *
+     * @param category The category
+     * @param count The number of files of the category
+     */
+    public void setStatisticsForCategory(MimeTypeCategory category, long count) {
+        this.mStatistics.put(category.ordinal(), Long.valueOf(count));
+    }
+
     /**
      * Method that returns the folder of which retrieve the usage.
      *
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A class that holds the analysis of the storage used by a folder: the largest files and
+ * folders, the number of files and bytes per range of sizes and per extension.
+ */
+public class StorageAnalysis implements Serializable {
+
+    private static final long serialVersionUID = -2753861340817512264L;
+
+    /**
+     * The number of ranges of sizes of the histogram.
+     */
+    public static final int HISTOGRAM_BUCKETS = 12;
+
+    /**
+     * An item of the analysis: a file, a folder or an extension.
+     */
+    public static class Item implements Serializable {
+
+        private static final long serialVersionUID = 4529102664385372418L;
+
+        private final String mName;
+        private final long mSize;
+        private final long mCount;
+
+        /**
+         * Constructor of <code>Item</code>.
+         *
+         * @param name The absolute path of the file or folder, or the extension
+         * @param size The size in bytes
+         * @param count The number of files
+         */
+        public Item(String name, long size, long count) {
+            super();
+            this.mName = name;
+            this.mSize = size;
+            this.mCount = count;
+        }
+
+        /**
+         * Method that returns the absolute path of the file or folder, or the extension
+         * (empty for the files without an extension).
+         *
+         * @return String The name of the item
+         */
+        public String getName() {
+            return this.mName;
+        }
+
+        /**
+         * Method that returns the size in bytes.
+         *
+         * @return long The size in bytes
+         */
+        public long getSize() {
+            return this.mSize;
+        }
+
+        /**
+         * Method that returns the number of files of the item.
+         *
+         * @return long The number of files
+         */
+        public long getCount() {
+            return this.mCount;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Item [name=" + this.mName + //$NON-NLS-1$
+                    ", size=" + this.mSize + //$NON-NLS-1$
+                    ", count=" + this.mCount + "]"; //$NON-NLS-1$//$NON-NLS-2$
+        }
+    }
+
+    private final String mFolder;
+    private final long mNumberOfFiles;
+    private final long mNumberOfFolders;
+    private final long mTotalSize;
+    private final List<Item> mLargestFiles;
+    private final List<Item> mLargestFolders;
+    private final List<Item> mExtensions;
+    private final long[] mHistogramCounts;
+    private final long[] mHistogramSizes;
+
+    /**
+     * Constructor of <code>StorageAnalysis</code>.
+     *
+     * @param folder The analyzed folder
+     * @param numberOfFiles The number of files
+     * @param numberOfFolders The number of folders
+     * @param totalSize The total size in bytes
+     * @param largestFiles The largest files, sorted by size
+     * @param largestFolders The largest folders, sorted by size
+     * @param extensions The usage per extension, sorted by size
+     * @param histogramCounts The number of files per range of sizes
+     * @param histogramSizes The bytes per range of sizes
+     */
+    public StorageAnalysis(
+            String folder, long numberOfFiles, long numberOfFolders, long totalSize,
+            List<Item> largestFiles, List<Item> largestFolders, List<Item> extensions,
+            long[] histogramCounts, long[] histogramSizes) {
+        super();
+        this.mFolder = folder;
+        this.mNumberOfFiles = numberOfFiles;
+        this.mNumberOfFolders = numberOfFolders;
+        this.mTotalSize = totalSize;
+        this.mLargestFiles = largestFiles;
+        this.mLargestFolders = largestFolders;
+        this.mExtensions = extensions;
+        this.mHistogramCounts = histogramCounts;
+        this.mHistogramSizes = histogramSizes;
+    }
+
+    /**
+     * Method that returns the analyzed folder.
+     *
+     * @return String The analyzed folder
+     */
+    public String getFolder() {
+        return this.mFolder;
+    }
+
+    /**
+     * Method that returns the number of files.
+     *
+     * @return long The number of files
+     */
+    public long getNumberOfFiles() {
+        return this.mNumberOfFiles;
+    }
+
+    /**
+     * Method that returns the number of folders.
+     *
+     * @return long The number of folders
+     */
+    public long getNumberOfFolders() {
+        return this.mNumberOfFolders;
+    }
+
+    /**
+     * Method that returns the total size.
+     *
+     * @return long The total size in bytes
+     */
+    public long getTotalSize() {
+        return this.mTotalSize;
+    }
+
+    /**
+     * Method that returns the largest files, sorted by size.
+     *
+     * @return List<Item> The largest files
+     */
+    public List<Item> getLargestFiles() {
+        return this.mLargestFiles;
+    }
+
+    /**
+     * Method that returns the largest folders (the size of their whole tree), sorted
+     * by size. Only the folders whose tree was completely walked are included.
+     *
+     * @return List<Item> The largest folders
+     */
+    public List<Item> getLargestFolders() {
+        return this.mLargestFolders;
+    }
+
+    /**
+     * Method that returns the usage per extension, sorted by size.
+     *
+     * @return List<Item> The usage per extension
+     */
+    public List<Item> getExtensions() {
+        return this.mExtensions;
+    }
+
+    /**
+     * Method that returns the number of files of a range of sizes.
+     *
+     * @param bucket The range of sizes (0 to {@link #HISTOGRAM_BUCKETS} - 1)
+     * @return long The number of files
+     * @see #getHistogramLowerBound(int)
+     */
+    public long getHistogramCount(int bucket) {
+        return this.mHistogramCounts[bucket];
+    }
+
+    /**
+     * Method that returns the bytes of the files of a range of sizes.
+     *
+     * @param bucket The range of sizes (0 to {@link #HISTOGRAM_BUCKETS} - 1)
+     * @return long The bytes of the files
+     * @see #getHistogramLowerBound(int)
+     */
+    public long getHistogramSize(int bucket) {
+        return this.mHistogramSizes[bucket];
+    }
+
+    /**
+     * Method that returns the smallest size of a range of sizes. The first range holds
+     * the files under 1KB, and every next range is 4 times bigger (1KB, 4KB, 16KB, ...).
+     * The last range holds the rest of the files.
+     *
+     * @param bucket The range of sizes
+     * @return long The smallest size in bytes
+     */
+    public static long getHistogramLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1024L << (2 * (bucket - 1));
+    }
+
+    /**
+     * Method that returns the range of sizes of a file size.
+     *
+     * @param size The size in bytes
+     * @return int The range of sizes
+     */
+    public static int getHistogramBucket(long size) {
+        if (size < 1024L) {
+            return 0;
+        }
+        int log2 = 63 - Long.numberOfLeadingZeros(size >> 10);
+        return Math.min(HISTOGRAM_BUCKETS - 1, 1 + log2 / 2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "StorageAnalysis [folder=" + this.mFolder + //$NON-NLS-1$
+                ", numberOfFiles=" + this.mNumberOfFiles + //$NON-NLS-1$
+                ", numberOfFolders=" + this.mNumberOfFolders + //$NON-NLS-1$
+                ", totalSize=" + this.mTotalSize + "]"; //$NON-NLS-1$//$NON-NLS-2$
+    }
+}
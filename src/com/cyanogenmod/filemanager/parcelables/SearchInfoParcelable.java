@@ -36,6 +36,7 @@ public class SearchInfoParcelable extends HistoryNavigable {
 
     private String mSearchDirectory;
     private List<SearchResult> mSearchResultList;
+    private int mSearchResultCount = -1;
     private Query mSearchQuery;
     private boolean mSuccessNavigation = false;
 
@@ -111,6 +112,29 @@ public class SearchInfoParcelable extends HistoryNavigable {
         this.mSearchResultList = searchResultList;
     }
 
+    /**
+     * Method that returns the number of matches of the search (the search result list
+     * could hold only the most relevant ones).
+     *
+     * @return int The number of matches, or the size of the search result list if
+     * it wasn't set
+     */
+    public int getSearchResultCount() {
+        if (this.mSearchResultCount < 0 && this.mSearchResultList != null) {
+            return this.mSearchResultList.size();
+        }
+        return Math.max(0, this.mSearchResultCount);
+    }
+
+    /**
+     * Method that sets the number of matches of the search.
+     *
+     * @param searchResultCount The number of matches
+     */
+    public void setSearchResultCount(int searchResultCount) {
+        this.mSearchResultCount = searchResultCount;
+    }
+
     /**
      * Method that returns the query terms of the search.
      *
@@ -177,6 +201,8 @@ public class SearchInfoParcelable extends HistoryNavigable {
         }
         //- 3
         dest.writeInt(this.mSuccessNavigation ? 1 : 0);
+        //- 4
+        dest.writeInt(this.mSearchResultCount);
     }
 
     /**
@@ -204,6 +230,8 @@ public class SearchInfoParcelable extends HistoryNavigable {
         }
         //- 3
         this.mSuccessNavigation = in.readInt() != 1;
+        //- 4
+        this.mSearchResultCount = in.readInt();
     }
 
     /**
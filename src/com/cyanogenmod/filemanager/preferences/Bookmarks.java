@@ -24,6 +24,7 @@ import android.database.Cursor;
 import android.net.Uri;
 
 import com.cyanogenmod.filemanager.model.Bookmark;
+import com.cyanogenmod.filemanager.util.SuggestionIndex;
 
 /**
  * A class for deal with user-defined bookmarks
@@ -57,6 +58,7 @@ public class Bookmarks {
         if (bookmark.mId == INVALID_BOOKMARKS_ID) {
             return null;
         }
+        SuggestionIndex.getInstance(context).recordBookmark(bookmark.mPath);
         return bookmark;
     }
 
@@ -74,7 +76,12 @@ public class Bookmarks {
         // Retrieve the content resolver
         ContentResolver contentResolver = context.getContentResolver();
         Uri uri = ContentUris.withAppendedId(Bookmark.Columns.CONTENT_URI, bookmark.mId);
-        return contentResolver.delete(uri, "", null) == 1; //$NON-NLS-1$
+        boolean removed = contentResolver.delete(uri, "", null) == 1; //$NON-NLS-1$
+        if (removed) {
+            SuggestionIndex.getInstance(context).remove(
+                    SuggestionIndex.KIND.BOOKMARK, bookmark.mPath);
+        }
+        return removed;
     }
 
     /**
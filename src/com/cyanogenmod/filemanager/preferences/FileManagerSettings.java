@@ -72,6 +72,11 @@ public enum FileManagerSettings {
      * @hide
      */
     SETTINGS_SHOW_SYMLINKS("cm_filemanager_show_symlinks", Boolean.TRUE), //$NON-NLS-1$
+    /**
+     * When to show the size of the folders.
+     * @hide
+     */
+    SETTINGS_SHOW_FOLDER_SIZES("cm_filemanager_show_folder_sizes", Boolean.FALSE), //$NON-NLS-1$
 
     /**
      * When to use case sensitive comparison in sorting of files
@@ -129,6 +134,20 @@ public enum FileManagerSettings {
     SETTINGS_SORT_SEARCH_RESULTS_MODE(
             "cm_filemanager_sort_search_results_mode", //$NON-NLS-1$
             SearchSortResultMode.RELEVANCE),
+    /**
+     * When to search in the content of the files instead of in their names
+     * @hide
+     */
+    SETTINGS_SEARCH_CONTENTS(
+            "cm_filemanager_search_contents", //$NON-NLS-1$
+            Boolean.FALSE),
+    /**
+     * When to keep in memory only the most relevant search results
+     * @hide
+     */
+    SETTINGS_LIMIT_SEARCH_RESULTS(
+            "cm_filemanager_limit_search_results", //$NON-NLS-1$
+            Boolean.TRUE),
     /**
      * When to save the search terms
      * @hide
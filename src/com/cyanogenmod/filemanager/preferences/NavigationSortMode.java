@@ -36,7 +36,17 @@ public enum NavigationSortMode implements ObjectIdentifier {
     /**
      * That mode sorts objects by date (descending).
      */
-    DATE_DESC(3);
+    DATE_DESC(3),
+    /**
+     * That mode sorts objects by size (ascending). The size of the folders is the
+     * last known size of its tree.
+     */
+    SIZE_ASC(4),
+    /**
+     * That mode sorts objects by size (descending). The size of the folders is the
+     * last known size of its tree.
+     */
+    SIZE_DESC(5);
 
     private int mId;
 
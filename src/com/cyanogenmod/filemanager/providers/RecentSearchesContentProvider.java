@@ -16,10 +16,27 @@
 
 package com.cyanogenmod.filemanager.providers;
 
+import android.app.SearchManager;
 import android.content.SearchRecentSuggestionsProvider;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.activities.NavigationActivity;
+import com.cyanogenmod.filemanager.util.SuggestionIndex;
+
+import java.io.File;
+import java.util.List;
 
 /**
- * A content provider for manage the user search history.
+ * A content provider for manage the user search history.<br/>
+ * <br/>
+ * The recent searches are still saved by this provider, but the suggestions are answered
+ * by the {@link SuggestionIndex} (recent searches, bookmarks, history and frequent
+ * directories) instead of a SQL scan of the recent searches. A search term suggestion
+ * starts a search, while a directory suggestion navigates to the directory.
  */
 public class RecentSearchesContentProvider extends SearchRecentSuggestionsProvider {
 
@@ -34,6 +51,19 @@ public class RecentSearchesContentProvider extends SearchRecentSuggestionsProvid
      */
     public static final int MODE = DATABASE_MODE_QUERIES;
 
+    // The max number of suggestions returned
+    private static final int MAX_SUGGESTIONS = 10;
+
+    private static final String[] SUGGESTION_COLUMNS = {
+        BaseColumns._ID,
+        SearchManager.SUGGEST_COLUMN_ICON_1,
+        SearchManager.SUGGEST_COLUMN_TEXT_1,
+        SearchManager.SUGGEST_COLUMN_TEXT_2,
+        SearchManager.SUGGEST_COLUMN_QUERY,
+        SearchManager.SUGGEST_COLUMN_INTENT_ACTION,
+        SearchManager.SUGGEST_COLUMN_INTENT_DATA
+    };
+
     /**
      * Constructor of <code>RecentSearchesContentProvider</code>.
      */
@@ -41,4 +71,57 @@ public class RecentSearchesContentProvider extends SearchRecentSuggestionsProvid
         super();
         setupSuggestions(AUTHORITY, MODE);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        if (uri.getPathSegments().size() != 1
+                || !SearchManager.SUGGEST_URI_PATH_QUERY.equals(uri.getLastPathSegment())) {
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+
+        // The typed text is the argument of the suggest selection
+        String prefix = selectionArgs != null && selectionArgs.length > 0
+                ? selectionArgs[0]
+                : ""; //$NON-NLS-1$
+        List<SuggestionIndex.Suggestion> suggestions =
+                SuggestionIndex.getInstance(getContext()).suggest(prefix, MAX_SUGGESTIONS);
+        MatrixCursor cursor = new MatrixCursor(SUGGESTION_COLUMNS, suggestions.size());
+        int cc = suggestions.size();
+        for (int i = 0; i < cc; i++) {
+            SuggestionIndex.Suggestion suggestion = suggestions.get(i);
+            String path = suggestion.getPath();
+            cursor.addRow(new Object[]{
+                    Integer.valueOf(i),
+                    String.valueOf(getIcon(suggestion.getKind())),
+                    suggestion.getText(),
+                    path,
+                    path == null ? suggestion.getText() : null,
+                    path == null ? null : NavigationActivity.ACTION_NAVIGATE_TO,
+                    path == null ? null : Uri.fromFile(new File(path)).toString()});
+        }
+        return cursor;
+    }
+
+    /**
+     * Method that returns the icon of a kind of suggestion.
+     *
+     * @param kind The kind of suggestion
+     * @return int The resource identifier of the icon
+     */
+    private static int getIcon(SuggestionIndex.KIND kind) {
+        switch (kind) {
+            case BOOKMARK:
+                return R.drawable.ic_holo_light_user_defined_bookmark;
+            case HISTORY:
+                return R.drawable.ic_holo_light_history;
+            case DIRECTORY:
+                return R.drawable.ic_fso_folder;
+            default:
+                return R.drawable.ic_holo_light_history_search;
+        }
+    }
 }
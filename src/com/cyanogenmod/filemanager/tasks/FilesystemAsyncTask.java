@@ -145,17 +145,23 @@ public class FilesystemAsyncTask extends AsyncTask<String, Integer, Boolean> {
             if (isCancelled()) {
                 return Boolean.TRUE;
             }
+            // The disk usage is read here (cached and shared with other requests of the
+            // same mount point), only the views are updated in the ui thread
+            DiskUsage diskUsage = null;
+            try {
+                diskUsage = MountPointHelper.getMountPointDiskUsage(mp);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to retrieve disk usage information", e); //$NON-NLS-1$
+                diskUsage = new DiskUsage(
+                        mp.getMountPoint(), 0, 0, 0);
+            }
+            if (isCancelled()) {
+                return Boolean.TRUE;
+            }
+            final DiskUsage du = diskUsage;
             this.mDiskUsageInfo.post(new Runnable() {
                 @Override
                 public void run() {
-                    DiskUsage du = null;
-                    try {
-                         du = MountPointHelper.getMountPointDiskUsage(mp);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Failed to retrieve disk usage information", e); //$NON-NLS-1$
-                        du = new DiskUsage(
-                                mp.getMountPoint(), 0, 0, 0);
-                    }
                     int usage = 0;
                     if (du != null && du.getTotal() != 0) {
                         usage = (int)(du.getUsed() * 100 / du.getTotal());
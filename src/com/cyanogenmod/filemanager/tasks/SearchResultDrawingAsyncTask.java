@@ -29,11 +29,6 @@ import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.SearchResult;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
 import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
-import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
-import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
-import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
-import com.cyanogenmod.filemanager.preferences.Preferences;
-import com.cyanogenmod.filemanager.preferences.SearchSortResultMode;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
@@ -104,12 +99,8 @@ public class SearchResultDrawingAsyncTask extends AsyncTask<Object, Integer, Boo
             showHideWaiting(true);
 
             // Get sort mode
-            String defaultValue = ((ObjectStringIdentifier)FileManagerSettings.
-                    SETTINGS_SORT_SEARCH_RESULTS_MODE.getDefaultValue()).getId();
-            String value = Preferences.getSharedPreferences().getString(
-                                FileManagerSettings.SETTINGS_SORT_SEARCH_RESULTS_MODE.getId(),
-                                defaultValue);
-            SearchSortResultMode mode = SearchSortResultMode.fromId(value);
+            Comparator<SearchResult> comparator =
+                    SearchHelper.getResultComparator(SearchHelper.getSortResultMode());
 
             // Are we in ChRooted environment?
             boolean chRooted =
@@ -127,16 +118,8 @@ public class SearchResultDrawingAsyncTask extends AsyncTask<Object, Integer, Boo
                             FileHelper.applyUserPreferences(
                                     this.mFiles, restrictions, true, chRooted),
                             this.mQueries);
-            if (mode.compareTo(SearchSortResultMode.NAME) == 0) {
-                Collections.sort(result, new Comparator<SearchResult>() {
-                    @Override
-                    public int compare(SearchResult lhs, SearchResult rhs) {
-                        return FileHelper.doCompare(
-                                lhs.getFso(), rhs.getFso(), NavigationSortMode.NAME_ASC);
-                    }
-                });
-            } else if (mode.compareTo(SearchSortResultMode.RELEVANCE) == 0) {
-                Collections.sort(result);
+            if (comparator != null) {
+                Collections.sort(result, comparator);
             }
 
             this.mSearchListView.post(new Runnable() {
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.tasks;
+
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.adapters.SearchResultAdapter;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.model.SearchResult;
+import com.cyanogenmod.filemanager.preferences.AccessMode;
+import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+import com.cyanogenmod.filemanager.util.SearchHelper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class for merge a batch of new search results in the results already drawn.<br/>
+ * <br/>
+ * The batch is filtered and scored in background, and then every result is inserted in
+ * its sorted position of the adapter. The tasks are executed serially, so the batches are
+ * merged in the order they were found, and an optional callback is invoked after the merge
+ * (a task without files can be used to run code after all the pending merges).
+ */
+public class SearchResultMergingAsyncTask
+        extends AsyncTask<Object, Integer, List<SearchResult>> {
+
+    private static final String TAG = "SearchResultMergingAsyncTask"; //$NON-NLS-1$
+
+    private final SearchResultAdapter mAdapter;
+    private final List<FileSystemObject> mFiles;
+    private final Query mQueries;
+    private final Runnable mOnMerged;
+    private Comparator<SearchResult> mComparator;
+
+    /**
+     * Constructor of <code>SearchResultMergingAsyncTask</code>.
+     *
+     * @param adapter The adapter where merge the results
+     * @param files The new files
+     * @param queries The terms of the search
+     * @param onMerged A callback invoked in the UI thread after the merge (can be null)
+     */
+    public SearchResultMergingAsyncTask(
+            SearchResultAdapter adapter, List<FileSystemObject> files,
+            Query queries, Runnable onMerged) {
+        super();
+        this.mAdapter = adapter;
+        this.mFiles = new ArrayList<FileSystemObject>(files);
+        this.mQueries = queries;
+        this.mOnMerged = onMerged;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<SearchResult> doInBackground(Object... params) {
+        try {
+            // Get sort mode
+            this.mComparator =
+                    SearchHelper.getResultComparator(SearchHelper.getSortResultMode());
+            if (this.mFiles.isEmpty()) {
+                return new ArrayList<SearchResult>();
+            }
+
+            // Are we in ChRooted environment?
+            boolean chRooted =
+                    FileManagerApplication.getAccessMode().compareTo(AccessMode.SAFE) == 0;
+
+            // Create display restrictions
+            Map<DisplayRestrictions, Object> restrictions =
+                    new HashMap<DisplayRestrictions, Object>();
+            restrictions.put(
+                    DisplayRestrictions.MIME_TYPE_RESTRICTION, MimeTypeHelper.ALL_MIME_TYPES);
+
+            // Score only the new files
+            return SearchHelper.convertToResults(
+                    FileHelper.applyUserPreferences(this.mFiles, restrictions, true, chRooted),
+                    this.mQueries);
+
+        } catch (Throwable ex) {
+            Log.w(TAG, "Failed to merge the search results", ex); //$NON-NLS-1$
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onPostExecute(List<SearchResult> result) {
+        if (result != null) {
+            this.mAdapter.mergeResults(result, this.mComparator);
+        }
+        if (this.mOnMerged != null) {
+            this.mOnMerged.run();
+        }
+    }
+
+}
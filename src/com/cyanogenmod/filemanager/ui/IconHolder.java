@@ -16,31 +16,30 @@
 
 package com.cyanogenmod.filemanager.ui;
 
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.database.ContentObserver;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.media.ThumbnailUtils;
-import android.net.Uri;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
 import android.os.Message;
 import android.widget.ImageView;
 
+import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MediaAlbumIndex;
 import com.cyanogenmod.filemanager.util.MediaHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.KnownMimeTypeResolver;
 
+import java.io.File;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -48,29 +47,25 @@ import java.util.Map;
  */
 public class IconHolder {
 
-    private static final int MAX_CACHE = 500;
-
-    private static final int MSG_LOAD = 1;
-    private static final int MSG_LOADED = 2;
-    private static final int MSG_DESTROY = 3;
+    private static final int MSG_LOADED = 1;
 
     private final Map<String, Drawable> mIcons;     // Themes based
-    private final Map<String, Drawable> mAppIcons;  // App based
+    private final ThumbnailCache mThumbnails;       // App, media and album based
 
-    private Map<String, Long> mAlbums;      // Media albums
+    private MediaAlbumIndex mAlbums;        // Media albums
 
-    private Map<ImageView, FileSystemObject> mRequests;
+    private Map<ImageView, String> mRequests;   // Requested thumbnail keys
+    private Map<ImageView, Bitmap> mDrawn;      // Retained thumbnails set in views
 
     private final Context mContext;
     private final boolean mUseThumbs;
-    private boolean mNeedAlbumUpdate = true;
 
-    private HandlerThread mWorkerThread;
-    private Handler mWorkerHandler;
+    private ThumbnailScheduler mScheduler;
+    private boolean mReleased;
 
     private static class LoadResult {
-        FileSystemObject fso;
-        Drawable result;
+        String key;
+        Bitmap result;
     }
 
     private Handler mHandler = new Handler() {
@@ -79,37 +74,32 @@ public class IconHolder {
             switch (msg.what) {
                 case MSG_LOADED:
                     processResult((LoadResult) msg.obj);
-                    sendEmptyMessageDelayed(MSG_DESTROY, 3000);
-                    break;
-                case MSG_DESTROY:
-                    shutdownWorker();
                     break;
             }
         }
 
         private void processResult(LoadResult result) {
-            // Cache the new drawable
-            final String filePath = MediaHelper.normalizeMediaPath(result.fso.getFullPath());
-            mAppIcons.put(filePath, result.result);
-
-            // find the request for it
-            for (Map.Entry<ImageView, FileSystemObject> entry : mRequests.entrySet()) {
-                final ImageView imageView = entry.getKey();
-                final FileSystemObject fso = entry.getValue();
-                if (fso == result.fso) {
-                    imageView.setImageDrawable(result.result);
-                    mRequests.remove(imageView);
-                    break;
+            // find the requests for it (the new thumbnail was already cached by the worker).
+            // Requests are deduplicated, so more than one view could be waiting for it.
+            // The worker retained the thumbnail once, for the first view
+            boolean retained = result.result != null;
+            Iterator<Map.Entry<ImageView, String>> it = mRequests.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ImageView, String> entry = it.next();
+                if (entry.getValue().equals(result.key)) {
+                    if (result.result != null) {
+                        if (!retained) {
+                            mThumbnails.retain(result.result);
+                        }
+                        retained = false;
+                        setThumbnail(entry.getKey(), result.result);
+                    }
+                    it.remove();
                 }
             }
-        }
-    };
-
-    private ContentObserver mMediaObserver = new ContentObserver(new Handler()) {
-        @Override
-        public void onChange(boolean selfChange) {
-            synchronized (this) {
-                mNeedAlbumUpdate = true;
+            if (retained) {
+                // No view wants it anymore
+                mThumbnails.release(result.result);
             }
         }
     };
@@ -124,21 +114,16 @@ public class IconHolder {
         super();
         this.mContext = context;
         this.mUseThumbs = useThumbs;
-        this.mRequests = new HashMap<ImageView, FileSystemObject>();
+        this.mRequests = new HashMap<ImageView, String>();
+        this.mDrawn = new HashMap<ImageView, Bitmap>();
         this.mIcons = new HashMap<String, Drawable>();
-        this.mAppIcons = new LinkedHashMap<String, Drawable>(MAX_CACHE, .75F, true) {
-            private static final long serialVersionUID = 1L;
-            @Override
-            protected boolean removeEldestEntry(Entry<String, Drawable> eldest) {
-                return size() > MAX_CACHE;
-            }
-        };
-        this.mAlbums = new HashMap<String, Long>();
+        this.mThumbnails = ThumbnailCache.getInstance(context);
         if (useThumbs) {
-            final ContentResolver cr = mContext.getContentResolver();
-            for (Uri uri : MediaHelper.RELEVANT_URIS) {
-                cr.registerContentObserver(uri, true, mMediaObserver);
-            }
+            this.mAlbums = MediaAlbumIndex.getInstance(context);
+            this.mAlbums.register();
+            this.mScheduler = new ThumbnailScheduler("IconHolderLoader", //$NON-NLS-1$
+                    new ThumbnailLoader(),
+                    context.getResources().getInteger(R.integer.thumbnail_prefetch_budget));
         }
     }
 
@@ -170,85 +155,186 @@ public class IconHolder {
      * @return Drawable The drawable reference
      */
     public void loadDrawable(ImageView iconView, FileSystemObject fso, Drawable defaultIcon) {
+        loadDrawable(iconView, fso, defaultIcon, -1);
+    }
+
+    /**
+     * Method that returns a drawable reference of a FileSystemObject.
+     *
+     * @param iconView View to load the drawable into
+     * @param fso The FileSystemObject reference
+     * @param defaultIcon Drawable to be used in case no specific one could be found
+     * @param position The position of the item in the view (used to prioritize the loads
+     * of the visible items), or -1 if unknown
+     */
+    public void loadDrawable(ImageView iconView, FileSystemObject fso, Drawable defaultIcon,
+            int position) {
         if (!mUseThumbs) {
             iconView.setImageDrawable(defaultIcon);
             return;
         }
 
         // Is cached?
-        final String filePath = MediaHelper.normalizeMediaPath(fso.getFullPath());
-        if (this.mAppIcons.containsKey(filePath)) {
-            iconView.setImageDrawable(this.mAppIcons.get(filePath));
+        final String key = getThumbnailKey(fso);
+        Bitmap thumb = this.mThumbnails.acquire(key);
+        if (thumb != null) {
+            setThumbnail(iconView, thumb);
             return;
         }
 
-        mRequests.put(iconView, fso);
+        setThumbnail(iconView, null);
         iconView.setImageDrawable(defaultIcon);
-
-        mHandler.removeMessages(MSG_DESTROY);
-        if (mWorkerThread == null) {
-            mWorkerThread = new HandlerThread("IconHolderLoader");
-            mWorkerThread.start();
-            mWorkerHandler = new WorkerHandler(mWorkerThread.getLooper());
+        int lane = getLane(fso);
+        if (lane == -1) {
+            // This kind of file hasn't a thumbnail
+            return;
         }
-        Message msg = mWorkerHandler.obtainMessage(MSG_LOAD, fso);
-        msg.sendToTarget();
+        mRequests.put(iconView, key);
+        mScheduler.schedule(key, fso, lane, position);
     }
 
     /**
      * Cancel loading of a drawable for a certain ImageView.
      */
     public void cancelLoad(ImageView view) {
-        FileSystemObject fso = mRequests.get(view);
-        if (fso != null && mWorkerHandler != null) {
-            mWorkerHandler.removeMessages(MSG_LOAD, fso);
+        String key = mRequests.remove(view);
+        if (key != null && mScheduler != null && !mRequests.containsValue(key)) {
+            mScheduler.cancel(key);
         }
-        mRequests.remove(view);
     }
 
-    private class WorkerHandler extends Handler {
-        public WorkerHandler(Looper looper) {
-            super(looper);
+    /**
+     * Method that loads in background the thumbnail of a FileSystemObject that isn't
+     * displayed yet, so it's ready when its view is bound.
+     *
+     * @param fso The FileSystemObject reference
+     * @param position The position of the item in the view
+     * @return boolean If the thumbnail is cached or its load was scheduled; false if the
+     * prefetch budget is spent
+     */
+    public boolean prefetch(FileSystemObject fso, int position) {
+        if (!mUseThumbs) {
+            return true;
+        }
+        final String key = getThumbnailKey(fso);
+        if (this.mThumbnails.getFromMemory(key) != null) {
+            return true;
+        }
+        int lane = getLane(fso);
+        if (lane == -1) {
+            return true;
+        }
+        return mScheduler.prefetch(key, fso, lane, position);
+    }
+
+    /**
+     * Method that cancels all the pending prefetches.
+     */
+    public void cancelPrefetch() {
+        if (mScheduler != null) {
+            mScheduler.cancelPrefetches();
+        }
+    }
+
+    /**
+     * Method that sets a retained thumbnail in a view, releasing the thumbnail that the
+     * view was displaying, so it can be reused by the thumbnail cache.
+     *
+     * @param iconView The view
+     * @param thumb The retained thumbnail, or null to only release the current one
+     */
+    private void setThumbnail(ImageView iconView, Bitmap thumb) {
+        Bitmap current = mDrawn.remove(iconView);
+        if (current != null) {
+            mThumbnails.release(current);
+        }
+        if (thumb != null) {
+            iconView.setImageDrawable(new BitmapDrawable(mContext.getResources(), thumb));
+            mDrawn.put(iconView, thumb);
+        }
+    }
+
+    /**
+     * Method that sets the range of positions currently visible in the view. The loads
+     * of the items closer to the visible range are processed first.
+     *
+     * @param first The first visible position
+     * @param last The last visible position
+     */
+    public void setVisibleRange(int first, int last) {
+        if (mScheduler != null) {
+            mScheduler.setViewport(first, last);
+        }
+    }
+
+    /**
+     * Method that returns the lane of the scheduler where the thumbnail of a
+     * FileSystemObject must be loaded.
+     *
+     * @param fso The FileSystemObject
+     * @return int The lane, or -1 if the FileSystemObject hasn't a thumbnail
+     */
+    private int getLane(FileSystemObject fso) {
+        if (FileHelper.isDirectory(fso) || KnownMimeTypeResolver.isAndroidApp(mContext, fso)) {
+            return ThumbnailScheduler.LANE_CHEAP;
+        }
+        if (KnownMimeTypeResolver.isImage(mContext, fso)
+                || KnownMimeTypeResolver.isVideo(mContext, fso)) {
+            return ThumbnailScheduler.LANE_EXPENSIVE;
+        }
+        return -1;
+    }
+
+    private class ThumbnailLoader implements ThumbnailScheduler.Loader {
+        public ThumbnailLoader() {
+            super();
         }
 
         @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_LOAD:
-                    FileSystemObject fso = (FileSystemObject) msg.obj;
-                    Drawable d = loadDrawable(fso);
-                    if (d != null) {
-                        LoadResult result = new LoadResult();
-                        result.fso = fso;
-                        result.result = d;
-                        mHandler.obtainMessage(MSG_LOADED, result).sendToTarget();
-                    }
-                    break;
-            }
+        public void onLoad(String key, FileSystemObject fso) {
+            // Always notify, so the request is released even if there is no thumbnail.
+            // The thumbnail is retained, so it can't be reused until it's processed
+            LoadResult result = new LoadResult();
+            result.key = key;
+            result.result = loadThumbnail(fso);
+            mHandler.obtainMessage(MSG_LOADED, result).sendToTarget();
         }
 
-        private Drawable loadDrawable(FileSystemObject fso) {
+        private Bitmap loadThumbnail(FileSystemObject fso) {
             final String filePath = MediaHelper.normalizeMediaPath(fso.getFullPath());
 
-            if (KnownMimeTypeResolver.isAndroidApp(mContext, fso)) {
-                return getAppDrawable(fso);
-            } else if (KnownMimeTypeResolver.isImage(mContext, fso)) {
-                return getImageDrawable(filePath);
-            } else if (KnownMimeTypeResolver.isVideo(mContext, fso)) {
-                return getVideoDrawable(filePath);
-            } else if (FileHelper.isDirectory(fso)) {
-                synchronized (mMediaObserver) {
-                    if (mNeedAlbumUpdate) {
-                        mNeedAlbumUpdate = false;
-                        mAlbums = MediaHelper.getAllAlbums(mContext.getContentResolver());
-                    }
+            if (FileHelper.isDirectory(fso)) {
+                String art = mAlbums.getAlbumArt(filePath);
+                if (art == null) {
+                    return null;
                 }
-                if (mAlbums.containsKey(filePath)) {
-                    return getAlbumDrawable(mAlbums.get(filePath));
+                Bitmap thumb = getAlbumThumbnail(art);
+                if (thumb != null) {
+                    mThumbnails.putInMemory(getThumbnailKey(fso), thumb);
                 }
+                return thumb;
             }
 
-            return null;
+            // Was generated before?
+            final long size = fso.getSize();
+            final long modified = getLastModified(fso);
+            Bitmap thumb = mThumbnails.acquire(filePath, size, modified);
+            if (thumb != null) {
+                return thumb;
+            }
+
+            if (KnownMimeTypeResolver.isAndroidApp(mContext, fso)) {
+                thumb = toBitmap(getAppDrawable(fso));
+            } else if (KnownMimeTypeResolver.isImage(mContext, fso)) {
+                thumb = getImageThumbnail(filePath);
+            } else if (KnownMimeTypeResolver.isVideo(mContext, fso)) {
+                thumb = getVideoThumbnail(filePath);
+            }
+            if (thumb != null) {
+                mThumbnails.retain(thumb);
+                mThumbnails.put(filePath, size, modified, thumb);
+            }
+            return thumb;
         }
 
         /**
@@ -274,67 +360,95 @@ public class IconHolder {
             return null;
         }
 
+        /**
+         * Method that converts the icon of an app to a bitmap, so it can be cached
+         *
+         * @param drawable The drawable
+         * @return Bitmap The bitmap or null if drawable is null
+         */
+        private Bitmap toBitmap(Drawable drawable) {
+            if (drawable == null) {
+                return null;
+            }
+            if (drawable instanceof BitmapDrawable) {
+                return ((BitmapDrawable) drawable).getBitmap();
+            }
+            int w = Math.max(1, drawable.getIntrinsicWidth());
+            int h = Math.max(1, drawable.getIntrinsicHeight());
+            Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            drawable.setBounds(0, 0, w, h);
+            drawable.draw(canvas);
+            return bitmap;
+        }
+
         /**
          * Method that returns a thumbnail of the picture
          *
          * @param file The path to the file
-         * @return Drawable The drawable or null if cannot be extracted
+         * @return Bitmap The thumbnail or null if cannot be extracted
          */
-        private Drawable getImageDrawable(String file) {
-            Bitmap thumb = ThumbnailUtils.createImageThumbnail(
+        private Bitmap getImageThumbnail(String file) {
+            return ThumbnailUtils.createImageThumbnail(
                     MediaHelper.normalizeMediaPath(file),
                     ThumbnailUtils.TARGET_SIZE_MICRO_THUMBNAIL);
-            if (thumb == null) {
-                return null;
-            }
-            return new BitmapDrawable(mContext.getResources(), thumb);
         }
 
         /**
          * Method that returns a thumbnail of the video
          *
          * @param file The path to the file
-         * @return Drawable The drawable or null if cannot be extracted
+         * @return Bitmap The thumbnail or null if cannot be extracted
          */
-        private Drawable getVideoDrawable(String file) {
-            Bitmap thumb = ThumbnailUtils.createVideoThumbnail(
+        private Bitmap getVideoThumbnail(String file) {
+            return ThumbnailUtils.createVideoThumbnail(
                     MediaHelper.normalizeMediaPath(file),
                     ThumbnailUtils.TARGET_SIZE_MICRO_THUMBNAIL);
-            if (thumb == null) {
-                return null;
-            }
-            return new BitmapDrawable(mContext.getResources(), thumb);
         }
 
         /**
-         * Method that returns a thumbnail of the album folder
+         * Method that returns a thumbnail of the album folder. The thumbnail is cached
+         * by the album art file, so it's regenerated only if the album art changes.
          *
-         * @param albumId The album identifier
-         * @return Drawable The drawable or null if cannot be extracted
+         * @param path The path of the album art
+         * @return Bitmap The retained thumbnail or null if cannot be extracted
          */
-        private Drawable getAlbumDrawable(long albumId) {
-            String path = MediaHelper.getAlbumThumbnailPath(mContext.getContentResolver(), albumId);
-            if (path == null) {
-                return null;
+        private Bitmap getAlbumThumbnail(String path) {
+            File art = new File(path);
+            Bitmap thumb = mThumbnails.acquire(path, art.length(), art.lastModified());
+            if (thumb != null) {
+                return thumb;
             }
-            Bitmap thumb = ThumbnailUtils.createImageThumbnail(path,
+            thumb = ThumbnailUtils.createImageThumbnail(path,
                     ThumbnailUtils.TARGET_SIZE_MICRO_THUMBNAIL);
-            if (thumb == null) {
-                return null;
+            if (thumb != null) {
+                mThumbnails.retain(thumb);
+                mThumbnails.put(path, art.length(), art.lastModified(), thumb);
             }
-            return new BitmapDrawable(mContext.getResources(), thumb);
+            return thumb;
         }
     }
 
     /**
-     * Shut down worker thread
+     * Method that returns the key of the thumbnail of a file system object in the
+     * thumbnail cache
+     *
+     * @param fso The FileSystemObject
+     * @return String The thumbnail key
      */
-    private void shutdownWorker() {
-        if (mWorkerThread != null) {
-            mWorkerThread.getLooper().quit();
-            mWorkerHandler = null;
-            mWorkerThread = null;
-        }
+    private static String getThumbnailKey(FileSystemObject fso) {
+        return ThumbnailCache.getKey(MediaHelper.normalizeMediaPath(fso.getFullPath()),
+                fso.getSize(), getLastModified(fso));
+    }
+
+    /**
+     * Method that returns the last modification time of a file system object
+     *
+     * @param fso The FileSystemObject
+     * @return long The last modification time, or 0 if unknown
+     */
+    private static long getLastModified(FileSystemObject fso) {
+        return fso.getLastModifiedTime() != null ? fso.getLastModifiedTime().getTime() : 0;
     }
 
     /**
@@ -343,8 +457,26 @@ public class IconHolder {
     public void cleanup() {
         this.mRequests.clear();
         this.mIcons.clear();
-        this.mAppIcons.clear();
-        mContext.getContentResolver().unregisterContentObserver(mMediaObserver);
-        shutdownWorker();
+        // Release the thumbnails drawn by this holder. The views can't keep them, because
+        // once released they can be reused for other thumbnails
+        for (Map.Entry<ImageView, Bitmap> entry : this.mDrawn.entrySet()) {
+            ImageView view = entry.getKey();
+            Drawable current = view.getDrawable();
+            if (current instanceof BitmapDrawable
+                    && ((BitmapDrawable)current).getBitmap() == entry.getValue()) {
+                view.setImageDrawable(null);
+            }
+            mThumbnails.release(entry.getValue());
+        }
+        this.mDrawn.clear();
+        if (mAlbums != null && !mReleased) {
+            mAlbums.unregister();
+        }
+        mReleased = true;
+        if (mScheduler != null) {
+            mScheduler.shutdown();
+        }
+        // The pending results aren't removed. They must be processed to release their
+        // thumbnails (there are no requests, so they are only released)
     }
 }
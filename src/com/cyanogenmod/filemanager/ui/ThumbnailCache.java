@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.cyanogenmod.filemanager.R;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A two-tier (memory + disk) cache of thumbnails, shared by all the {@link IconHolder}
+ * instances of the process.<br/>
+ * <br/>
+ * The memory tier is a LRU of decoded bitmaps bounded by their byte count, sized as a
+ * fraction of the memory class of the device (<code>R.integer.thumbnail_cache_memory_percent
+ * </code>). The disk tier is a {@link ThumbnailDiskCache} that survives the process, so
+ * thumbnails only need to be generated again when the source file changes.<br/>
+ * <br/>
+ * Bitmaps evicted from the memory tier that aren't displayed anymore are kept in a small
+ * pool and reused to decode the next thumbnails read from disk.
+ */
+public final class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    private static final String CACHE_DIR = "thumbnails"; //$NON-NLS-1$
+
+    // The max size of the thumbnails stored in disk
+    private static final long MAX_DISK_CACHE = 16 * 1024 * 1024;
+    // The size of the pool of reusable bitmaps, as a fraction of the memory cache
+    private static final int REUSE_POOL_DIVIDER = 16;
+
+    private static final int JPEG_QUALITY = 85;
+
+    private static ThumbnailCache sInstance;
+
+    private final File mDir;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private ThumbnailDiskCache mDiskCache;
+
+    // Bitmaps in the memory cache (bitmap -> number of keys, for album folders)
+    private final Map<Bitmap, Integer> mCached;
+    // Bitmaps currently set in a view (bitmap -> number of views)
+    private final Map<Bitmap, Integer> mDisplayed;
+    // Bitmaps evicted while they were displayed
+    private final Set<Bitmap> mEvictedDisplayed;
+    // Bitmaps that can be reused in the next decode
+    private final List<Bitmap> mReusePool;
+    private final int mMaxReusePoolBytes;
+    private int mReusePoolBytes;
+
+    private int mDiskHitCount;
+    private int mReuseCount;
+
+    /**
+     * Constructor of <code>ThumbnailCache</code>.
+     *
+     * @param context The current context
+     */
+    private ThumbnailCache(Context context) {
+        super();
+        this.mDir = new File(context.getCacheDir(), CACHE_DIR);
+        this.mCached = new HashMap<Bitmap, Integer>();
+        this.mDisplayed = new HashMap<Bitmap, Integer>();
+        this.mEvictedDisplayed = new HashSet<Bitmap>();
+        this.mReusePool = new ArrayList<Bitmap>();
+
+        // The app requests a large heap, but the thumbnails must fit in the normal one,
+        // so size the cache with the memory class of the device
+        ActivityManager am =
+                (ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE);
+        long memoryClass = am.getMemoryClass() * 1024L * 1024L;
+        int percent = context.getResources().getInteger(R.integer.thumbnail_cache_memory_percent);
+        int maxBytes = (int)Math.min(memoryClass * percent / 100,
+                Runtime.getRuntime().maxMemory() / 4);
+        this.mMaxReusePoolBytes = maxBytes / REUSE_POOL_DIVIDER;
+        this.mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(
+                    boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                onBitmapRemoved(oldValue);
+            }
+        };
+    }
+
+    /**
+     * Method that returns the thumbnail cache of the process.
+     *
+     * @param context The current context
+     * @return ThumbnailCache The thumbnail cache
+     */
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that releases memory when the system asks for it (see
+     * {@link ComponentCallbacks2#onTrimMemory(int)}).
+     *
+     * @param level The trim level
+     */
+    public static void trimMemory(int level) {
+        ThumbnailCache cache;
+        synchronized (ThumbnailCache.class) {
+            cache = sInstance;
+        }
+        if (cache == null) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // The process is near the top of the kill list. Drop everything
+            cache.mMemoryCache.evictAll();
+            cache.clearReusePool();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.mMemoryCache.trimToSize(cache.mMemoryCache.maxSize() / 2);
+            cache.clearReusePool();
+        }
+        if (DEBUG) {
+            Log.v(TAG, "trimMemory(" + level + "): " + cache.getStats()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Method that returns the key of a thumbnail in the memory cache.
+     *
+     * @param path The absolute path of the file
+     * @param size The size of the file
+     * @param modified The last modification time of the file
+     * @return String The key
+     */
+    public static String getKey(String path, long size, long modified) {
+        return path + ':' + size + ':' + modified;
+    }
+
+    /**
+     * Method that returns a thumbnail from the memory cache. This method is cheap and
+     * could be called from the main thread.
+     *
+     * @param key The key of the thumbnail (see {@link #getKey(String, long, long)})
+     * @return Bitmap The thumbnail or null if isn't in memory
+     */
+    public Bitmap getFromMemory(String key) {
+        return this.mMemoryCache.get(key);
+    }
+
+    /**
+     * Method that returns a thumbnail from the memory cache or, if not present, from the
+     * disk cache, and retains it (see {@link #retain(Bitmap)}), so it can't be reused
+     * while it's passed to the main thread. The caller must release it if it isn't
+     * displayed. Must not be called from the main thread.
+     *
+     * @param path The absolute path of the file
+     * @param size The size of the file
+     * @param modified The last modification time of the file
+     * @return Bitmap The retained thumbnail or null if isn't cached
+     */
+    public Bitmap acquire(String path, long size, long modified) {
+        final String key = getKey(path, size, modified);
+        Bitmap bitmap = acquire(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        ThumbnailDiskCache diskCache = getDiskCache();
+        if (diskCache == null) {
+            return null;
+        }
+        byte[] data = diskCache.get(path, size, modified);
+        if (data == null) {
+            return null;
+        }
+        bitmap = decode(data);
+        if (bitmap == null) {
+            diskCache.remove(path);
+            return null;
+        }
+        synchronized (this) {
+            this.mDiskHitCount++;
+        }
+        // Retain it before it can be evicted
+        retain(bitmap);
+        putInMemory(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Method that stores a new thumbnail in both tiers. Must not be called from the
+     * main thread. If the caller keeps using the thumbnail, it must retain it before
+     * (see {@link #retain(Bitmap)}), otherwise it could be evicted and reused.
+     *
+     * @param path The absolute path of the file
+     * @param size The size of the file
+     * @param modified The last modification time of the file
+     * @param bitmap The thumbnail
+     */
+    public void put(String path, long size, long modified, Bitmap bitmap) {
+        putInMemory(getKey(path, size, modified), bitmap);
+
+        ThumbnailDiskCache diskCache = getDiskCache();
+        if (diskCache == null) {
+            return;
+        }
+        // Photos and videos don't need alpha and are much smaller as jpeg
+        ByteArrayOutputStream os = new ByteArrayOutputStream(16384);
+        Bitmap.CompressFormat format = bitmap.hasAlpha()
+                ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+        if (bitmap.compress(format, JPEG_QUALITY, os)) {
+            diskCache.put(path, size, modified, os.toByteArray());
+        }
+    }
+
+    /**
+     * Method that stores a thumbnail only in the memory cache (for thumbnails that
+     * are already in disk under other key, like the album art of a folder).
+     *
+     * @param key The key of the thumbnail
+     * @param bitmap The thumbnail
+     */
+    public void putInMemory(String key, Bitmap bitmap) {
+        synchronized (this) {
+            Integer count = this.mCached.get(bitmap);
+            this.mCached.put(bitmap, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+        }
+        this.mMemoryCache.put(key, bitmap);
+    }
+
+    /**
+     * Method that returns a thumbnail from the memory cache and retains it to be displayed
+     * (see {@link #retain(Bitmap)}). This method is cheap and could be called from the
+     * main thread.
+     *
+     * @param key The key of the thumbnail (see {@link #getKey(String, long, long)})
+     * @return Bitmap The thumbnail or null if isn't in memory
+     */
+    public synchronized Bitmap acquire(String key) {
+        Bitmap bitmap = this.mMemoryCache.get(key);
+        if (bitmap != null) {
+            retain(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Method that must be called when a thumbnail is set in a view. A displayed
+     * bitmap is never reused.
+     *
+     * @param bitmap The thumbnail
+     */
+    public synchronized void retain(Bitmap bitmap) {
+        if (this.mReusePool.remove(bitmap)) {
+            this.mReusePoolBytes -= bitmap.getByteCount();
+        }
+        Integer count = this.mDisplayed.get(bitmap);
+        this.mDisplayed.put(bitmap, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+    }
+
+    /**
+     * Method that must be called when a thumbnail is replaced in a view.
+     *
+     * @param bitmap The thumbnail
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Integer count = this.mDisplayed.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count.intValue() > 1) {
+            this.mDisplayed.put(bitmap, Integer.valueOf(count.intValue() - 1));
+            return;
+        }
+        this.mDisplayed.remove(bitmap);
+        if (this.mEvictedDisplayed.remove(bitmap)) {
+            addToReusePool(bitmap);
+        }
+    }
+
+    /**
+     * Method that returns the number of thumbnails currently set in a view.
+     *
+     * @return int The number of displayed thumbnails
+     */
+    synchronized int getDisplayedCount() {
+        return this.mDisplayed.size();
+    }
+
+    /**
+     * Method that returns the statistics of the cache.
+     *
+     * @return String The statistics
+     */
+    public synchronized String getStats() {
+        int hits = this.mMemoryCache.hitCount();
+        int misses = this.mMemoryCache.missCount();
+        int hitRate = hits + misses == 0 ? 0 : (100 * hits / (hits + misses));
+        return String.format(
+                "ThumbnailCache[size=%d/%d, hits=%d, misses=%d, hitRate=%d%%, " + //$NON-NLS-1$
+                "diskHits=%d, evictions=%d, reused=%d, pool=%d]", //$NON-NLS-1$
+                Integer.valueOf(this.mMemoryCache.size()),
+                Integer.valueOf(this.mMemoryCache.maxSize()),
+                Integer.valueOf(hits), Integer.valueOf(misses), Integer.valueOf(hitRate),
+                Integer.valueOf(this.mDiskHitCount),
+                Integer.valueOf(this.mMemoryCache.evictionCount()),
+                Integer.valueOf(this.mReuseCount),
+                Integer.valueOf(this.mReusePoolBytes));
+    }
+
+    /**
+     * Method invoked when a bitmap leaves the memory cache.
+     *
+     * @param bitmap The bitmap
+     */
+    synchronized void onBitmapRemoved(Bitmap bitmap) {
+        Integer count = this.mCached.remove(bitmap);
+        if (count != null && count.intValue() > 1) {
+            // Still cached under other key
+            this.mCached.put(bitmap, Integer.valueOf(count.intValue() - 1));
+            return;
+        }
+        if (this.mDisplayed.containsKey(bitmap)) {
+            // Reuse it once it isn't displayed
+            this.mEvictedDisplayed.add(bitmap);
+            return;
+        }
+        addToReusePool(bitmap);
+    }
+
+    /**
+     * Method that decodes a thumbnail read from disk, reusing a pooled bitmap if there
+     * is one with the same dimensions.
+     *
+     * @param data The compressed thumbnail
+     * @return Bitmap The thumbnail
+     */
+    private Bitmap decode(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inSampleSize = 1;
+
+        Bitmap candidate = takeFromReusePool(options.outWidth, options.outHeight);
+        if (candidate != null) {
+            options.inBitmap = candidate;
+            try {
+                Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                if (bitmap != null) {
+                    synchronized (this) {
+                        this.mReuseCount++;
+                    }
+                    return bitmap;
+                }
+            } catch (IllegalArgumentException ex) {
+                // The bitmap can't be reused for this image
+            }
+            options.inBitmap = null;
+        }
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Method that adds a bitmap to the reuse pool, if it can be reused.
+     *
+     * @param bitmap The bitmap
+     */
+    private void addToReusePool(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+        int bytes = bitmap.getByteCount();
+        if (bytes > this.mMaxReusePoolBytes) {
+            return;
+        }
+        while (this.mReusePoolBytes + bytes > this.mMaxReusePoolBytes
+                && !this.mReusePool.isEmpty()) {
+            this.mReusePoolBytes -= this.mReusePool.remove(0).getByteCount();
+        }
+        this.mReusePool.add(bitmap);
+        this.mReusePoolBytes += bytes;
+    }
+
+    /**
+     * Method that extracts a bitmap with the passed dimensions from the reuse pool.
+     *
+     * @param width The width
+     * @param height The height
+     * @return Bitmap The bitmap or null if there is no bitmap with the dimensions
+     */
+    private synchronized Bitmap takeFromReusePool(int width, int height) {
+        int cc = this.mReusePool.size();
+        for (int i = cc - 1; i >= 0; i--) {
+            Bitmap bitmap = this.mReusePool.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+                this.mReusePool.remove(i);
+                this.mReusePoolBytes -= bitmap.getByteCount();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that empties the reuse pool.
+     */
+    private synchronized void clearReusePool() {
+        this.mReusePool.clear();
+        this.mReusePoolBytes = 0;
+    }
+
+    /**
+     * Method that returns the disk cache, opening it on first use.
+     *
+     * @return ThumbnailDiskCache The disk cache
+     */
+    private synchronized ThumbnailDiskCache getDiskCache() {
+        if (this.mDiskCache == null) {
+            this.mDiskCache = new ThumbnailDiskCache(this.mDir, MAX_DISK_CACHE);
+        }
+        return this.mDiskCache;
+    }
+}
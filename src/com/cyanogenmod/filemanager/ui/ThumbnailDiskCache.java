@@ -0,0 +1,580 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A persistent thumbnail store backed by a single append-only journal file.<br/>
+ * <br/>
+ * Every record of the journal holds the path of the source file, its size and its
+ * last modification time (which together form the cache key) and the compressed image
+ * data. The index is kept in memory (in access order) and rebuilt by scanning the
+ * journal when the store is opened. Records are never rewritten in place; when the
+ * live data exceeds the size budget the least recently used entries are dropped from
+ * the index, and the journal is compacted in background once the dead records take
+ * more space than the live ones.<br/>
+ * <br/>
+ * An entry dropped from the index (evicted, stale or removed) is recorded with a
+ * remove record, so the rebuilt index doesn't bring it back.
+ */
+public class ThumbnailDiskCache {
+
+    private static final String TAG = "ThumbnailDiskCache"; //$NON-NLS-1$
+
+    private static final String JOURNAL_FILE = "thumbnails.journal"; //$NON-NLS-1$
+    private static final String JOURNAL_TMP_FILE = "thumbnails.journal.tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x434d5443; // CMTC
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_MARK = 0x54;
+    private static final int REMOVE_MARK = 0x52;
+
+    // Don't bother compacting journals with less garbage than this
+    private static final long MIN_COMPACT_GARBAGE = 512 * 1024;
+
+    /**
+     * An entry of the in-memory index.
+     */
+    private static class Entry {
+        Entry() {
+            super();
+        }
+        long mSize;
+        long mModified;
+        long mRecordOffset;
+        long mDataOffset;
+        int mRecordLength;
+        int mDataLength;
+    }
+
+    private final File mDir;
+    private final long mMaxBytes;
+    private final LinkedHashMap<String, Entry> mIndex;
+
+    private RandomAccessFile mJournal;
+    private long mLiveBytes;
+    private boolean mCompacting;
+
+    /**
+     * Constructor of <code>ThumbnailDiskCache</code>. The journal is opened (or created)
+     * and indexed synchronously, so this shouldn't be called from the main thread.
+     *
+     * @param dir The directory where the journal is stored
+     * @param maxBytes The maximum size of the live thumbnail data
+     */
+    public ThumbnailDiskCache(File dir, long maxBytes) {
+        super();
+        this.mDir = dir;
+        this.mMaxBytes = maxBytes;
+        this.mIndex = new LinkedHashMap<String, Entry>(64, .75F, true);
+        open();
+    }
+
+    /**
+     * Method that returns the compressed thumbnail of a file, if it's in the cache and
+     * the file wasn't changed since the thumbnail was stored.
+     *
+     * @param path The absolute path of the file
+     * @param size The current size of the file
+     * @param modified The current last modification time of the file
+     * @return byte[] The compressed thumbnail or null if not cached
+     */
+    public synchronized byte[] get(String path, long size, long modified) {
+        Entry entry = this.mIndex.get(path);
+        if (entry == null || this.mJournal == null) {
+            return null;
+        }
+        if (entry.mSize != size || entry.mModified != modified) {
+            // Stale thumbnail. Leave the record as garbage
+            removeEntry(path);
+            return null;
+        }
+        try {
+            byte[] data = new byte[entry.mDataLength];
+            this.mJournal.seek(entry.mDataOffset);
+            this.mJournal.readFully(data);
+            return data;
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to read thumbnail of " + path, ex); //$NON-NLS-1$
+            removeEntry(path);
+            return null;
+        }
+    }
+
+    /**
+     * Method that stores the compressed thumbnail of a file.
+     *
+     * @param path The absolute path of the file
+     * @param size The size of the file
+     * @param modified The last modification time of the file
+     * @param data The compressed thumbnail
+     */
+    public synchronized void put(String path, long size, long modified, byte[] data) {
+        if (this.mJournal == null || data.length > this.mMaxBytes) {
+            return;
+        }
+        try {
+            long offset = this.mJournal.length();
+            Entry entry = appendRecord(this.mJournal, offset, path, size, modified, data);
+            // The new record replaces the old one, without a remove record
+            Entry old = this.mIndex.put(path, entry);
+            if (old != null) {
+                this.mLiveBytes -= old.mRecordLength;
+            }
+            this.mLiveBytes += entry.mRecordLength;
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to write thumbnail of " + path, ex); //$NON-NLS-1$
+            return;
+        }
+        trimToSize();
+        compactIfNeeded();
+    }
+
+    /**
+     * Method that removes the thumbnail of a file.
+     *
+     * @param path The absolute path of the file
+     */
+    public synchronized void remove(String path) {
+        removeEntry(path);
+    }
+
+    /**
+     * Method that closes the journal.
+     */
+    public synchronized void close() {
+        if (this.mJournal != null) {
+            try {
+                this.mJournal.close();
+            } catch (IOException ex) {/**NON BLOCK**/}
+            this.mJournal = null;
+        }
+        this.mIndex.clear();
+        this.mLiveBytes = 0;
+    }
+
+    /**
+     * Method that opens the journal and rebuilds the index from its records. A
+     * truncated tail (a record interrupted by a crash) is discarded.
+     */
+    private void open() {
+        if (!this.mDir.exists() && !this.mDir.mkdirs()) {
+            Log.w(TAG, "Can't create thumbnail cache dir " + this.mDir); //$NON-NLS-1$
+            return;
+        }
+        File file = new File(this.mDir, JOURNAL_FILE);
+        try {
+            this.mJournal = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+            long end = scan(file);
+            if (end < 0) {
+                // Unknown or corrupted journal. Start again
+                this.mIndex.clear();
+                this.mLiveBytes = 0;
+                this.mJournal.setLength(0);
+                this.mJournal.writeInt(MAGIC);
+                this.mJournal.writeInt(VERSION);
+            } else if (end < this.mJournal.length()) {
+                this.mJournal.setLength(end);
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to open thumbnail cache", ex); //$NON-NLS-1$
+            close();
+            return;
+        }
+
+        // The budget could be smaller than the last time
+        trimToSize();
+        compactIfNeeded();
+    }
+
+    /**
+     * Method that reads all the records of the journal and builds the index.
+     *
+     * @param file The journal file
+     * @return long The offset of the end of the last complete record, or -1 if the journal
+     * is empty or isn't valid
+     * @throws IOException If the journal can't be read
+     */
+    private long scan(File file) throws IOException {
+        DataInputStream is = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 8192));
+        try {
+            long offset = 0;
+            try {
+                if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                    return -1;
+                }
+            } catch (EOFException ex) {
+                return -1;
+            }
+            offset = HEADER_SIZE;
+            while (true) {
+                try {
+                    byte mark = is.readByte();
+                    if (mark == REMOVE_MARK) {
+                        String path = is.readUTF();
+                        Entry old = this.mIndex.remove(path);
+                        if (old != null) {
+                            this.mLiveBytes -= old.mRecordLength;
+                        }
+                        offset += removeRecordLength(path);
+                        continue;
+                    }
+                    if (mark != RECORD_MARK) {
+                        return offset;
+                    }
+                    String path = is.readUTF();
+                    Entry entry = new Entry();
+                    entry.mSize = is.readLong();
+                    entry.mModified = is.readLong();
+                    entry.mDataLength = is.readInt();
+                    if (entry.mDataLength < 0) {
+                        return offset;
+                    }
+                    int headerLength = recordHeaderLength(path);
+                    entry.mRecordOffset = offset;
+                    entry.mDataOffset = offset + headerLength;
+                    entry.mRecordLength = headerLength + entry.mDataLength;
+                    if (is.skipBytes(entry.mDataLength) != entry.mDataLength) {
+                        return offset;
+                    }
+                    Entry old = this.mIndex.put(path, entry);
+                    if (old != null) {
+                        this.mLiveBytes -= old.mRecordLength;
+                    }
+                    this.mLiveBytes += entry.mRecordLength;
+                    offset += entry.mRecordLength;
+                } catch (EOFException ex) {
+                    return offset;
+                }
+            }
+        } finally {
+            try {
+                is.close();
+            } catch (IOException ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that appends a new record to a journal.
+     *
+     * @return Entry The index entry of the new record
+     * @throws IOException If the record can't be written
+     */
+    private static Entry appendRecord(RandomAccessFile journal, long offset,
+            String path, long size, long modified, byte[] data) throws IOException {
+        // Write the record in one operation, so a crash never leaves a partial header
+        ByteArrayOutputStream buffer =
+                new ByteArrayOutputStream(recordHeaderLength(path) + data.length);
+        DataOutputStream os = new DataOutputStream(buffer);
+        os.writeByte(RECORD_MARK);
+        os.writeUTF(path);
+        os.writeLong(size);
+        os.writeLong(modified);
+        os.writeInt(data.length);
+        int headerLength = os.size();
+        os.write(data);
+        os.flush();
+
+        journal.seek(offset);
+        journal.write(buffer.toByteArray());
+
+        Entry entry = new Entry();
+        entry.mSize = size;
+        entry.mModified = modified;
+        entry.mRecordOffset = offset;
+        entry.mDataOffset = offset + headerLength;
+        entry.mDataLength = data.length;
+        entry.mRecordLength = headerLength + data.length;
+        return entry;
+    }
+
+    /**
+     * Method that appends a remove record to the journal.
+     *
+     * @param path The path of the removed entry
+     */
+    private void appendRemoveRecord(String path) {
+        if (this.mJournal == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream buffer =
+                    new ByteArrayOutputStream(removeRecordLength(path));
+            DataOutputStream os = new DataOutputStream(buffer);
+            os.writeByte(REMOVE_MARK);
+            os.writeUTF(path);
+            os.flush();
+            this.mJournal.seek(this.mJournal.length());
+            this.mJournal.write(buffer.toByteArray());
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to write the removal of " + path, ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that returns the length of the header of a record.
+     *
+     * @param path The path of the record
+     * @return int The length of the record header
+     */
+    private static int recordHeaderLength(String path) {
+        // mark + utf length + modified utf-8 path + size + modified + data length
+        return removeRecordLength(path) + 8 + 8 + 4;
+    }
+
+    /**
+     * Method that returns the length of a remove record.
+     *
+     * @param path The path of the record
+     * @return int The length of the remove record
+     */
+    private static int removeRecordLength(String path) {
+        // mark + utf length + modified utf-8 path
+        int utf = 0;
+        int cc = path.length();
+        for (int i = 0; i < cc; i++) {
+            char c = path.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                utf++;
+            } else if (c > 0x07ff) {
+                utf += 3;
+            } else {
+                utf += 2;
+            }
+        }
+        return 1 + 2 + utf;
+    }
+
+    /**
+     * Method that removes an entry from the index. Its record becomes garbage.
+     *
+     * @param path The path of the entry
+     */
+    private void removeEntry(String path) {
+        Entry old = this.mIndex.remove(path);
+        if (old != null) {
+            this.mLiveBytes -= old.mRecordLength;
+            appendRemoveRecord(path);
+        }
+    }
+
+    /**
+     * Method that drops the least recently used entries until the live data fits
+     * in the size budget.
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> it = this.mIndex.entrySet().iterator();
+        while (this.mLiveBytes > this.mMaxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            this.mLiveBytes -= eldest.getValue().mRecordLength;
+            it.remove();
+            appendRemoveRecord(eldest.getKey());
+        }
+    }
+
+    /**
+     * Method that starts a background compaction of the journal when the garbage
+     * records take more space than the live ones.
+     */
+    private void compactIfNeeded() {
+        if (this.mCompacting || this.mJournal == null) {
+            return;
+        }
+        long garbage;
+        try {
+            garbage = this.mJournal.length() - HEADER_SIZE - this.mLiveBytes;
+        } catch (IOException ex) {
+            return;
+        }
+        if (garbage < MIN_COMPACT_GARBAGE || garbage < this.mLiveBytes) {
+            return;
+        }
+
+        this.mCompacting = true;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (Throwable ex) {
+                    Log.w(TAG, "Failed to compact thumbnail cache", ex); //$NON-NLS-1$
+                } finally {
+                    synchronized (ThumbnailDiskCache.this) {
+                        ThumbnailDiskCache.this.mCompacting = false;
+                    }
+                }
+            }
+        }, "ThumbnailCacheCompactor"); //$NON-NLS-1$
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    /**
+     * Method that rewrites the journal with only the live records.<br/>
+     * <br/>
+     * The bulk of the copy is done without holding the lock (records are immutable
+     * once written). The records appended while copying are moved in the final step,
+     * under the lock, just before the new journal replaces the old one.
+     *
+     * @throws IOException If the journal can't be compacted
+     */
+    private void compact() throws IOException {
+        final File journalFile = new File(this.mDir, JOURNAL_FILE);
+        final File tmpFile = new File(this.mDir, JOURNAL_TMP_FILE);
+
+        // Take a snapshot of the live records
+        List<String> paths;
+        List<Entry> entries;
+        synchronized (this) {
+            if (this.mJournal == null) {
+                return;
+            }
+            paths = new ArrayList<String>(this.mIndex.keySet());
+            entries = new ArrayList<Entry>(this.mIndex.values());
+        }
+
+        // Copy the snapshot to the new journal
+        Map<Entry, Long> moved = new HashMap<Entry, Long>(entries.size());
+        RandomAccessFile src = new RandomAccessFile(journalFile, "r"); //$NON-NLS-1$
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        DataOutputStream dst = new DataOutputStream(new BufferedOutputStream(fos, 32768));
+        long offset = 0;
+        try {
+            dst.writeInt(MAGIC);
+            dst.writeInt(VERSION);
+            offset = HEADER_SIZE;
+            byte[] buffer = new byte[8192];
+            int cc = entries.size();
+            for (int i = 0; i < cc; i++) {
+                Entry entry = entries.get(i);
+                byte[] record = buffer.length >= entry.mRecordLength
+                        ? buffer : new byte[entry.mRecordLength];
+                src.seek(entry.mRecordOffset);
+                src.readFully(record, 0, entry.mRecordLength);
+                dst.write(record, 0, entry.mRecordLength);
+                moved.put(entry, Long.valueOf(offset));
+                offset += entry.mRecordLength;
+            }
+            dst.flush();
+        } catch (IOException ex) {
+            try {
+                dst.close();
+            } catch (IOException ex2) {/**NON BLOCK**/}
+            tmpFile.delete();
+            throw ex;
+        } finally {
+            try {
+                src.close();
+            } catch (IOException ex) {/**NON BLOCK**/}
+        }
+
+        synchronized (this) {
+            LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>(
+                    this.mIndex.size() * 2, .75F, true);
+            try {
+                if (this.mJournal == null) {
+                    dst.close();
+                    tmpFile.delete();
+                    return;
+                }
+
+                // Remove the copied records that were dropped while copying (entries
+                // are compared by identity, and get() would change the access order)
+                Set<Entry> live = new HashSet<Entry>(this.mIndex.values());
+                int cc = paths.size();
+                for (int i = 0; i < cc; i++) {
+                    String path = paths.get(i);
+                    if (!live.contains(entries.get(i))) {
+                        dst.writeByte(REMOVE_MARK);
+                        dst.writeUTF(path);
+                        offset += removeRecordLength(path);
+                    }
+                }
+
+                // Move the records that were written while copying, and rebuild the index
+                byte[] buffer = new byte[8192];
+                for (Map.Entry<String, Entry> e : this.mIndex.entrySet()) {
+                    Entry entry = e.getValue();
+                    Long newOffset = moved.get(entry);
+                    if (newOffset == null) {
+                        byte[] record = buffer.length >= entry.mRecordLength
+                                ? buffer : new byte[entry.mRecordLength];
+                        this.mJournal.seek(entry.mRecordOffset);
+                        this.mJournal.readFully(record, 0, entry.mRecordLength);
+                        dst.write(record, 0, entry.mRecordLength);
+                        newOffset = Long.valueOf(offset);
+                        offset += entry.mRecordLength;
+                    }
+                    Entry relocated = new Entry();
+                    relocated.mSize = entry.mSize;
+                    relocated.mModified = entry.mModified;
+                    relocated.mRecordOffset = newOffset.longValue();
+                    relocated.mDataOffset = relocated.mRecordOffset
+                            + (entry.mDataOffset - entry.mRecordOffset);
+                    relocated.mRecordLength = entry.mRecordLength;
+                    relocated.mDataLength = entry.mDataLength;
+                    index.put(e.getKey(), relocated);
+                }
+                dst.flush();
+                fos.getFD().sync();
+                dst.close();
+            } catch (IOException ex) {
+                try {
+                    dst.close();
+                } catch (IOException ex2) {/**NON BLOCK**/}
+                tmpFile.delete();
+                throw ex;
+            }
+
+            // Swap the journals
+            this.mJournal.close();
+            if (!tmpFile.renameTo(journalFile)) {
+                tmpFile.delete();
+                this.mIndex.clear();
+                this.mLiveBytes = 0;
+                open();
+                return;
+            }
+            this.mJournal = new RandomAccessFile(journalFile, "rw"); //$NON-NLS-1$
+            this.mIndex.clear();
+            this.mIndex.putAll(index);
+        }
+    }
+}
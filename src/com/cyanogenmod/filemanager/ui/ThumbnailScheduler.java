@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A scheduler of thumbnail loads.<br/>
+ * <br/>
+ * Requests are split in lanes (cheap work like app icons or album art, and expensive work
+ * like image and video decoding), each one served by its own small pool of workers, so
+ * a slow video frame never delays a cheap icon. Instead of running in FIFO order, every
+ * worker takes the pending request that is closer to the current viewport (the newest
+ * one on ties), so rows that were flung off screen are processed last. Requests for the
+ * same key are deduplicated and can be cancelled while pending.<br/>
+ * <br/>
+ * Prefetch requests (thumbnails of items not bound yet) are limited to a budget of pending
+ * requests and can be cancelled all at once.
+ */
+public class ThumbnailScheduler {
+
+    private static final String TAG = "ThumbnailScheduler"; //$NON-NLS-1$
+
+    /**
+     * Lane of cheap loads (app icons, albums, ...)
+     */
+    public static final int LANE_CHEAP = 0;
+    /**
+     * Lane of expensive loads (image and video decoding)
+     */
+    public static final int LANE_EXPENSIVE = 1;
+
+    private static final int LANES = 2;
+
+    // Idle time before a worker exits
+    private static final long WORKER_KEEP_ALIVE = 3000L;
+
+    /**
+     * The interface that performs the loads.
+     */
+    public interface Loader {
+        /**
+         * Method invoked from a worker thread to perform a load.
+         *
+         * @param key The key of the request
+         * @param fso The file system object to load
+         */
+        void onLoad(String key, FileSystemObject fso);
+    }
+
+    /**
+     * A pending request.
+     */
+    private static class Request {
+        Request() {
+            super();
+        }
+        String mKey;
+        FileSystemObject mFso;
+        int mLane;
+        int mPosition;
+        long mSequence;
+        boolean mPrefetch;
+    }
+
+    private final String mName;
+    private final Loader mLoader;
+    private final int[] mMaxWorkers;
+    private final int[] mWorkers;
+    private final int[] mIdleWorkers;
+
+    private final List<Request> mPending;
+    private final Map<String, Request> mPendingByKey;
+    private final Set<String> mRunning;
+
+    private final int mPrefetchBudget;
+    private int mPendingPrefetches;
+
+    private long mSequence;
+    private int mFirstVisible;
+    private int mLastVisible;
+    private boolean mShutdown;
+
+    /**
+     * Constructor of <code>ThumbnailScheduler</code>.
+     *
+     * @param name The name of the worker threads
+     * @param loader The loader that performs the requests
+     * @param prefetchBudget The maximum number of pending prefetch requests
+     */
+    public ThumbnailScheduler(String name, Loader loader, int prefetchBudget) {
+        super();
+        this.mName = name;
+        this.mLoader = loader;
+        this.mPrefetchBudget = prefetchBudget;
+        this.mPending = new ArrayList<Request>();
+        this.mPendingByKey = new HashMap<String, Request>();
+        this.mRunning = new HashSet<String>();
+        this.mWorkers = new int[LANES];
+        this.mIdleWorkers = new int[LANES];
+        this.mMaxWorkers = new int[LANES];
+
+        // Decoding is cpu bound; leave a core for the ui thread
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.mMaxWorkers[LANE_CHEAP] = 1;
+        this.mMaxWorkers[LANE_EXPENSIVE] = Math.max(1, Math.min(4, cores - 1));
+
+        this.mFirstVisible = -1;
+        this.mLastVisible = -1;
+    }
+
+    /**
+     * Method that schedules a new load. If there is a pending request for the same key,
+     * it's moved to the new position instead.
+     *
+     * @param key The key of the request
+     * @param fso The file system object to load
+     * @param lane The lane of the request ({@link #LANE_CHEAP} or {@link #LANE_EXPENSIVE})
+     * @param position The position of the item in the view, or -1 if unknown
+     */
+    public synchronized void schedule(String key, FileSystemObject fso, int lane, int position) {
+        enqueue(key, fso, lane, position, false);
+    }
+
+    /**
+     * Method that schedules the load of an item that isn't displayed yet. Prefetch
+     * requests are processed after the requests of the displayed items at the same
+     * distance of the viewport.
+     *
+     * @param key The key of the request
+     * @param fso The file system object to load
+     * @param lane The lane of the request ({@link #LANE_CHEAP} or {@link #LANE_EXPENSIVE})
+     * @param position The position of the item in the view
+     * @return boolean If the request was accepted (false if the prefetch budget is spent)
+     */
+    public synchronized boolean prefetch(String key, FileSystemObject fso, int lane,
+            int position) {
+        if (this.mPendingPrefetches >= this.mPrefetchBudget
+                && !this.mPendingByKey.containsKey(key)) {
+            return false;
+        }
+        enqueue(key, fso, lane, position, true);
+        return true;
+    }
+
+    /**
+     * Method that cancels all the pending prefetch requests.
+     */
+    public synchronized void cancelPrefetches() {
+        for (int i = this.mPending.size() - 1; i >= 0; i--) {
+            Request request = this.mPending.get(i);
+            if (request.mPrefetch) {
+                this.mPending.remove(i);
+                this.mPendingByKey.remove(request.mKey);
+            }
+        }
+        this.mPendingPrefetches = 0;
+    }
+
+    /**
+     * Method that adds or updates a pending request.
+     */
+    private void enqueue(String key, FileSystemObject fso, int lane, int position,
+            boolean prefetch) {
+        if (this.mShutdown) {
+            return;
+        }
+        if (this.mRunning.contains(key)) {
+            // Already decoding. The result will be delivered to all the requesters
+            return;
+        }
+        Request request = this.mPendingByKey.get(key);
+        if (request == null) {
+            request = new Request();
+            request.mKey = key;
+            request.mFso = fso;
+            request.mLane = lane;
+            request.mPrefetch = prefetch;
+            this.mPending.add(request);
+            this.mPendingByKey.put(key, request);
+            if (prefetch) {
+                this.mPendingPrefetches++;
+            }
+        } else if (request.mPrefetch && !prefetch) {
+            // The item is displayed now
+            request.mPrefetch = false;
+            this.mPendingPrefetches--;
+        } else if (prefetch) {
+            // Don't demote a displayed item
+            return;
+        }
+        request.mPosition = position;
+        request.mSequence = ++this.mSequence;
+
+        ensureWorker(lane);
+        notifyAll();
+    }
+
+    /**
+     * Method that cancels a pending request. A request that is already running can't be
+     * cancelled.
+     *
+     * @param key The key of the request
+     */
+    public synchronized void cancel(String key) {
+        Request request = this.mPendingByKey.remove(key);
+        if (request != null) {
+            this.mPending.remove(request);
+            if (request.mPrefetch) {
+                this.mPendingPrefetches--;
+            }
+        }
+    }
+
+    /**
+     * Method that sets the range of positions currently visible. Pending requests are
+     * processed by their distance to this range.
+     *
+     * @param first The first visible position
+     * @param last The last visible position
+     */
+    public synchronized void setViewport(int first, int last) {
+        this.mFirstVisible = first;
+        this.mLastVisible = last;
+    }
+
+    /**
+     * Method that cancels all the pending requests and stops the workers.
+     */
+    public synchronized void shutdown() {
+        this.mShutdown = true;
+        this.mPending.clear();
+        this.mPendingByKey.clear();
+        this.mPendingPrefetches = 0;
+        notifyAll();
+    }
+
+    /**
+     * Method that starts a new worker for the lane if all the current workers are busy.
+     *
+     * @param lane The lane
+     */
+    private void ensureWorker(final int lane) {
+        if (this.mWorkers[lane] >= this.mMaxWorkers[lane]) {
+            return;
+        }
+        int pending = 0;
+        int cc = this.mPending.size();
+        for (int i = 0; i < cc; i++) {
+            if (this.mPending.get(i).mLane == lane) {
+                pending++;
+            }
+        }
+        if (pending <= this.mIdleWorkers[lane]) {
+            return;
+        }
+
+        this.mWorkers[lane]++;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                work(lane);
+            }
+        }, this.mName + "-" + lane + "-" + this.mWorkers[lane]); //$NON-NLS-1$ //$NON-NLS-2$
+        t.start();
+    }
+
+    /**
+     * The worker loop.
+     *
+     * @param lane The lane served by the worker
+     */
+    private void work(int lane) {
+        while (true) {
+            Request request;
+            synchronized (this) {
+                request = takeNext(lane);
+                if (request == null) {
+                    long deadline = System.currentTimeMillis() + WORKER_KEEP_ALIVE;
+                    this.mIdleWorkers[lane]++;
+                    while (request == null && !this.mShutdown) {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            break;
+                        }
+                        try {
+                            wait(wait);
+                        } catch (InterruptedException ex) {
+                            break;
+                        }
+                        request = takeNext(lane);
+                    }
+                    this.mIdleWorkers[lane]--;
+                    if (request == null) {
+                        this.mWorkers[lane]--;
+                        return;
+                    }
+                }
+                this.mRunning.add(request.mKey);
+            }
+
+            try {
+                this.mLoader.onLoad(request.mKey, request.mFso);
+            } catch (Throwable ex) {
+                Log.w(TAG, "Failed to load " + request.mKey, ex); //$NON-NLS-1$
+            } finally {
+                synchronized (this) {
+                    this.mRunning.remove(request.mKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that extracts the best pending request of a lane: the one closest to the
+     * viewport, on ties a displayed item before a prefetched one, and then the most
+     * recently requested.
+     *
+     * @param lane The lane
+     * @return Request The request or null if there are no pending requests
+     */
+    private Request takeNext(int lane) {
+        if (this.mShutdown) {
+            return null;
+        }
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean bestPrefetch = true;
+        long bestSequence = -1;
+        int cc = this.mPending.size();
+        for (int i = 0; i < cc; i++) {
+            Request request = this.mPending.get(i);
+            if (request.mLane != lane) {
+                continue;
+            }
+            int distance = getDistance(request.mPosition);
+            boolean better = distance < bestDistance;
+            if (distance == bestDistance) {
+                better = (bestPrefetch && !request.mPrefetch)
+                        || (bestPrefetch == request.mPrefetch
+                                && request.mSequence > bestSequence);
+            }
+            if (better) {
+                best = i;
+                bestDistance = distance;
+                bestPrefetch = request.mPrefetch;
+                bestSequence = request.mSequence;
+            }
+        }
+        if (best == -1) {
+            return null;
+        }
+        Request request = this.mPending.remove(best);
+        this.mPendingByKey.remove(request.mKey);
+        if (request.mPrefetch) {
+            this.mPendingPrefetches--;
+        }
+        return request;
+    }
+
+    /**
+     * Method that returns the distance of a position to the viewport.
+     *
+     * @param position The position
+     * @return int The distance (0 if visible or unknown)
+     */
+    private int getDistance(int position) {
+        if (position < 0 || this.mFirstVisible < 0) {
+            return 0;
+        }
+        if (position < this.mFirstVisible) {
+            return this.mFirstVisible - position;
+        }
+        if (position > this.mLastVisible) {
+            return position - this.mLastVisible;
+        }
+        return 0;
+    }
+}
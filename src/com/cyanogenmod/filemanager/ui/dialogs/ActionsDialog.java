@@ -400,6 +400,34 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                 InfoActionPolicy.showComputeChecksumDialog(this.mContext, this.mFso);
                 break;
 
+            //- Analyze storage
+            case R.id.mnu_actions_analyze_storage:
+            case R.id.mnu_actions_analyze_storage_current_folder:
+                InfoActionPolicy.showStorageAnalysisDialog(this.mContext, this.mFso);
+                break;
+
+            //- Find duplicates (in the selected folders or in the current folder)
+            case R.id.mnu_actions_find_duplicates:
+            case R.id.mnu_actions_find_duplicates_current_folder:
+                List<FileSystemObject> folders = new ArrayList<FileSystemObject>();
+                if (this.mGlobal && this.mOnSelectionListener != null) {
+                    List<FileSystemObject> selection =
+                            this.mOnSelectionListener.onRequestSelectedFiles();
+                    if (selection != null) {
+                        for (FileSystemObject fso : selection) {
+                            if (FileHelper.isDirectory(fso)) {
+                                folders.add(fso);
+                            }
+                        }
+                    }
+                }
+                if (folders.isEmpty()) {
+                    folders.add(this.mFso);
+                }
+                InfoActionPolicy.showDuplicatesDialog(
+                        this.mContext, folders, this.mOnRequestRefreshListener);
+                break;
+
             //- Properties
             case R.id.mnu_actions_properties:
             case R.id.mnu_actions_properties_current_folder:
@@ -625,6 +653,12 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
             if (FileHelper.isDirectory(this.mFso) || this.mFso instanceof Symlink) {
                 menu.removeItem(R.id.mnu_actions_compute_checksum);
             }
+
+            //- Storage analysis (only supported for folders)
+            if (!FileHelper.isDirectory(this.mFso)) {
+                menu.removeItem(R.id.mnu_actions_analyze_storage);
+                menu.removeItem(R.id.mnu_actions_find_duplicates);
+            }
         }
 
         //- Add to bookmarks -> Only directories
@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui.dialogs;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Handler;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.adapters.CheckableListAdapter;
+import com.cyanogenmod.filemanager.adapters.CheckableListAdapter.CheckableItem;
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
+import com.cyanogenmod.filemanager.model.Duplicates;
+import com.cyanogenmod.filemanager.model.Duplicates.STAGE;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.ui.ThemeManager;
+import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
+import com.cyanogenmod.filemanager.ui.policy.DeleteActionPolicy;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.DialogHelper;
+import com.cyanogenmod.filemanager.util.ExceptionUtil;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class that wraps a dialog for search the duplicate files of one or more folders.
+ * Every group of duplicates is listed as soon as it's found, with all its files but the
+ * first one selected, so the selected files can be deleted at once.
+ */
+public class DuplicatesDialog implements
+    DialogInterface.OnClickListener, AdapterView.OnItemClickListener, AsyncResultListener {
+
+    /**
+     * @hide
+     */
+    final Context mContext;
+    private final OnRequestRefreshListener mOnRequestRefreshListener;
+    private final Handler mHandler;
+    /**
+     * @hide
+     */
+    final AlertDialog mDialog;
+
+    private final TextView mSummary;
+    private final CheckableListAdapter mAdapter;
+    // The paths of the items of the list (null for the headers of the groups)
+    private final List<String> mPaths;
+    private int mDrawnGroups;
+
+    // For cancel the operation
+    /**
+     * @hide
+     */
+    AsyncResultExecutable mCmd;
+    /**
+     * @hide
+     */
+    boolean mFinished;
+
+    // The last result not drawn yet (the views are updated once per frame at most)
+    private Duplicates mPendingDuplicates;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>DuplicatesDialog</code>.
+     *
+     * @param context The current context
+     * @param folders The folders where to search
+     * @param onRequestRefreshListener The listener for request a refresh after the
+     * duplicates were deleted (optional)
+     */
+    public DuplicatesDialog(
+            final Context context, final List<FileSystemObject> folders,
+            final OnRequestRefreshListener onRequestRefreshListener) {
+        super();
+
+        // Save properties
+        this.mContext = context;
+        this.mOnRequestRefreshListener = onRequestRefreshListener;
+        this.mHandler = new Handler();
+        this.mPaths = new ArrayList<String>();
+
+        //Create the layout
+        LayoutInflater li =
+                (LayoutInflater)context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        ViewGroup layout = (ViewGroup)li.inflate(R.layout.duplicates_dialog, null);
+        String[] directories = new String[folders.size()];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < directories.length; i++) {
+            directories[i] = folders.get(i).getFullPath();
+            if (i > 0) {
+                sb.append("\n"); //$NON-NLS-1$
+            }
+            sb.append(directories[i]);
+        }
+        TextView tvFolders = (TextView)layout.findViewById(R.id.duplicates_folders);
+        tvFolders.setText(sb.toString());
+        this.mSummary = (TextView)layout.findViewById(R.id.duplicates_summary);
+        ListView list = (ListView)layout.findViewById(R.id.duplicates_list);
+        this.mAdapter = new CheckableListAdapter(
+                context, new ArrayList<CheckableItem>(), true);
+        list.setAdapter(this.mAdapter);
+        list.setOnItemClickListener(this);
+
+        // Apply the theme
+        applyTheme(context, layout, list);
+
+        //Create the dialog
+        String title = context.getString(R.string.duplicates_title);
+        this.mDialog = DialogHelper.createDialog(
+                                        context,
+                                        0,
+                                        title,
+                                        layout);
+        this.mDialog.setButton(
+                DialogInterface.BUTTON_POSITIVE,
+                context.getString(R.string.duplicates_delete_selected), this);
+        this.mDialog.setButton(
+                DialogInterface.BUTTON_NEUTRAL, context.getString(android.R.string.cancel), this);
+
+        // Start the search
+        try {
+            this.mCmd = CommandHelper.findDuplicates(context, directories, this, null);
+        } catch (Exception e) {
+            ExceptionUtil.translateException(context, e);
+        }
+    }
+
+    /**
+     * Method that shows the dialog.
+     */
+    public void show() {
+        DialogHelper.delegateDialogShow(this.mContext, this.mDialog);
+    }
+
+    /**
+     * Method that dismiss the dialog.
+     */
+    public void dismiss() {
+        this.mDialog.dismiss();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClick(DialogInterface dialog, int which) {
+        switch (which) {
+            case DialogInterface.BUTTON_POSITIVE:
+                cancelSearch();
+                deleteSelected();
+                break;
+
+            case DialogInterface.BUTTON_NEUTRAL:
+                cancelSearch();
+                this.mDialog.dismiss();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+        // Toggle the selection of a file (the headers of the groups aren't checkable)
+        CheckableItem item = this.mAdapter.getItem(position);
+        if (item.isCheckable()) {
+            item.setChecked(!item.isChecked());
+            this.mAdapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Method that cancels the search, if it's still running.
+     */
+    private void cancelSearch() {
+        try {
+            if (this.mCmd != null && !this.mFinished) {
+                if (this.mCmd.isCancellable() && !this.mCmd.isCancelled()) {
+                    this.mCmd.cancel();
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+    }
+
+    /**
+     * Method that asks the user to delete the selected files.
+     */
+    private void deleteSelected() {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        int count = this.mAdapter.getCount();
+        for (int i = 0; i < count; i++) {
+            String path = this.mPaths.get(i);
+            if (path == null || !this.mAdapter.getItem(i).isChecked()) {
+                continue;
+            }
+            FileSystemObject fso = FileHelper.createFileSystemObject(new File(path));
+            if (fso != null) {
+                files.add(fso);
+            }
+        }
+        if (!files.isEmpty()) {
+            DeleteActionPolicy.removeFileSystemObjects(
+                    this.mContext, files, null, this.mOnRequestRefreshListener, null);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncStart() {
+        /** NON BLOCK **/
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncEnd(boolean cancelled) {
+        this.mFinished = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncExitCode(int exitCode) {
+        /** NON BLOCK **/
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPartialResult(final Object result) {
+        if (!(result instanceof Duplicates)) {
+            return;
+        }
+        synchronized (this.mSync) {
+            // A draw is already posted? Then it will draw this result
+            boolean posted = this.mPendingDuplicates != null;
+            this.mPendingDuplicates = (Duplicates)result;
+            if (posted) {
+                return;
+            }
+        }
+        this.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                drawPendingDuplicates();
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onException(Exception cause) {
+        ExceptionUtil.translateException(this.mContext, cause, false, false);
+    }
+
+    /**
+     * Method that draws the last result received. The groups are only appended, so the
+     * selection of the user is kept.
+     * @hide
+     */
+    void drawPendingDuplicates() {
+        Duplicates duplicates;
+        synchronized (this.mSync) {
+            duplicates = this.mPendingDuplicates;
+            this.mPendingDuplicates = null;
+        }
+        if (duplicates == null) {
+            return;
+        }
+
+        List<Duplicates.Group> groups = duplicates.getGroups();
+        long wasted = 0;
+        this.mAdapter.setNotifyOnChange(false);
+        for (int i = 0; i < groups.size(); i++) {
+            Duplicates.Group group = groups.get(i);
+            wasted += group.getWastedSize();
+            if (i < this.mDrawnGroups) {
+                continue;
+            }
+            List<String> paths = group.getPaths();
+            String header = this.mContext.getString(
+                    R.string.duplicates_group,
+                    String.valueOf(paths.size()),
+                    FileHelper.getHumanReadableSize(group.getSize()));
+            this.mAdapter.add(new CheckableItem(header, false, false));
+            this.mPaths.add(null);
+            for (int j = 0; j < paths.size(); j++) {
+                // Keep the first file of every group
+                this.mAdapter.add(new CheckableItem(paths.get(j), true, j > 0));
+                this.mPaths.add(paths.get(j));
+            }
+        }
+        this.mDrawnGroups = groups.size();
+        this.mAdapter.notifyDataSetChanged();
+
+        String summary;
+        if (duplicates.getStage() == STAGE.SIZES || duplicates.getStage() == STAGE.CANDIDATES) {
+            summary = this.mContext.getString(
+                    R.string.duplicates_scanning_msg,
+                    String.valueOf(duplicates.getScannedFiles()));
+        } else if (duplicates.getStage() == STAGE.CHECKSUMS) {
+            summary = this.mContext.getString(
+                    R.string.duplicates_comparing_msg,
+                    String.valueOf(duplicates.getCheckedFiles()),
+                    String.valueOf(duplicates.getCandidateFiles()));
+        } else if (groups.isEmpty()) {
+            summary = this.mContext.getString(R.string.duplicates_none_msg);
+        } else {
+            summary = this.mContext.getString(
+                    R.string.duplicates_summary,
+                    String.valueOf(groups.size()),
+                    FileHelper.getHumanReadableSize(wasted));
+        }
+        this.mSummary.setText(summary);
+    }
+
+    /**
+     * Method that applies the current theme to the dialog
+     *
+     * @param ctx The current context
+     * @param root The root view
+     * @param list The list of duplicates
+     */
+    private static void applyTheme(Context ctx, ViewGroup root, ListView list) {
+        // Apply the current theme
+        Theme theme = ThemeManager.getCurrentTheme(ctx);
+        theme.setBackgroundDrawable(ctx, root, "background_drawable"); //$NON-NLS-1$
+        int[] ids = {
+                R.id.duplicates_folders_label,
+                R.id.duplicates_folders,
+                R.id.duplicates_summary
+        };
+        for (int i = 0; i < ids.length; i++) {
+            View v = root.findViewById(ids[i]);
+            theme.setTextColor(ctx, (TextView)v, "text_color"); //$NON-NLS-1$
+        }
+        list.setDivider(
+                theme.getDrawable(ctx, "horizontal_divider_drawable")); //$NON-NLS-1$
+    }
+}
@@ -42,6 +42,7 @@ import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.ui.widgets.DiskUsageGraph;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.DialogHelper;
+import com.cyanogenmod.filemanager.util.DiskUsageCache;
 import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MountPointHelper;
 
@@ -108,7 +109,10 @@ public class FilesystemInfoDialog implements OnClickListener, OnCheckedChangeLis
 
         //Save data
         this.mMountPoint = mountPoint;
-        this.mDiskUsage = diskUsage;
+        // The disk usage of the shared cache is the most recent one
+        DiskUsage cached =
+                DiskUsageCache.getInstance().getCachedDiskUsage(mountPoint.getMountPoint());
+        this.mDiskUsage = cached != null ? cached : diskUsage;
         this.mIsMountAllowed = false;
         this.mIsAdvancedMode =
                 FileManagerApplication.getAccessMode().compareTo(AccessMode.SAFE) != 0;
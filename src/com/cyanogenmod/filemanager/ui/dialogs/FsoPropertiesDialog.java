@@ -64,6 +64,7 @@ import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FolderSizeCache;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 import com.cyanogenmod.filemanager.util.ResourcesHelper;
@@ -145,6 +146,7 @@ public class FsoPropertiesDialog
     private final boolean mComputeFolderStatistics;
     private FolderUsageExecutable mFolderUsageExecutable;
     private FolderUsage mFolderUsage;
+    private boolean mHasCachedFolderUsage;
     /**
      * @hide
      */
@@ -1039,7 +1041,15 @@ public class FsoPropertiesDialog
     @Override
     public void onAsyncStart() {
         this.mDrawingFolderUsage = false;
-        this.mFolderUsage = new FolderUsage(this.mFso.getFullPath());
+        // Start with the last known usage of the folder, if any (the partial results of
+        // the new computation are smaller, so only its final result is drawn)
+        String path = this.mFso.getFullPath();
+        if (this.mFso instanceof Symlink && ((Symlink) this.mFso).getLinkRef() != null) {
+            path = ((Symlink) this.mFso).getLinkRef().getFullPath();
+        }
+        FolderUsage cached = FolderSizeCache.getInstance(this.mContext).getFolderUsage(path);
+        this.mHasCachedFolderUsage = cached != null;
+        this.mFolderUsage = cached != null ? cached : new FolderUsage(this.mFso.getFullPath());
         printFolderUsage(true, false);
     }
 
@@ -1063,7 +1073,7 @@ public class FsoPropertiesDialog
     public void onPartialResult(final Object partialResults) {
         try {
             // Do not saturate ui thread
-            if (this.mDrawingFolderUsage) {
+            if (this.mDrawingFolderUsage || this.mHasCachedFolderUsage) {
                 return;
             }
 
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui.dialogs;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Handler;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.model.StorageAnalysis.Item;
+import com.cyanogenmod.filemanager.ui.ThemeManager;
+import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.DialogHelper;
+import com.cyanogenmod.filemanager.util.ExceptionUtil;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A class that wraps a dialog for showing the analysis of the storage used by a folder:
+ * a ranked list of the largest folders, the largest files, the file types and the file
+ * sizes. The lists are updated while the folder is analyzed.
+ */
+public class StorageAnalysisDialog implements
+    DialogInterface.OnClickListener, AsyncResultListener {
+
+    // The max number of items of every list
+    private static final int MAX_ITEMS = 10;
+
+    /**
+     * @hide
+     */
+    final Context mContext;
+    private final FileSystemObject mFso;
+    private final Handler mHandler;
+    /**
+     * @hide
+     */
+    final AlertDialog mDialog;
+
+    private final TextView mSummary;
+    private final ViewGroup mFolders;
+    private final ViewGroup mFiles;
+    private final ViewGroup mExtensions;
+    private final ViewGroup mHistogram;
+
+    // For cancel the operation
+    /**
+     * @hide
+     */
+    AsyncResultExecutable mCmd;
+    /**
+     * @hide
+     */
+    boolean mFinished;
+
+    // The last analysis not drawn yet (the views are updated once per frame at most)
+    private StorageAnalysis mPendingAnalysis;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>StorageAnalysisDialog</code>.
+     *
+     * @param context The current context
+     * @param fso The folder to analyze
+     */
+    public StorageAnalysisDialog(final Context context, final FileSystemObject fso) {
+        super();
+
+        // Save properties
+        this.mContext = context;
+        this.mFso = fso;
+        this.mHandler = new Handler();
+
+        //Create the layout
+        LayoutInflater li =
+                (LayoutInflater)context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        ViewGroup layout = (ViewGroup)li.inflate(R.layout.storage_analysis_dialog, null);
+        TextView tvFolder = (TextView)layout.findViewById(R.id.storage_analysis_folder);
+        tvFolder.setText(fso.getFullPath());
+        this.mSummary = (TextView)layout.findViewById(R.id.storage_analysis_summary);
+        this.mFolders = (ViewGroup)layout.findViewById(R.id.storage_analysis_folders);
+        this.mFiles = (ViewGroup)layout.findViewById(R.id.storage_analysis_files);
+        this.mExtensions = (ViewGroup)layout.findViewById(R.id.storage_analysis_extensions);
+        this.mHistogram = (ViewGroup)layout.findViewById(R.id.storage_analysis_histogram);
+
+        // Apply the theme
+        applyTheme(context, layout);
+
+        //Create the dialog
+        String title = context.getString(R.string.storage_analysis_title);
+        this.mDialog = DialogHelper.createDialog(
+                                        context,
+                                        0,
+                                        title,
+                                        layout);
+        this.mDialog.setButton(
+                DialogInterface.BUTTON_NEUTRAL, context.getString(android.R.string.cancel), this);
+
+        // Start the analysis
+        try {
+            this.mCmd = CommandHelper.analyzeStorage(context, fso.getFullPath(), this, null);
+        } catch (Exception e) {
+            ExceptionUtil.translateException(context, e);
+        }
+    }
+
+    /**
+     * Method that shows the dialog.
+     */
+    public void show() {
+        DialogHelper.delegateDialogShow(this.mContext, this.mDialog);
+    }
+
+    /**
+     * Method that dismiss the dialog.
+     */
+    public void dismiss() {
+        this.mDialog.dismiss();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClick(DialogInterface dialog, int which) {
+        switch (which) {
+            case DialogInterface.BUTTON_NEUTRAL:
+                // Cancel the program?
+                try {
+                    if (this.mCmd != null && !this.mFinished) {
+                        if (this.mCmd.isCancellable() && !this.mCmd.isCancelled()) {
+                            this.mCmd.cancel();
+                        }
+                    }
+                } catch (Exception e) {/**NON BLOCK**/}
+                this.mDialog.dismiss();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncStart() {
+        /** NON BLOCK **/
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncEnd(boolean cancelled) {
+        this.mFinished = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncExitCode(int exitCode) {
+        /** NON BLOCK **/
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPartialResult(final Object result) {
+        if (!(result instanceof StorageAnalysis)) {
+            return;
+        }
+        synchronized (this.mSync) {
+            // A draw is already posted? Then it will draw this analysis
+            boolean posted = this.mPendingAnalysis != null;
+            this.mPendingAnalysis = (StorageAnalysis)result;
+            if (posted) {
+                return;
+            }
+        }
+        this.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                drawPendingAnalysis();
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onException(Exception cause) {
+        ExceptionUtil.translateException(this.mContext, cause, false, false);
+    }
+
+    /**
+     * Method that draws the last analysis received.
+     * @hide
+     */
+    void drawPendingAnalysis() {
+        StorageAnalysis analysis;
+        synchronized (this.mSync) {
+            analysis = this.mPendingAnalysis;
+            this.mPendingAnalysis = null;
+        }
+        if (analysis == null) {
+            return;
+        }
+
+        long total = analysis.getTotalSize();
+        this.mSummary.setText(this.mContext.getString(
+                R.string.storage_analysis_summary,
+                FileHelper.getHumanReadableSize(total),
+                String.valueOf(analysis.getNumberOfFiles()),
+                String.valueOf(analysis.getNumberOfFolders())));
+
+        drawPaths(this.mFolders, analysis.getLargestFolders(), total);
+        drawPaths(this.mFiles, analysis.getLargestFiles(), total);
+
+        List<Item> extensions = analysis.getExtensions();
+        int count = Math.min(MAX_ITEMS, extensions.size());
+        for (int i = 0; i < count; i++) {
+            Item item = extensions.get(i);
+            String name;
+            if (StorageAnalyzer.NO_EXTENSION.equals(item.getName())) {
+                name = this.mContext.getString(R.string.storage_analysis_no_extension);
+            } else if (StorageAnalyzer.OTHER_EXTENSIONS.equals(item.getName())) {
+                name = this.mContext.getString(R.string.storage_analysis_other_extensions);
+            } else {
+                name = "." + item.getName(); //$NON-NLS-1$
+            }
+            drawItem(this.mExtensions, i, name, item.getSize(), item.getCount(), total);
+        }
+        trimItems(this.mExtensions, count);
+
+        count = 0;
+        for (int i = 0; i < StorageAnalysis.HISTOGRAM_BUCKETS; i++) {
+            long files = analysis.getHistogramCount(i);
+            if (files == 0) {
+                continue;
+            }
+            String from = FileHelper.getHumanReadableSize(
+                    StorageAnalysis.getHistogramLowerBound(i));
+            String name;
+            if (i == StorageAnalysis.HISTOGRAM_BUCKETS - 1) {
+                name = this.mContext.getString(
+                        R.string.storage_analysis_histogram_last_range, from);
+            } else {
+                String to = FileHelper.getHumanReadableSize(
+                        StorageAnalysis.getHistogramLowerBound(i + 1));
+                name = this.mContext.getString(
+                        R.string.storage_analysis_histogram_range, from, to);
+            }
+            drawItem(this.mHistogram, count, name, analysis.getHistogramSize(i), files, total);
+            count++;
+        }
+        trimItems(this.mHistogram, count);
+    }
+
+    /**
+     * Method that draws a list of files or folders, relative to the analyzed folder.
+     *
+     * @param list The view of the list
+     * @param items The files or folders, sorted by size
+     * @param total The total size of the analyzed folder
+     */
+    private void drawPaths(ViewGroup list, List<Item> items, long total) {
+        String root = this.mFso.getFullPath();
+        if (!root.endsWith(File.separator)) {
+            root += File.separator;
+        }
+        int count = Math.min(MAX_ITEMS, items.size());
+        for (int i = 0; i < count; i++) {
+            Item item = items.get(i);
+            String name = item.getName();
+            if (name.startsWith(root)) {
+                name = name.substring(root.length());
+            }
+            drawItem(list, i, name, item.getSize(), item.getCount(), total);
+        }
+        trimItems(list, count);
+    }
+
+    /**
+     * Method that draws an item of a list, reusing the view of the previous analysis.
+     *
+     * @param list The view of the list
+     * @param position The position of the item
+     * @param name The name of the item
+     * @param size The size of the item
+     * @param files The number of files of the item
+     * @param total The total size of the analyzed folder
+     */
+    private void drawItem(
+            ViewGroup list, int position, String name, long size, long files, long total) {
+        View v;
+        if (position < list.getChildCount()) {
+            v = list.getChildAt(position);
+        } else {
+            LayoutInflater li = (LayoutInflater)this.mContext.getSystemService(
+                    Context.LAYOUT_INFLATER_SERVICE);
+            v = li.inflate(R.layout.storage_analysis_item, list, false);
+            applyItemTheme(this.mContext, v);
+            list.addView(v);
+        }
+        ((TextView)v.findViewById(R.id.storage_analysis_item_name)).setText(name);
+        ((TextView)v.findViewById(R.id.storage_analysis_item_usage)).setText(
+                this.mContext.getString(
+                        R.string.storage_analysis_item_usage,
+                        FileHelper.getHumanReadableSize(size),
+                        String.valueOf(files)));
+        ProgressBar bar = (ProgressBar)v.findViewById(R.id.storage_analysis_item_bar);
+        bar.setProgress(total > 0 ? (int)(size * bar.getMax() / total) : 0);
+    }
+
+    /**
+     * Method that removes the views of the items after the last one.
+     *
+     * @param list The view of the list
+     * @param count The number of items
+     */
+    private static void trimItems(ViewGroup list, int count) {
+        if (list.getChildCount() > count) {
+            list.removeViews(count, list.getChildCount() - count);
+        }
+    }
+
+    /**
+     * Method that applies the current theme to the dialog
+     *
+     * @param ctx The current context
+     * @param root The root view
+     */
+    private void applyTheme(Context ctx, ViewGroup root) {
+        // Apply the current theme
+        Theme theme = ThemeManager.getCurrentTheme(ctx);
+        theme.setBackgroundDrawable(ctx, root, "background_drawable"); //$NON-NLS-1$
+        int[] ids = {
+                R.id.storage_analysis_folder_label,
+                R.id.storage_analysis_folder,
+                R.id.storage_analysis_summary,
+                R.id.storage_analysis_folders_label,
+                R.id.storage_analysis_files_label,
+                R.id.storage_analysis_extensions_label,
+                R.id.storage_analysis_histogram_label
+        };
+        for (int i = 0; i < ids.length; i++) {
+            View v = root.findViewById(ids[i]);
+            theme.setTextColor(ctx, (TextView)v, "text_color"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that applies the current theme to an item of a list
+     *
+     * @param ctx The current context
+     * @param item The view of the item
+     */
+    private static void applyItemTheme(Context ctx, View item) {
+        Theme theme = ThemeManager.getCurrentTheme(ctx);
+        View v = item.findViewById(R.id.storage_analysis_item_name);
+        theme.setTextColor(ctx, (TextView)v, "text_color"); //$NON-NLS-1$
+        v = item.findViewById(R.id.storage_analysis_item_usage);
+        theme.setTextColor(ctx, (TextView)v, "text_color"); //$NON-NLS-1$
+    }
+}
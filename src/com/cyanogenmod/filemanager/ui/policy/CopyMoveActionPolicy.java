@@ -19,17 +19,23 @@ package com.cyanogenmod.filemanager.ui.policy;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.os.AsyncTask;
 import android.text.Html;
 import android.text.Spanned;
+import android.text.format.DateUtils;
 
 import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.RelaunchableException;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
 import com.cyanogenmod.filemanager.listeners.OnSelectionListener;
+import com.cyanogenmod.filemanager.model.CopyProgress;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.preferences.Bookmarks;
 import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.CopyJournal;
 import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
@@ -38,6 +44,7 @@ import com.cyanogenmod.filemanager.util.FileHelper;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A class with the convenience methods for resolve copy/move related actions
@@ -84,6 +91,48 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
         }
     }
 
+    /**
+     * A class that holds a listener for copy/move operations
+     */
+    private static class CopyMoveListener implements AsyncResultListener {
+
+        volatile CopyProgress mProgress;
+        volatile boolean mEnd;
+        volatile Throwable mCause;
+
+        /**
+         * Constructor of <code>CopyMoveListener</code>
+         */
+        public CopyMoveListener() {
+            super();
+            this.mEnd = false;
+            this.mCause = null;
+        }
+
+        @Override
+        public void onPartialResult(Object result) {
+            if (result instanceof CopyProgress) {
+                this.mProgress = (CopyProgress)result;
+            }
+        }
+
+        @Override
+        public void onException(Exception cause) {
+            this.mCause = cause;
+        }
+
+        @Override
+        public void onAsyncStart() {/**NON BLOCK**/}
+
+        @Override
+        public void onAsyncEnd(boolean cancelled) {/**NON BLOCK**/}
+
+        @Override
+        public void onAsyncExitCode(int exitCode) {
+            this.mEnd = true;
+        }
+    }
+
     /**
      * Method that remove an existing file system object.
      *
@@ -255,6 +304,9 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
             }
         }
 
+        // If the copy resumes an interrupted copy (set before the execution of the task)
+        final AtomicBoolean resume = new AtomicBoolean();
+
         // The callable interface
         final BackgroundCallable callable = new BackgroundCallable() {
             // The current items
@@ -266,6 +318,9 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
 
             final Object mSync = new Object();
             Throwable mCause;
+            boolean mRelaunched;
+            AsyncResultExecutable mCmd;
+            CopyMoveListener mListener;
 
             @Override
             public int getDialogTitle() {
@@ -280,7 +335,7 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
             }
             @Override
             public boolean isDialogCancellable() {
-                return false;
+                return true;
             }
 
             @Override
@@ -298,11 +353,26 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                                    R.string.waiting_dialog_copying_msg,
                               src.getAbsolutePath(),
                               dst.getAbsolutePath());
+
+                // The progress of the current file
+                CopyMoveListener listener = this.mListener;
+                CopyProgress copyProgress = listener != null ? listener.mProgress : null;
+                if (copyProgress != null && copyProgress.getBytesTotal() > 0) {
+                    progress += "<br/>" + getCopyProgress(this.mCtx, copyProgress); //$NON-NLS-1$
+                }
                 return Html.fromHtml(progress);
             }
 
             @Override
             public void onSuccess() {
+                // Cancel the operation in progress (the dialog was cancelled)
+                try {
+                    AsyncResultExecutable cmd = this.mCmd;
+                    if (cmd != null && cmd.isCancellable() && !cmd.isCancelled()) {
+                        cmd.cancel();
+                    }
+                } catch (Exception e) {/**NON BLOCK**/}
+
                 // Remove orphan bookmark paths
                 if (files != null) {
                     for (LinkedResource linkedFiles : files) {
@@ -331,7 +401,7 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                     File src = this.mFiles.get(i).mSrc;
                     File dst = this.mFiles.get(i).mDst;
 
-                    doOperation(this.mCtx, src, dst, this.mOperation);
+                    doOperation(this.mCtx, task, src, dst, this.mOperation);
 
                     // Next file
                     this.mCurrent++;
@@ -345,37 +415,23 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
              * Method that copy or move the file to another location
              *
              * @param ctx The current context
+             * @param task The task where the progress is displayed
              * @param src The source file
              * @param dst The destination file
              * @param operation Indicates the operation to do
              */
             private void doOperation(
-                    Context ctx, File src, File dst, COPY_MOVE_OPERATION operation)
-                    throws Throwable {
+                    Context ctx, BackgroundAsyncTask task, File src, File dst,
+                    COPY_MOVE_OPERATION operation) throws Throwable {
                 // If the source is the same as destiny then don't do the operation
                 if (src.compareTo(dst) == 0) return;
 
+                boolean started = false;
+                this.mRelaunched = false;
                 try {
-                    // Be sure to append a / if source is a folder (otherwise system crashes
-                    // under using absolute paths) Issue: CYAN-2791
-                    String source = src.getAbsolutePath() +
-                            (src.isDirectory() ? File.separator : "");
-
-                    // Copy or move?
-                    if (operation.compareTo(COPY_MOVE_OPERATION.MOVE) == 0 ||
-                            operation.compareTo(COPY_MOVE_OPERATION.RENAME) == 0) {
-                        CommandHelper.move(
-                                ctx,
-                                source,
-                                dst.getAbsolutePath(),
-                                null);
-                    } else {
-                        CommandHelper.copy(
-                                ctx,
-                                source,
-                                dst.getAbsolutePath(),
-                                null);
-                    }
+                    startOperation(ctx, src, dst, operation);
+                    started = true;
+
                 } catch (Exception e) {
                     // Need to be relaunched?
                     if (e instanceof RelaunchableException) {
@@ -383,6 +439,7 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                             @Override
                             @SuppressWarnings("unqualified-field-access")
                             public void onSuccess() {
+                                mRelaunched = true;
                                 synchronized (mSync) {
                                     mSync.notify();
                                 }
@@ -423,6 +480,15 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                     }
                 }
 
+                // The relaunch only prepared the filesystems. Now start the operation
+                if (!started && this.mRelaunched) {
+                    startOperation(ctx, src, dst, operation);
+                    started = true;
+                }
+                if (started) {
+                    waitForOperation(task);
+                }
+
                 // Check that the operation was completed retrieving the fso modified
                 FileSystemObject fso =
                         CommandHelper.getFileInfo(ctx, dst.getAbsolutePath(), false, null);
@@ -430,9 +496,136 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                     throw new NoSuchFileOrDirectory(dst.getAbsolutePath());
                 }
             }
+
+            /**
+             * Method that starts the copy or move of the file in background
+             *
+             * @param ctx The current context
+             * @param src The source file
+             * @param dst The destination file
+             * @param operation Indicates the operation to do
+             */
+            private void startOperation(
+                    Context ctx, File src, File dst, COPY_MOVE_OPERATION operation)
+                    throws Exception {
+                // Be sure to append a / if source is a folder (otherwise system crashes
+                // under using absolute paths) Issue: CYAN-2791
+                String source = src.getAbsolutePath() +
+                        (src.isDirectory() ? File.separator : "");
+
+                // Copy or move?
+                this.mListener = new CopyMoveListener();
+                if (operation.compareTo(COPY_MOVE_OPERATION.MOVE) == 0 ||
+                        operation.compareTo(COPY_MOVE_OPERATION.RENAME) == 0) {
+                    this.mCmd = CommandHelper.move(
+                            ctx,
+                            source,
+                            dst.getAbsolutePath(),
+                            this.mListener,
+                            null);
+                } else {
+                    this.mCmd = CommandHelper.copy(
+                            ctx,
+                            source,
+                            dst.getAbsolutePath(),
+                            resume.get(),
+                            this.mListener,
+                            null);
+                }
+            }
+
+            /**
+             * Method that waits for the end of the copy or move of the file, displaying
+             * its progress
+             *
+             * @param task The task where the progress is displayed
+             */
+            private void waitForOperation(BackgroundAsyncTask task) throws Throwable {
+                // Don't use an active blocking because this suppose that all message
+                // will be processed by the UI. Instead, refresh with a delay and
+                // display the last progress
+                CopyProgress drawn = null;
+                while (!this.mListener.mEnd) {
+                    // Sleep to don't saturate the UI thread
+                    Thread.sleep(50L);
+
+                    CopyProgress copyProgress = this.mListener.mProgress;
+                    if (copyProgress != drawn) {
+                        drawn = copyProgress;
+                        task.onRequestProgress();
+                    }
+                }
+
+                // Any exception? (the exit code is checked after the end)
+                Thread.sleep(100L);
+                if (this.mListener.mCause != null) {
+                    throw this.mListener.mCause;
+                }
+            }
         };
         final BackgroundAsyncTask task = new BackgroundAsyncTask(ctx, callable);
 
+        // Only the copies can be resumed
+        if (operation.compareTo(COPY_MOVE_OPERATION.COPY) != 0) {
+            checkOverwriteAndExecute(ctx, files, onSelectionListener, task);
+            return;
+        }
+
+        // Was a copy to the same destination interrupted? Then ask the user for resume it.
+        // The journals are read in background, and both choices still check if some of
+        // the files will be overwritten
+        AsyncTask<Void, Void, Boolean> resumeCheck = new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                return Boolean.valueOf(isResumable(ctx, files));
+            }
+
+            @Override
+            protected void onPostExecute(Boolean resumable) {
+                if (!resumable.booleanValue()) {
+                    checkOverwriteAndExecute(ctx, files, onSelectionListener, task);
+                    return;
+                }
+                AlertDialog dialog =
+                        DialogHelper.createThreeButtonsQuestionDialog(
+                                ctx,
+                                R.string.copy_resume,
+                                android.R.string.cancel,
+                                R.string.copy_start_over,
+                                R.string.copy_interrupted_title,
+                                ctx.getString(R.string.msgs_copy_interrupted),
+                                new DialogInterface.OnClickListener() {
+                                    @Override
+                                    public void onClick(DialogInterface alertDialog, int which) {
+                                        // POSITIVE (resume)  NEGATIVE (start over)
+                                        if (which == DialogInterface.BUTTON_POSITIVE) {
+                                            resume.set(true);
+                                            checkOverwriteAndExecute(
+                                                    ctx, files, onSelectionListener, task);
+                                        } else if (which == DialogInterface.BUTTON_NEGATIVE) {
+                                            checkOverwriteAndExecute(
+                                                    ctx, files, onSelectionListener, task);
+                                        }
+                                    }
+                               });
+                DialogHelper.delegateDialogShow(ctx, dialog);
+            }
+        };
+        resumeCheck.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Method that executes the copy or move task, asking the user first if some of the
+     * files will be overwritten.
+     *
+     * @param ctx The current context
+     * @param files The list of source/destination files
+     * @param onSelectionListener The listener for obtain selection information
+     * @param task The task of the copy or move
+     */
+    private static void checkOverwriteAndExecute(
+            Context ctx, List<LinkedResource> files,
+            OnSelectionListener onSelectionListener, final BackgroundAsyncTask task) {
         // Prior to execute, we need to check if some of the files will be overwritten
         List<FileSystemObject> curFiles = onSelectionListener.onRequestCurrentItems();
         if (curFiles != null) {
@@ -465,6 +658,56 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
         task.execute(task);
     }
 
+    /**
+     * Method that returns the description of the progress of a copy.
+     *
+     * @param ctx The current context
+     * @param progress The progress of the copy
+     * @return String The description of the progress
+     */
+    static String getCopyProgress(Context ctx, CopyProgress progress) {
+        String msg = ctx.getString(
+                R.string.waiting_dialog_copy_progress_msg,
+                FileHelper.getHumanReadableSize(progress.getBytesDone()),
+                FileHelper.getHumanReadableSize(progress.getBytesTotal()),
+                String.valueOf(progress.getFilesDone()),
+                String.valueOf(progress.getFilesTotal()));
+        if (progress.getThroughput() > 0) {
+            String throughput = FileHelper.getHumanReadableSize(progress.getThroughput());
+            if (progress.getEta() == CopyProgress.UNKNOWN_ETA) {
+                msg += "<br/>" + ctx.getString( //$NON-NLS-1$
+                        R.string.waiting_dialog_copy_throughput_msg, throughput);
+            } else {
+                msg += "<br/>" + ctx.getString( //$NON-NLS-1$
+                        R.string.waiting_dialog_copy_eta_msg,
+                        throughput,
+                        DateUtils.formatElapsedTime(progress.getEta() / 1000L));
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Method that checks if any of the copies was interrupted before, and can be resumed.
+     *
+     * @param ctx The current context
+     * @param files The list of source/destination files
+     * @return boolean If any of the copies can be resumed
+     */
+    private static boolean isResumable(Context ctx, List<LinkedResource> files) {
+        int cc = files.size();
+        for (int i = 0; i < cc; i++) {
+            LinkedResource linkedRes = files.get(i);
+            if (CopyJournal.isResumable(
+                    ctx,
+                    linkedRes.mSrc.getAbsolutePath(),
+                    linkedRes.mDst.getAbsolutePath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Method that check if is needed to prompt the user for overwrite prior to do
      * the operation.
@@ -24,12 +24,16 @@ import com.cyanogenmod.filemanager.console.ConsoleBuilder;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.ui.dialogs.ComputeChecksumDialog;
+import com.cyanogenmod.filemanager.ui.dialogs.DuplicatesDialog;
 import com.cyanogenmod.filemanager.ui.dialogs.FsoPropertiesDialog;
+import com.cyanogenmod.filemanager.ui.dialogs.StorageAnalysisDialog;
 import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
 
+import java.util.List;
+
 /**
  * A class with the convenience methods for resolve the display of info actions
  */
@@ -111,4 +115,87 @@ public final class InfoActionPolicy extends ActionsPolicy {
             });
         }
     }
+
+    /**
+     * Method that show a new dialog for analyze the storage used by a folder.
+     *
+     * @param ctx The current context
+     * @param fso The folder
+     */
+    public static void showStorageAnalysisDialog(
+            final Context ctx, final FileSystemObject fso) {
+        // Check that we have read access
+        try {
+            FileHelper.ensureReadAccess(
+                    ConsoleBuilder.getConsole(ctx),
+                    fso,
+                    null);
+
+            //Show the storage analysis dialog
+            final StorageAnalysisDialog dialog = new StorageAnalysisDialog(ctx, fso);
+            dialog.show();
+
+        } catch (Exception ex) {
+            ExceptionUtil.translateException(
+                    ctx, ex, false, true, new OnRelaunchCommandResult() {
+                @Override
+                public void onSuccess() {
+                    //Show the storage analysis dialog
+                    final StorageAnalysisDialog dialog = new StorageAnalysisDialog(ctx, fso);
+                    dialog.show();
+                }
+
+                @Override
+                public void onFailed(Throwable cause) {/**NON BLOCK**/}
+
+                @Override
+                public void onCancelled() {/**NON BLOCK**/}
+            });
+        }
+    }
+
+    /**
+     * Method that show a new dialog for search the duplicate files of one or more folders.
+     *
+     * @param ctx The current context
+     * @param folders The folders where to search
+     * @param onRequestRefreshListener The listener for request a refresh after the
+     * duplicates were deleted (optional)
+     */
+    public static void showDuplicatesDialog(
+            final Context ctx, final List<FileSystemObject> folders,
+            final OnRequestRefreshListener onRequestRefreshListener) {
+        // Check that we have read access
+        try {
+            for (FileSystemObject fso : folders) {
+                FileHelper.ensureReadAccess(
+                        ConsoleBuilder.getConsole(ctx),
+                        fso,
+                        null);
+            }
+
+            //Show the duplicates dialog
+            final DuplicatesDialog dialog =
+                    new DuplicatesDialog(ctx, folders, onRequestRefreshListener);
+            dialog.show();
+
+        } catch (Exception ex) {
+            ExceptionUtil.translateException(
+                    ctx, ex, false, true, new OnRelaunchCommandResult() {
+                @Override
+                public void onSuccess() {
+                    //Show the duplicates dialog
+                    final DuplicatesDialog dialog =
+                            new DuplicatesDialog(ctx, folders, onRequestRefreshListener);
+                    dialog.show();
+                }
+
+                @Override
+                public void onFailed(Throwable cause) {/**NON BLOCK**/}
+
+                @Override
+                public void onCancelled() {/**NON BLOCK**/}
+            });
+        }
+    }
 }
@@ -156,6 +156,7 @@ public class FlingerListView extends ListView {
     private float mFlingRemovePercentaje;
     private float mFlingThreshold;
     private OnItemFlingerListener mOnItemFlingerListener;
+    private OnScrollListener mOnScrollListener;
 
     /**
      * Constructor of <code>FlingerListView</code>.
@@ -200,20 +201,36 @@ public class FlingerListView extends ListView {
         //Initialize variables
         this.mFlingRemovePercentaje = DEFAULT_FLING_REMOVE_PERCENTAJE;
         this.mFlingThreshold = AndroidHelper.convertDpToPixel(getContext(), MIN_FLINGER_THRESHOLD);
-        setOnScrollListener(new OnScrollListener() {
+        super.setOnScrollListener(new OnScrollListener() {
             @Override
             public void onScrollStateChanged(AbsListView view, int scrollState) {
                 mScrollInAnimation = (scrollState == SCROLL_STATE_FLING);
+                if (mOnScrollListener != null) {
+                    mOnScrollListener.onScrollStateChanged(view, scrollState);
+                }
             }
 
             @Override
             public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
                     int totalItemCount) {
+                if (mOnScrollListener != null) {
+                    mOnScrollListener.onScroll(
+                            view, firstVisibleItem, visibleItemCount, totalItemCount);
+                }
             }
         });
         mScrollInAnimation = false;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnScrollListener(OnScrollListener l) {
+        // The view needs its own listener to detect flings. Chain the new one
+        this.mOnScrollListener = l;
+    }
+
     /**
      * Method that returns the percentage (from 0 to 1) of the item view width on which
      * an OnItemFlinger event occurs
@@ -28,6 +28,7 @@ import android.view.View;
 import android.view.animation.AccelerateInterpolator;
 import android.view.animation.AlphaAnimation;
 import android.view.animation.Animation;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListAdapter;
 import android.widget.ListView;
@@ -52,6 +53,7 @@ import com.cyanogenmod.filemanager.preferences.AccessMode;
 import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.NavigationLayoutMode;
+import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
 import com.cyanogenmod.filemanager.preferences.ObjectIdentifier;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
@@ -65,7 +67,9 @@ import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FolderSizeCache;
 import com.cyanogenmod.filemanager.util.StorageHelper;
+import com.cyanogenmod.filemanager.util.SuggestionIndex;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -80,7 +84,7 @@ import java.util.Map;
  */
 public class NavigationView extends RelativeLayout implements
     AdapterView.OnItemClickListener, AdapterView.OnItemLongClickListener,
-    BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRefreshListener {
+    AbsListView.OnScrollListener, BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRefreshListener {
 
     private static final String TAG = "NavigationView"; //$NON-NLS-1$
 
@@ -403,6 +407,7 @@ public class NavigationView extends RelativeLayout implements
      */
     List<FileSystemObject> mFiles;
     private FileSystemObjectAdapter mAdapter;
+    private ScrollPrefetcher mPrefetcher;
 
     private OnHistoryListener mOnHistoryListener;
     private OnNavigationSelectionChangedListener mOnNavigationSelectionChangedListener;
@@ -536,6 +541,8 @@ public class NavigationView extends RelativeLayout implements
 
         //Initialize variables
         this.mFiles = new ArrayList<FileSystemObject>();
+        this.mPrefetcher = new ScrollPrefetcher(
+                getResources().getInteger(R.integer.thumbnail_prefetch_rows));
 
         // Is ChRooted environment?
         if (this.mNavigationMode.compareTo(NAVIGATION_MODE.PICKABLE) == 0) {
@@ -868,8 +875,12 @@ public class NavigationView extends RelativeLayout implements
 
         //Set the adapter
         this.mAdapter = adapter;
+        this.mPrefetcher.reset();
         newView.setAdapter(this.mAdapter);
         newView.setOnItemClickListener(NavigationView.this);
+        if (newView instanceof AbsListView) {
+            ((AbsListView)newView).setOnScrollListener(this);
+        }
 
         //Add the new layout
         this.mAdapterView = newView;
@@ -1034,6 +1045,10 @@ public class NavigationView extends RelativeLayout implements
 
             //The current directory is now the "newDir"
             this.mCurrentDir = newDir;
+            if (hasChanged) {
+                SuggestionIndex.getInstance(getContext()).recordDirectory(newDir);
+            }
+            refreshFolderSizes(newDir);
             if (this.mOnDirectoryChangedListener != null) {
                 FileSystemObject dir = FileHelper.createFileSystemObject(new File(newDir));
                 this.mOnDirectoryChangedListener.onDirectoryChanged(dir);
@@ -1053,6 +1068,74 @@ public class NavigationView extends RelativeLayout implements
         }
     }
 
+    /**
+     * Method that refreshes in background the size of the folders of a directory, if they
+     * are shown or used to sort, and redraws the list when the refresh ends (the sizes
+     * are unknown while the cache is loading). Only the directories of the storage
+     * volumes are walked, and not again while a recent walk of the tree is still valid.
+     *
+     * @param dir The directory
+     */
+    private void refreshFolderSizes(final String dir) {
+        final FolderSizeCache cache = FolderSizeCache.getInstance(getContext());
+        cache.cancelRefreshes();
+
+        SharedPreferences prefs = Preferences.getSharedPreferences();
+        boolean showFolderSizes = prefs.getBoolean(
+                FileManagerSettings.SETTINGS_SHOW_FOLDER_SIZES.getId(),
+                ((Boolean)FileManagerSettings.SETTINGS_SHOW_FOLDER_SIZES.
+                        getDefaultValue()).booleanValue());
+        int sortMode = prefs.getInt(
+                FileManagerSettings.SETTINGS_SORT_MODE.getId(),
+                ((ObjectIdentifier)FileManagerSettings.SETTINGS_SORT_MODE.
+                        getDefaultValue()).getId());
+        final boolean sortBySize = sortMode == NavigationSortMode.SIZE_ASC.getId()
+                || sortMode == NavigationSortMode.SIZE_DESC.getId();
+        if ((!showFolderSizes && !sortBySize) || !StorageHelper.isPathInStorageVolume(dir)) {
+            return;
+        }
+
+        AsyncTask<Void, Void, Boolean> task = new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                return Boolean.valueOf(cache.refreshIfStale(new File(dir)));
+            }
+
+            @Override
+            protected void onPostExecute(Boolean result) {
+                if (result.booleanValue()) {
+                    onFolderSizesRefreshed(dir, sortBySize);
+                }
+            }
+        };
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Method invoked when the size of the folders of a directory were refreshed.
+     *
+     * @param dir The directory
+     * @param sortBySize If the files are sorted by size
+     * @hide
+     */
+    void onFolderSizesRefreshed(String dir, boolean sortBySize) {
+        if (this.mFiles == null || this.mAdapter == null || !dir.equals(this.mCurrentDir)) {
+            return;
+        }
+        if (sortBySize) {
+            // Sort again with the new sizes
+            List<FileSystemObject> sortedFiles = FileHelper.applyUserPreferences(
+                    new ArrayList<FileSystemObject>(this.mFiles),
+                    this.mRestrictions, this.mChRooted);
+            if (!sortedFiles.equals(this.mFiles)) {
+                loadData(sortedFiles);
+                this.mFiles = sortedFiles;
+                return;
+            }
+        }
+        this.mAdapter.notifyDataSetChanged();
+    }
+
     /**
      * Method that loads the files in the adapter.
      *
@@ -1066,6 +1149,8 @@ public class NavigationView extends RelativeLayout implements
                 (AdapterView<ListAdapter>)findViewById(RESOURCE_CURRENT_LAYOUT);
         FileSystemObjectAdapter adapter = (FileSystemObjectAdapter)view.getAdapter();
         adapter.setNotifyOnChange(false);
+        adapter.cancelPrefetch();
+        this.mPrefetcher.reset();
         adapter.clear();
         adapter.addAll(files);
         adapter.notifyDataSetChanged();
@@ -1162,6 +1247,26 @@ public class NavigationView extends RelativeLayout implements
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+            int totalItemCount) {
+        if (this.mAdapter != null && visibleItemCount > 0) {
+            this.mAdapter.setVisibleRange(
+                    firstVisibleItem, firstVisibleItem + visibleItemCount - 1);
+            this.mPrefetcher.onScroll(
+                    this.mAdapter, view, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
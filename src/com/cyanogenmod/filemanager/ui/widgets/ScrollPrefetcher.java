@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui.widgets;
+
+import android.os.SystemClock;
+import android.widget.AbsListView;
+import android.widget.GridView;
+
+import com.cyanogenmod.filemanager.adapters.FileSystemObjectAdapter;
+
+/**
+ * A class that follows the scroll of a list or grid of {@link FileSystemObjectAdapter}
+ * and prefetches the thumbnails of the items ahead of the scroll direction.<br/>
+ * <br/>
+ * The lookahead grows with the scroll velocity (enough rows to cover the next
+ * {@link #LOOKAHEAD_TIME} ms of scroll, at least one screen and at most the configured
+ * max rows). When the direction changes the pending lookahead is cancelled.
+ */
+public class ScrollPrefetcher {
+
+    // The time of scroll to cover with the lookahead
+    private static final long LOOKAHEAD_TIME = 750L;
+
+    private final int mMaxRows;
+
+    private int mLastFirst;
+    private long mLastTime;
+    private float mVelocity;    // Items per ms
+    private int mDirection;
+    private int mPrefetchedEdge;
+    private int mTotal;
+
+    /**
+     * Constructor of <code>ScrollPrefetcher</code>.
+     *
+     * @param maxRows The max number of rows ahead to prefetch
+     */
+    public ScrollPrefetcher(int maxRows) {
+        super();
+        this.mMaxRows = maxRows;
+        reset();
+    }
+
+    /**
+     * Method that resets the scroll state (when the data of the view changes).
+     */
+    public void reset() {
+        this.mLastFirst = -1;
+        this.mLastTime = 0;
+        this.mVelocity = 0;
+        this.mDirection = 0;
+        this.mPrefetchedEdge = -1;
+        this.mTotal = -1;
+    }
+
+    /**
+     * Method that must be called on every scroll event of the view.
+     *
+     * @param adapter The adapter of the view
+     * @param view The view
+     * @param first The first visible position
+     * @param count The number of visible items
+     * @param total The number of items of the adapter
+     */
+    public void onScroll(FileSystemObjectAdapter adapter, AbsListView view,
+            int first, int count, int total) {
+        if (count <= 0) {
+            return;
+        }
+        if (total != this.mTotal) {
+            reset();
+            this.mTotal = total;
+        }
+        final long now = SystemClock.uptimeMillis();
+        if (this.mLastFirst == -1) {
+            this.mLastFirst = first;
+            this.mLastTime = now;
+            return;
+        }
+        if (first == this.mLastFirst) {
+            return;
+        }
+
+        // Direction and velocity (smoothed)
+        int delta = first - this.mLastFirst;
+        int direction = delta > 0 ? 1 : -1;
+        long elapsed = Math.max(1, now - this.mLastTime);
+        float velocity = Math.abs(delta) / (float)elapsed;
+        this.mVelocity = this.mVelocity == 0 ? velocity : (this.mVelocity + velocity) / 2;
+        this.mLastFirst = first;
+        this.mLastTime = now;
+        if (direction != this.mDirection) {
+            // The lookahead of the other direction is useless now
+            adapter.cancelPrefetch();
+            this.mDirection = direction;
+            this.mPrefetchedEdge = -1;
+        }
+
+        // How many items ahead
+        int columns = 1;
+        if (view instanceof GridView) {
+            columns = Math.max(1, ((GridView)view).getNumColumns());
+        }
+        int rows = (int)Math.ceil(this.mVelocity * LOOKAHEAD_TIME / columns);
+        rows = Math.max(count / columns, Math.min(this.mMaxRows, rows));
+        int ahead = rows * columns;
+
+        int last = first + count - 1;
+        if (direction > 0) {
+            int from = Math.max(last + 1, this.mPrefetchedEdge + 1);
+            int to = Math.min(total - 1, last + ahead);
+            if (from <= to) {
+                this.mPrefetchedEdge = adapter.prefetch(from, to);
+            }
+        } else {
+            int from = this.mPrefetchedEdge == -1
+                    ? first - 1 : Math.min(first - 1, this.mPrefetchedEdge - 1);
+            int to = Math.max(0, first - ahead);
+            if (from >= to) {
+                int edge = adapter.prefetch(from, to);
+                this.mPrefetchedEdge = edge <= from ? edge : -1;
+            }
+        }
+    }
+}
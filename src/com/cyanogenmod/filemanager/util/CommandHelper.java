@@ -19,17 +19,22 @@ package com.cyanogenmod.filemanager.util;
 import android.content.Context;
 import android.media.MediaScannerConnection;
 
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.AsyncCopyExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncMoveExecutable;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.commands.CompressExecutable;
+import com.cyanogenmod.filemanager.commands.ContentSearchExecutable;
 import com.cyanogenmod.filemanager.commands.CopyExecutable;
 import com.cyanogenmod.filemanager.commands.CreateDirExecutable;
 import com.cyanogenmod.filemanager.commands.CreateFileExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteDirExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteFileExecutable;
 import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
 import com.cyanogenmod.filemanager.commands.EchoExecutable;
 import com.cyanogenmod.filemanager.commands.ExecExecutable;
 import com.cyanogenmod.filemanager.commands.Executable;
@@ -49,10 +54,12 @@ import com.cyanogenmod.filemanager.commands.ReadExecutable;
 import com.cyanogenmod.filemanager.commands.ResolveLinkExecutable;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.commands.SendSignalExecutable;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
 import com.cyanogenmod.filemanager.commands.SyncResultExecutable;
 import com.cyanogenmod.filemanager.commands.UncompressExecutable;
 import com.cyanogenmod.filemanager.commands.WritableExecutable;
 import com.cyanogenmod.filemanager.commands.WriteExecutable;
+import com.cyanogenmod.filemanager.commands.java.IndexedFindCommand;
 import com.cyanogenmod.filemanager.commands.shell.InvalidCommandDefinitionException;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.Console;
@@ -63,7 +70,11 @@ import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.OperationTimeoutException;
 import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
+import com.cyanogenmod.filemanager.console.java.JavaConsole;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.ContentQuery;
 import com.cyanogenmod.filemanager.model.DiskUsage;
+import com.cyanogenmod.filemanager.model.Duplicates;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.FolderUsage;
 import com.cyanogenmod.filemanager.model.Group;
@@ -72,6 +83,7 @@ import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.model.Permissions;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.SearchResult;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.preferences.CompressionMode;
 
@@ -136,8 +148,18 @@ public final class CommandHelper {
 
             // Now if that the process has finished check if the operation
             // requires to unmount the filesystem
-            if (this.mUnmount && this.mConsole != null &&
-                this.mMountPoint != null && this.mCtx != null) {
+            if (this.mUnmount) {
+                unmount(this.mMountPoint);
+            }
+        }
+
+        /**
+         * Method that unmounts a filesystem that was mounted for the operation.
+         *
+         * @param mp The mount point to unmount
+         */
+        void unmount(final MountPoint mp) {
+            if (this.mConsole != null && mp != null && this.mCtx != null) {
                 // Run in background because the console is still executing
                 // the command
                 Thread t = new Thread() {
@@ -147,10 +169,9 @@ public final class CommandHelper {
                             MountExecutable unmountExecutable =
                                     UnmountAsyncResultListener.this.mConsole.
                                         getExecutableFactory().newCreator().
-                                            createMountExecutable(
-                                                    UnmountAsyncResultListener.this.mMountPoint,
-                                                    false);
+                                            createMountExecutable(mp, false);
                             UnmountAsyncResultListener.this.mConsole.execute(unmountExecutable);
+                            MountPointHelper.invalidate();
                         } catch (Exception e) {
                             // Capture the exception but not show to the user
                             ExceptionUtil.translateException(
@@ -183,6 +204,65 @@ public final class CommandHelper {
         }
     }
 
+    /**
+     * A wrapper class for asynchronous copy and move operations. When the operation ends,
+     * the caches and the media of the written paths are refreshed.
+     */
+    private static class CopyMoveAsyncResultListener extends UnmountAsyncResultListener {
+
+        String mSrc;
+        String mDst;
+        boolean mMove;
+        boolean mUnmountSrc = false;
+        MountPoint mSrcMountPoint;
+
+        /**
+         * Constructor of <code>CopyMoveAsyncResultListener</code>
+         */
+        public CopyMoveAsyncResultListener() {
+            super();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAsyncExitCode(int exitCode) {
+            // Refresh the written paths before notify the end of the operation
+            if (this.mCtx != null) {
+                invalidateFolderSizes(this.mCtx, this.mDst);
+                if (this.mMove) {
+                    invalidateFolderSizes(this.mCtx, this.mSrc);
+                }
+            }
+            if (this.mMountPoint != null) {
+                DiskUsageCache.getInstance().invalidate(this.mMountPoint);
+            }
+            if (this.mMove && this.mSrcMountPoint != null) {
+                DiskUsageCache.getInstance().invalidate(this.mSrcMountPoint);
+            }
+
+            super.onAsyncExitCode(exitCode);
+            if (this.mUnmountSrc) {
+                unmount(this.mSrcMountPoint);
+            }
+
+            // Do media scan
+            if (this.mCtx != null) {
+                if (this.mMove) {
+                    File parent = new File(this.mSrc).getParentFile();
+                    if (parent != null) {
+                        MediaScannerConnection.scanFile(this.mCtx, new String[]{
+                                MediaHelper.normalizeMediaPath(parent.getAbsolutePath())},
+                                null, null);
+                    }
+                }
+                MediaScannerConnection.scanFile(this.mCtx, new String[]{
+                        MediaHelper.normalizeMediaPath(this.mDst)}, null, null);
+            }
+        }
+    }
+
     /**
      * Constructor of <code>CommandHelper</code>.
      */
@@ -731,6 +811,7 @@ public final class CommandHelper {
         MoveExecutable executable =
                 c.getExecutableFactory().newCreator().createMoveExecutable(src, dst);
         writableExecute(context, executable, c);
+        invalidateFolderSizes(context, dst);
 
         // Do media scan
         File parent = new File(src).getParentFile();
@@ -774,6 +855,7 @@ public final class CommandHelper {
         CopyExecutable executable =
                 c.getExecutableFactory().newCreator().createCopyExecutable(src, dst);
         writableExecute(context, executable, c);
+        invalidateFolderSizes(context, dst);
 
         // Do media scan
         MediaScannerConnection.scanFile(context, new String[]{
@@ -782,6 +864,142 @@ public final class CommandHelper {
         return executable.getResult().booleanValue();
     }
 
+    /**
+     * Method that moves a file system object, reporting the progress of the operation.
+     *
+     * @param context The current context (needed if console == null)
+     * @param src The file system object to move
+     * @param dst The destination file system object
+     * @param asyncResultListener The listener where to return the progress
+     * @param console The console in which execute the program. <code>null</code>
+     * to attach to the default console
+     * @return AsyncMoveExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @see AsyncMoveExecutable
+     */
+    public static AsyncMoveExecutable move(
+            Context context, String src, String dst,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        Console c = ensureConsole(context, console);
+
+        // Create a wrapper listener, for unmount the filesystems if necessary
+        CopyMoveAsyncResultListener wrapperListener = new CopyMoveAsyncResultListener();
+        wrapperListener.mCtx = context;
+        wrapperListener.mConsole = c;
+        wrapperListener.mRef = asyncResultListener;
+        wrapperListener.mSrc = src;
+        wrapperListener.mDst = dst;
+        wrapperListener.mMove = true;
+
+        AsyncMoveExecutable executable1 =
+                c.getExecutableFactory().newCreator().
+                    createAsyncMoveExecutable(src, dst, wrapperListener);
+
+        // Prior to write to disk the data, ensure that can write to the source and the
+        // destination filesystems using the createFolder method over their parents
+        CreateDirExecutable executable2 =
+                c.getExecutableFactory().
+                    newCreator().
+                        createCreateDirectoryExecutable(FileHelper.getParentDir(dst));
+        boolean unmount = writableExecute(context, executable2, c, true);
+        CreateDirExecutable executable3 =
+                c.getExecutableFactory().
+                    newCreator().
+                        createCreateDirectoryExecutable(FileHelper.getParentDir(src));
+        boolean unmountSrc = writableExecute(context, executable3, c, true);
+        if (executable2.getResult().booleanValue() && executable3.getResult().booleanValue()) {
+            // Configure the rest of attributes of the wrapper listener
+            wrapperListener.mUnmount = unmount;
+            wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
+            wrapperListener.mUnmountSrc = unmountSrc;
+            wrapperListener.mSrcMountPoint = executable3.getDstWritableMountPoint();
+
+            //- Move
+            execute(context, executable1, c);
+            return executable1;
+        }
+        throw new ExecutionException(
+                String.format("Fail to move to %s", dst)); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that copies a file system object, reporting the progress of the operation.
+     *
+     * @param context The current context (needed if console == null)
+     * @param src The file system object to copy
+     * @param dst The destination file system object
+     * @param resume If the copy must resume an interrupted copy of the same source and
+     * destination
+     * @param asyncResultListener The listener where to return the progress
+     * @param console The console in which execute the program. <code>null</code>
+     * to attach to the default console
+     * @return AsyncCopyExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @see AsyncCopyExecutable
+     */
+    public static AsyncCopyExecutable copy(
+            Context context, String src, String dst, boolean resume,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        Console c = ensureConsole(context, console);
+
+        // Create a wrapper listener, for unmount the filesystem if necessary
+        CopyMoveAsyncResultListener wrapperListener = new CopyMoveAsyncResultListener();
+        wrapperListener.mCtx = context;
+        wrapperListener.mConsole = c;
+        wrapperListener.mRef = asyncResultListener;
+        wrapperListener.mSrc = src;
+        wrapperListener.mDst = dst;
+
+        AsyncCopyExecutable executable1 =
+                c.getExecutableFactory().newCreator().
+                    createAsyncCopyExecutable(src, dst, resume, wrapperListener);
+
+        // Prior to write to disk the data, ensure that can write to the disk using
+        // the createFolder method over the parent of the destination
+        CreateDirExecutable executable2 =
+                c.getExecutableFactory().
+                    newCreator().
+                        createCreateDirectoryExecutable(FileHelper.getParentDir(dst));
+        boolean unmount = writableExecute(context, executable2, c, true);
+        if (executable2.getResult().booleanValue()) {
+            // Configure the rest of attributes of the wrapper listener
+            wrapperListener.mUnmount = unmount;
+            wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
+
+            //- Copy
+            execute(context, executable1, c);
+            return executable1;
+        }
+        throw new ExecutionException(
+                String.format("Fail to copy to %s", dst)); //$NON-NLS-1$
+    }
+
     /**
      * Method that executes a command.
      *
@@ -817,7 +1035,11 @@ public final class CommandHelper {
     }
 
     /**
-     * Method that does a search in a directory tree seeking for some terms.
+     * Method that does a search in a directory tree seeking for some terms. If the
+     * {@link FileNameIndex} covers the directory, the search is answered by the index.
+     * The index is read by a java program, so if the console is a shell console the
+     * search runs in a java console of its own (the index only covers the storage
+     * volumes, that the app can read without privileges).
      *
      * @param context The current context (needed if console == null)
      * @param directory The "absolute" directory where start the search
@@ -846,6 +1068,21 @@ public final class CommandHelper {
             CommandNotFoundException, OperationTimeoutException,
             ExecutionException, InvalidCommandDefinitionException {
         Console c = ensureConsole(context, console);
+        FileNameIndex index = FileNameIndex.getInstance(context);
+        if (index.covers(directory)) {
+            Console jc = c;
+            if (!(jc instanceof JavaConsole)) {
+                // A shell console can't run a java program
+                jc = new JavaConsole(
+                        context, context.getResources().getInteger(R.integer.buffer_size));
+                jc.alloc();
+            }
+            FindExecutable executable =
+                    new IndexedFindCommand(index, directory, search, asyncResultListener);
+            execute(context, executable, jc);
+            return executable;
+        }
+
         FindExecutable executable =
                 c.getExecutableFactory().newCreator().
                     createFindExecutable(directory, search, asyncResultListener);
@@ -853,6 +1090,50 @@ public final class CommandHelper {
         return executable;
     }
 
+    /**
+     * Method that does a search over the content of the files of a directory tree. The
+     * partial results are lists of {@link ContentMatch}. The java console scans the
+     * files in parallel; the shell console (privileged paths) uses <code>grep</code>.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The "absolute" directory where start the search
+     * @param query The terms and the filters of the search
+     * @param asyncResultListener The partial result listener
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return ContentSearchExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see ContentMatch
+     * @see ContentSearchExecutable
+     */
+    public static ContentSearchExecutable searchContents(
+            Context context, String directory, ContentQuery query,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        // The commands filter the categories without a context
+        if (query.hasCategories()) {
+            MimeTypeHelper.loadMimeTypes(context);
+        }
+
+        Console c = ensureConsole(context, console);
+        ContentSearchExecutable executable =
+                c.getExecutableFactory().newCreator().
+                    createContentSearchExecutable(directory, query, asyncResultListener);
+        execute(context, executable, c);
+        return executable;
+    }
+
     /**
      * Method that compute the disk usage of a folder.
      *
@@ -881,6 +1162,9 @@ public final class CommandHelper {
             NoSuchFileOrDirectory, InsufficientPermissionsException,
             CommandNotFoundException, OperationTimeoutException,
             ExecutionException, InvalidCommandDefinitionException {
+        // The commands classify the files without a context
+        MimeTypeHelper.loadMimeTypes(context);
+
         Console c = ensureConsole(context, console);
         FolderUsageExecutable executable =
                 c.getExecutableFactory().newCreator().
@@ -889,6 +1173,85 @@ public final class CommandHelper {
         return executable;
     }
 
+    /**
+     * Method that analyzes the storage used by a folder: the largest files and folders,
+     * and the usage per range of sizes and per extension.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The "absolute" directory to analyze
+     * @param asyncResultListener The partial result listener
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return StorageAnalysisExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see StorageAnalysis
+     * @see StorageAnalysisExecutable
+     */
+    public static StorageAnalysisExecutable analyzeStorage(
+            Context context, String directory,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        Console c = ensureConsole(context, console);
+        StorageAnalysisExecutable executable =
+                c.getExecutableFactory().newCreator().
+                    createStorageAnalysisExecutable(directory, asyncResultListener);
+        execute(context, executable, c);
+        return executable;
+    }
+
+    /**
+     * Method that searches the duplicate files of one or more folders. The files are
+     * read in parallel, so the search always runs in a java console.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directories The "absolute" directories where to search
+     * @param asyncResultListener The partial result listener
+     * @param console The java console in which execute the program.
+     * <code>null</code> (or other console) to execute in a new java console
+     * @return DuplicatesExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see Duplicates
+     * @see DuplicatesExecutable
+     */
+    public static DuplicatesExecutable findDuplicates(
+            Context context, String[] directories,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        Console c = console;
+        if (!(c instanceof JavaConsole)) {
+            c = new JavaConsole(
+                    context, context.getResources().getInteger(R.integer.buffer_size));
+            c.alloc();
+        }
+        DuplicatesExecutable executable =
+                c.getExecutableFactory().newCreator().
+                    createDuplicatesExecutable(directories, asyncResultListener);
+        execute(context, executable, c);
+        return executable;
+    }
+
     /**
      * Method that retrieves the disk usage of all the mount points.
      *
@@ -1012,7 +1375,11 @@ public final class CommandHelper {
         Console c = ensureConsole(context, console);
         MountExecutable executable =
                 c.getExecutableFactory().newCreator().createMountExecutable(mp, rw);
-        execute(context, executable, c);
+        try {
+            execute(context, executable, c);
+        } finally {
+            MountPointHelper.invalidate();
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -1257,6 +1624,7 @@ public final class CommandHelper {
         CreateFileExecutable executable1 =
                 c.getExecutableFactory().newCreator().createCreateFileExecutable(file);
         boolean unmount = writableExecute(context, executable1, c, true);
+        invalidateFolderSizes(context, file);
         if (executable1.getResult().booleanValue()) {
             // Configure the rest of attributes of the wrapper listener
             wrapperListener.mUnmount = unmount;
@@ -1711,6 +2079,14 @@ public final class CommandHelper {
             //Execute the command
             console.execute(executable);
 
+            // The free space of the written mount points changed
+            if (mpDst != null) {
+                DiskUsageCache.getInstance().invalidate(mpDst);
+            }
+            if (mpSrc != null) {
+                DiskUsageCache.getInstance().invalidate(mpSrc);
+            }
+
         } catch (InsufficientPermissionsException ipEx) {
             //Configure the commands to execute
             if (needMountDst && !mountExecutedDst) {
@@ -1745,12 +2121,31 @@ public final class CommandHelper {
                 //Execute the unmount command
                 console.execute(unmountSrcExecutable);
             }
+            if (mountExecutedDst || mountExecutedSrc) {
+                MountPointHelper.invalidate();
+            }
         }
 
         // If the needed unmount was executed
         return (mountExecutedDst || mountExecutedSrc) && leaveDeviceMounted;
     }
 
+    /**
+     * Method that invalidates the cached usage of a written file system object and of its
+     * parent. Overwriting a file doesn't change the modification time of its directory.
+     *
+     * @param context The current context
+     * @param path The written file system object
+     */
+    private static void invalidateFolderSizes(Context context, String path) {
+        FolderSizeCache cache = FolderSizeCache.getInstance(context);
+        cache.invalidate(path);
+        File parent = new File(path).getParentFile();
+        if (parent != null) {
+            cache.invalidate(parent.getAbsolutePath());
+        }
+    }
+
     /**
      * Method that ensure the console retrieve the default console if a console
      * is not passed.
@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.model.ContentQuery;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A class that matches the terms of a {@link ContentQuery} against the content of
+ * the files.<br/>
+ * <br/>
+ * Literal terms are compiled to a single Aho-Corasick automaton over the UTF-8 bytes
+ * of the terms (a dense 256 columns table), so the content is scanned once, byte by byte,
+ * without decoding it and whatever the number of terms. The case of the terms is ignored
+ * only for ASCII letters. Regular expressions are matched line by line, decoding every
+ * line as UTF-8.<br/>
+ * <br/>
+ * A matcher is immutable and can be shared by threads; the state of a scan is held
+ * by a {@link Scanner}.
+ */
+public final class ContentMatcher {
+
+    /**
+     * The interface that receives the matches of a scan.
+     */
+    public interface Listener {
+        /**
+         * Method invoked when a line matches.
+         *
+         * @param term The index of the matched term
+         * @param line The number of the line (starting at 1)
+         * @param column The position of the match in the line, or -1 if it's unknown
+         * @param offset The byte offset of the match
+         * @param text The text of the line (could be truncated)
+         * @return boolean If the scan must continue
+         */
+        boolean onMatch(int term, int line, int column, long offset, String text);
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    // The bytes of the line reported around the match
+    private static final int TEXT_CONTEXT = 128;
+    // The max length of a line matched against regular expressions
+    private static final int MAX_REGEXP_LINE = 64 * 1024;
+
+    private final boolean mRegExp;
+    private final int mTermCount;
+
+    // Literal terms
+    private final int[] mDelta;
+    private final int[] mOutput;
+    private final int[] mTermLengths;
+
+    // Regular expressions
+    private final Pattern[] mPatterns;
+
+    // Literal terms, for match decoded lines
+    private final String[] mFoldedTerms;
+    private final boolean mIgnoreCase;
+
+    /**
+     * Constructor of <code>ContentMatcher</code>.
+     */
+    private ContentMatcher(ContentQuery query) {
+        super();
+        List<String> terms = query.getTerms();
+        this.mRegExp = query.isRegExp();
+        this.mIgnoreCase = query.isIgnoreCase();
+        this.mTermCount = terms.size();
+        this.mFoldedTerms = new String[this.mTermCount];
+        for (int i = 0; i < this.mTermCount; i++) {
+            this.mFoldedTerms[i] = this.mIgnoreCase ? foldAscii(terms.get(i)) : terms.get(i);
+        }
+
+        if (this.mRegExp) {
+            this.mPatterns = new Pattern[this.mTermCount];
+            int flags = this.mIgnoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            for (int i = 0; i < this.mTermCount; i++) {
+                this.mPatterns[i] = Pattern.compile(terms.get(i), flags);
+            }
+            this.mDelta = null;
+            this.mOutput = null;
+            this.mTermLengths = null;
+            return;
+        }
+        this.mPatterns = null;
+
+        // Build the trie
+        List<int[]> gotos = new ArrayList<int[]>();
+        List<Integer> outputs = new ArrayList<Integer>();
+        gotos.add(newTransitions());
+        outputs.add(Integer.valueOf(-1));
+        this.mTermLengths = new int[this.mTermCount];
+        for (int i = 0; i < this.mTermCount; i++) {
+            byte[] bytes = this.mFoldedTerms[i].getBytes(UTF8);
+            this.mTermLengths[i] = bytes.length;
+            int state = 0;
+            for (int j = 0; j < bytes.length; j++) {
+                int b = bytes[j] & 0xff;
+                int next = gotos.get(state)[b];
+                if (next == -1) {
+                    next = gotos.size();
+                    gotos.add(newTransitions());
+                    outputs.add(Integer.valueOf(-1));
+                    gotos.get(state)[b] = next;
+                }
+                state = next;
+            }
+            if (outputs.get(state).intValue() == -1) {
+                outputs.set(state, Integer.valueOf(i));
+            }
+        }
+
+        // Complete the automaton (breadth first, following the fail links)
+        int states = gotos.size();
+        this.mDelta = new int[states << 8];
+        this.mOutput = new int[states];
+        int[] fail = new int[states];
+        for (int s = 0; s < states; s++) {
+            this.mOutput[s] = outputs.get(s).intValue();
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        int[] root = gotos.get(0);
+        for (int b = 0; b < 256; b++) {
+            int next = root[b];
+            if (next == -1) {
+                this.mDelta[b] = 0;
+            } else {
+                this.mDelta[b] = next;
+                fail[next] = 0;
+                queue.add(Integer.valueOf(next));
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll().intValue();
+            if (this.mOutput[s] == -1) {
+                this.mOutput[s] = this.mOutput[fail[s]];
+            }
+            int[] trans = gotos.get(s);
+            for (int b = 0; b < 256; b++) {
+                int next = trans[b];
+                if (next == -1) {
+                    this.mDelta[(s << 8) | b] = this.mDelta[(fail[s] << 8) | b];
+                } else {
+                    this.mDelta[(s << 8) | b] = next;
+                    fail[next] = this.mDelta[(fail[s] << 8) | b];
+                    queue.add(Integer.valueOf(next));
+                }
+            }
+        }
+        if (this.mIgnoreCase) {
+            // The terms are folded, so the uppercase letters behave like the lowercase ones
+            for (int s = 0; s < states; s++) {
+                for (int b = 'A'; b <= 'Z'; b++) {
+                    this.mDelta[(s << 8) | b] = this.mDelta[(s << 8) | (b + ('a' - 'A'))];
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that compiles the terms of a query.
+     *
+     * @param query The query
+     * @return ContentMatcher The matcher of the query
+     * @throws java.util.regex.PatternSyntaxException If a regular expression is invalid
+     */
+    public static ContentMatcher compile(ContentQuery query) {
+        return new ContentMatcher(query);
+    }
+
+    /**
+     * Method that creates the state of a new scan.
+     *
+     * @return Scanner The state of a scan
+     */
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Method that returns the first term that matches a decoded line.
+     *
+     * @param line The line
+     * @param column An array where return the position of the match in the line (can be null)
+     * @return int The index of the matched term, or -1 if no term matches
+     */
+    public int matchLine(String line, int[] column) {
+        int term = -1;
+        int start = Integer.MAX_VALUE;
+        String folded = null;
+        for (int i = 0; i < this.mTermCount; i++) {
+            int pos;
+            if (this.mRegExp) {
+                Matcher m = this.mPatterns[i].matcher(line);
+                pos = m.find() ? m.start() : -1;
+            } else {
+                if (folded == null) {
+                    folded = this.mIgnoreCase ? foldAscii(line) : line;
+                }
+                pos = folded.indexOf(this.mFoldedTerms[i]);
+            }
+            if (pos != -1 && pos < start) {
+                start = pos;
+                term = i;
+            }
+        }
+        if (column != null && column.length > 0) {
+            column[0] = term == -1 ? -1 : start;
+        }
+        return term;
+    }
+
+    /**
+     * Method that returns if a buffer looks like binary data (contains a NUL byte
+     * in its first bytes).
+     *
+     * @param buffer The buffer (its position is not changed)
+     * @param max The max number of bytes to check
+     * @return boolean If the buffer looks like binary data
+     */
+    public static boolean isBinary(ByteBuffer buffer, int max) {
+        int end = Math.min(buffer.limit(), buffer.position() + max);
+        for (int i = buffer.position(); i < end; i++) {
+            if (buffer.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The state of the scan of a file. The content of the file can be passed in several
+     * buffers (the windows of the file), in order.
+     */
+    public final class Scanner {
+        private int mState;
+        private int mLine;
+        private long mLineStart;
+        private boolean mSkipLine;
+        private byte[] mLineBuffer;
+        private int mLineLength;
+
+        /**
+         * Constructor of <code>Scanner</code>.
+         */
+        Scanner() {
+            super();
+            if (ContentMatcher.this.mRegExp) {
+                this.mLineBuffer = new byte[1024];
+            }
+            reset();
+        }
+
+        /**
+         * Method that resets the scanner to scan a new file.
+         */
+        public void reset() {
+            this.mState = 0;
+            this.mLine = 1;
+            this.mLineStart = 0;
+            this.mSkipLine = false;
+            this.mLineLength = 0;
+        }
+
+        /**
+         * Method that scans the next window of the file, from its position to its limit.
+         * Only the first match of every line is reported.
+         *
+         * @param buffer The window of the file
+         * @param offset The offset in the file of the position of the buffer
+         * @param listener The listener of the matches
+         * @return boolean If the scan must continue
+         */
+        public boolean scan(ByteBuffer buffer, long offset, Listener listener) {
+            if (ContentMatcher.this.mRegExp) {
+                return scanLines(buffer, offset, listener);
+            }
+            final int[] delta = ContentMatcher.this.mDelta;
+            final int[] output = ContentMatcher.this.mOutput;
+            final int start = buffer.position();
+            final int end = buffer.limit();
+            int state = this.mState;
+            for (int i = start; i < end; i++) {
+                int b = buffer.get(i) & 0xff;
+                if (b == '\n') {
+                    this.mLine++;
+                    this.mLineStart = offset + (i - start) + 1;
+                    this.mSkipLine = false;
+                    state = 0;
+                    continue;
+                }
+                if (this.mSkipLine) {
+                    continue;
+                }
+                state = delta[(state << 8) | b];
+                int term = output[state];
+                if (term != -1) {
+                    this.mSkipLine = true;
+                    int matchEnd = i + 1;
+                    int matchStart = Math.max(start,
+                            matchEnd - ContentMatcher.this.mTermLengths[term]);
+                    if (!reportLiteral(buffer, offset, start, end,
+                            term, matchStart, matchEnd, listener)) {
+                        this.mState = 0;
+                        return false;
+                    }
+                    state = 0;
+                }
+            }
+            this.mState = state;
+            return true;
+        }
+
+        /**
+         * Method that ends the scan of the file.
+         *
+         * @param listener The listener of the matches
+         * @return boolean If the scan must continue (the last line didn't stop it)
+         */
+        public boolean finish(Listener listener) {
+            if (ContentMatcher.this.mRegExp && this.mLineLength > 0) {
+                return matchLine(listener);
+            }
+            return true;
+        }
+
+        /**
+         * Method that reports a match of a literal term.
+         */
+        private boolean reportLiteral(ByteBuffer buffer, long offset, int start, int end,
+                int term, int matchStart, int matchEnd, Listener listener) {
+            // The match could start in the previous window
+            long matchOffset = offset + (matchEnd - start)
+                    - ContentMatcher.this.mTermLengths[term];
+            int lineStart = (int)Math.max(start, this.mLineStart - offset + start);
+            int textStart = Math.max(lineStart, matchStart - TEXT_CONTEXT);
+            int textEnd = matchEnd;
+            while (textEnd < end && textEnd < matchEnd + TEXT_CONTEXT
+                    && buffer.get(textEnd) != '\n') {
+                textEnd++;
+            }
+            String prefix = decode(buffer, textStart, matchStart);
+            String text = prefix + decode(buffer, matchStart, textEnd);
+            int column = textStart == lineStart && lineStart - start + offset == this.mLineStart
+                    ? prefix.length()
+                    : -1;
+            return listener.onMatch(term, this.mLine, column, matchOffset, text.trim());
+        }
+
+        /**
+         * Method that scans the window of a file, line by line, with the regular expressions.
+         */
+        private boolean scanLines(ByteBuffer buffer, long offset, Listener listener) {
+            final int start = buffer.position();
+            final int end = buffer.limit();
+            for (int i = start; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    boolean more = matchLine(listener);
+                    this.mLine++;
+                    this.mLineStart = offset + (i - start) + 1;
+                    this.mLineLength = 0;
+                    if (!more) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (this.mLineLength < MAX_REGEXP_LINE) {
+                    if (this.mLineLength == this.mLineBuffer.length) {
+                        this.mLineBuffer = Arrays.copyOf(this.mLineBuffer,
+                                Math.min(MAX_REGEXP_LINE, this.mLineLength * 2));
+                    }
+                    this.mLineBuffer[this.mLineLength++] = b;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Method that matches the current line with the regular expressions.
+         */
+        private boolean matchLine(Listener listener) {
+            String line = new String(this.mLineBuffer, 0, this.mLineLength, UTF8);
+            int[] column = new int[1];
+            int term = ContentMatcher.this.matchLine(line, column);
+            if (term == -1) {
+                return true;
+            }
+            int col = column[0];
+            long matchOffset =
+                    this.mLineStart + line.substring(0, col).getBytes(UTF8).length;
+            int textStart = Math.max(0, col - TEXT_CONTEXT);
+            int textEnd = Math.min(line.length(), col + TEXT_CONTEXT);
+            return listener.onMatch(term, this.mLine, col, matchOffset,
+                    line.substring(textStart, textEnd).trim());
+        }
+    }
+
+    /**
+     * Method that decodes a region of a buffer as UTF-8.
+     */
+    static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Method that returns a new row of transitions of the trie.
+     */
+    private static int[] newTransitions() {
+        int[] trans = new int[256];
+        Arrays.fill(trans, -1);
+        return trans;
+    }
+
+    /**
+     * Method that lowercases the ASCII letters of a string.
+     */
+    private static String foldAscii(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c >= 'A' && c <= 'Z') {
+                chars[i] = (char)(c + ('a' - 'A'));
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A journal of a copy, that allows to resume the copy after it was interrupted (the
+ * storage was unmounted, the app was killed, ...).<br/>
+ * <br/>
+ * The journal records the files already copied and, every {@link #CHECKPOINT_INTERVAL}
+ * bytes, the part copied of the current file. Every record holds the size and the
+ * modification time of the source file and the checksum of the last bytes copied, so
+ * the copied part is verified cheaply before continue the copy after it. The records are
+ * appended with their own checksum, so a record that was partially written when the copy
+ * was interrupted is just ignored.
+ */
+public final class CopyJournal {
+
+    private static final String TAG = "CopyJournal"; //$NON-NLS-1$
+
+    private static final String JOURNALS_DIR = "copy_journals"; //$NON-NLS-1$
+    private static final String JOURNAL_EXT = ".journal"; //$NON-NLS-1$
+    private static final String JOURNAL_TMP_EXT = ".tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x434d434a;
+    private static final int VERSION = 1;
+
+    /**
+     * The number of bytes of a file copied between two checkpoints.
+     */
+    public static final long CHECKPOINT_INTERVAL = 8 * 1024 * 1024;
+
+    /**
+     * The number of bytes before a checkpoint that are verified.
+     */
+    static final int SAMPLE_SIZE = 4096;
+
+    // The journals of the copies not resumed in this time are deleted
+    private static final long MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * The copied part of a file.
+     */
+    private static class Record {
+        Record(long offset, long srcSize, long srcTime, int crc) {
+            super();
+            this.mOffset = offset;
+            this.mSrcSize = srcSize;
+            this.mSrcTime = srcTime;
+            this.mCrc = crc;
+        }
+        final long mOffset;
+        final long mSrcSize;
+        final long mSrcTime;
+        final int mCrc;
+    }
+
+    private final File mFile;
+    private final String mSrc;
+    private final String mDst;
+    private final Map<String, Record> mRecords;
+    private FileOutputStream mOut;
+
+    /**
+     * Constructor of <code>CopyJournal</code>.
+     *
+     * @param file The journal file
+     * @param src The source file or folder of the copy
+     * @param dst The destination file or folder of the copy
+     */
+    public CopyJournal(File file, String src, String dst) {
+        super();
+        this.mFile = file;
+        this.mSrc = FileHelper.removeTrailingSlash(src);
+        this.mDst = FileHelper.removeTrailingSlash(dst);
+        this.mRecords = new HashMap<String, Record>();
+    }
+
+    /**
+     * Method that returns the journal file of a copy.
+     *
+     * @param ctx The current context
+     * @param src The source file or folder of the copy
+     * @param dst The destination file or folder of the copy
+     * @return File The journal file
+     */
+    public static File getJournalFile(Context ctx, String src, String dst) {
+        String key = FileHelper.removeTrailingSlash(src) + "\0" //$NON-NLS-1$
+                + FileHelper.removeTrailingSlash(dst);
+        CRC32 crc = new CRC32();
+        crc.update(key.getBytes());
+        String name = String.format("%08x%08x", //$NON-NLS-1$
+                Long.valueOf(crc.getValue()), Integer.valueOf(key.hashCode()));
+        return new File(new File(ctx.getFilesDir(), JOURNALS_DIR), name + JOURNAL_EXT);
+    }
+
+    /**
+     * Method that returns if an interrupted copy can be resumed.
+     *
+     * @param ctx The current context
+     * @param src The source file or folder of the copy
+     * @param dst The destination file or folder of the copy
+     * @return boolean If there is a journal of the copy
+     */
+    public static boolean isResumable(Context ctx, String src, String dst) {
+        CopyJournal journal = new CopyJournal(getJournalFile(ctx, src, dst), src, dst);
+        try {
+            return journal.read() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method that opens the journal for a new copy.
+     *
+     * @param resume If the records of the interrupted copy must be reused. Otherwise, the
+     * copy starts from zero
+     * @throws IOException If the journal can't be written
+     */
+    public synchronized void open(boolean resume) throws IOException {
+        File dir = this.mFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("failed to create the journals directory"); //$NON-NLS-1$
+        }
+        purge(dir, this.mFile);
+
+        this.mRecords.clear();
+        if (resume) {
+            try {
+                read();
+            } catch (IOException e) {
+                Log.w(TAG, "Invalid journal. The copy starts from zero", e); //$NON-NLS-1$
+                this.mRecords.clear();
+            }
+        }
+
+        // Rewrite the journal only with the last record of every file
+        File tmp = new File(dir, this.mFile.getName() + JOURNAL_TMP_EXT);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            DataOutputStream dos = new DataOutputStream(out);
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeUTF(this.mSrc);
+            dos.writeUTF(this.mDst);
+            for (Map.Entry<String, Record> entry : this.mRecords.entrySet()) {
+                out.write(encode(entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(this.mFile)) {
+            throw new IOException("failed to rename the journal"); //$NON-NLS-1$
+        }
+        this.mOut = new FileOutputStream(this.mFile, true);
+    }
+
+    /**
+     * Method that returns the length of the part of a file that was copied and verified
+     * by the interrupted copy.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @return long The bytes that don't need to be copied again
+     */
+    public long getCopiedLength(File src, File dst) {
+        Record record;
+        synchronized (this) {
+            record = this.mRecords.get(getKey(src));
+        }
+        if (record == null
+                || record.mSrcSize != src.length()
+                || record.mSrcTime != src.lastModified()
+                || dst.length() < record.mOffset) {
+            return 0;
+        }
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(dst);
+            if (getSampleCrc(fis.getChannel(), record.mOffset) == record.mCrc) {
+                return record.mOffset;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, String.format("Failed to verify %s", dst), e); //$NON-NLS-1$
+        } finally {
+            try {
+                if (fis != null) {
+                    fis.close();
+                }
+            } catch (Throwable e) {/**NON BLOCK**/}
+        }
+        return 0;
+    }
+
+    /**
+     * Method that records the part copied of a file. The journal isn't synced (if the
+     * data recorded is lost, it doesn't pass the verification).
+     *
+     * @param src The source file
+     * @param in The channel of the source file
+     * @param offset The bytes copied
+     */
+    public void checkpoint(File src, FileChannel in, long offset) {
+        try {
+            Record record = new Record(
+                    offset, in.size(), src.lastModified(), getSampleCrc(in, offset));
+            String key = getKey(src);
+            byte[] data = encode(key, record);
+            synchronized (this) {
+                if (this.mOut == null) {
+                    return;
+                }
+                this.mOut.write(data);
+                this.mRecords.put(key, record);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, String.format("Failed to record the copy of %s", src), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that closes the journal, keeping it for resume the copy.
+     */
+    public synchronized void close() {
+        try {
+            if (this.mOut != null) {
+                this.mOut.close();
+            }
+        } catch (Throwable e) {/**NON BLOCK**/}
+        this.mOut = null;
+    }
+
+    /**
+     * Method that closes and deletes the journal (the copy was completed).
+     */
+    public synchronized void delete() {
+        close();
+        if (!this.mFile.delete() && this.mFile.exists()) {
+            Log.w(TAG, String.format("Failed to delete %s", this.mFile)); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that reads the records of the journal, until its end or the first record
+     * that was partially written.
+     *
+     * @return int The number of records read
+     * @throws IOException If the journal doesn't exist or isn't a journal of this copy
+     */
+    synchronized int read() throws IOException {
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(this.mFile)));
+        try {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION
+                    || !dis.readUTF().equals(this.mSrc)
+                    || !dis.readUTF().equals(this.mDst)) {
+                throw new IOException("invalid copy journal"); //$NON-NLS-1$
+            }
+            int count = 0;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] data;
+                int checksum;
+                try {
+                    int length = dis.readUnsignedShort();
+                    data = new byte[length];
+                    dis.readFully(data);
+                    checksum = dis.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(data);
+                if ((int)crc.getValue() != checksum) {
+                    Log.w(TAG, "Ignored a corrupted record of the journal"); //$NON-NLS-1$
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(data));
+                String key = record.readUTF();
+                this.mRecords.put(key, new Record(
+                        record.readLong(), record.readLong(), record.readLong(),
+                        record.readInt()));
+                count++;
+            }
+            return count;
+        } finally {
+            try {
+                dis.close();
+            } catch (Exception e) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that encodes a record: its length, its data and the checksum of its data.
+     *
+     * @param key The path of the file, relative to the source of the copy
+     * @param record The record
+     * @return byte[] The encoded record
+     * @throws IOException If the record can't be encoded
+     */
+    private static byte[] encode(String key, Record record) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(64 + key.length());
+        DataOutputStream dos = new DataOutputStream(data);
+        dos.writeUTF(key);
+        dos.writeLong(record.mOffset);
+        dos.writeLong(record.mSrcSize);
+        dos.writeLong(record.mSrcTime);
+        dos.writeInt(record.mCrc);
+        byte[] payload = data.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 6);
+        dos = new DataOutputStream(out);
+        dos.writeShort(payload.length);
+        dos.write(payload);
+        dos.writeInt((int)crc.getValue());
+        return out.toByteArray();
+    }
+
+    /**
+     * Method that returns the path of a file relative to the source of the copy.
+     *
+     * @param src The source file
+     * @return String The relative path
+     */
+    private String getKey(File src) {
+        String path = src.getAbsolutePath();
+        return path.startsWith(this.mSrc) ? path.substring(this.mSrc.length()) : path;
+    }
+
+    /**
+     * Method that returns the checksum of the {@link #SAMPLE_SIZE} bytes before an offset
+     * of a file.
+     *
+     * @param channel The channel of the file
+     * @param offset The offset
+     * @return int The checksum
+     * @throws IOException If the file can't be read
+     */
+    static int getSampleCrc(FileChannel channel, long offset) throws IOException {
+        int length = (int)Math.min(SAMPLE_SIZE, offset);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long pos = offset - length;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, length);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Method that deletes the journals not used in {@link #MAX_AGE}.
+     *
+     * @param dir The journals directory
+     * @param current The journal in use
+     */
+    private static void purge(File dir, File current) {
+        File[] journals = dir.listFiles();
+        if (journals == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < journals.length; i++) {
+            if (!journals[i].equals(current)
+                    && (now - journals[i].lastModified()) > MAX_AGE) {
+                journals[i].delete();
+            }
+        }
+    }
+}
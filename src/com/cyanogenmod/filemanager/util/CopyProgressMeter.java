@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.model.CopyProgress;
+
+/**
+ * A class that measures the progress of a copy or move operation, and throttles the
+ * reports of the progress.<br/>
+ * <br/>
+ * The throughput is smoothed between the reports, so the ETA doesn't jump with every
+ * small or cached file.
+ */
+public final class CopyProgressMeter {
+
+    /**
+     * The minimum time between two reports.
+     */
+    public static final long REPORT_INTERVAL = 250L;
+
+    // The weight of the last sample in the smoothed throughput
+    private static final double SMOOTHING = 0.3;
+
+    private long mFilesTotal;
+    private long mBytesTotal;
+    private long mFilesDone;
+    private long mBytesDone;
+    private String mCurrentFile;
+
+    private long mLastReport;
+    private long mLastSampleTime;
+    private long mLastSampleBytes;
+    // The smoothed throughput, in bytes per ms (negative while it's unknown)
+    private double mThroughput;
+
+    /**
+     * Constructor of <code>CopyProgressMeter</code>.
+     *
+     * @param start The time when the operation started
+     */
+    public CopyProgressMeter(long start) {
+        super();
+        this.mLastReport = start;
+        this.mLastSampleTime = start;
+        this.mThroughput = -1;
+    }
+
+    /**
+     * Method that sets the size of the operation.
+     *
+     * @param files The number of files to copy
+     * @param bytes The number of bytes to copy
+     */
+    public synchronized void setTotals(long files, long bytes) {
+        this.mFilesTotal = files;
+        this.mBytesTotal = bytes;
+    }
+
+    /**
+     * Method that notifies that the copy of a file started.
+     *
+     * @param path The absolute path of the file
+     */
+    public synchronized void onFileStarted(String path) {
+        this.mCurrentFile = path;
+    }
+
+    /**
+     * Method that notifies that a chunk of data was copied.
+     *
+     * @param bytes The number of bytes copied
+     */
+    public synchronized void onBytesCopied(long bytes) {
+        this.mBytesDone += bytes;
+    }
+
+    /**
+     * Method that notifies that the copy of a file ended.
+     */
+    public synchronized void onFileCopied() {
+        this.mFilesDone++;
+    }
+
+    /**
+     * Method that returns if the progress should be reported now. Only one report per
+     * {@link #REPORT_INTERVAL} is allowed.
+     *
+     * @param now The current time
+     * @return boolean If the progress should be reported
+     */
+    public synchronized boolean isReportNeeded(long now) {
+        if ((now - this.mLastReport) < REPORT_INTERVAL) {
+            return false;
+        }
+        this.mLastReport = now;
+        return true;
+    }
+
+    /**
+     * Method that returns the current progress.
+     *
+     * @param now The current time
+     * @return CopyProgress The current progress
+     */
+    public synchronized CopyProgress getProgress(long now) {
+        long elapsed = now - this.mLastSampleTime;
+        if (elapsed > 0) {
+            double sample = (this.mBytesDone - this.mLastSampleBytes) / (double)elapsed;
+            this.mThroughput = this.mThroughput < 0
+                    ? sample
+                    : (SMOOTHING * sample) + ((1 - SMOOTHING) * this.mThroughput);
+            this.mLastSampleTime = now;
+            this.mLastSampleBytes = this.mBytesDone;
+        }
+
+        long eta = CopyProgress.UNKNOWN_ETA;
+        long pending = this.mBytesTotal - this.mBytesDone;
+        if (pending <= 0) {
+            eta = 0;
+        } else if (this.mThroughput > 0) {
+            eta = (long)(pending / this.mThroughput);
+        }
+        return new CopyProgress(
+                this.mCurrentFile,
+                this.mFilesDone,
+                Math.max(this.mFilesTotal, this.mFilesDone),
+                this.mBytesDone,
+                Math.max(this.mBytesTotal, this.mBytesDone),
+                this.mThroughput < 0 ? 0 : (long)(this.mThroughput * 1000),
+                eta);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.model.DiskUsage;
+import com.cyanogenmod.filemanager.model.MountPoint;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cache of the disk usage of the mount points, shared by the breadcrumb and the
+ * filesystem info dialog.<br/>
+ * <br/>
+ * The usage of a mount point is read with a <code>statfs</code> of the mount point (or
+ * with the console, if it can't be read from the app) and it's reused for
+ * {@link #TTL} ms. The concurrent requests for the same mount point wait for the same
+ * read. After a write, the usage of the written mount point is refreshed in background.
+ */
+public final class DiskUsageCache {
+
+    private static final String TAG = "DiskUsageCache"; //$NON-NLS-1$
+
+    /**
+     * The time that a disk usage is valid.
+     */
+    static final long TTL = 5000L;
+
+    // The delay of the refresh after a write (the writes are usually grouped)
+    private static final long REFRESH_DELAY = 500L;
+
+    /**
+     * The disk usage of a mount point.
+     */
+    private static class Entry {
+        Entry() {
+            super();
+        }
+        DiskUsage mDiskUsage;
+        long mTime;
+        boolean mLoading;
+        boolean mRefreshPending;
+    }
+
+    private static DiskUsageCache sInstance;
+
+    private final Map<String, Entry> mEntries;
+
+    /**
+     * Constructor of <code>DiskUsageCache</code>.
+     */
+    DiskUsageCache() {
+        super();
+        this.mEntries = new HashMap<String, Entry>();
+    }
+
+    /**
+     * Method that returns the shared instance of the cache.
+     *
+     * @return DiskUsageCache The shared instance
+     */
+    public static synchronized DiskUsageCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new DiskUsageCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the disk usage of a mount point, from the cache if it's recent
+     * enough. If other thread is reading the same mount point, waits for its result.
+     *
+     * @param console The console in which read the disk usage, if it can't be read
+     * from the app
+     * @param mp The mount point
+     * @return DiskUsage The disk usage, or null if it can't be read
+     */
+    public DiskUsage getDiskUsage(Console console, MountPoint mp) {
+        Entry entry = getEntry(mp.getMountPoint());
+        synchronized (entry) {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (entry.mDiskUsage != null && (now - entry.mTime) < TTL) {
+                    return entry.mDiskUsage;
+                }
+                if (!entry.mLoading) {
+                    break;
+                }
+                try {
+                    entry.wait();
+                } catch (InterruptedException e) {
+                    return entry.mDiskUsage;
+                }
+            }
+            entry.mLoading = true;
+        }
+
+        DiskUsage du = null;
+        try {
+            du = readDiskUsage(console, mp);
+        } finally {
+            synchronized (entry) {
+                if (du != null) {
+                    entry.mDiskUsage = du;
+                    entry.mTime = System.currentTimeMillis();
+                }
+                entry.mLoading = false;
+                entry.notifyAll();
+            }
+        }
+        return du != null ? du : entry.mDiskUsage;
+    }
+
+    /**
+     * Method that returns the last disk usage read of a mount point, without reading it.
+     *
+     * @param mountPoint The path of the mount point
+     * @return DiskUsage The last disk usage read, or null if it was never read
+     */
+    public DiskUsage getCachedDiskUsage(String mountPoint) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.mEntries.get(mountPoint);
+        }
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.mDiskUsage;
+        }
+    }
+
+    /**
+     * Method that invalidates the disk usage of a written mount point, and refreshes it
+     * in background. The mount points that were never read are ignored.
+     *
+     * @param mp The written mount point
+     */
+    public void invalidate(final MountPoint mp) {
+        final Entry entry;
+        synchronized (this) {
+            entry = this.mEntries.get(mp.getMountPoint());
+        }
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            entry.mTime = 0;
+            if (entry.mRefreshPending) {
+                return;
+            }
+            entry.mRefreshPending = true;
+        }
+
+        Thread t = new Thread(TAG) {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    Thread.sleep(REFRESH_DELAY);
+                } catch (InterruptedException e) {/**NON BLOCK**/}
+                synchronized (entry) {
+                    entry.mRefreshPending = false;
+                }
+                getDiskUsage(FileManagerApplication.getBackgroundConsole(), mp);
+            }
+        };
+        t.start();
+    }
+
+    /**
+     * Method that returns the entry of a mount point, creating it if needed.
+     *
+     * @param mountPoint The path of the mount point
+     * @return Entry The entry of the mount point
+     */
+    private synchronized Entry getEntry(String mountPoint) {
+        Entry entry = this.mEntries.get(mountPoint);
+        if (entry == null) {
+            entry = new Entry();
+            this.mEntries.put(mountPoint, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Method that reads the disk usage of a mount point.
+     *
+     * @param console The console in which read the disk usage, if it can't be read
+     * from the app
+     * @param mp The mount point
+     * @return DiskUsage The disk usage, or null if it can't be read
+     */
+    private static DiskUsage readDiskUsage(Console console, MountPoint mp) {
+        // A statfs of the mount point
+        File root = new File(mp.getMountPoint());
+        long total = root.getTotalSpace();
+        if (total > 0) {
+            long free = root.getFreeSpace();
+            return new DiskUsage(mp.getMountPoint(), total, total - free, free);
+        }
+
+        // The mount point isn't accessible from the app
+        try {
+            return CommandHelper.getDiskUsage(null, mp.getMountPoint(), console);
+        } catch (Exception e) {
+            Log.e(TAG,
+                    String.format("Fail to load disk usage of mount point: %s",  //$NON-NLS-1$
+                            mp.getMountPoint()), e);
+        }
+        return null;
+    }
+}
@@ -19,6 +19,7 @@ package com.cyanogenmod.filemanager.util;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.os.StatFs;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.FileManagerApplication;
@@ -36,6 +37,7 @@ import com.cyanogenmod.filemanager.model.DomainSocket;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Group;
 import com.cyanogenmod.filemanager.model.Identity;
+import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.model.NamedPipe;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
 import com.cyanogenmod.filemanager.model.Permissions;
@@ -52,12 +54,12 @@ import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
@@ -112,6 +114,12 @@ public final class FileHelper {
      */
     public static final String NEWLINE = System.getProperty("line.separator"); //$NON-NLS-1$
 
+    /**
+     * The minimum size of the chunks in which the files are copied.
+     * @hide
+     */
+    static final int COPY_CHUNK_SIZE = 1024 * 1024;
+
     // The date/time formats objects
     /**
      * @hide
@@ -126,6 +134,89 @@ public final class FileHelper {
     private static DateFormat sDateFormat = null;
     private static DateFormat sTimeFormat = null;
 
+    /**
+     * An interface for follow the progress of a copy, and cancel it. The copy of a
+     * folder invokes it from several threads.
+     */
+    public interface OnCopyProgressListener {
+        /**
+         * Invoked when the copy of a file starts.
+         *
+         * @param src The source file
+         */
+        void onFileStarted(File src);
+
+        /**
+         * Invoked when a chunk of the current file was copied.
+         *
+         * @param bytes The number of bytes copied
+         * @return boolean If the copy must continue
+         */
+        boolean onBytesCopied(long bytes);
+
+        /**
+         * Invoked when the copy of a file ended.
+         *
+         * @param src The source file
+         * @return boolean If the copy must continue
+         */
+        boolean onFileCopied(File src);
+    }
+
+    /**
+     * A listener that records a checkpoint in the journal of a copy every
+     * {@link CopyJournal#CHECKPOINT_INTERVAL} bytes copied of a file.
+     */
+    private static class CheckpointListener implements OnCopyProgressListener {
+        private final OnCopyProgressListener mListener;
+        private final CopyJournal mJournal;
+        private final File mSrc;
+        private final FileChannel mIn;
+        private long mPos;
+        private long mLastCheckpoint;
+
+        CheckpointListener(
+                OnCopyProgressListener listener, CopyJournal journal, File src,
+                FileChannel in, long pos) {
+            super();
+            this.mListener = listener;
+            this.mJournal = journal;
+            this.mSrc = src;
+            this.mIn = in;
+            this.mPos = pos;
+            this.mLastCheckpoint = pos;
+        }
+
+        @Override
+        public void onFileStarted(File src) {/**NON BLOCK**/}
+
+        @Override
+        public boolean onBytesCopied(long bytes) {
+            this.mPos += bytes;
+            if ((this.mPos - this.mLastCheckpoint) >= CopyJournal.CHECKPOINT_INTERVAL) {
+                this.mJournal.checkpoint(this.mSrc, this.mIn, this.mPos);
+                this.mLastCheckpoint = this.mPos;
+            }
+            return this.mListener == null || this.mListener.onBytesCopied(bytes);
+        }
+
+        @Override
+        public boolean onFileCopied(File src) {
+            return true;
+        }
+
+        /**
+         * Method that records the bytes copied since the last checkpoint (the copy was
+         * cancelled).
+         */
+        void flush() {
+            if (this.mPos > this.mLastCheckpoint) {
+                this.mJournal.checkpoint(this.mSrc, this.mIn, this.mPos);
+                this.mLastCheckpoint = this.mPos;
+            }
+        }
+    }
+
     /**
      * Constructor of <code>FileHelper</code>.
      */
@@ -774,10 +865,54 @@ public final class FileHelper {
             return fso1.getLastModifiedTime().compareTo(fso2.getLastModifiedTime()) * -1;
         }
 
+        //Size (ascending)
+        if (mode.getId() == NavigationSortMode.SIZE_ASC.getId()) {
+            return compareSizes(fso1, fso2);
+        }
+        //Size (descending)
+        if (mode.getId() == NavigationSortMode.SIZE_DESC.getId()) {
+            return compareSizes(fso1, fso2) * -1;
+        }
+
         //Comparison between files directly
         return fso1.compareTo(fso2);
     }
 
+    /**
+     * Method that compares the sizes of 2 file system objects. The size of a folder is the
+     * last known size of its tree (the folders of unknown size go first), and objects of
+     * the same size are sorted by name.
+     *
+     * @param fso1 The first file system objects
+     * @param fso2 The second file system objects
+     * @return int The result of the comparison
+     */
+    private static int compareSizes(FileSystemObject fso1, FileSystemObject fso2) {
+        long size1 = getSortSize(fso1);
+        long size2 = getSortSize(fso2);
+        if (size1 != size2) {
+            return size1 < size2 ? -1 : 1;
+        }
+        return fso1.getName().compareToIgnoreCase(fso2.getName());
+    }
+
+    /**
+     * Method that returns the size of a file system object used to sort it.
+     *
+     * @param fso The file system object
+     * @return long The size in bytes, or -1 if it's a folder of unknown size
+     */
+    private static long getSortSize(FileSystemObject fso) {
+        if (isDirectory(fso)) {
+            return FolderSizeCache.getInstance(
+                    FileManagerApplication.getInstance()).getSize(fso.getFullPath());
+        }
+        if (hasSymlinkRef(fso)) {
+            return ((Symlink)fso).getLinkRef().getSize();
+        }
+        return fso.getSize();
+    }
+
     /**
      * Method that add to the path the trailing slash
      *
@@ -989,72 +1124,438 @@ public final class FileHelper {
      */
     public static boolean copyRecursive(
             final File src, final File dst, int bufferSize) throws ExecutionException {
+        try {
+            return copyRecursive(src, dst, bufferSize, null);
+        } catch (InterruptedException e) {
+            // Without a listener the copy can't be cancelled
+            return false;
+        }
+    }
+
+    /**
+     * Method that copies recursively to the destination, reporting the progress to a
+     * listener that can cancel the copy. The file that was being copied when the copy
+     * was cancelled is deleted. The files of a folder are copied concurrently, and a
+     * failed file doesn't stop the copy of the rest.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @param bufferSize The buffer size for the operation
+     * @param listener The listener of the progress (optional)
+     * @return boolean If the operation complete successfully
+     * @throws ExecutionException If a problem was detected in the operation
+     * @throws InterruptedException If the listener cancelled the copy
+     */
+    public static boolean copyRecursive(
+            final File src, final File dst, int bufferSize, OnCopyProgressListener listener)
+            throws ExecutionException, InterruptedException {
+        return copyRecursive(src, dst, bufferSize, listener, null);
+    }
+
+    /**
+     * Method that copies recursively to the destination, recording the progress in a
+     * journal. The files, or the parts of the files, recorded in the journal by an
+     * interrupted copy aren't copied again.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @param bufferSize The buffer size for the operation
+     * @param listener The listener of the progress (optional)
+     * @param journal The journal of the copy (optional)
+     * @return boolean If the operation complete successfully
+     * @throws ExecutionException If a problem was detected in the operation
+     * @throws InterruptedException If the listener cancelled the copy
+     * @see #copyRecursive(File, File, int, OnCopyProgressListener)
+     */
+    public static boolean copyRecursive(
+            final File src, final File dst, int bufferSize, OnCopyProgressListener listener,
+            CopyJournal journal) throws ExecutionException, InterruptedException {
         if (src.isDirectory()) {
-            // Create the directory
-            if (dst.exists() && !dst.isDirectory()) {
-                Log.e(TAG,
-                        String.format("Failed to check destionation dir: %s", dst)); //$NON-NLS-1$
-                throw new ExecutionException("the path exists but is not a folder"); //$NON-NLS-1$
-            }
-            if (!dst.exists()) {
-                if (!dst.mkdir()) {
-                    Log.e(TAG, String.format("Failed to create directory: %s", dst)); //$NON-NLS-1$
-                    return false;
-                }
-            }
-            File[] files = src.listFiles();
-            if (files != null) {
-                for (int i = 0; i < files.length; i++) {
-                    if (!copyRecursive(files[i], new File(dst, files[i].getName()), bufferSize)) {
-                        return false;
-                    }
-                }
+            // Copy the files of the tree concurrently
+            TreeCopier copier =
+                    new TreeCopier(bufferSize, TreeCopier.getWorkers(src, dst), listener);
+            copier.setJournal(journal);
+            TreeCopier.Result result = copier.copy(src, dst);
+            if (!result.isSuccess()) {
+                Log.e(TAG, String.format("Failed to copy %d files: %s", //$NON-NLS-1$
+                        Integer.valueOf(result.getFailedFiles().size()),
+                        result.getFailedFiles()));
+                return false;
             }
         } else {
             // Copy the directory
-            if (!bufferedCopy(src, dst,bufferSize)) {
+            if (!bufferedCopy(src, dst, bufferSize, listener, journal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that moves a file or folder by renaming it, if the source and the destination
+     * are in the same mount point (only the metadata is written, whatever the size of the
+     * source is). If the destination folder exists, the entries of the source are renamed
+     * into it. An entry that can't be renamed is left in the source.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @return boolean If the whole source was renamed
+     * @see #moveRecursive(File, File, int, OnCopyProgressListener)
+     */
+    public static boolean renameRecursive(final File src, final File dst) {
+        if (!isSameMountPoint(src, dst)) {
+            return false;
+        }
+        return rename(src, dst);
+    }
+
+    /**
+     * Method that renames a file or folder, merging it with the destination folder.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @return boolean If the whole source was renamed
+     */
+    private static boolean rename(final File src, final File dst) {
+        if (!dst.isDirectory() || !src.isDirectory()) {
+            // A file replaces the destination file (as a copy does)
+            return !dst.isDirectory() && src.renameTo(dst);
+        }
+        boolean renamed = true;
+        File[] files = src.listFiles();
+        if (files == null) {
+            return false;
+        }
+        for (int i = 0; i < files.length; i++) {
+            if (!rename(files[i], new File(dst, files[i].getName()))) {
+                renamed = false;
+            }
+        }
+        return renamed && src.delete();
+    }
+
+    /**
+     * Method that moves a file or folder by copying it and deleting the source. Every file
+     * is synced and verified before deleting its source, so a failed or interrupted move
+     * never loses a file.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @param bufferSize The buffer size for the operation
+     * @param listener The listener of the progress (optional)
+     * @return boolean If the operation complete successfully
+     * @throws ExecutionException If a problem was detected in the operation
+     * @throws InterruptedException If the listener cancelled the move
+     * @see #renameRecursive(File, File)
+     */
+    public static boolean moveRecursive(
+            final File src, final File dst, int bufferSize, OnCopyProgressListener listener)
+            throws ExecutionException, InterruptedException {
+        if (src.isDirectory()) {
+            // Move the files of the tree concurrently
+            TreeCopier copier = new TreeCopier(
+                    bufferSize, TreeCopier.getWorkers(src, dst), listener, true);
+            TreeCopier.Result result = copier.copy(src, dst);
+            if (!result.isSuccess()) {
+                Log.e(TAG, String.format("Failed to move %d files: %s", //$NON-NLS-1$
+                        Integer.valueOf(result.getFailedFiles().size()),
+                        result.getFailedFiles()));
                 return false;
             }
+            return true;
+        }
+
+        if (!bufferedCopy(src, dst, bufferSize, listener)) {
+            return false;
+        }
+        if (!verifyCopy(src, dst)) {
+            dst.delete();
+            return false;
+        }
+        if (!src.delete()) {
+            Log.w(TAG, String.format("Failed to delete moved file %s", src)); //$NON-NLS-1$
+        }
+        return true;
+    }
+
+    /**
+     * Method that writes a copied file to the device and checks that it has the size of
+     * the source file, before deleting the source file.
+     *
+     * @param src The source file
+     * @param dst The copied file
+     * @return boolean If the copy is complete
+     */
+    static boolean verifyCopy(final File src, final File dst) {
+        FileOutputStream fos = null;
+        try {
+            // Open in append mode, so the file isn't truncated
+            fos = new FileOutputStream(dst, true);
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, String.format("Failed to sync %s", dst), e); //$NON-NLS-1$
+            return false;
+        } finally {
+            try {
+                if (fos != null) {
+                    fos.close();
+                }
+            } catch (Throwable e) {/**NON BLOCK**/}
+        }
+        if (dst.length() != src.length()) {
+            Log.e(TAG, String.format("The copy of %s is incomplete", src)); //$NON-NLS-1$
+            return false;
         }
         return true;
     }
 
     /**
-     * Method that copies a file
+     * Method that returns if two files are in the same mount point. If the mount point
+     * of any of them is unknown, they are considered in the same mount point (a rename
+     * between devices just fails).
      *
      * @param src The source file
      * @param dst The destination file
-     * @param bufferSize The buffer size for the operation
+     * @return boolean If the files are in the same mount point
+     */
+    public static boolean isSameMountPoint(final File src, final File dst) {
+        MountPoint srcMp = MountPointHelper.getMountPointFromDirectory(src.getAbsolutePath());
+        MountPoint dstMp = MountPointHelper.getMountPointFromDirectory(dst.getAbsolutePath());
+        return srcMp == null || dstMp == null
+                || srcMp.getMountPoint().equals(dstMp.getMountPoint());
+    }
+
+    /**
+     * Method that copies a file. The data is transferred between the channels of the
+     * files in chunks aligned to the block size of the destination filesystem, without
+     * passing through the java heap. If the channels can't transfer the data (the
+     * filesystem doesn't support it), the rest of the file is copied through a direct
+     * buffer.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @param bufferSize The minimum size of the chunks
      * @return boolean If the operation complete successfully
      */
     public static boolean bufferedCopy(final File src, final File dst, int bufferSize) {
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
         try {
-            bis = new BufferedInputStream(new FileInputStream(src), bufferSize);
-            bos = new BufferedOutputStream(new FileOutputStream(dst), bufferSize);
-            int read = 0;
-            byte[] data = new byte[bufferSize];
-            while ((read = bis.read(data, 0, bufferSize)) != -1) {
-                bos.write(data, 0, read);
+            return bufferedCopy(src, dst, bufferSize, null);
+        } catch (InterruptedException e) {
+            // Without a listener the copy can't be cancelled
+            return false;
+        }
+    }
+
+    /**
+     * Method that copies a file, reporting the progress of every chunk to a listener
+     * that can cancel the copy. If the copy is cancelled, the partial file is deleted.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @param bufferSize The minimum size of the chunks
+     * @param listener The listener of the progress (optional)
+     * @return boolean If the operation complete successfully
+     * @throws InterruptedException If the listener cancelled the copy
+     * @see #bufferedCopy(File, File, int)
+     */
+    public static boolean bufferedCopy(
+            final File src, final File dst, int bufferSize, OnCopyProgressListener listener)
+            throws InterruptedException {
+        return bufferedCopy(src, dst, bufferSize, listener, null);
+    }
+
+    /**
+     * Method that copies a file, recording the progress in a journal. If the journal has
+     * a verified part of the file copied by an interrupted copy, the copy continues after
+     * that part. If the copy is cancelled, the partial file is kept and recorded in the
+     * journal (or deleted, if there is no journal).
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @param bufferSize The minimum size of the chunks
+     * @param listener The listener of the progress (optional)
+     * @param journal The journal of the copy (optional)
+     * @return boolean If the operation complete successfully
+     * @throws InterruptedException If the listener cancelled the copy
+     * @see #bufferedCopy(File, File, int, OnCopyProgressListener)
+     */
+    public static boolean bufferedCopy(
+            final File src, final File dst, int bufferSize, OnCopyProgressListener listener,
+            CopyJournal journal) throws InterruptedException {
+        if (listener != null) {
+            listener.onFileStarted(src);
+        }
+        long start = journal != null ? journal.getCopiedLength(src, dst) : 0;
+        if (start > 0 && start == src.length()) {
+            // Already copied
+            if (listener != null
+                    && (!listener.onBytesCopied(start) || !listener.onFileCopied(src))) {
+                throw new InterruptedException();
             }
             return true;
+        }
+
+        FileInputStream fis = null;
+        FileOutputStream fos = null;
+        CheckpointListener checkpoints = null;
+        boolean cancelled = false;
+        try {
+            fis = new FileInputStream(src);
+            fos = new FileOutputStream(dst, start > 0);
+            FileChannel in = fis.getChannel();
+            FileChannel out = fos.getChannel();
+            if (start > 0) {
+                // Continue after the part already copied
+                out.truncate(start);
+                if (listener != null && !listener.onBytesCopied(start)) {
+                    throw new InterruptedException();
+                }
+            }
+            OnCopyProgressListener l = listener;
+            if (journal != null) {
+                checkpoints = new CheckpointListener(listener, journal, src, in, start);
+                l = checkpoints;
+            }
+            int chunkSize = getCopyChunkSize(dst, bufferSize);
+            long pos = transferCopy(in, out, start, chunkSize, l);
+            if (pos < in.size()) {
+                bufferCopy(in, out, pos, chunkSize, l);
+            }
+            if (journal != null) {
+                journal.checkpoint(src, in, in.size());
+            }
+
+        } catch (InterruptedException e) {
+            cancelled = true;
+            if (checkpoints != null) {
+                // Keep the partial file, so the copy can be resumed after it
+                checkpoints.flush();
+            }
+            throw e;
 
         } catch (Throwable e) {
             Log.e(TAG,
-                    String.format(TAG, "Failed to copy from %s to %d", src, dst), e); //$NON-NLS-1$
+                    String.format("Failed to copy from %s to %s", src, dst), e); //$NON-NLS-1$
             return false;
+
         } finally {
             try {
-                if (bis != null) {
-                    bis.close();
+                if (fis != null) {
+                    fis.close();
                 }
             } catch (Throwable e) {/**NON BLOCK**/}
             try {
-                if (bos != null) {
-                    bos.close();
+                if (fos != null) {
+                    fos.close();
                 }
             } catch (Throwable e) {/**NON BLOCK**/}
+            if (cancelled && journal == null) {
+                // Don't leave a partial file
+                if (!dst.delete()) {
+                    Log.w(TAG,
+                            String.format("Failed to delete partial file %s", dst)); //$NON-NLS-1$
+                }
+            }
+        }
+        if (listener != null && !listener.onFileCopied(src)) {
+            // The file is complete, but the rest of the copy was cancelled
+            throw new InterruptedException();
+        }
+        return true;
+    }
+
+    /**
+     * Method that returns the size of the chunks in which copy a file to a destination:
+     * at least {@link #COPY_CHUNK_SIZE} and the buffer size, rounded up to a multiple of
+     * the block size of the destination filesystem.
+     *
+     * @param dst The destination file
+     * @param bufferSize The minimum size of the chunks
+     * @return int The size of the chunks
+     * @hide
+     */
+    static int getCopyChunkSize(File dst, int bufferSize) {
+        int chunkSize = Math.max(COPY_CHUNK_SIZE, bufferSize);
+        int blockSize = 0;
+        try {
+            File dir = dst.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                blockSize = new StatFs(dir.getAbsolutePath()).getBlockSize();
+            }
+        } catch (Throwable e) {/**NON BLOCK**/}
+        if (blockSize > 0 && chunkSize % blockSize != 0) {
+            chunkSize = ((chunkSize / blockSize) + 1) * blockSize;
+        }
+        return chunkSize;
+    }
+
+    /**
+     * Method that transfers a file between channels until its end, or until the channels
+     * can't transfer more data.
+     *
+     * @param in The channel of the source file
+     * @param out The channel of the destination file
+     * @param start The position from which transfer
+     * @param chunkSize The size of the chunks
+     * @param listener The listener of the progress (optional)
+     * @return long The position where the transfer ended
+     * @throws InterruptedException If the listener cancelled the copy
+     * @hide
+     */
+    static long transferCopy(
+            FileChannel in, FileChannel out, long start, int chunkSize,
+            OnCopyProgressListener listener) throws InterruptedException {
+        long pos = start;
+        try {
+            long size = in.size();
+            while (pos < size) {
+                long count = in.transferTo(pos, Math.min(chunkSize, size - pos), out);
+                if (count <= 0) {
+                    break;
+                }
+                pos += count;
+                if (listener != null && !listener.onBytesCopied(count)) {
+                    throw new InterruptedException();
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Channel transfer not supported. Using a buffer.", e); //$NON-NLS-1$
+        }
+        return pos;
+    }
+
+    /**
+     * Method that copies the rest of a file through a direct buffer.
+     *
+     * @param in The channel of the source file
+     * @param out The channel of the destination file
+     * @param pos The position from which copy
+     * @param chunkSize The size of the buffer
+     * @param listener The listener of the progress (optional)
+     * @throws IOException If the file can't be copied
+     * @throws InterruptedException If the listener cancelled the copy
+     * @hide
+     */
+    static void bufferCopy(
+            FileChannel in, FileChannel out, long pos, int chunkSize,
+            OnCopyProgressListener listener) throws IOException, InterruptedException {
+        // Discard the part of the chunk that wasn't fully transferred
+        in.position(pos);
+        out.position(pos);
+        out.truncate(pos);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+                (int)Math.min(chunkSize, Math.max(in.size() - pos, 1)));
+        int read = 0;
+        while ((read = in.read(buffer)) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            if (listener != null && !listener.onBytesCopied(read)) {
+                throw new InterruptedException();
+            }
         }
     }
 
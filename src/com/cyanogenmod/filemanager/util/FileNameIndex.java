@@ -0,0 +1,790 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.storage.StorageVolume;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent index of the names of the files of the storage volumes, used to answer
+ * the searches without walking the filesystem.<br/>
+ * <br/>
+ * The index is stored in a single file that is memory mapped, so only the directory
+ * table lives in the heap. Every name is indexed by the hashes of its case folded
+ * trigrams (a posting list of entries per hash bucket), so the candidates of a query
+ * term are the intersection of the lists of the trigrams of its literal fragments.
+ * Candidates must be verified with a {@link QueryMatcher} (hash collisions and fragments
+ * order), and terms without trigrams scan all the names (still without touching the
+ * filesystem).<br/>
+ * <br/>
+ * Every directory records its modification time. A refresh only lists the directories
+ * whose modification time changed (the rest are copied from the previous index), and
+ * the searches compare the times to detect the subtrees that must be read live. The
+ * time of a directory modified just before it was listed isn't trusted (a file created
+ * in the same tick of the time, 2 seconds on vfat, doesn't change it), so it's recorded
+ * as a time that never matches.
+ */
+public final class FileNameIndex {
+
+    private static final String TAG = "FileNameIndex"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    private static final String INDEX_FILE = "filenames.index"; //$NON-NLS-1$
+    private static final String INDEX_TMP_FILE = "filenames.index.tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x434d4e49;
+    private static final int VERSION = 2;
+
+    // The time since the modification of a directory before trust its time
+    private static final long RACY_INTERVAL = 2000L;
+    // The time recorded for a directory that must be listed again
+    private static final long NOT_VALIDATED = Long.MIN_VALUE;
+
+    private static final int BUCKET_BITS = 16;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int HEADER_SIZE = 32;
+
+    /**
+     * The entry is a directory indexed by its own (not a symlink)
+     */
+    private static final byte FLAG_DIRECTORY = 0x01;
+
+    private static FileNameIndex sInstance;
+
+    /**
+     * An immutable version of the index.
+     */
+    public static final class Snapshot {
+        private final int mEntryCount;
+        private final IntBuffer mBuckets;
+        private final IntBuffer mPostings;
+        private final IntBuffer mNameOffsets;
+        private final IntBuffer mEntryDirs;
+        private final CharBuffer mNames;
+        private final ByteBuffer mFlags;
+
+        private final String[] mDirPaths;
+        private final long[] mDirModified;
+        private final int[] mDirFirst;
+        private final int[] mDirCount;
+        private final Map<String, Integer> mDirIds;
+
+        /**
+         * Constructor of <code>Snapshot</code>. Maps the sections of an index file.
+         *
+         * @param map The memory mapped index file
+         * @throws IOException If the file isn't a valid index
+         */
+        Snapshot(MappedByteBuffer map) throws IOException {
+            super();
+            if (map.capacity() < HEADER_SIZE
+                    || map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                    || map.getInt(8) != BUCKETS) {
+                throw new IOException("invalid index header"); //$NON-NLS-1$
+            }
+            int dirCount = map.getInt(12);
+            this.mEntryCount = map.getInt(16);
+            int postingCount = map.getInt(20);
+            int nameChars = map.getInt(24);
+
+            int offset = HEADER_SIZE;
+            this.mBuckets = section(map, offset, (BUCKETS + 1) * 4).asIntBuffer();
+            offset += (BUCKETS + 1) * 4;
+            this.mPostings = section(map, offset, postingCount * 4).asIntBuffer();
+            offset += postingCount * 4;
+            this.mNameOffsets = section(map, offset, (this.mEntryCount + 1) * 4).asIntBuffer();
+            offset += (this.mEntryCount + 1) * 4;
+            this.mEntryDirs = section(map, offset, this.mEntryCount * 4).asIntBuffer();
+            offset += this.mEntryCount * 4;
+            this.mNames = section(map, offset, nameChars * 2).asCharBuffer();
+            offset += nameChars * 2;
+            this.mFlags = section(map, offset, this.mEntryCount);
+            offset += this.mEntryCount;
+
+            // The directory table
+            ByteBuffer table = section(map, offset, map.capacity() - offset);
+            byte[] data = new byte[table.remaining()];
+            table.get(data);
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+            this.mDirPaths = new String[dirCount];
+            this.mDirModified = new long[dirCount];
+            this.mDirFirst = new int[dirCount];
+            this.mDirCount = new int[dirCount];
+            this.mDirIds = new HashMap<String, Integer>(dirCount * 2);
+            for (int i = 0; i < dirCount; i++) {
+                this.mDirPaths[i] = dis.readUTF();
+                this.mDirModified[i] = dis.readLong();
+                this.mDirFirst[i] = dis.readInt();
+                this.mDirCount[i] = dis.readInt();
+                this.mDirIds.put(this.mDirPaths[i], Integer.valueOf(i));
+            }
+        }
+
+        /**
+         * Method that returns a view of a section of the index file.
+         */
+        private static ByteBuffer section(ByteBuffer map, int offset, int length)
+                throws IOException {
+            if (offset < 0 || length < 0 || offset + length > map.capacity()) {
+                throw new IOException("truncated index"); //$NON-NLS-1$
+            }
+            ByteBuffer dup = map.duplicate();
+            dup.position(offset);
+            dup.limit(offset + length);
+            return dup.slice();
+        }
+
+        /**
+         * Method that returns the identifier of an indexed directory.
+         *
+         * @param path The absolute path of the directory
+         * @return int The identifier of the directory or -1 if it isn't indexed
+         */
+        public int getDirectory(String path) {
+            Integer id = this.mDirIds.get(path);
+            return id == null ? -1 : id.intValue();
+        }
+
+        /**
+         * Method that returns the number of indexed directories.
+         *
+         * @return int The number of directories
+         */
+        public int getDirectoryCount() {
+            return this.mDirPaths.length;
+        }
+
+        /**
+         * Method that returns the path of an indexed directory.
+         *
+         * @param dir The identifier of the directory
+         * @return String The absolute path of the directory
+         */
+        public String getDirectoryPath(int dir) {
+            return this.mDirPaths[dir];
+        }
+
+        /**
+         * Method that returns the modification time of an indexed directory when it
+         * was indexed. A directory modified just before it was indexed returns a time
+         * that never matches the time of the directory, so it's read live until the
+         * next refresh.
+         *
+         * @param dir The identifier of the directory
+         * @return long The modification time
+         */
+        public long getDirectoryModified(int dir) {
+            return this.mDirModified[dir];
+        }
+
+        /**
+         * Method that returns the number of indexed entries.
+         *
+         * @return int The number of entries
+         */
+        public int getEntryCount() {
+            return this.mEntryCount;
+        }
+
+        /**
+         * Method that returns the directory that contains an entry.
+         *
+         * @param entry The entry
+         * @return int The identifier of the directory
+         */
+        public int getEntryDirectory(int entry) {
+            return this.mEntryDirs.get(entry);
+        }
+
+        /**
+         * Method that returns the name of an entry (a view of the index file).
+         *
+         * @param entry The entry
+         * @return CharSequence The name of the entry
+         */
+        public CharSequence getEntryName(int entry) {
+            return this.mNames.subSequence(
+                    this.mNameOffsets.get(entry), this.mNameOffsets.get(entry + 1));
+        }
+
+        /**
+         * Method that returns if an entry is a directory indexed by its own.
+         *
+         * @param entry The entry
+         * @return boolean If the entry is an indexed directory
+         */
+        boolean isEntryDirectory(int entry) {
+            return (this.mFlags.get(entry) & FLAG_DIRECTORY) != 0;
+        }
+
+        /**
+         * Method that returns the entries that could match any of the terms of a query.
+         * The candidates must be verified with a {@link QueryMatcher}.
+         *
+         * @param query The query
+         * @return BitSet The candidate entries
+         */
+        public BitSet getCandidates(Query query) {
+            BitSet candidates = new BitSet(this.mEntryCount);
+            List<String> terms = query.getQueries();
+            int cc = terms.size();
+            for (int i = 0; i < cc; i++) {
+                int[] buckets = getQueryBuckets(terms.get(i));
+                if (buckets.length == 0) {
+                    // Nothing to filter by. All the names are candidates
+                    candidates.set(0, this.mEntryCount);
+                    break;
+                }
+                int[] matches = intersect(buckets);
+                int ccc = matches.length;
+                for (int j = 0; j < ccc; j++) {
+                    candidates.set(matches[j]);
+                }
+            }
+            return candidates;
+        }
+
+        /**
+         * Method that intersects the posting lists of a set of buckets.
+         *
+         * @param buckets The buckets
+         * @return int[] The sorted entries present in all the lists
+         */
+        private int[] intersect(int[] buckets) {
+            // Start with the shortest list
+            int cc = buckets.length;
+            long[] lists = new long[cc];
+            for (int i = 0; i < cc; i++) {
+                int start = this.mBuckets.get(buckets[i]);
+                int end = this.mBuckets.get(buckets[i] + 1);
+                lists[i] = ((long)(end - start) << 32) | buckets[i];
+            }
+            Arrays.sort(lists);
+
+            int bucket = (int)lists[0];
+            int start = this.mBuckets.get(bucket);
+            int count = this.mBuckets.get(bucket + 1) - start;
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = this.mPostings.get(start + i);
+            }
+            for (int i = 1; i < cc && count > 0; i++) {
+                bucket = (int)lists[i];
+                int from = this.mBuckets.get(bucket);
+                int to = this.mBuckets.get(bucket + 1);
+                int kept = 0;
+                for (int j = 0; j < count && from < to; j++) {
+                    from = lowerBound(from, to, result[j]);
+                    if (from < to && this.mPostings.get(from) == result[j]) {
+                        result[kept++] = result[j];
+                    }
+                }
+                count = kept;
+            }
+            return count == result.length ? result : Arrays.copyOf(result, count);
+        }
+
+        /**
+         * Method that returns the first position of a posting list range that is not
+         * lower than a value.
+         */
+        private int lowerBound(int from, int to, int value) {
+            int lo = from;
+            int hi = to;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.mPostings.get(mid) < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntArray {
+        int[] mData = new int[1024];
+        int mSize;
+        IntArray() {
+            super();
+        }
+        void add(int value) {
+            if (this.mSize == this.mData.length) {
+                this.mData = Arrays.copyOf(this.mData, this.mSize * 2);
+            }
+            this.mData[this.mSize++] = value;
+        }
+    }
+
+    /**
+     * The index being built by a refresh.
+     */
+    private static class Builder {
+        final List<String> mDirPaths = new ArrayList<String>();
+        final List<Long> mDirModified = new ArrayList<Long>();
+        final IntArray mDirFirst = new IntArray();
+        final IntArray mDirCount = new IntArray();
+        final IntArray mNameOffsets = new IntArray();
+        final IntArray mEntryDirs = new IntArray();
+        final StringBuilder mNames = new StringBuilder();
+        byte[] mFlags = new byte[1024];
+        int mEntryCount;
+
+        Builder() {
+            super();
+            this.mNameOffsets.add(0);
+        }
+
+        int addDirectory(String path, long modified) {
+            this.mDirPaths.add(path);
+            this.mDirModified.add(Long.valueOf(modified));
+            this.mDirFirst.add(this.mEntryCount);
+            this.mDirCount.add(0);
+            return this.mDirPaths.size() - 1;
+        }
+
+        void addEntry(int dir, CharSequence name, boolean directory) {
+            this.mNames.append(name);
+            this.mNameOffsets.add(this.mNames.length());
+            this.mEntryDirs.add(dir);
+            if (this.mEntryCount == this.mFlags.length) {
+                this.mFlags = Arrays.copyOf(this.mFlags, this.mEntryCount * 2);
+            }
+            this.mFlags[this.mEntryCount] = directory ? FLAG_DIRECTORY : 0;
+            this.mEntryCount++;
+            this.mDirCount.mData[dir]++;
+        }
+    }
+
+    private final File mIndexFile;
+    private final File mTmpFile;
+    private final Context mContext;
+
+    private volatile Snapshot mSnapshot;
+    private boolean mOpened;
+    private boolean mRefreshing;
+    private boolean mRefreshPending;
+
+    /**
+     * Constructor of <code>FileNameIndex</code>.
+     *
+     * @param context The current context
+     */
+    private FileNameIndex(Context context) {
+        super();
+        this.mContext = context;
+        this.mIndexFile = new File(context.getCacheDir(), INDEX_FILE);
+        this.mTmpFile = new File(context.getCacheDir(), INDEX_TMP_FILE);
+    }
+
+    /**
+     * Method that returns the filename index of the process.
+     *
+     * @param context The current context
+     * @return FileNameIndex The filename index
+     */
+    public static synchronized FileNameIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FileNameIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the current version of the index.
+     *
+     * @return Snapshot The index or null if it isn't available yet
+     */
+    public Snapshot getSnapshot() {
+        return this.mSnapshot;
+    }
+
+    /**
+     * Method that returns if the index covers a directory (and all its subtree). If the
+     * index isn't available yet, or doesn't cover the directory, a refresh is requested
+     * in background.
+     *
+     * @param directory The absolute path of the directory
+     * @return boolean If the directory can be searched in the index
+     */
+    public boolean covers(String directory) {
+        Snapshot snapshot = this.mSnapshot;
+        if (snapshot != null && snapshot.getDirectory(directory) != -1) {
+            return true;
+        }
+        if (StorageHelper.isPathInStorageVolume(directory)) {
+            refresh();
+        }
+        return false;
+    }
+
+    /**
+     * Method that refreshes the index in background. Only the directories modified since
+     * the last refresh are listed. Concurrent requests are coalesced.
+     */
+    public void refresh() {
+        synchronized (this) {
+            if (this.mRefreshing) {
+                this.mRefreshPending = true;
+                return;
+            }
+            this.mRefreshing = true;
+        }
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                while (true) {
+                    try {
+                        doRefresh();
+                    } catch (Throwable ex) {
+                        Log.w(TAG, "Failed to refresh the filename index", ex); //$NON-NLS-1$
+                    }
+                    synchronized (FileNameIndex.this) {
+                        if (!FileNameIndex.this.mRefreshPending) {
+                            FileNameIndex.this.mRefreshing = false;
+                            return;
+                        }
+                        FileNameIndex.this.mRefreshPending = false;
+                    }
+                }
+            }
+        }, "FileNameIndexRefresh"); //$NON-NLS-1$
+        t.start();
+    }
+
+    /**
+     * Method that rebuilds the index from the previous one and the modified directories.
+     *
+     * @throws IOException If the index couldn't be written
+     */
+    void doRefresh() throws IOException {
+        long start = System.currentTimeMillis();
+        if (!this.mOpened) {
+            this.mOpened = true;
+            try {
+                this.mSnapshot = open(this.mIndexFile);
+            } catch (IOException ex) {
+                Log.w(TAG, "Discarding the filename index", ex); //$NON-NLS-1$
+            }
+        }
+        Snapshot old = this.mSnapshot;
+
+        Builder builder = new Builder();
+        int listed = 0;
+        StorageVolume[] volumes = StorageHelper.getStorageVolumes(this.mContext);
+        List<String> pending = new ArrayList<String>();
+        for (int i = 0; i < volumes.length; i++) {
+            File root = new File(volumes[i].getPath());
+            if (root.isDirectory() && root.canRead()) {
+                pending.add(root.getAbsolutePath());
+            }
+        }
+        while (!pending.isEmpty()) {
+            String path = pending.remove(pending.size() - 1);
+            File dir = new File(path);
+            long modified = dir.lastModified();
+            if (modified == 0) {
+                continue;
+            }
+            int oldId = old != null ? old.getDirectory(path) : -1;
+            boolean unchanged = oldId != -1 && old.getDirectoryModified(oldId) == modified;
+            // Don't trust the time of a directory modified just now
+            boolean racy = Math.abs(System.currentTimeMillis() - modified) < RACY_INTERVAL;
+            int id = builder.addDirectory(path, unchanged || !racy ? modified : NOT_VALIDATED);
+            if (unchanged) {
+                // Unchanged. Copy the entries from the previous index
+                int first = old.mDirFirst[oldId];
+                int last = first + old.mDirCount[oldId];
+                for (int e = first; e < last; e++) {
+                    CharSequence name = old.getEntryName(e);
+                    boolean directory = old.isEntryDirectory(e);
+                    builder.addEntry(id, name, directory);
+                    if (directory) {
+                        pending.add(concat(path, name.toString()));
+                    }
+                }
+                continue;
+            }
+
+            // Modified or new. List it
+            listed++;
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            String canonical = null;
+            for (int j = 0; j < files.length; j++) {
+                String name = files[j].getName();
+                boolean directory = false;
+                if (files[j].isDirectory()) {
+                    // Don't follow symlinks, they could create cycles
+                    if (canonical == null) {
+                        canonical = dir.getCanonicalPath();
+                    }
+                    directory = concat(canonical, name).equals(files[j].getCanonicalPath());
+                }
+                builder.addEntry(id, name, directory);
+                if (directory) {
+                    pending.add(concat(path, name));
+                }
+            }
+        }
+
+        write(builder, this.mTmpFile);
+        if (!this.mTmpFile.renameTo(this.mIndexFile)) {
+            throw new IOException("failed to rename the filename index"); //$NON-NLS-1$
+        }
+        this.mSnapshot = open(this.mIndexFile);
+        if (DEBUG) {
+            Log.v(TAG, String.format(
+                    "Refreshed %d entries in %d directories (%d listed) in %d ms", //$NON-NLS-1$
+                    Integer.valueOf(builder.mEntryCount),
+                    Integer.valueOf(builder.mDirPaths.size()),
+                    Integer.valueOf(listed),
+                    Long.valueOf(System.currentTimeMillis() - start)));
+        }
+    }
+
+    /**
+     * Method that opens an index file.
+     *
+     * @param file The index file
+     * @return Snapshot The index or null if the file doesn't exist
+     * @throws IOException If the file isn't a valid index
+     */
+    private static Snapshot open(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        try {
+            FileChannel channel = raf.getChannel();
+            return new Snapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            try {
+                raf.close();
+            } catch (Exception ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that writes an index file.
+     *
+     * @param builder The built index
+     * @param file The destination file
+     * @throws IOException If the file couldn't be written
+     */
+    private static void write(Builder builder, File file) throws IOException {
+        final int entries = builder.mEntryCount;
+
+        // Count the postings of every bucket
+        int[] offsets = new int[BUCKETS + 1];
+        int[] scratch = new int[64];
+        for (int e = 0; e < entries; e++) {
+            scratch = getNameBuckets(builder, e, scratch);
+            int cc = scratch[0];
+            for (int i = 1; i <= cc; i++) {
+                offsets[scratch[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int postings = offsets[BUCKETS];
+
+        // The directory table
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(table);
+        int dirs = builder.mDirPaths.size();
+        for (int i = 0; i < dirs; i++) {
+            dos.writeUTF(builder.mDirPaths.get(i));
+            dos.writeLong(builder.mDirModified.get(i).longValue());
+            dos.writeInt(builder.mDirFirst.mData[i]);
+            dos.writeInt(builder.mDirCount.mData[i]);
+        }
+        dos.flush();
+
+        long size = HEADER_SIZE + (BUCKETS + 1) * 4L + postings * 4L + (entries + 1) * 4L
+                + entries * 4L + builder.mNames.length() * 2L + entries + table.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("filename index too big"); //$NON-NLS-1$
+        }
+
+        file.delete();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+        try {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(MAGIC);
+            map.putInt(VERSION);
+            map.putInt(BUCKETS);
+            map.putInt(dirs);
+            map.putInt(entries);
+            map.putInt(postings);
+            map.putInt(builder.mNames.length());
+            map.putInt(0);
+
+            for (int i = 0; i <= BUCKETS; i++) {
+                map.putInt(offsets[i]);
+            }
+
+            // Fill the posting lists. Entries are visited in order, so the lists are sorted
+            int postingsOffset = map.position();
+            for (int e = 0; e < entries; e++) {
+                scratch = getNameBuckets(builder, e, scratch);
+                int cc = scratch[0];
+                for (int i = 1; i <= cc; i++) {
+                    map.putInt(postingsOffset + (offsets[scratch[i]]++) * 4, e);
+                }
+            }
+            map.position(postingsOffset + postings * 4);
+
+            for (int e = 0; e <= entries; e++) {
+                map.putInt(builder.mNameOffsets.mData[e]);
+            }
+            for (int e = 0; e < entries; e++) {
+                map.putInt(builder.mEntryDirs.mData[e]);
+            }
+            int cc = builder.mNames.length();
+            for (int i = 0; i < cc; i++) {
+                map.putChar(builder.mNames.charAt(i));
+            }
+            map.put(builder.mFlags, 0, entries);
+            map.put(table.toByteArray());
+            map.force();
+        } finally {
+            try {
+                raf.close();
+            } catch (Exception ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that returns the distinct buckets of the trigrams of an entry name.
+     *
+     * @param builder The built index
+     * @param entry The entry
+     * @param scratch A buffer to reuse
+     * @return int[] The buffer, with the number of buckets in the first position
+     */
+    private static int[] getNameBuckets(Builder builder, int entry, int[] scratch) {
+        int start = builder.mNameOffsets.mData[entry];
+        int end = builder.mNameOffsets.mData[entry + 1];
+        int count = Math.max(0, end - start - 2);
+        int[] buckets = scratch;
+        if (buckets.length < count + 1) {
+            buckets = new int[count + 1];
+        }
+        for (int i = 0; i < count; i++) {
+            buckets[i + 1] = hash(
+                    QueryMatcher.fold(builder.mNames.charAt(start + i)),
+                    QueryMatcher.fold(builder.mNames.charAt(start + i + 1)),
+                    QueryMatcher.fold(builder.mNames.charAt(start + i + 2)));
+        }
+        buckets[0] = unique(buckets, 1, count);
+        return buckets;
+    }
+
+    /**
+     * Method that returns the distinct buckets of the trigrams of the literal fragments of
+     * a query term (see {@link QueryMatcher}).
+     *
+     * @param term The query term
+     * @return int[] The buckets (an empty array if the term doesn't have trigrams)
+     */
+    static int[] getQueryBuckets(String term) {
+        int[] buckets = new int[term.length() + 1];
+        int count = 0;
+        List<String> fragments = QueryMatcher.splitTerm(term);
+        int cc = fragments.size();
+        for (int i = 0; i < cc; i++) {
+            String fragment = QueryMatcher.fold(fragments.get(i));
+            int ccc = fragment.length() - 2;
+            for (int j = 0; j < ccc; j++) {
+                buckets[1 + count++] = hash(
+                        fragment.charAt(j), fragment.charAt(j + 1), fragment.charAt(j + 2));
+            }
+        }
+        count = unique(buckets, 1, count);
+        return Arrays.copyOfRange(buckets, 1, 1 + count);
+    }
+
+    /**
+     * Method that sorts and removes the duplicates of a range of an array.
+     *
+     * @return int The number of distinct values (moved to the start of the range)
+     */
+    private static int unique(int[] values, int from, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(values, from, from + count);
+        int kept = 1;
+        for (int i = 1; i < count; i++) {
+            if (values[from + i] != values[from + kept - 1]) {
+                values[from + kept++] = values[from + i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Method that returns the bucket of a case folded trigram.
+     */
+    private static int hash(char a, char b, char c) {
+        int h = (a * 31 + b) * 31 + c;
+        h *= 0x9E3779B1;
+        return h >>> (32 - BUCKET_BITS);
+    }
+
+    /**
+     * Method that concatenates a directory and a name.
+     */
+    private static String concat(String dir, String name) {
+        return dir.endsWith(File.separator) ? dir + name : dir + File.separator + name;
+    }
+}
@@ -0,0 +1,751 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.java.DirectoryWalker;
+import com.cyanogenmod.filemanager.model.FolderUsage;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent cache of the usage of the directories, used to show the size of the
+ * folders without walk the disk every time.<br/>
+ * <br/>
+ * Every directory has its own entry with the subtotals of the files it contains directly
+ * and the names of its subdirectories, validated by the modification time of the
+ * directory (which changes when an entry is created, deleted or renamed inside it). A
+ * rescan of a tree only lists again the directories that changed, and the totals of a
+ * directory are the sum of the entries of its subtree. Symlinks to directories aren't
+ * followed, as <code>du</code> does.<br/>
+ * <br/>
+ * A directory modified just before its scan isn't trusted (its time could not reflect a
+ * change made in the same second), and a file rewritten in place doesn't change the time
+ * of its directory, so the writers of the app invalidate the entries of the directories
+ * they write to.<br/>
+ * <br/>
+ * The cache is loaded in background when it's created. Until then, the UI thread gets
+ * unknown sizes and other threads wait for the load. A tree walked recently (or a
+ * subtree of it) isn't walked again while nothing inside it is invalidated, so browsing
+ * a tree doesn't stat all its directories on every navigation.
+ */
+public final class FolderSizeCache {
+
+    private static final String TAG = "FolderSizeCache"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    private static final String CACHE_FILE = "folder_sizes.cache"; //$NON-NLS-1$
+    private static final String CACHE_TMP_FILE = "folder_sizes.cache.tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x434d4653;
+    private static final int VERSION = 1;
+
+    // The max number of entries (the least recently used are evicted)
+    private static final int MAX_ENTRIES = 20000;
+    // The time since the modification of a directory before trust its time
+    private static final long RACY_INTERVAL = 2000L;
+    // The time of an entry that must be rescanned
+    private static final long NOT_VALIDATED = Long.MIN_VALUE;
+    // The delay before persist the changes, to coalesce them
+    private static final long SAVE_DELAY = 2000L;
+    // The time while a walked tree isn't walked again
+    private static final long REFRESH_INTERVAL = 30000L;
+
+    private static final MimeTypeCategory[] CATEGORIES = MimeTypeCategory.values();
+
+    /**
+     * The usage of the files of a directory (not of its subdirectories).
+     */
+    public static final class Entry {
+        final long mLastModified;
+        final int mFiles;
+        final long mSize;
+        final int[] mCategories;
+        final String[] mDirs;
+
+        // The totals of the subtree, valid while the generation of the cache is the same
+        long mGeneration = -1;
+        long mTotalSize;
+
+        /**
+         * Constructor of <code>Entry</code>.
+         *
+         * @param lastModified The modification time of the directory
+         * @param files The number of files
+         * @param size The size of the files
+         * @param categories The number of files of every category
+         * @param dirs The names of the subdirectories
+         */
+        Entry(long lastModified, int files, long size, int[] categories, String[] dirs) {
+            super();
+            this.mLastModified = lastModified;
+            this.mFiles = files;
+            this.mSize = size;
+            this.mCategories = categories;
+            this.mDirs = dirs;
+        }
+
+        /**
+         * Method that returns the number of files of the directory.
+         *
+         * @return int The number of files
+         */
+        public int getNumberOfFiles() {
+            return this.mFiles;
+        }
+
+        /**
+         * Method that returns the size of the files of the directory.
+         *
+         * @return long The size in bytes
+         */
+        public long getSize() {
+            return this.mSize;
+        }
+
+        /**
+         * Method that returns the number of files of a category in the directory.
+         *
+         * @param category The category
+         * @return int The number of files
+         */
+        public int getNumberOfFiles(MimeTypeCategory category) {
+            return this.mCategories[category.ordinal()];
+        }
+
+        /**
+         * Method that returns the names of the subdirectories of the directory.
+         *
+         * @return String[] The names of the subdirectories
+         */
+        public String[] getDirectories() {
+            return this.mDirs;
+        }
+    }
+
+    private static FolderSizeCache sInstance;
+
+    private final Context mContext;
+    private final File mCacheFile;
+    private final File mTmpFile;
+
+    private final Map<String, Entry> mEntries;
+    private final Set<DirectoryWalker> mRefreshes;
+    private final Map<String, Long> mValidated;
+    private long mInvalidations;
+    private long mGeneration;
+    private volatile boolean mLoaded;
+    private final Object mLoadSync = new Object();
+    private boolean mSaving;
+    private boolean mSavePending;
+
+    /**
+     * Constructor of <code>FolderSizeCache</code>.
+     *
+     * @param context The current context (null for a cache that isn't persisted)
+     */
+    FolderSizeCache(Context context) {
+        super();
+        this.mContext = context;
+        this.mCacheFile = context != null ? new File(context.getCacheDir(), CACHE_FILE) : null;
+        this.mTmpFile = context != null ? new File(context.getCacheDir(), CACHE_TMP_FILE) : null;
+        this.mEntries = new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+        this.mRefreshes = new HashSet<DirectoryWalker>();
+        this.mValidated = new HashMap<String, Long>();
+        this.mLoaded = context == null;
+    }
+
+    /**
+     * Method that returns the folder size cache of the process.
+     *
+     * @param context The current context
+     * @return FolderSizeCache The folder size cache
+     */
+    public static synchronized FolderSizeCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FolderSizeCache(context.getApplicationContext());
+            sInstance.loadInBackground();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the usage of the files of a directory, from the cache if the
+     * directory wasn't modified since its last scan, or listing it again.
+     *
+     * @param dir The directory
+     * @return Entry The usage of the files of the directory, or null if it can't be listed
+     */
+    public Entry scan(File dir) {
+        ensureLoaded();
+        String path = dir.getAbsolutePath();
+        long lastModified = dir.lastModified();
+        synchronized (this) {
+            Entry entry = this.mEntries.get(path);
+            if (entry != null && entry.mLastModified == lastModified) {
+                return entry;
+            }
+        }
+
+        File[] files = dir.listFiles();
+        if (files == null) {
+            invalidate(path);
+            return null;
+        }
+        String prefix = null;
+        int count = 0;
+        long size = 0;
+        int[] categories = new int[CATEGORIES.length];
+        List<String> dirs = new ArrayList<String>();
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isDirectory()) {
+                try {
+                    if (prefix == null) {
+                        prefix = FileHelper.addTrailingSlash(dir.getCanonicalPath());
+                    }
+                    if (files[i].getCanonicalPath().equals(prefix + files[i].getName())) {
+                        dirs.add(files[i].getName());
+                    }
+                } catch (IOException ex) {/**NON BLOCK**/}
+                continue;
+            }
+            count++;
+            size += files[i].length();
+            MimeTypeCategory category = MimeTypeHelper.getCategoryFromExt(
+                    this.mContext, FileHelper.getExtension(files[i].getName()));
+            categories[category.ordinal()]++;
+        }
+
+        // Don't trust the time of a directory modified just now
+        boolean racy = lastModified == 0
+                || Math.abs(System.currentTimeMillis() - lastModified) < RACY_INTERVAL;
+        Entry entry = new Entry(racy ? NOT_VALIDATED : lastModified, count, size, categories,
+                dirs.toArray(new String[dirs.size()]));
+        synchronized (this) {
+            this.mEntries.put(path, entry);
+            this.mGeneration++;
+        }
+        return entry;
+    }
+
+    /**
+     * Method that rescans a tree, only listing the directories that changed. The method
+     * returns when the tree was rescanned or the refreshes were cancelled.
+     *
+     * @param dir The root directory of the tree
+     * @see #cancelRefreshes()
+     */
+    public void refresh(File dir) {
+        final AtomicBoolean validated = new AtomicBoolean(true);
+        DirectoryWalker walker = new DirectoryWalker(new DirectoryWalker.ListingVisitor() {
+            @Override
+            public File[] list(File directory) {
+                Entry entry = scan(directory);
+                if (entry == null || entry.mLastModified == NOT_VALIDATED) {
+                    validated.set(false);
+                }
+                return entry != null ? toFiles(directory, entry) : null;
+            }
+            @Override
+            public boolean onEntry(File file) {
+                return true;
+            }
+        }, DirectoryWalker.getDefaultParallelism());
+        synchronized (this.mRefreshes) {
+            this.mRefreshes.add(walker);
+        }
+        long start = System.currentTimeMillis();
+        long invalidations;
+        synchronized (this) {
+            invalidations = this.mInvalidations;
+        }
+        try {
+            walker.walk(dir);
+        } finally {
+            synchronized (this.mRefreshes) {
+                this.mRefreshes.remove(walker);
+            }
+        }
+
+        // Every directory of the tree was validated by its time, so the tree isn't walked
+        // again for a while unless something inside it is invalidated meanwhile
+        synchronized (this) {
+            if (!walker.isCancelled() && validated.get()
+                    && invalidations == this.mInvalidations) {
+                Iterator<Long> it = this.mValidated.values().iterator();
+                while (it.hasNext()) {
+                    if (start - it.next().longValue() >= REFRESH_INTERVAL) {
+                        it.remove();
+                    }
+                }
+                this.mValidated.put(dir.getAbsolutePath(), Long.valueOf(start));
+            }
+        }
+        if (DEBUG) {
+            Log.v(TAG, String.format("Refreshed %s in %d ms", //$NON-NLS-1$
+                    dir, Long.valueOf(System.currentTimeMillis() - start)));
+        }
+        save();
+    }
+
+    /**
+     * Method that rescans a tree, unless it or a tree that contains it was rescanned
+     * recently and nothing inside it was invalidated since then.
+     *
+     * @param dir The root directory of the tree
+     * @return boolean If the tree was rescanned
+     * @see #refresh(File)
+     */
+    public boolean refreshIfStale(File dir) {
+        String path = dir.getAbsolutePath();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = this.mValidated.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                if (now - e.getValue().longValue() < REFRESH_INTERVAL
+                        && isInTree(path, e.getKey())) {
+                    return false;
+                }
+            }
+        }
+        refresh(dir);
+        return true;
+    }
+
+    /**
+     * Method that cancels the refreshes in progress.
+     */
+    public void cancelRefreshes() {
+        synchronized (this.mRefreshes) {
+            Iterator<DirectoryWalker> it = this.mRefreshes.iterator();
+            while (it.hasNext()) {
+                it.next().cancel();
+            }
+        }
+    }
+
+    /**
+     * Method that removes the entry of a directory, so its next scan lists it again.
+     *
+     * @param path The absolute path of the directory
+     */
+    public void invalidate(String path) {
+        synchronized (this) {
+            if (this.mEntries.remove(path) != null) {
+                this.mGeneration++;
+            }
+            this.mInvalidations++;
+            Iterator<String> it = this.mValidated.keySet().iterator();
+            while (it.hasNext()) {
+                if (isInTree(path, it.next())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that returns if a path is a tree or is inside of it.
+     *
+     * @param path The absolute path
+     * @param tree The absolute path of the root of the tree
+     * @return boolean If the path is inside the tree
+     */
+    private static boolean isInTree(String path, String tree) {
+        return path.equals(tree) || path.startsWith(FileHelper.addTrailingSlash(tree));
+    }
+
+    /**
+     * Method that returns the known size of a tree. It doesn't access to the disk, so the
+     * size is the one of the last scan.
+     *
+     * @param path The absolute path of the directory
+     * @return long The size in bytes, or -1 if any directory of the tree is unknown (or
+     * the cache is still loading and the caller is the UI thread)
+     */
+    public long getSize(String path) {
+        if (!waitForLoad()) {
+            return -1;
+        }
+        synchronized (this) {
+            Entry entry = this.mEntries.get(path);
+            return entry != null ? getTotalSize(path, entry) : -1;
+        }
+    }
+
+    /**
+     * Method that returns the known usage of a tree. It doesn't access to the disk, so the
+     * usage is the one of the last scan.
+     *
+     * @param path The absolute path of the directory
+     * @return FolderUsage The usage, or null if any directory of the tree is unknown (or
+     * the cache is still loading and the caller is the UI thread)
+     */
+    public FolderUsage getFolderUsage(String path) {
+        if (!waitForLoad()) {
+            return null;
+        }
+        synchronized (this) {
+            return getFolderUsageLocked(path);
+        }
+    }
+
+    /**
+     * Method that returns the known usage of a tree, with the lock held.
+     *
+     * @param path The absolute path of the directory
+     * @return FolderUsage The usage, or null if any directory of the tree is unknown
+     */
+    private FolderUsage getFolderUsageLocked(String path) {
+        Entry root = this.mEntries.get(path);
+        if (root == null) {
+            return null;
+        }
+        long folders = 0;
+        long files = 0;
+        long size = 0;
+        long[] categories = new long[CATEGORIES.length];
+        List<String> pending = new ArrayList<String>();
+        List<Entry> pendingEntries = new ArrayList<Entry>();
+        pending.add(path);
+        pendingEntries.add(root);
+        while (!pending.isEmpty()) {
+            int last = pending.size() - 1;
+            String dir = pending.remove(last);
+            Entry entry = pendingEntries.remove(last);
+            files += entry.mFiles;
+            size += entry.mSize;
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] += entry.mCategories[i];
+            }
+            for (int i = 0; i < entry.mDirs.length; i++) {
+                String child = FileHelper.addTrailingSlash(dir) + entry.mDirs[i];
+                Entry childEntry = this.mEntries.get(child);
+                if (childEntry == null) {
+                    return null;
+                }
+                folders++;
+                pending.add(child);
+                pendingEntries.add(childEntry);
+            }
+        }
+
+        FolderUsage usage = new FolderUsage(path);
+        usage.setNumberOfFolders((int)folders);
+        usage.setNumberOfFiles((int)files);
+        usage.setTotalSize(size);
+        for (int i = 0; i < categories.length; i++) {
+            usage.setStatisticsForCategory(CATEGORIES[i], categories[i]);
+        }
+        return usage;
+    }
+
+    /**
+     * Method that returns the size of a tree, reusing the totals computed since the last
+     * change of the cache.
+     *
+     * @param path The absolute path of the directory
+     * @param entry The entry of the directory
+     * @return long The size in bytes, or -1 if any directory of the tree is unknown
+     */
+    private long getTotalSize(String path, Entry entry) {
+        if (entry.mGeneration == this.mGeneration) {
+            return entry.mTotalSize;
+        }
+        long size = entry.mSize;
+        String prefix = FileHelper.addTrailingSlash(path);
+        for (int i = 0; i < entry.mDirs.length && size != -1; i++) {
+            String child = prefix + entry.mDirs[i];
+            Entry childEntry = this.mEntries.get(child);
+            long childSize = childEntry != null ? getTotalSize(child, childEntry) : -1;
+            size = childSize != -1 ? size + childSize : -1;
+        }
+        entry.mTotalSize = size;
+        entry.mGeneration = this.mGeneration;
+        return size;
+    }
+
+    /**
+     * Method that returns the subdirectories of an entry.
+     *
+     * @param dir The directory
+     * @param entry The entry of the directory
+     * @return File[] The subdirectories
+     */
+    static File[] toFiles(File dir, Entry entry) {
+        File[] files = new File[entry.mDirs.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dir, entry.mDirs[i]);
+        }
+        return files;
+    }
+
+    /**
+     * Method that loads the cache in background.
+     */
+    void loadInBackground() {
+        if (this.mLoaded) {
+            return;
+        }
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                ensureLoaded();
+            }
+        }, "FolderSizeCacheLoad"); //$NON-NLS-1$
+        t.start();
+    }
+
+    /**
+     * Method that waits for the load of the cache, unless the caller is the UI thread.
+     *
+     * @return boolean If the cache is loaded
+     */
+    private boolean waitForLoad() {
+        if (this.mLoaded) {
+            return true;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            return false;
+        }
+        ensureLoaded();
+        return true;
+    }
+
+    /**
+     * Method that loads the cache the first time that it's used. The entries scanned
+     * while the file was read take precedence over the persisted ones.
+     */
+    private void ensureLoaded() {
+        if (this.mLoaded) {
+            return;
+        }
+        synchronized (this.mLoadSync) {
+            if (this.mLoaded) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+            try {
+                if (this.mCacheFile.exists()) {
+                    read(this.mCacheFile, entries);
+                }
+            } catch (Exception ex) {
+                Log.w(TAG, "Discarding the folder size cache", ex); //$NON-NLS-1$
+                entries.clear();
+            }
+            synchronized (this) {
+                Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Entry> e = it.next();
+                    if (!this.mEntries.containsKey(e.getKey())) {
+                        this.mEntries.put(e.getKey(), e.getValue());
+                    }
+                }
+                this.mGeneration++;
+            }
+            this.mLoaded = true;
+            if (DEBUG) {
+                Log.v(TAG, String.format("Loaded %d folders in %d ms", //$NON-NLS-1$
+                        Integer.valueOf(entries.size()),
+                        Long.valueOf(System.currentTimeMillis() - start)));
+            }
+        }
+    }
+
+    /**
+     * Method that persists the cache in background. Concurrent requests are coalesced.
+     */
+    public synchronized void save() {
+        if (this.mCacheFile == null) {
+            return;
+        }
+        if (this.mSaving) {
+            this.mSavePending = true;
+            return;
+        }
+        this.mSaving = true;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                while (true) {
+                    try {
+                        Thread.sleep(SAVE_DELAY);
+                    } catch (InterruptedException ex) {/**NON BLOCK**/}
+                    List<String> paths;
+                    List<Entry> entries;
+                    synchronized (FolderSizeCache.this) {
+                        FolderSizeCache.this.mSavePending = false;
+                        paths = new ArrayList<String>(FolderSizeCache.this.mEntries.keySet());
+                        entries = new ArrayList<Entry>(FolderSizeCache.this.mEntries.values());
+                    }
+                    try {
+                        write(paths, entries, FolderSizeCache.this.mTmpFile);
+                        if (!FolderSizeCache.this.mTmpFile.renameTo(
+                                FolderSizeCache.this.mCacheFile)) {
+                            throw new IOException(
+                                    "failed to rename the folder size cache"); //$NON-NLS-1$
+                        }
+                    } catch (Throwable ex) {
+                        Log.w(TAG, "Failed to save the folder size cache", ex); //$NON-NLS-1$
+                    }
+                    synchronized (FolderSizeCache.this) {
+                        if (!FolderSizeCache.this.mSavePending) {
+                            FolderSizeCache.this.mSaving = false;
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "FolderSizeCacheSave"); //$NON-NLS-1$
+        t.start();
+    }
+
+    /**
+     * Method that writes the entries to a file, in the order of its last use (so the
+     * least recently used are evicted first after read them). Every path only stores the
+     * suffix not shared with the previous one.
+     *
+     * @param paths The paths of the directories
+     * @param entries The entries of the directories
+     * @param file The destination file
+     * @throws IOException If the file couldn't be written
+     */
+    static void write(List<String> paths, List<Entry> entries, File file) throws IOException {
+        DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            int cc = paths.size();
+            dos.writeInt(cc);
+            String last = ""; //$NON-NLS-1$
+            for (int i = 0; i < cc; i++) {
+                String path = paths.get(i);
+                Entry entry = entries.get(i);
+                int shared = 0;
+                int max = Math.min(Math.min(last.length(), path.length()), 0xffff);
+                while (shared < max && last.charAt(shared) == path.charAt(shared)) {
+                    shared++;
+                }
+                dos.writeShort(shared);
+                dos.writeUTF(path.substring(shared));
+                dos.writeLong(entry.mLastModified);
+                dos.writeInt(entry.mFiles);
+                dos.writeLong(entry.mSize);
+                int categories = 0;
+                for (int j = 0; j < entry.mCategories.length; j++) {
+                    if (entry.mCategories[j] != 0) {
+                        categories++;
+                    }
+                }
+                dos.writeByte(categories);
+                for (int j = 0; j < entry.mCategories.length; j++) {
+                    if (entry.mCategories[j] != 0) {
+                        dos.writeByte(j);
+                        dos.writeInt(entry.mCategories[j]);
+                    }
+                }
+                dos.writeInt(entry.mDirs.length);
+                for (int j = 0; j < entry.mDirs.length; j++) {
+                    dos.writeUTF(entry.mDirs[j]);
+                }
+                last = path;
+            }
+        } finally {
+            try {
+                dos.close();
+            } catch (Exception ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that reads the entries from a file.
+     *
+     * @param file The cache file
+     * @param entries The map where to put the entries
+     * @throws IOException If the file isn't a valid cache
+     */
+    static void read(File file, Map<String, Entry> entries) throws IOException {
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                throw new IOException("invalid folder size cache"); //$NON-NLS-1$
+            }
+            int cc = dis.readInt();
+            String last = ""; //$NON-NLS-1$
+            for (int i = 0; i < cc; i++) {
+                int shared = dis.readUnsignedShort();
+                String path = last.substring(0, shared) + dis.readUTF();
+                long lastModified = dis.readLong();
+                int files = dis.readInt();
+                long size = dis.readLong();
+                int[] categories = new int[CATEGORIES.length];
+                int categoriesCount = dis.readUnsignedByte();
+                for (int j = 0; j < categoriesCount; j++) {
+                    int category = dis.readUnsignedByte();
+                    int count = dis.readInt();
+                    if (category < categories.length) {
+                        categories[category] = count;
+                    }
+                }
+                String[] dirs = new String[dis.readInt()];
+                for (int j = 0; j < dirs.length; j++) {
+                    dirs[j] = dis.readUTF();
+                }
+                entries.put(path, new Entry(lastModified, files, size, categories, dirs));
+                last = path;
+            }
+        } finally {
+            try {
+                dis.close();
+            } catch (Exception ex) {/**NON BLOCK**/}
+        }
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the music albums of the media store, keyed by the folder that contains
+ * the tracks.<br/>
+ * <br/>
+ * The index is shared by the process and kept in sync incrementally: changes notified by
+ * the media store only mark the index as dirty, and the next lookup done after
+ * {@link #SYNC_DEBOUNCE} ms without new changes queries only the rows added or modified
+ * since the last sync (deleted rows are detected by the row count). The album art of
+ * every album is resolved once and cached until the albums change.<br/>
+ * <br/>
+ * The media store is queried without holding the monitor of the index, which only
+ * guards the change flags (the observers and the registrations run in the main thread).
+ * Every sync publishes a new immutable map of the folder albums.
+ */
+public final class MediaAlbumIndex {
+
+    private static final String TAG = "MediaAlbumIndex"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    // The quiet time after a change before the index is synced
+    private static final long SYNC_DEBOUNCE = 1000L;
+
+    // Above this number of modified rows, query them by date instead of by id
+    private static final int MAX_TOUCHED_IDS = 200;
+
+    private static final String NO_ART = ""; //$NON-NLS-1$
+
+    private static MediaAlbumIndex sInstance;
+
+    /**
+     * A track of the index
+     */
+    private static class Track {
+        Track() {
+            super();
+        }
+        String mFolder;
+        long mAlbumId;
+    }
+
+    private final ContentResolver mContentResolver;
+
+    // The state of the sync, only accessed while holding mSyncLock
+    private final Object mSyncLock = new Object();
+    // Track id -> track
+    private final Map<Long, Track> mTracks;
+    // Folder -> (album id -> number of tracks)
+    private final Map<String, Map<Long, int[]>> mFolders;
+    private long mMaxId;
+    private long mLastSyncTime;
+
+    // Folder -> album id of the folder (published by every sync)
+    private volatile Map<String, Long> mFolderAlbums;
+    // Album id -> album art path (NO_ART if the album hasn't art)
+    private volatile Map<Long, String> mAlbumArts;
+
+    // The change flags, guarded by the monitor of the index
+    // Rows notified as changed since last sync
+    private final Set<Long> mTouchedIds;
+    private boolean mSynced;
+    private boolean mDirty;
+    private long mLastChange;
+    private int mUsers;
+
+    private final ContentObserver mMediaObserver;
+    private final ContentObserver mAlbumsObserver;
+
+    /**
+     * Constructor of <code>MediaAlbumIndex</code>.
+     *
+     * @param context The current context
+     */
+    private MediaAlbumIndex(Context context) {
+        super();
+        this.mContentResolver = context.getContentResolver();
+        this.mTracks = new HashMap<Long, Track>();
+        this.mFolders = new HashMap<String, Map<Long, int[]>>();
+        this.mFolderAlbums = Collections.emptyMap();
+        this.mAlbumArts = new ConcurrentHashMap<Long, String>();
+        this.mTouchedIds = new HashSet<Long>();
+
+        Handler handler = new Handler(Looper.getMainLooper());
+        this.mMediaObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onChange(selfChange, null);
+            }
+
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                onMediaChanged(uri);
+            }
+        };
+        this.mAlbumsObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onAlbumsChanged();
+            }
+        };
+    }
+
+    /**
+     * Method that returns the album index of the process.
+     *
+     * @param context The current context
+     * @return MediaAlbumIndex The album index
+     */
+    public static synchronized MediaAlbumIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MediaAlbumIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that registers a new user of the index. The index only listens to the media
+     * store changes while it has users.
+     */
+    public synchronized void register() {
+        if (this.mUsers == 0) {
+            this.mContentResolver.registerContentObserver(
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, this.mMediaObserver);
+            this.mContentResolver.registerContentObserver(
+                    MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, true, this.mAlbumsObserver);
+            // Changes weren't tracked while unregistered
+            this.mDirty = this.mSynced;
+            this.mAlbumArts = new ConcurrentHashMap<Long, String>();
+        }
+        this.mUsers++;
+    }
+
+    /**
+     * Method that unregisters an user of the index.
+     */
+    public synchronized void unregister() {
+        if (this.mUsers == 0) {
+            return;
+        }
+        this.mUsers--;
+        if (this.mUsers == 0) {
+            this.mContentResolver.unregisterContentObserver(this.mMediaObserver);
+            this.mContentResolver.unregisterContentObserver(this.mAlbumsObserver);
+        }
+    }
+
+    /**
+     * Method that returns the album art of the album of a folder. Must not be called
+     * from the main thread.
+     *
+     * @param folder The absolute path of the folder (normalized media path)
+     * @return String The path of the album art, or null if the folder isn't an album or
+     * the album hasn't art
+     */
+    public String getAlbumArt(String folder) {
+        syncIfNeeded();
+
+        Long albumId = this.mFolderAlbums.get(folder);
+        if (albumId == null) {
+            return null;
+        }
+        Map<Long, String> arts = this.mAlbumArts;
+        String art = arts.get(albumId);
+        if (art == null) {
+            art = MediaHelper.getAlbumThumbnailPath(this.mContentResolver, albumId.longValue());
+            if (art == null) {
+                art = NO_ART;
+            }
+            arts.put(albumId, art);
+        }
+        return art == NO_ART ? null : art;
+    }
+
+    /**
+     * Method invoked when the tracks of the media store change.
+     *
+     * @param uri The changed uri, if known
+     */
+    synchronized void onMediaChanged(Uri uri) {
+        this.mDirty = true;
+        this.mLastChange = SystemClock.uptimeMillis();
+        if (uri != null && this.mTouchedIds.size() <= MAX_TOUCHED_IDS) {
+            // Keep the concrete rows that changed (updates of existing rows aren't
+            // detected by the id or the date of the file)
+            try {
+                this.mTouchedIds.add(Long.valueOf(Long.parseLong(uri.getLastPathSegment())));
+            } catch (NumberFormatException ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method invoked when the albums of the media store change.
+     */
+    void onAlbumsChanged() {
+        this.mAlbumArts = new ConcurrentHashMap<Long, String>();
+    }
+
+    /**
+     * Method that syncs the index if it's dirty and there were no changes in the
+     * debounce period.
+     */
+    private void syncIfNeeded() {
+        synchronized (this.mSyncLock) {
+            Set<Long> touchedIds;
+            boolean synced;
+            synchronized (this) {
+                synced = this.mSynced;
+                if (synced && (!this.mDirty
+                        || SystemClock.uptimeMillis() - this.mLastChange < SYNC_DEBOUNCE)) {
+                    // Use the current index while the media store is still changing
+                    return;
+                }
+                this.mDirty = false;
+                touchedIds = new HashSet<Long>(this.mTouchedIds);
+                this.mTouchedIds.clear();
+            }
+
+            long start = SystemClock.uptimeMillis();
+            try {
+                int changes = queryChangedTracks(synced, touchedIds);
+                int count = queryTrackCount();
+                if (count != this.mTracks.size()) {
+                    removeDeletedTracks();
+                }
+                this.mFolderAlbums = buildFolderAlbums();
+                if (DEBUG) {
+                    Log.v(TAG, "sync: changes=" + changes + ", tracks=" + this.mTracks.size() //$NON-NLS-1$ //$NON-NLS-2$
+                            + ", time=" + (SystemClock.uptimeMillis() - start)); //$NON-NLS-1$
+                }
+                synchronized (this) {
+                    this.mSynced = true;
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to sync the album index", e); //$NON-NLS-1$
+                synchronized (this) {
+                    this.mDirty = true;
+                    this.mTouchedIds.addAll(touchedIds);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that returns the album that represents every folder (the album with more
+     * tracks in the folder).
+     *
+     * @return Map<String, Long> The immutable map of folder albums
+     */
+    private Map<String, Long> buildFolderAlbums() {
+        Map<String, Long> folderAlbums = new HashMap<String, Long>(this.mFolders.size() * 2);
+        for (Map.Entry<String, Map<Long, int[]>> folder : this.mFolders.entrySet()) {
+            Long albumId = null;
+            int tracks = 0;
+            for (Map.Entry<Long, int[]> album : folder.getValue().entrySet()) {
+                if (album.getValue()[0] > tracks) {
+                    albumId = album.getKey();
+                    tracks = album.getValue()[0];
+                }
+            }
+            if (albumId != null) {
+                folderAlbums.put(folder.getKey(), albumId);
+            }
+        }
+        return Collections.unmodifiableMap(folderAlbums);
+    }
+
+    /**
+     * Method that queries the tracks added or modified since the last sync, or all the
+     * tracks on the first sync.
+     *
+     * @param synced If the index was synced before
+     * @param touchedIds The rows notified as changed since the last sync
+     * @return int The number of changed tracks
+     */
+    private int queryChangedTracks(boolean synced, Set<Long> touchedIds) {
+        final String[] projection = {
+                BaseColumns._ID,
+                MediaStore.Audio.Media.ALBUM_ID,
+                MediaStore.Audio.Media.DATA,
+                MediaStore.Audio.Media.IS_MUSIC
+        };
+        long syncTime = System.currentTimeMillis() / 1000L;
+
+        String where = null;
+        String[] args = null;
+        if (synced) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(BaseColumns._ID).append(" > ? OR ") //$NON-NLS-1$
+              .append(MediaStore.Audio.Media.DATE_MODIFIED).append(" >= ?"); //$NON-NLS-1$
+            if (!touchedIds.isEmpty()) {
+                sb.append(" OR ").append(BaseColumns._ID).append(" IN ("); //$NON-NLS-1$ //$NON-NLS-2$
+                Iterator<Long> it = touchedIds.iterator();
+                while (it.hasNext()) {
+                    sb.append(it.next().longValue());
+                    if (it.hasNext()) {
+                        sb.append(',');
+                    }
+                }
+                sb.append(')');
+            }
+            where = sb.toString();
+            args = new String[]{
+                    String.valueOf(this.mMaxId),
+                    String.valueOf(this.mLastSyncTime)};
+        } else {
+            where = MediaStore.Audio.Media.IS_MUSIC + " = 1"; //$NON-NLS-1$
+        }
+
+        int changes = 0;
+        Cursor c = this.mContentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                projection, where, args, null);
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    long id = c.getLong(0);
+                    long albumId = c.getLong(1);
+                    String data = c.getString(2);
+                    boolean music = c.getInt(3) != 0;
+                    removeTrack(Long.valueOf(id));
+                    if (music && data != null) {
+                        addTrack(Long.valueOf(id), albumId, data);
+                    }
+                    this.mMaxId = Math.max(this.mMaxId, id);
+                    changes++;
+                }
+            } finally {
+                c.close();
+            }
+        }
+        // Files copied keep their dates, so leave a margin for files written while syncing
+        this.mLastSyncTime = syncTime - 1;
+        return changes;
+    }
+
+    /**
+     * Method that returns the number of music tracks of the media store.
+     *
+     * @return int The number of tracks, or -1 if can't be queried
+     */
+    private int queryTrackCount() {
+        Cursor c = this.mContentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{"count(*)"}, //$NON-NLS-1$
+                MediaStore.Audio.Media.IS_MUSIC + " = 1", null, null); //$NON-NLS-1$
+        if (c == null) {
+            return -1;
+        }
+        try {
+            return c.moveToFirst() ? c.getInt(0) : -1;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Method that removes from the index the tracks that aren't in the media store
+     * anymore. Only the identifiers are queried.
+     */
+    private void removeDeletedTracks() {
+        Cursor c = this.mContentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{BaseColumns._ID},
+                MediaStore.Audio.Media.IS_MUSIC + " = 1", null, null); //$NON-NLS-1$
+        if (c == null) {
+            return;
+        }
+        Set<Long> ids = new HashSet<Long>(c.getCount() * 2);
+        try {
+            while (c.moveToNext()) {
+                ids.add(Long.valueOf(c.getLong(0)));
+            }
+        } finally {
+            c.close();
+        }
+        Iterator<Long> it = new HashSet<Long>(this.mTracks.keySet()).iterator();
+        while (it.hasNext()) {
+            Long id = it.next();
+            if (!ids.contains(id)) {
+                removeTrack(id);
+            }
+        }
+    }
+
+    /**
+     * Method that adds a track to the index.
+     */
+    private void addTrack(Long id, long albumId, String data) {
+        int pos = data.lastIndexOf('/');
+        if (pos <= 0) {
+            return;
+        }
+        Track track = new Track();
+        track.mFolder = data.substring(0, pos);
+        track.mAlbumId = albumId;
+        this.mTracks.put(id, track);
+
+        Map<Long, int[]> albums = this.mFolders.get(track.mFolder);
+        if (albums == null) {
+            albums = new HashMap<Long, int[]>(2);
+            this.mFolders.put(track.mFolder, albums);
+        }
+        Long key = Long.valueOf(albumId);
+        int[] count = albums.get(key);
+        if (count == null) {
+            count = new int[1];
+            albums.put(key, count);
+        }
+        count[0]++;
+    }
+
+    /**
+     * Method that removes a track from the index.
+     */
+    private void removeTrack(Long id) {
+        Track track = this.mTracks.remove(id);
+        if (track == null) {
+            return;
+        }
+        Map<Long, int[]> albums = this.mFolders.get(track.mFolder);
+        if (albums == null) {
+            return;
+        }
+        Long key = Long.valueOf(track.mAlbumId);
+        int[] count = albums.get(key);
+        if (count != null && --count[0] <= 0) {
+            albums.remove(key);
+            if (albums.isEmpty()) {
+                this.mFolders.remove(track.mFolder);
+            }
+        }
+    }
+}
@@ -26,8 +26,6 @@ import android.provider.MediaStore.MediaColumns;
 import android.text.TextUtils;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * A helper class with useful methods to extract media data.
@@ -41,47 +39,6 @@ public final class MediaHelper {
     private static final String INTERNAL_VOLUME = "internal";
     private static final String EXTERNAL_VOLUME = "external";
 
-    /**
-     * URIs that are relevant for determining album art;
-     * useful for content observer registration
-     */
-    public static final Uri[] RELEVANT_URIS = new Uri[] {
-        MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-        MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI
-    };
-
-    /**
-     * Method that returns an array with all the unique albums paths and ids.
-     *
-     * @param cr The ContentResolver
-     * @return Map<String, Long> The albums map
-     */
-    public static Map<String, Long> getAllAlbums(ContentResolver cr) {
-        Map<String, Long> albums = new HashMap<String, Long>();
-        final String[] projection =
-                {
-                    "distinct " + MediaStore.Audio.Media.ALBUM_ID,
-                    "substr(" + MediaStore.Audio.Media.DATA + ", 0, length(" +
-                            MediaStore.Audio.Media.DATA + ") - length(" +
-                            MediaStore.Audio.Media.DISPLAY_NAME + "))"
-                };
-        final String where = MediaStore.Audio.Media.IS_MUSIC + " = ?";
-        Cursor c = cr.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                projection, where, new String[]{"1"}, null);
-        if (c != null) {
-            try {
-                while (c.moveToNext()) {
-                    long albumId = c.getLong(0);
-                    String albumPath = c.getString(1);
-                    albums.put(albumPath, albumId);
-                }
-            } finally {
-                c.close();
-            }
-        }
-        return albums;
-    }
-
     /**
      * Method that returns the album thumbnail path by its identifier.
      *
@@ -24,10 +24,15 @@ import com.cyanogenmod.filemanager.model.DiskUsage;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.MountPoint;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
 
 /**
  * A helper class with useful methods for deal with mount points.
@@ -47,8 +52,117 @@ public final class MountPointHelper {
 
     private static final long MAX_CACHED_TIME = 60000L * 5;
 
-    private static List<MountPoint> sMountPoints;
-    private static long sLastCachedTime;
+    // The file that is checked for changes of the mount points, and the min time
+    // between checks
+    private static final String MOUNTS_FILE = "/proc/mounts"; //$NON-NLS-1$
+    private static final long CHECK_INTERVAL = 1000L;
+
+    /**
+     * An immutable index of the mount points, that resolves the mount point of a path
+     * by its longest prefix of path components.
+     */
+    static final class MountPointIndex {
+        private static final class Node {
+            MountPoint mMountPoint;
+            Map<String, Node> mChildren;
+        }
+
+        private final Node mRoot = new Node();
+        /**
+         * @hide
+         */
+        final long mChecksum;
+        /**
+         * @hide
+         */
+        final long mTime;
+
+        /**
+         * Constructor of <code>MountPointIndex</code>.
+         *
+         * @param mps The mount points, in mount order (a later mount over the same
+         * folder hides the previous one)
+         * @param checksum The checksum of the mounts file when the mount points were
+         * retrieved, or -1 if it's unknown
+         * @param time The time when the mount points were retrieved
+         */
+        MountPointIndex(List<MountPoint> mps, long checksum, long time) {
+            super();
+            this.mChecksum = checksum;
+            this.mTime = time;
+            int cc = mps.size();
+            for (int i = 0; i < cc; i++) {
+                MountPoint mp = mps.get(i);
+                String path = mp.getMountPoint();
+                Node node = this.mRoot;
+                int start = 0;
+                int end;
+                while ((end = nextComponent(path, start)) != -1) {
+                    String name = path.substring(start, end);
+                    if (name.length() > 0) {
+                        if (node.mChildren == null) {
+                            node.mChildren = new HashMap<String, Node>();
+                        }
+                        Node child = node.mChildren.get(name);
+                        if (child == null) {
+                            child = new Node();
+                            node.mChildren.put(name, child);
+                        }
+                        node = child;
+                    }
+                    start = end + 1;
+                }
+                node.mMountPoint = mp;
+            }
+        }
+
+        /**
+         * Method that returns the mount point of a path.
+         *
+         * @param path The absolute path
+         * @return MountPoint The mount point of the path, or null if there is none
+         */
+        MountPoint find(String path) {
+            Node node = this.mRoot;
+            MountPoint mp = node.mMountPoint;
+            int start = 0;
+            int end;
+            while (node.mChildren != null && (end = nextComponent(path, start)) != -1) {
+                if (end > start) {
+                    node = node.mChildren.get(path.substring(start, end));
+                    if (node == null) {
+                        break;
+                    }
+                    if (node.mMountPoint != null) {
+                        mp = node.mMountPoint;
+                    }
+                }
+                start = end + 1;
+            }
+            return mp;
+        }
+
+        /**
+         * Method that returns the end of the path component that starts at a position.
+         *
+         * @param path The path
+         * @param start The start of the component
+         * @return int The end of the component (exclusive), or -1 if there are no more
+         */
+        private static int nextComponent(String path, int start) {
+            if (start > path.length()) {
+                return -1;
+            }
+            int end = path.indexOf('/', start);
+            return end == -1 ? path.length() : end;
+        }
+    }
+
+    // The current index (replaced, never modified) and the next time to check the mounts
+    private static volatile MountPointIndex sIndex;
+    private static volatile long sNextCheck;
+    private static final AtomicBoolean sChecking = new AtomicBoolean();
+    private static final Object sSync = new Object();
 
     /**
      * Constructor of <code>MountPointHelper</code>.
@@ -83,45 +197,39 @@ public final class MountPointHelper {
     }
 
     /**
-     * Method that retrieve the mount point information for a directory.
+     * Method that retrieve the mount point information for a directory.<br/>
+     * <br/>
+     * The lookup doesn't lock. The mount points are only retrieved again when the
+     * content of {@link #MOUNTS_FILE} changes (checked once per {@link #CHECK_INTERVAL}
+     * at most), or every {@link #MAX_CACHED_TIME} if the file can't be read.
      *
      * @param console The console in which realize the operation
      * @param dir The directory of which recovers his mount point information
      * @return MountPoint The mount point information
      */
-    public synchronized static MountPoint getMountPointFromDirectory(Console console, String dir) {
+    public static MountPoint getMountPointFromDirectory(Console console, String dir) {
         try {
-            // For non-rooted devices, which console is java and runs under a chrooted
-            // device, mount point info mustn't be a main objective. Caching the status
-            // should be enough and operation runs smoothly.
-            // Refresh mount points after some time (5 minutes should be enough)
+            MountPointIndex index = sIndex;
             long now = System.currentTimeMillis();
-            if (sMountPoints == null || (now - sLastCachedTime) > MAX_CACHED_TIME ||
-                FileManagerApplication.isDeviceRooted()) {
-                //Retrieve the mount points
-                List<MountPoint> mps =
-                        CommandHelper.getMountPoints(null, console);
-                sMountPoints = mps;
-                sLastCachedTime = now;
-            }
-
-            //Sort mount points in reverse order, needed for avoid
-            //found an incorrect mount point that matches the name
-            Collections.sort(sMountPoints, new Comparator<MountPoint>() {
-                @Override
-                public int compare(MountPoint lhs, MountPoint rhs) {
-                    return lhs.compareTo(rhs) * -1;
+            if (index == null) {
+                // The first lookup waits for the mount points
+                synchronized (sSync) {
+                    index = sIndex;
+                    if (index == null) {
+                        index = refresh(console, now, null);
+                    }
                 }
-            });
-
-            //Search for the mount point information
-            int cc = sMountPoints.size();
-            for (int i = 0; i < cc; i++) {
-                MountPoint mp = sMountPoints.get(i);
-                if (dir.startsWith(mp.getMountPoint())) {
-                    return mp;
+            } else if (now >= sNextCheck && sChecking.compareAndSet(false, true)) {
+                // Only one thread checks, the rest use the current index meanwhile
+                try {
+                    index = refresh(console, now, index);
+                } finally {
+                    sChecking.set(false);
                 }
             }
+            if (index != null) {
+                return index.find(dir);
+            }
 
         } catch (Exception e) {
             Log.e(TAG, "Failed to retrieve the mount point information", e); //$NON-NLS-1$
@@ -131,6 +239,69 @@ public final class MountPointHelper {
         return null;
     }
 
+    /**
+     * Method that forces a check of the mount points in the next lookup (for example,
+     * after a remount).
+     */
+    public static void invalidate() {
+        sNextCheck = 0;
+    }
+
+    /**
+     * Method that retrieves the mount points again if they changed.
+     *
+     * @param console The console in which realize the operation
+     * @param now The current time
+     * @param index The current index, or null if there is none
+     * @return MountPointIndex The index of the current mount points
+     * @throws Exception If the mount points can't be retrieved
+     */
+    private static MountPointIndex refresh(Console console, long now, MountPointIndex index)
+            throws Exception {
+        long checksum = getMountsChecksum();
+        sNextCheck = now + CHECK_INTERVAL;
+        if (index != null) {
+            boolean unchanged = (checksum != -1 && checksum == index.mChecksum)
+                    || (checksum == -1 && (now - index.mTime) <= MAX_CACHED_TIME);
+            if (unchanged) {
+                return index;
+            }
+        }
+
+        //Retrieve the mount points
+        List<MountPoint> mps = CommandHelper.getMountPoints(null, console);
+        MountPointIndex newIndex = new MountPointIndex(mps, checksum, now);
+        sIndex = newIndex;
+        return newIndex;
+    }
+
+    /**
+     * Method that returns the checksum of the content of {@link #MOUNTS_FILE}.
+     *
+     * @return long The checksum, or -1 if the file can't be read
+     */
+    private static long getMountsChecksum() {
+        InputStream is = null;
+        try {
+            is = new FileInputStream(MOUNTS_FILE);
+            CRC32 crc = new CRC32();
+            byte[] data = new byte[4096];
+            int read = 0;
+            while ((read = is.read(data, 0, data.length)) != -1) {
+                crc.update(data, 0, read);
+            }
+            return crc.getValue();
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            try {
+                if (is != null) {
+                    is.close();
+                }
+            } catch (Throwable e) {/**NON BLOCK**/}
+        }
+    }
+
     /**
      * Method that retrieve information about the disk usage of the mount point.
      *
@@ -149,18 +320,7 @@ public final class MountPointHelper {
      * @return DiskUsage The disk usage information
      */
     public static DiskUsage getMountPointDiskUsage(Console console, MountPoint mp) {
-        try {
-            //Retrieve the mount points
-            return CommandHelper.getDiskUsage(null, mp.getMountPoint(), console);
-
-        } catch (Exception e) {
-            Log.e(TAG,
-                    String.format("Fail to load disk usage of mount point: %s",  //$NON-NLS-1$
-                            mp.getMountPoint()), e);
-        }
-
-        //No mount point found
-        return null;
+        return DiskUsageCache.getInstance().getDiskUsage(console, mp);
     }
 
     /**
@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.model.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled {@link Query} that matches names against all its terms at once.<br/>
+ * <br/>
+ * Every term is a sequence of literal fragments separated by the <code>*</code> wildcard,
+ * and matches (case insensitive) the names that contain its fragments in order. The
+ * distinct fragments of all the terms are compiled in a single Aho-Corasick automaton
+ * (with a full transition table for ascii chars), so a name is matched against all the
+ * terms in one pass. For every term the match reports the same region that the regular
+ * expression of the term (a <code>.*</code> for every wildcard) would find: the leftmost
+ * match, extended by the wildcards as much as possible.<br/>
+ * <br/>
+ * A <code>QueryMatcher</code> is immutable and can be shared by several threads.
+ */
+public final class QueryMatcher {
+
+    private static final char WILDCARD = '*';
+
+    private static final int ASCII = 128;
+
+    /**
+     * The result of a match: the region of the name matched by every term.
+     */
+    public static final class MatchResult {
+        final int[] mStarts;
+        final int[] mEnds;
+
+        MatchResult(int terms) {
+            super();
+            this.mStarts = new int[terms];
+            this.mEnds = new int[terms];
+        }
+
+        /**
+         * Method that returns the number of terms of the query.
+         *
+         * @return int The number of terms
+         */
+        public int getTermCount() {
+            return this.mStarts.length;
+        }
+
+        /**
+         * Method that returns if a term matched.
+         *
+         * @param term The term
+         * @return boolean If the term matched
+         */
+        public boolean isMatched(int term) {
+            return this.mStarts[term] != -1;
+        }
+
+        /**
+         * Method that returns the first term that matched.
+         *
+         * @return int The term or -1 if no term matched
+         */
+        public int getFirstMatchedTerm() {
+            for (int i = 0; i < this.mStarts.length; i++) {
+                if (this.mStarts[i] != -1) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Method that returns the start of the region matched by a term.
+         *
+         * @param term The term
+         * @return int The start (inclusive) or -1 if the term didn't match
+         */
+        public int getStart(int term) {
+            return this.mStarts[term];
+        }
+
+        /**
+         * Method that returns the end of the region matched by a term.
+         *
+         * @param term The term
+         * @return int The end (exclusive) or -1 if the term didn't match
+         */
+        public int getEnd(int term) {
+            return this.mEnds[term];
+        }
+    }
+
+    /**
+     * A compiled term.
+     */
+    private static class Term {
+        Term() {
+            super();
+        }
+        int[] mFragments;       // Fragment ids
+        boolean mLeadingWildcard;
+        boolean mTrailingWildcard;
+    }
+
+    private final Term[] mTerms;
+    private final int[] mFragmentLengths;
+    // For every fragment, the (term << 16 | index) where it's used, in order
+    private final int[][] mFragmentUses;
+
+    // The automaton
+    private final int[] mAsciiDelta;        // state * ASCII + char -> state
+    private final char[][] mKeys;           // Non ascii transitions of every state
+    private final int[][] mTargets;
+    private final int[] mFail;
+    private final int[][] mOutputs;         // The fragments that end in every state
+
+    /**
+     * Constructor of <code>QueryMatcher</code>.
+     *
+     * @param terms The terms of the query
+     */
+    private QueryMatcher(List<String> terms) {
+        super();
+
+        // Split the terms and assign ids to the distinct fragments
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        List<String> fragments = new ArrayList<String>();
+        List<List<Integer>> uses = new ArrayList<List<Integer>>();
+        int cc = terms.size();
+        this.mTerms = new Term[cc];
+        for (int i = 0; i < cc; i++) {
+            String term = terms.get(i);
+            List<String> parts = splitTerm(term);
+            Term t = new Term();
+            t.mFragments = new int[parts.size()];
+            t.mLeadingWildcard = term.length() > 0 && term.charAt(0) == WILDCARD;
+            t.mTrailingWildcard =
+                    term.length() > 0 && term.charAt(term.length() - 1) == WILDCARD;
+            for (int j = 0; j < t.mFragments.length; j++) {
+                String fragment = fold(parts.get(j));
+                Integer id = ids.get(fragment);
+                if (id == null) {
+                    id = Integer.valueOf(fragments.size());
+                    ids.put(fragment, id);
+                    fragments.add(fragment);
+                    uses.add(new ArrayList<Integer>());
+                }
+                t.mFragments[j] = id.intValue();
+                uses.get(id.intValue()).add(Integer.valueOf((i << 16) | j));
+            }
+            this.mTerms[i] = t;
+        }
+        int fragmentCount = fragments.size();
+        this.mFragmentLengths = new int[fragmentCount];
+        this.mFragmentUses = new int[fragmentCount][];
+        for (int i = 0; i < fragmentCount; i++) {
+            this.mFragmentLengths[i] = fragments.get(i).length();
+            List<Integer> u = uses.get(i);
+            this.mFragmentUses[i] = new int[u.size()];
+            for (int j = 0; j < this.mFragmentUses[i].length; j++) {
+                this.mFragmentUses[i][j] = u.get(j).intValue();
+            }
+        }
+
+        // The trie
+        int maxStates = 1;
+        for (int i = 0; i < fragmentCount; i++) {
+            maxStates += fragments.get(i).length();
+        }
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>(maxStates);
+        List<List<Integer>> outputs = new ArrayList<List<Integer>>(maxStates);
+        trie.add(new HashMap<Character, Integer>());
+        outputs.add(new ArrayList<Integer>());
+        for (int i = 0; i < fragmentCount; i++) {
+            String fragment = fragments.get(i);
+            int state = 0;
+            for (int j = 0; j < fragment.length(); j++) {
+                Character ch = Character.valueOf(fragment.charAt(j));
+                Integer next = trie.get(state).get(ch);
+                if (next == null) {
+                    next = Integer.valueOf(trie.size());
+                    trie.get(state).put(ch, next);
+                    trie.add(new HashMap<Character, Integer>());
+                    outputs.add(new ArrayList<Integer>());
+                }
+                state = next.intValue();
+            }
+            outputs.get(state).add(Integer.valueOf(i));
+        }
+
+        // The failure links (breadth first) and the full ascii transitions
+        int states = trie.size();
+        this.mFail = new int[states];
+        this.mAsciiDelta = new int[states * ASCII];
+        this.mKeys = new char[states][];
+        this.mTargets = new int[states][];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int state = queue[head++];
+            Map<Character, Integer> edges = trie.get(state);
+            if (state != 0) {
+                // Inherit the outputs of the failure state
+                outputs.get(state).addAll(outputs.get(this.mFail[state]));
+            }
+            for (int c = 0; c < ASCII; c++) {
+                Integer next = edges.get(Character.valueOf((char)c));
+                if (next != null) {
+                    this.mAsciiDelta[state * ASCII + c] = next.intValue();
+                } else {
+                    this.mAsciiDelta[state * ASCII + c] =
+                            state == 0 ? 0 : this.mAsciiDelta[this.mFail[state] * ASCII + c];
+                }
+            }
+            List<Character> keys = new ArrayList<Character>();
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                char ch = edge.getKey().charValue();
+                int next = edge.getValue().intValue();
+                if (ch >= ASCII) {
+                    keys.add(edge.getKey());
+                }
+                this.mFail[next] = state == 0 ? 0 : step(this.mFail[state], ch);
+                queue[tail++] = next;
+            }
+            this.mKeys[state] = new char[keys.size()];
+            this.mTargets[state] = new int[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                this.mKeys[state][i] = keys.get(i).charValue();
+                this.mTargets[state][i] = edges.get(keys.get(i)).intValue();
+            }
+        }
+        this.mOutputs = new int[states][];
+        for (int i = 0; i < states; i++) {
+            List<Integer> out = outputs.get(i);
+            this.mOutputs[i] = new int[out.size()];
+            for (int j = 0; j < this.mOutputs[i].length; j++) {
+                this.mOutputs[i][j] = out.get(j).intValue();
+            }
+        }
+    }
+
+    /**
+     * Method that compiles a query.
+     *
+     * @param query The query
+     * @return QueryMatcher The compiled query
+     */
+    public static QueryMatcher compile(Query query) {
+        return new QueryMatcher(query.getQueries());
+    }
+
+    /**
+     * Method that returns a new result for the matches of this query.
+     *
+     * @return MatchResult The result
+     */
+    public MatchResult newResult() {
+        return new MatchResult(this.mTerms.length);
+    }
+
+    /**
+     * Method that returns if a name matches any of the terms.
+     *
+     * @param name The name
+     * @return boolean If the name matches
+     */
+    public boolean matches(CharSequence name) {
+        return match(name, newResult(), true);
+    }
+
+    /**
+     * Method that matches a name against all the terms.
+     *
+     * @param name The name
+     * @param result The result where return the region matched by every term
+     * @return boolean If the name matches any of the terms
+     */
+    public boolean match(CharSequence name, MatchResult result) {
+        return match(name, result, false);
+    }
+
+    /**
+     * Method that matches a name against the terms.
+     *
+     * @param name The name
+     * @param result The result where return the region matched by every term
+     * @param any Stop when any term matches
+     * @return boolean If the name matches any of the terms
+     */
+    private boolean match(CharSequence name, MatchResult result, boolean any) {
+        final int length = name.length();
+        final int terms = this.mTerms.length;
+        final int[] starts = result.mStarts;
+        final int[] ends = result.mEnds;
+
+        // Per term: the next fragment to place and where the placed ones end
+        int[] next = new int[terms];
+        int[] placedStart = new int[terms];
+        int[] placedEnd = new int[terms];
+        int pending = 0;
+        boolean matched = false;
+        for (int i = 0; i < terms; i++) {
+            Term t = this.mTerms[i];
+            starts[i] = -1;
+            ends[i] = -1;
+            if (t.mFragments.length == 0) {
+                // Only wildcards. Matches everything
+                starts[i] = 0;
+                ends[i] = length;
+                next[i] = 0;
+                matched = true;
+            } else {
+                next[i] = 0;
+                pending++;
+            }
+        }
+        if (matched && any) {
+            return true;
+        }
+
+        int state = 0;
+        for (int pos = 0; pos < length && pending > 0; pos++) {
+            char ch = fold(name.charAt(pos));
+            state = ch < ASCII ? this.mAsciiDelta[state * ASCII + ch] : step(state, ch);
+            int[] outputs = this.mOutputs[state];
+            for (int o = 0; o < outputs.length; o++) {
+                int fragment = outputs[o];
+                int end = pos + 1;
+                int start = end - this.mFragmentLengths[fragment];
+                int[] uses = this.mFragmentUses[fragment];
+                for (int u = 0; u < uses.length; u++) {
+                    int term = uses[u] >>> 16;
+                    int index = uses[u] & 0xffff;
+                    Term t = this.mTerms[term];
+                    int last = t.mFragments.length - 1;
+                    if (next[term] == index && start >= placedEnd[term]) {
+                        // Place the fragment as soon as possible
+                        if (index == 0) {
+                            placedStart[term] = t.mLeadingWildcard ? 0 : start;
+                        }
+                        next[term] = index + 1;
+                        if (index < last) {
+                            placedEnd[term] = end;
+                        } else {
+                            starts[term] = placedStart[term];
+                            ends[term] = t.mTrailingWildcard ? length : end;
+                            matched = true;
+                            if (any) {
+                                return true;
+                            }
+                            if (last == 0 && !t.mLeadingWildcard) {
+                                // Nothing can extend the match
+                                pending--;
+                            }
+                        }
+                    } else if (next[term] == last + 1 && index == last
+                            && start >= placedEnd[term] && !t.mTrailingWildcard
+                            && (last > 0 || t.mLeadingWildcard)) {
+                        // A wildcard before the last fragment extends the match
+                        ends[term] = end;
+                    }
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Method that follows a transition of the automaton.
+     *
+     * @param state The current state
+     * @param ch The folded char
+     * @return int The next state
+     */
+    private int step(int state, char ch) {
+        if (ch < ASCII) {
+            return this.mAsciiDelta[state * ASCII + ch];
+        }
+        int s = state;
+        while (true) {
+            char[] keys = this.mKeys[s];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == ch) {
+                    return this.mTargets[s][i];
+                }
+            }
+            if (s == 0) {
+                return 0;
+            }
+            s = this.mFail[s];
+        }
+    }
+
+    /**
+     * Method that splits a query term in its literal fragments (the text between
+     * wildcards). Empty fragments are discarded.
+     *
+     * @param term The query term
+     * @return List<String> The fragments of the term
+     */
+    public static List<String> splitTerm(String term) {
+        List<String> fragments = new ArrayList<String>();
+        int start = 0;
+        int cc = term.length();
+        for (int i = 0; i <= cc; i++) {
+            if (i == cc || term.charAt(i) == WILDCARD) {
+                if (i > start) {
+                    fragments.add(term.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return fragments;
+    }
+
+    /**
+     * Method that folds the case of a char.
+     *
+     * @param ch The char
+     * @return char The folded char
+     */
+    public static char fold(char ch) {
+        if (ch < ASCII) {
+            return ch >= 'A' && ch <= 'Z' ? (char)(ch + ('a' - 'A')) : ch;
+        }
+        return Character.toLowerCase(Character.toUpperCase(ch));
+    }
+
+    /**
+     * Method that folds the case of a string.
+     *
+     * @param s The string
+     * @return String The folded string
+     */
+    public static String fold(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "QueryMatcher [terms=" + this.mTerms.length //$NON-NLS-1$
+                + ", states=" + this.mFail.length //$NON-NLS-1$
+                + ", fragments=" + Arrays.toString(this.mFragmentLengths) //$NON-NLS-1$
+                + "]"; //$NON-NLS-1$
+    }
+}
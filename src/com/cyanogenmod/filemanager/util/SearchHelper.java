@@ -25,12 +25,16 @@ import android.text.style.StyleSpan;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.SearchResult;
+import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
+import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
+import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
+import com.cyanogenmod.filemanager.preferences.Preferences;
+import com.cyanogenmod.filemanager.preferences.SearchSortResultMode;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -117,32 +121,24 @@ public final class SearchHelper {
      * Method that returns the name string highlighted with the match query.
      *
      * @param result The result to highlight
-     * @param queries The list of queries that parameterized the search
+     * @param matcher The compiled query that parameterized the search
      * @param highlightedColor The highlight color
      * @return CharSequence The name string highlighted
      */
     public static CharSequence getHighlightedName(
-            SearchResult result, List<String> queries, int highlightedColor) {
+            SearchResult result, QueryMatcher matcher, int highlightedColor) {
         String name = result.getFso().getName();
-        int cc = queries.size();
-        for (int i = 0; i < cc; i++) {
-            //Get the query removing wildcards
-            String query =
-                    queries.get(i)
-                        .replace(".", "[.]") //$NON-NLS-1$//$NON-NLS-2$
-                        .replace("*", ".*"); //$NON-NLS-1$//$NON-NLS-2$
-            Pattern pattern = Pattern.compile(query, Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(name);
+        QueryMatcher.MatchResult match = matcher.newResult();
+        if (matcher.match(name, match)) {
+            //Highlight the match of the first term
+            int term = match.getFirstMatchedTerm();
             Spannable span =  new SpannableString(name);
-            if (matcher.find()) {
-                //Highlight the match
-                span.setSpan(
-                        new BackgroundColorSpan(highlightedColor),
-                        matcher.start(), matcher.end(), 0);
-                span.setSpan(
-                        new StyleSpan(Typeface.BOLD), matcher.start(), matcher.end(), 0);
-                return span;
-            }
+            span.setSpan(
+                    new BackgroundColorSpan(highlightedColor),
+                    match.getStart(term), match.getEnd(term), 0);
+            span.setSpan(
+                    new StyleSpan(Typeface.BOLD), match.getStart(term), match.getEnd(term), 0);
+            return span;
         }
 
         // Something is wrong!!!. Name should be matched by some of the queries
@@ -172,17 +168,60 @@ public final class SearchHelper {
      */
     public static List<SearchResult> convertToResults(List<FileSystemObject> files, Query queries) {
         //Converts the list of files in a list of search results
+        QueryMatcher matcher = QueryMatcher.compile(queries);
+        QueryMatcher.MatchResult match = matcher.newResult();
         List<SearchResult> results = new ArrayList<SearchResult>(files.size());
         int cc = files.size();
         for (int i = 0; i < cc; i++) {
             FileSystemObject fso = files.get(i);
-            double relevance = calculateRelevance(fso, queries);
+            double relevance = calculateRelevance(fso, matcher, match);
             SearchResult result = new SearchResult(relevance, fso);
             results.add(result);
         }
         return results;
     }
 
+    /**
+     * Method that returns the sort mode of the search results selected by the user.
+     *
+     * @return SearchSortResultMode The sort mode of the search results
+     */
+    public static SearchSortResultMode getSortResultMode() {
+        String defaultValue = ((ObjectStringIdentifier)FileManagerSettings.
+                SETTINGS_SORT_SEARCH_RESULTS_MODE.getDefaultValue()).getId();
+        String value = Preferences.getSharedPreferences().getString(
+                            FileManagerSettings.SETTINGS_SORT_SEARCH_RESULTS_MODE.getId(),
+                            defaultValue);
+        return SearchSortResultMode.fromId(value);
+    }
+
+    /**
+     * Method that returns the comparator of the search results for a sort mode.
+     *
+     * @param mode The sort mode of the search results
+     * @return Comparator<SearchResult> The comparator, or null if the results aren't sorted
+     */
+    public static Comparator<SearchResult> getResultComparator(SearchSortResultMode mode) {
+        if (mode.compareTo(SearchSortResultMode.NAME) == 0) {
+            return new Comparator<SearchResult>() {
+                @Override
+                public int compare(SearchResult lhs, SearchResult rhs) {
+                    return FileHelper.doCompare(
+                            lhs.getFso(), rhs.getFso(), NavigationSortMode.NAME_ASC);
+                }
+            };
+        }
+        if (mode.compareTo(SearchSortResultMode.RELEVANCE) == 0) {
+            return new Comparator<SearchResult>() {
+                @Override
+                public int compare(SearchResult lhs, SearchResult rhs) {
+                    return lhs.compareTo(rhs);
+                }
+            };
+        }
+        return null;
+    }
+
     /**
      * Method that calculates the relevance of a file system object for the terms
      * of a query.<br/>
@@ -211,23 +250,37 @@ public final class SearchHelper {
      * @return double A value from 1 to 10 where 10 has more relevance
      */
     public static double calculateRelevance(FileSystemObject fso, Query queries) {
+        QueryMatcher matcher = QueryMatcher.compile(queries);
+        return calculateRelevance(fso, matcher, matcher.newResult());
+    }
+
+    /**
+     * Method that calculates the relevance of a file system object for the terms
+     * of a compiled query (see {@link #calculateRelevance(FileSystemObject, Query)}).
+     * All the terms are matched in a single pass over the name.
+     *
+     * @param fso The file system object
+     * @param matcher The compiled query
+     * @param match A result to reuse
+     * @return double A value from 1 to 10 where 10 has more relevance
+     */
+    public static double calculateRelevance(
+            FileSystemObject fso, QueryMatcher matcher, QueryMatcher.MatchResult match) {
         double relevance = 1.0;  //Minimum relevance (is in the result so has some relevance)
-        List<String> terms = queries.getQueries();
         String name = fso.getName();
-        int cc = terms.size();
+        if (!matcher.match(name, match)) {
+            return relevance;
+        }
+        int cc = match.getTermCount();
         for (int i = 0; i < cc; i++) {
-            String query =
-                    terms.get(i)
-                        .replace(".", "[.]") //$NON-NLS-1$//$NON-NLS-2$
-                        .replace("*", ".*"); //$NON-NLS-1$//$NON-NLS-2$
-            Pattern pattern = Pattern.compile(query, Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(name);
-            if (matcher.find()) {
+            if (match.isMatched(i)) {
                 //By name
                 double byNameRelevance = 1.0;
-                if (matcher.group().length() == name.length()) {
+                int start = match.getStart(i);
+                int end = match.getEnd(i);
+                if (end - start == name.length()) {
                     byNameRelevance = 3.0;
-                } else if (name.startsWith(matcher.group()) || name.endsWith(matcher.group())) {
+                } else if (start == 0 || end == name.length()) {
                     byNameRelevance = 2.0;
                 }
 
@@ -235,7 +288,7 @@ public final class SearchHelper {
                 double byNameAccuracy = 1.0;
                 if (i == 0) {
                     byNameAccuracy = 3.0;
-                } else if (i != terms.size()) {
+                } else if (i != cc) {
                     byNameAccuracy = 2.0;
                 }
 
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.model.SearchResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class that collects the results of a search keeping in memory only the most relevant
+ * ones.<br/>
+ * <br/>
+ * The results are scored when they are added and kept in a min-heap of the relevances
+ * (a primitive array) and the file system objects, so the memory used is bounded by the
+ * capacity whatever the number of matches. All the matches are counted, and the results
+ * that don't fit in the heap (the new ones, or the ones evicted by a more relevant result)
+ * are written to a spill file, which can be read back in pages once the search has ended.
+ * <br/>
+ * Every batch reports the changes of the most relevant results (the results that entered
+ * and the ones that were evicted), so they can be drawn while the search is running.
+ */
+public class SearchResultCollector {
+
+    private static final String TAG = "SearchResultCollector"; //$NON-NLS-1$
+
+    // Reset the stream references every this number of spilled results (the stream
+    // keeps every written object otherwise)
+    private static final int SPILL_RESET = 256;
+
+    private final QueryMatcher mMatcher;
+    private final QueryMatcher.MatchResult mMatch;
+    private final double[] mScores;
+    private final FileSystemObject[] mFiles;
+    private int mSize;
+    private int mCount;
+
+    private final File mSpillFile;
+    private ObjectOutputStream mSpillOut;
+    private boolean mSpillClosed;
+    private ObjectInputStream mSpillIn;
+    private int mSpilled;
+    private int mRead;
+
+    /**
+     * Constructor of <code>SearchResultCollector</code>.
+     *
+     * @param query The query of the search
+     * @param capacity The max number of results kept in memory
+     * @param spillFile The file where write the results that don't fit in memory, or null
+     * to discard them
+     */
+    public SearchResultCollector(Query query, int capacity, File spillFile) {
+        super();
+        this.mMatcher = QueryMatcher.compile(query);
+        this.mMatch = this.mMatcher.newResult();
+        this.mScores = new double[Math.max(1, capacity)];
+        this.mFiles = new FileSystemObject[this.mScores.length];
+        this.mSpillFile = spillFile;
+    }
+
+    /**
+     * Method that adds new matches of the search.
+     *
+     * @param files The new matches
+     */
+    public void add(List<FileSystemObject> files) {
+        add(files, null, null);
+    }
+
+    /**
+     * Method that adds new matches of the search, and returns the changes of the most
+     * relevant results. The matches of the batch that were kept are returned as added
+     * (the ones added and evicted in the same batch aren't returned), and the results of
+     * the previous batches that were evicted are returned as evicted.
+     *
+     * @param files The new matches
+     * @param added Where return the matches of the batch that were kept (optional)
+     * @param evicted Where return the results of previous batches that were evicted
+     * (optional)
+     */
+    public synchronized void add(
+            List<FileSystemObject> files, List<SearchResult> added,
+            List<FileSystemObject> evicted) {
+        Map<FileSystemObject, Double> batch = null;
+        if (added != null) {
+            batch = new IdentityHashMap<FileSystemObject, Double>();
+        }
+        int cc = files.size();
+        for (int i = 0; i < cc; i++) {
+            FileSystemObject fso = files.get(i);
+            double score = SearchHelper.calculateRelevance(fso, this.mMatcher, this.mMatch);
+            this.mCount++;
+            if (this.mSize < this.mScores.length) {
+                this.mScores[this.mSize] = score;
+                this.mFiles[this.mSize] = fso;
+                siftUp(this.mSize);
+                this.mSize++;
+            } else if (score > this.mScores[0]) {
+                // Evict the least relevant
+                FileSystemObject old = this.mFiles[0];
+                spill(old, this.mScores[0]);
+                if ((batch == null || batch.remove(old) == null) && evicted != null) {
+                    evicted.add(old);
+                }
+                this.mScores[0] = score;
+                this.mFiles[0] = fso;
+                siftDown(0);
+            } else {
+                spill(fso, score);
+                continue;
+            }
+            if (batch != null) {
+                batch.put(fso, Double.valueOf(score));
+            }
+        }
+        if (batch != null) {
+            for (Map.Entry<FileSystemObject, Double> entry : batch.entrySet()) {
+                added.add(new SearchResult(entry.getValue().doubleValue(), entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Method that returns the number of matches added (including the spilled ones).
+     *
+     * @return int The number of matches
+     */
+    public synchronized int getCount() {
+        return this.mCount;
+    }
+
+    /**
+     * Method that returns the most relevant results, sorted by relevance.
+     *
+     * @return List<SearchResult> The most relevant results
+     */
+    public synchronized List<SearchResult> getTopResults() {
+        List<SearchResult> results = new ArrayList<SearchResult>(this.mSize);
+        for (int i = 0; i < this.mSize; i++) {
+            results.add(new SearchResult(this.mScores[i], this.mFiles[i]));
+        }
+        Collections.sort(results);
+        return results;
+    }
+
+    /**
+     * Method that ends the collection of results. After this, the spilled results
+     * can be read.
+     */
+    public synchronized void finish() {
+        closeSpillOut();
+    }
+
+    /**
+     * Method that returns if there are spilled results not read yet.
+     *
+     * @return boolean If there are spilled results not read yet
+     */
+    public synchronized boolean hasMoreSpilled() {
+        return this.mSpillOut == null && this.mRead < this.mSpilled;
+    }
+
+    /**
+     * Method that reads the next page of spilled results (in the order they were
+     * spilled). Must be called after {@link #finish()}.
+     *
+     * @param max The max number of results to read
+     * @return List<SearchResult> The results read
+     */
+    public synchronized List<SearchResult> readSpilled(int max) {
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        if (!hasMoreSpilled()) {
+            return results;
+        }
+        try {
+            if (this.mSpillIn == null) {
+                this.mSpillIn = new ObjectInputStream(
+                        new BufferedInputStream(new FileInputStream(this.mSpillFile)));
+            }
+            while (results.size() < max && this.mRead < this.mSpilled) {
+                results.add((SearchResult)this.mSpillIn.readObject());
+                this.mRead++;
+            }
+        } catch (EOFException ex) {
+            this.mRead = this.mSpilled;
+        } catch (Exception ex) {
+            Log.w(TAG, "Failed to read the spilled results", ex); //$NON-NLS-1$
+            this.mRead = this.mSpilled;
+        }
+        return results;
+    }
+
+    /**
+     * Method that releases the results and deletes the spill file.
+     */
+    public synchronized void dispose() {
+        closeSpillOut();
+        if (this.mSpillIn != null) {
+            try {
+                this.mSpillIn.close();
+            } catch (Throwable ex) {/**NON BLOCK**/}
+            this.mSpillIn = null;
+        }
+        if (this.mSpillFile != null) {
+            this.mSpillFile.delete();
+        }
+        for (int i = 0; i < this.mSize; i++) {
+            this.mFiles[i] = null;
+        }
+        this.mSize = 0;
+        this.mRead = this.mSpilled;
+    }
+
+    /**
+     * Method that writes a result to the spill file.
+     *
+     * @param fso The file system object
+     * @param score The relevance of the file system object
+     */
+    private void spill(FileSystemObject fso, double score) {
+        if (this.mSpillFile == null || this.mSpillClosed) {
+            return;
+        }
+        try {
+            if (this.mSpillOut == null) {
+                this.mSpillOut = new ObjectOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(this.mSpillFile)));
+            }
+            this.mSpillOut.writeObject(new SearchResult(score, fso));
+            this.mSpilled++;
+            if (this.mSpilled % SPILL_RESET == 0) {
+                this.mSpillOut.reset();
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to spill the result", ex); //$NON-NLS-1$
+            closeSpillOut();
+        }
+    }
+
+    /**
+     * Method that closes the spill file.
+     */
+    private void closeSpillOut() {
+        this.mSpillClosed = true;
+        if (this.mSpillOut != null) {
+            try {
+                this.mSpillOut.close();
+            } catch (Throwable ex) {/**NON BLOCK**/}
+            this.mSpillOut = null;
+        }
+    }
+
+    /**
+     * Method that moves up an item of the heap to its position.
+     *
+     * @param pos The position of the item
+     */
+    private void siftUp(int pos) {
+        int i = pos;
+        double score = this.mScores[i];
+        FileSystemObject fso = this.mFiles[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (this.mScores[parent] <= score) {
+                break;
+            }
+            this.mScores[i] = this.mScores[parent];
+            this.mFiles[i] = this.mFiles[parent];
+            i = parent;
+        }
+        this.mScores[i] = score;
+        this.mFiles[i] = fso;
+    }
+
+    /**
+     * Method that moves down an item of the heap to its position.
+     *
+     * @param pos The position of the item
+     */
+    private void siftDown(int pos) {
+        int i = pos;
+        double score = this.mScores[i];
+        FileSystemObject fso = this.mFiles[i];
+        int half = this.mSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < this.mSize && this.mScores[child + 1] < this.mScores[child]) {
+                child++;
+            }
+            if (score <= this.mScores[child]) {
+                break;
+            }
+            this.mScores[i] = this.mScores[child];
+            this.mFiles[i] = this.mFiles[child];
+            i = child;
+        }
+        this.mScores[i] = score;
+        this.mFiles[i] = fso;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.model.StorageAnalysis.Item;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A class that accumulates the analysis of the storage used by a folder.<br/>
+ * <br/>
+ * Every thread that walks the tree owns an {@link Accumulator}, so the files are added
+ * without contention, and the accumulators are merged when a {@link StorageAnalysis} is
+ * requested. The memory doesn't depend on the number of files: the largest files and
+ * folders are kept in min-heaps of a fixed size (a file smaller than the smallest one of a
+ * full heap is discarded without creating its path), and the number of extensions is
+ * capped (the rest are accounted as {@link #OTHER_EXTENSIONS}).
+ */
+public class StorageAnalyzer {
+
+    /**
+     * The default number of largest files and folders.
+     */
+    public static final int DEFAULT_TOP_SIZE = 50;
+
+    /**
+     * The extension of the files without an extension.
+     */
+    public static final String NO_EXTENSION = ""; //$NON-NLS-1$
+
+    /**
+     * The extension where the files are accounted when there are too many extensions.
+     */
+    public static final String OTHER_EXTENSIONS = "*"; //$NON-NLS-1$
+
+    // The max number of extensions of an accumulator
+    static final int MAX_EXTENSIONS = 256;
+
+    // The longest extension (longer ones are not extensions, but part of the name)
+    private static final int MAX_EXTENSION_LENGTH = 8;
+
+    /**
+     * Ascending sort (for the heaps)
+     * @hide
+     */
+    static final Comparator<Item> ASCENDING = new Comparator<Item>() {
+        @Override
+        public int compare(Item lhs, Item rhs) {
+            if (lhs.getSize() != rhs.getSize()) {
+                return lhs.getSize() < rhs.getSize() ? -1 : 1;
+            }
+            return rhs.getName().compareTo(lhs.getName());
+        }
+    };
+
+    // Descending sort (for the results)
+    private static final Comparator<Item> DESCENDING = Collections.reverseOrder(ASCENDING);
+
+    /**
+     * The accumulator of a thread. Only the owner adds to it, so its lock is only
+     * contended while the analysis is requested.
+     */
+    public final class Accumulator {
+        /**
+         * @hide
+         */
+        long mFiles;
+        /**
+         * @hide
+         */
+        long mFolders;
+        /**
+         * @hide
+         */
+        long mSize;
+        /**
+         * @hide
+         */
+        final long[] mHistogramCounts = new long[StorageAnalysis.HISTOGRAM_BUCKETS];
+        /**
+         * @hide
+         */
+        final long[] mHistogramSizes = new long[StorageAnalysis.HISTOGRAM_BUCKETS];
+        /**
+         * @hide
+         */
+        final Map<String, long[]> mExtensions = new HashMap<String, long[]>();
+        /**
+         * @hide
+         */
+        final PriorityQueue<Item> mLargestFiles;
+        /**
+         * @hide
+         */
+        final PriorityQueue<Item> mLargestFolders;
+
+        /**
+         * Constructor of <code>Accumulator</code>.
+         */
+        Accumulator() {
+            super();
+            int top = StorageAnalyzer.this.mTopSize;
+            this.mLargestFiles = new PriorityQueue<Item>(top + 1, ASCENDING);
+            this.mLargestFolders = new PriorityQueue<Item>(top + 1, ASCENDING);
+        }
+
+        /**
+         * Method that adds a file.
+         *
+         * @param parent The absolute path of the parent folder
+         * @param name The name of the file
+         * @param size The size of the file in bytes
+         */
+        public synchronized void addFile(String parent, String name, long size) {
+            this.mFiles++;
+            this.mSize += size;
+            int bucket = StorageAnalysis.getHistogramBucket(size);
+            this.mHistogramCounts[bucket]++;
+            this.mHistogramSizes[bucket] += size;
+
+            String ext = getExtension(name);
+            long[] usage = this.mExtensions.get(ext);
+            if (usage == null) {
+                if (this.mExtensions.size() >= MAX_EXTENSIONS) {
+                    ext = OTHER_EXTENSIONS;
+                    usage = this.mExtensions.get(ext);
+                }
+                if (usage == null) {
+                    usage = new long[2];
+                    this.mExtensions.put(ext, usage);
+                }
+            }
+            usage[0]++;
+            usage[1] += size;
+
+            if (isCandidate(this.mLargestFiles, size)) {
+                offer(this.mLargestFiles, new Item(new File(parent, name).getPath(), size, 1));
+            }
+        }
+
+        /**
+         * Method that adds a folder, once all its tree was walked.
+         *
+         * @param path The absolute path of the folder
+         * @param size The size of the tree of the folder in bytes
+         * @param files The number of files of the tree of the folder
+         */
+        public synchronized void addFolder(String path, long size, long files) {
+            this.mFolders++;
+            if (isCandidate(this.mLargestFolders, size)) {
+                offer(this.mLargestFolders, new Item(path, size, files));
+            }
+        }
+
+        /**
+         * Method that returns if a size is large enough to enter in a heap.
+         *
+         * @param heap The heap
+         * @param size The size
+         * @return boolean If the size could enter in the heap
+         */
+        private boolean isCandidate(PriorityQueue<Item> heap, long size) {
+            return heap.size() < StorageAnalyzer.this.mTopSize
+                    || size > heap.peek().getSize();
+        }
+
+        /**
+         * Method that adds an item to a heap, and removes the smallest one if the heap
+         * is full.
+         *
+         * @param heap The heap
+         * @param item The item
+         */
+        private void offer(PriorityQueue<Item> heap, Item item) {
+            heap.add(item);
+            if (heap.size() > StorageAnalyzer.this.mTopSize) {
+                heap.poll();
+            }
+        }
+    }
+
+    private final String mFolder;
+    /**
+     * @hide
+     */
+    final int mTopSize;
+    private final List<Accumulator> mAccumulators;
+
+    /**
+     * Constructor of <code>StorageAnalyzer</code>.
+     *
+     * @param folder The analyzed folder
+     * @param topSize The number of largest files and folders
+     */
+    public StorageAnalyzer(String folder, int topSize) {
+        super();
+        this.mFolder = folder;
+        this.mTopSize = topSize;
+        this.mAccumulators = new CopyOnWriteArrayList<Accumulator>();
+    }
+
+    /**
+     * Method that creates a new accumulator, for a thread that walks the tree.
+     *
+     * @return Accumulator The new accumulator
+     */
+    public Accumulator newAccumulator() {
+        Accumulator accumulator = new Accumulator();
+        this.mAccumulators.add(accumulator);
+        return accumulator;
+    }
+
+    /**
+     * Method that merges the accumulators in an analysis. The analysis is a new object,
+     * so it can be read while the accumulators continue.
+     *
+     * @return StorageAnalysis The analysis
+     */
+    public StorageAnalysis getAnalysis() {
+        long files = 0;
+        long folders = 0;
+        long size = 0;
+        long[] histogramCounts = new long[StorageAnalysis.HISTOGRAM_BUCKETS];
+        long[] histogramSizes = new long[StorageAnalysis.HISTOGRAM_BUCKETS];
+        Map<String, long[]> extensions = new HashMap<String, long[]>();
+        List<Item> largestFiles = new ArrayList<Item>();
+        List<Item> largestFolders = new ArrayList<Item>();
+        for (Accumulator accumulator : this.mAccumulators) {
+            synchronized (accumulator) {
+                files += accumulator.mFiles;
+                folders += accumulator.mFolders;
+                size += accumulator.mSize;
+                for (int i = 0; i < StorageAnalysis.HISTOGRAM_BUCKETS; i++) {
+                    histogramCounts[i] += accumulator.mHistogramCounts[i];
+                    histogramSizes[i] += accumulator.mHistogramSizes[i];
+                }
+                for (Map.Entry<String, long[]> e : accumulator.mExtensions.entrySet()) {
+                    long[] usage = extensions.get(e.getKey());
+                    if (usage == null) {
+                        usage = new long[2];
+                        extensions.put(e.getKey(), usage);
+                    }
+                    usage[0] += e.getValue()[0];
+                    usage[1] += e.getValue()[1];
+                }
+                largestFiles.addAll(accumulator.mLargestFiles);
+                largestFolders.addAll(accumulator.mLargestFolders);
+            }
+        }
+
+        List<Item> extensionItems = new ArrayList<Item>(extensions.size());
+        for (Map.Entry<String, long[]> e : extensions.entrySet()) {
+            extensionItems.add(new Item(e.getKey(), e.getValue()[1], e.getValue()[0]));
+        }
+        Collections.sort(extensionItems, DESCENDING);
+        return new StorageAnalysis(
+                this.mFolder, files, folders, size,
+                top(largestFiles), top(largestFolders), extensionItems,
+                histogramCounts, histogramSizes);
+    }
+
+    /**
+     * Method that sorts the items by size and returns the largest ones.
+     *
+     * @param items The items
+     * @return List<Item> The largest items, sorted by size
+     */
+    private List<Item> top(List<Item> items) {
+        Collections.sort(items, DESCENDING);
+        if (items.size() > this.mTopSize) {
+            return new ArrayList<Item>(items.subList(0, this.mTopSize));
+        }
+        return items;
+    }
+
+    /**
+     * Method that returns the extension of a file name, in lower case.
+     *
+     * @param name The name of the file
+     * @return String The extension, or {@link #NO_EXTENSION}
+     */
+    static String getExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1
+                || name.length() - dot - 1 > MAX_EXTENSION_LENGTH) {
+            return NO_EXTENSION;
+        }
+        return name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
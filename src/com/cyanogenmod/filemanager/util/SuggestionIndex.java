@@ -0,0 +1,917 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.Bookmark;
+import com.cyanogenmod.filemanager.preferences.Bookmarks;
+import com.cyanogenmod.filemanager.providers.RecentSearchesContentProvider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory prefix index of the recent search terms, the bookmarks, the navigation
+ * history and the frequently visited directories, used to suggest completions as the
+ * user types a search.<br/>
+ * <br/>
+ * Every entry is indexed by its case folded keys (the search term, or the name and the
+ * path of a directory) in a sorted array, so the entries of a prefix are a contiguous
+ * range found with a binary search. The entries recorded since the last rebuild are kept
+ * in a small pending list that is merged into the array when it grows, so recording an
+ * entry never sorts the whole index. The suggestions are ranked by the kind of the entry,
+ * its number of uses and the time since its last use.<br/>
+ * <br/>
+ * The index is persisted in a compact file (the values sorted and front coded) and the
+ * keys are rebuilt when it's loaded. The first time, the index is imported from the
+ * recent searches and the bookmarks providers. The index is loaded in background when
+ * it's created, and the changes recorded meanwhile are buffered and applied once loaded.
+ */
+public final class SuggestionIndex {
+
+    private static final String TAG = "SuggestionIndex"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    private static final String INDEX_FILE = "suggestions.index"; //$NON-NLS-1$
+    private static final String INDEX_TMP_FILE = "suggestions.index.tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x434d5349;
+    private static final int VERSION = 1;
+
+    // The max number of entries (the lowest ranked are evicted, except the bookmarks)
+    private static final int MAX_ENTRIES = 2000;
+    // The max number of pending keys before merge them into the sorted keys
+    private static final int MAX_PENDING_KEYS = 64;
+    // The half life of the rank of an entry since its last use
+    private static final double HALF_LIFE = 14 * 24 * 60 * 60 * 1000D;
+    // The delay before persist the changes, to coalesce them
+    private static final long SAVE_DELAY = 2000L;
+
+    /**
+     * The kind of a suggestion.
+     */
+    public enum KIND {
+        /**
+         * A recent search term.
+         */
+        SEARCH(3.0),
+        /**
+         * A bookmark.
+         */
+        BOOKMARK(4.0),
+        /**
+         * A directory of the navigation history.
+         */
+        HISTORY(1.5),
+        /**
+         * A visited directory.
+         */
+        DIRECTORY(1.0);
+
+        final double mWeight;
+
+        private KIND(double weight) {
+            this.mWeight = weight;
+        }
+    }
+
+    /**
+     * A suggestion of the index.
+     */
+    public static final class Suggestion {
+        final KIND mKind;
+        final String mValue;
+        int mUses;
+        long mLastUsed;
+        boolean mRemoved;
+
+        Suggestion(KIND kind, String value, int uses, long lastUsed) {
+            super();
+            this.mKind = kind;
+            this.mValue = value;
+            this.mUses = uses;
+            this.mLastUsed = lastUsed;
+        }
+
+        /**
+         * Method that returns the kind of the suggestion.
+         *
+         * @return KIND The kind of the suggestion
+         */
+        public KIND getKind() {
+            return this.mKind;
+        }
+
+        /**
+         * Method that returns the text to search (the term or the name of the directory).
+         *
+         * @return String The text to search
+         */
+        public String getText() {
+            if (this.mKind == KIND.SEARCH) {
+                return this.mValue;
+            }
+            String name = new File(this.mValue).getName();
+            return name.length() == 0 ? this.mValue : name;
+        }
+
+        /**
+         * Method that returns the absolute path of the directory.
+         *
+         * @return String The absolute path, or null if the suggestion is a search term
+         */
+        public String getPath() {
+            return this.mKind == KIND.SEARCH ? null : this.mValue;
+        }
+
+        /**
+         * Method that returns the rank of the suggestion, in logarithmic scale. The decay
+         * of the rank since the last use is relative to a fixed origin instead of the
+         * current time, so the rank doesn't change while the entry isn't used.
+         *
+         * @param now The current time (only used by the bookmarks, which don't decay)
+         * @return double The rank
+         */
+        double getRank(long now) {
+            double base = Math.log(this.mKind.mWeight * (1 + Math.log(Math.max(1, this.mUses))))
+                    / Math.log(2);
+            return base + (this.mKind == KIND.BOOKMARK ? now : this.mLastUsed) / HALF_LIFE;
+        }
+    }
+
+    private static SuggestionIndex sInstance;
+
+    private final Context mContext;
+    private final File mIndexFile;
+    private final File mTmpFile;
+
+    private final Map<String, Suggestion> mSuggestions;
+    private String[] mKeys;
+    private Suggestion[] mKeySuggestions;
+    private final List<String> mPendingKeys;
+    private final List<Suggestion> mPendingSuggestions;
+    private final List<Runnable> mBuffered;
+    private boolean mLoaded;
+    private boolean mLoading;
+    private boolean mSaving;
+    private boolean mSavePending;
+
+    /**
+     * Constructor of <code>SuggestionIndex</code>.
+     *
+     * @param context The current context (null for an index that isn't persisted)
+     */
+    SuggestionIndex(Context context) {
+        super();
+        this.mContext = context;
+        this.mIndexFile = context != null ? new File(context.getFilesDir(), INDEX_FILE) : null;
+        this.mTmpFile = context != null ? new File(context.getFilesDir(), INDEX_TMP_FILE) : null;
+        this.mSuggestions = new HashMap<String, Suggestion>();
+        this.mKeys = new String[0];
+        this.mKeySuggestions = new Suggestion[0];
+        this.mPendingKeys = new ArrayList<String>();
+        this.mPendingSuggestions = new ArrayList<Suggestion>();
+        this.mBuffered = new ArrayList<Runnable>();
+        this.mLoaded = context == null;
+    }
+
+    /**
+     * Method that returns the suggestion index of the process.
+     *
+     * @param context The current context
+     * @return SuggestionIndex The suggestion index
+     */
+    public static synchronized SuggestionIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SuggestionIndex(context.getApplicationContext());
+            sInstance.loadInBackground();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that records the use of a search term.
+     *
+     * @param term The search term
+     */
+    public void recordSearch(String term) {
+        record(KIND.SEARCH, term, System.currentTimeMillis());
+    }
+
+    /**
+     * Method that records a new bookmark.
+     *
+     * @param path The absolute path of the bookmark
+     */
+    public void recordBookmark(String path) {
+        record(KIND.BOOKMARK, path, System.currentTimeMillis());
+    }
+
+    /**
+     * Method that records a directory of the navigation history.
+     *
+     * @param path The absolute path of the directory
+     */
+    public void recordHistory(String path) {
+        record(KIND.HISTORY, path, System.currentTimeMillis());
+    }
+
+    /**
+     * Method that records the visit of a directory.
+     *
+     * @param path The absolute path of the directory
+     */
+    public void recordDirectory(String path) {
+        record(KIND.DIRECTORY, path, System.currentTimeMillis());
+    }
+
+    /**
+     * Method that removes an entry of the index (a deleted bookmark).
+     *
+     * @param kind The kind of the entry
+     * @param value The search term or the absolute path of the entry
+     */
+    public synchronized void remove(final KIND kind, final String value) {
+        if (bufferIfLoading(new Runnable() {
+            @Override
+            public void run() {
+                remove(kind, value);
+            }
+        })) {
+            return;
+        }
+        Suggestion s = this.mSuggestions.remove(getId(kind, value));
+        if (s != null) {
+            s.mRemoved = true;
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Method that removes all the entries of a kind (the recent searches are cleared).
+     *
+     * @param kind The kind of the entries
+     */
+    public synchronized void clear(final KIND kind) {
+        if (bufferIfLoading(new Runnable() {
+            @Override
+            public void run() {
+                clear(kind);
+            }
+        })) {
+            return;
+        }
+        boolean changed = false;
+        Iterator<Suggestion> it = this.mSuggestions.values().iterator();
+        while (it.hasNext()) {
+            Suggestion s = it.next();
+            if (s.mKind == kind) {
+                s.mRemoved = true;
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuild();
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Method that returns the best ranked suggestions that start with a prefix (the
+     * start of the value, or of the name of a directory). The same directory is only
+     * suggested once, with its best kind. While the index is loading, the UI thread gets
+     * no suggestions and other threads wait for the load.
+     *
+     * @param prefix The text typed by the user
+     * @param max The max number of suggestions
+     * @return List<Suggestion> The suggestions, best ranked first
+     */
+    public synchronized List<Suggestion> suggest(String prefix, int max) {
+        if (!this.mLoaded) {
+            loadInBackground();
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                return new ArrayList<Suggestion>();
+            }
+            while (!this.mLoaded) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    return new ArrayList<Suggestion>();
+                }
+            }
+        }
+        String key = prefix == null ? "" : QueryMatcher.fold(prefix.trim()); //$NON-NLS-1$
+
+        // The best ranked candidates of the sorted keys and of the pending keys
+        final long now = System.currentTimeMillis();
+        TopSuggestions top = new TopSuggestions(max);
+        int cc = this.mKeys.length;
+        for (int i = lowerBound(this.mKeys, key); i < cc; i++) {
+            if (!this.mKeys[i].startsWith(key)) {
+                break;
+            }
+            Suggestion s = this.mKeySuggestions[i];
+            if (!s.mRemoved) {
+                top.offer(s, s.getRank(now));
+            }
+        }
+        cc = this.mPendingKeys.size();
+        for (int i = 0; i < cc; i++) {
+            Suggestion s = this.mPendingSuggestions.get(i);
+            if (!s.mRemoved && this.mPendingKeys.get(i).startsWith(key)) {
+                top.offer(s, s.getRank(now));
+            }
+        }
+        return top.toList();
+    }
+
+    /**
+     * A bounded list of the best ranked suggestions, sorted by rank.
+     */
+    private static class TopSuggestions {
+        final Suggestion[] mSuggestions;
+        final double[] mRanks;
+        int mCount;
+
+        TopSuggestions(int max) {
+            super();
+            this.mSuggestions = new Suggestion[Math.max(0, max)];
+            this.mRanks = new double[this.mSuggestions.length];
+        }
+
+        void offer(Suggestion s, double rank) {
+            final int max = this.mSuggestions.length;
+            if (this.mCount == max && (max == 0 || rank <= this.mRanks[max - 1])) {
+                return;
+            }
+            // The same entry (other key) or the same directory (other kind) only once
+            for (int i = 0; i < this.mCount; i++) {
+                Suggestion other = this.mSuggestions[i];
+                if (other == s || (other.mKind != KIND.SEARCH && s.mKind != KIND.SEARCH
+                        && other.mValue.equals(s.mValue))) {
+                    if (this.mRanks[i] >= rank) {
+                        return;
+                    }
+                    System.arraycopy(this.mSuggestions, i + 1, this.mSuggestions, i,
+                            this.mCount - i - 1);
+                    System.arraycopy(this.mRanks, i + 1, this.mRanks, i, this.mCount - i - 1);
+                    this.mCount--;
+                    break;
+                }
+            }
+            int pos = this.mCount == max ? max - 1 : this.mCount;
+            while (pos > 0 && this.mRanks[pos - 1] < rank) {
+                this.mSuggestions[pos] = this.mSuggestions[pos - 1];
+                this.mRanks[pos] = this.mRanks[pos - 1];
+                pos--;
+            }
+            this.mSuggestions[pos] = s;
+            this.mRanks[pos] = rank;
+            if (this.mCount < max) {
+                this.mCount++;
+            }
+        }
+
+        List<Suggestion> toList() {
+            List<Suggestion> list = new ArrayList<Suggestion>(this.mCount);
+            for (int i = 0; i < this.mCount; i++) {
+                list.add(this.mSuggestions[i]);
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Method that records the use of an entry.
+     *
+     * @param kind The kind of the entry
+     * @param value The search term or the absolute path of the entry
+     * @param now The time of the use
+     */
+    synchronized void record(final KIND kind, final String value, final long now) {
+        if (value == null || value.trim().length() == 0) {
+            return;
+        }
+        if (bufferIfLoading(new Runnable() {
+            @Override
+            public void run() {
+                record(kind, value, now);
+            }
+        })) {
+            return;
+        }
+        String id = getId(kind, value);
+        Suggestion s = this.mSuggestions.get(id);
+        if (s != null) {
+            s.mUses++;
+            s.mLastUsed = now;
+        } else {
+            s = new Suggestion(kind, value, 1, now);
+            this.mSuggestions.put(id, s);
+            addPendingKeys(s);
+            if (this.mSuggestions.size() > MAX_ENTRIES) {
+                evict(now);
+            }
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Method that adds the keys of a new entry to the pending keys, and merges them
+     * into the sorted keys when there are too many.
+     *
+     * @param s The entry
+     */
+    private void addPendingKeys(Suggestion s) {
+        String[] keys = getKeys(s);
+        for (int i = 0; i < keys.length; i++) {
+            this.mPendingKeys.add(keys[i]);
+            this.mPendingSuggestions.add(s);
+        }
+        if (this.mPendingKeys.size() < MAX_PENDING_KEYS) {
+            return;
+        }
+
+        // Sort the pending keys and merge them with the sorted keys, dropping the
+        // removed entries
+        final int pending = this.mPendingKeys.size();
+        Integer[] order = new Integer[pending];
+        for (int i = 0; i < pending; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return SuggestionIndex.this.mPendingKeys.get(lhs.intValue()).compareTo(
+                        SuggestionIndex.this.mPendingKeys.get(rhs.intValue()));
+            }
+        });
+        int size = this.mKeys.length + pending;
+        String[] keys2 = new String[size];
+        Suggestion[] suggestions = new Suggestion[size];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < this.mKeys.length || j < pending) {
+            boolean old;
+            if (i == this.mKeys.length) {
+                old = false;
+            } else if (j == pending) {
+                old = true;
+            } else {
+                old = this.mKeys[i].compareTo(
+                        this.mPendingKeys.get(order[j].intValue())) <= 0;
+            }
+            String key;
+            Suggestion suggestion;
+            if (old) {
+                key = this.mKeys[i];
+                suggestion = this.mKeySuggestions[i];
+                i++;
+            } else {
+                key = this.mPendingKeys.get(order[j].intValue());
+                suggestion = this.mPendingSuggestions.get(order[j].intValue());
+                j++;
+            }
+            if (!suggestion.mRemoved) {
+                keys2[k] = key;
+                suggestions[k] = suggestion;
+                k++;
+            }
+        }
+        this.mKeys = Arrays.copyOf(keys2, k);
+        this.mKeySuggestions = Arrays.copyOf(suggestions, k);
+        this.mPendingKeys.clear();
+        this.mPendingSuggestions.clear();
+    }
+
+    /**
+     * Method that rebuilds the sorted keys from all the entries.
+     */
+    private void rebuild() {
+        List<String> keys = new ArrayList<String>();
+        final Map<String, List<Suggestion>> byKey = new HashMap<String, List<Suggestion>>();
+        for (Suggestion s : this.mSuggestions.values()) {
+            String[] k = getKeys(s);
+            for (int i = 0; i < k.length; i++) {
+                List<Suggestion> list = byKey.get(k[i]);
+                if (list == null) {
+                    list = new ArrayList<Suggestion>(1);
+                    byKey.put(k[i], list);
+                    keys.add(k[i]);
+                }
+                list.add(s);
+            }
+        }
+        Collections.sort(keys);
+        List<String> sortedKeys = new ArrayList<String>(keys.size());
+        List<Suggestion> sortedSuggestions = new ArrayList<Suggestion>(keys.size());
+        int cc = keys.size();
+        for (int i = 0; i < cc; i++) {
+            List<Suggestion> list = byKey.get(keys.get(i));
+            int cc2 = list.size();
+            for (int j = 0; j < cc2; j++) {
+                sortedKeys.add(keys.get(i));
+                sortedSuggestions.add(list.get(j));
+            }
+        }
+        this.mKeys = sortedKeys.toArray(new String[sortedKeys.size()]);
+        this.mKeySuggestions = sortedSuggestions.toArray(new Suggestion[sortedSuggestions.size()]);
+        this.mPendingKeys.clear();
+        this.mPendingSuggestions.clear();
+    }
+
+    /**
+     * Method that removes the lowest ranked entries (never the bookmarks) to make room
+     * for the new ones.
+     *
+     * @param now The current time
+     */
+    private void evict(final long now) {
+        List<Suggestion> candidates = new ArrayList<Suggestion>();
+        for (Suggestion s : this.mSuggestions.values()) {
+            if (s.mKind != KIND.BOOKMARK) {
+                candidates.add(s);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Suggestion>() {
+            @Override
+            public int compare(Suggestion lhs, Suggestion rhs) {
+                return Double.compare(lhs.getRank(now), rhs.getRank(now));
+            }
+        });
+        // Evict a tenth of the index at once, so the keys are rebuilt rarely
+        int count = Math.min(candidates.size(), MAX_ENTRIES / 10);
+        for (int i = 0; i < count; i++) {
+            Suggestion s = candidates.get(i);
+            s.mRemoved = true;
+            this.mSuggestions.remove(getId(s.mKind, s.mValue));
+        }
+        rebuild();
+    }
+
+    /**
+     * Method that buffers a change while the index is loading, to apply it once loaded.
+     *
+     * @param change The change
+     * @return boolean If the change was buffered (otherwise it must be applied now)
+     */
+    private boolean bufferIfLoading(Runnable change) {
+        if (this.mLoaded) {
+            return false;
+        }
+        this.mBuffered.add(change);
+        loadInBackground();
+        return true;
+    }
+
+    /**
+     * Method that loads the index in background, if it isn't loaded yet.
+     */
+    synchronized void loadInBackground() {
+        if (this.mLoaded || this.mLoading) {
+            return;
+        }
+        this.mLoading = true;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                load();
+            }
+        }, "SuggestionIndexLoad"); //$NON-NLS-1$
+        t.start();
+    }
+
+    /**
+     * Method that reads the index (or imports it from the providers) outside the lock,
+     * and then publishes it and applies the buffered changes.
+     */
+    void load() {
+        long start = System.currentTimeMillis();
+        Map<String, Suggestion> suggestions = new HashMap<String, Suggestion>();
+        boolean imported = false;
+        try {
+            if (this.mIndexFile.exists()) {
+                read(this.mIndexFile, suggestions);
+            } else {
+                importProviders(suggestions);
+                imported = true;
+            }
+        } catch (Exception ex) {
+            Log.w(TAG, "Discarding the suggestion index", ex); //$NON-NLS-1$
+            suggestions.clear();
+        }
+        synchronized (this) {
+            this.mSuggestions.putAll(suggestions);
+            rebuild();
+            this.mLoaded = true;
+            this.mLoading = false;
+            int cc = this.mBuffered.size();
+            for (int i = 0; i < cc; i++) {
+                this.mBuffered.get(i).run();
+            }
+            this.mBuffered.clear();
+            if (imported) {
+                scheduleSave();
+            }
+            notifyAll();
+        }
+        if (DEBUG) {
+            Log.v(TAG, String.format("Loaded %d suggestions in %d ms", //$NON-NLS-1$
+                    Integer.valueOf(suggestions.size()),
+                    Long.valueOf(System.currentTimeMillis() - start)));
+        }
+    }
+
+    /**
+     * Method that imports the recent searches and the bookmarks from its providers.
+     *
+     * @param suggestions The imported entries
+     */
+    private void importProviders(Map<String, Suggestion> suggestions) {
+        ContentResolver cr = this.mContext.getContentResolver();
+        long now = System.currentTimeMillis();
+        Cursor cursor = null;
+        try {
+            Uri uri = Uri.parse("content://" //$NON-NLS-1$
+                    + RecentSearchesContentProvider.AUTHORITY + "/suggestions"); //$NON-NLS-1$
+            cursor = cr.query(uri, new String[]{"query", "date"}, //$NON-NLS-1$ //$NON-NLS-2$
+                    null, null, null);
+            while (cursor != null && cursor.moveToNext()) {
+                String term = cursor.getString(0);
+                if (term != null && term.length() > 0) {
+                    String id = getId(KIND.SEARCH, term);
+                    if (!suggestions.containsKey(id)) {
+                        suggestions.put(id,
+                                new Suggestion(KIND.SEARCH, term, 1, cursor.getLong(1)));
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            Log.w(TAG, "Failed to import the recent searches", ex); //$NON-NLS-1$
+        } finally {
+            try {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            } catch (Exception e) {/**NON BLOCK**/}
+        }
+        cursor = null;
+        try {
+            cursor = Bookmarks.getAllBookmarks(cr);
+            while (cursor != null && cursor.moveToNext()) {
+                String path = cursor.getString(Bookmark.Columns.BOOKMARK_PATH_INDEX);
+                if (path != null && path.length() > 0) {
+                    suggestions.put(getId(KIND.BOOKMARK, path),
+                            new Suggestion(KIND.BOOKMARK, path, 1, now));
+                }
+            }
+        } catch (Exception ex) {
+            Log.w(TAG, "Failed to import the bookmarks", ex); //$NON-NLS-1$
+        } finally {
+            try {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            } catch (Exception e) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that persists the index in background. Concurrent requests are coalesced.
+     */
+    private void scheduleSave() {
+        if (this.mIndexFile == null) {
+            return;
+        }
+        if (this.mSaving) {
+            this.mSavePending = true;
+            return;
+        }
+        this.mSaving = true;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                while (true) {
+                    try {
+                        Thread.sleep(SAVE_DELAY);
+                    } catch (InterruptedException ex) {/**NON BLOCK**/}
+                    List<Suggestion> suggestions;
+                    synchronized (SuggestionIndex.this) {
+                        SuggestionIndex.this.mSavePending = false;
+                        suggestions = copySuggestions();
+                    }
+                    try {
+                        write(suggestions, SuggestionIndex.this.mTmpFile);
+                        if (!SuggestionIndex.this.mTmpFile.renameTo(
+                                SuggestionIndex.this.mIndexFile)) {
+                            throw new IOException(
+                                    "failed to rename the suggestion index"); //$NON-NLS-1$
+                        }
+                    } catch (Throwable ex) {
+                        Log.w(TAG, "Failed to save the suggestion index", ex); //$NON-NLS-1$
+                    }
+                    synchronized (SuggestionIndex.this) {
+                        if (!SuggestionIndex.this.mSavePending) {
+                            SuggestionIndex.this.mSaving = false;
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "SuggestionIndexSave"); //$NON-NLS-1$
+        t.start();
+    }
+
+    /**
+     * Method that returns a copy of the entries (their counters are mutable).
+     *
+     * @return List<Suggestion> The copy of the entries
+     */
+    List<Suggestion> copySuggestions() {
+        List<Suggestion> copy = new ArrayList<Suggestion>(this.mSuggestions.size());
+        for (Suggestion s : this.mSuggestions.values()) {
+            copy.add(new Suggestion(s.mKind, s.mValue, s.mUses, s.mLastUsed));
+        }
+        return copy;
+    }
+
+    /**
+     * Method that writes the entries to a file. The values are sorted and every value
+     * only stores the suffix not shared with the previous one.
+     *
+     * @param suggestions The entries
+     * @param file The destination file
+     * @throws IOException If the file couldn't be written
+     */
+    static void write(List<Suggestion> suggestions, File file) throws IOException {
+        Collections.sort(suggestions, new Comparator<Suggestion>() {
+            @Override
+            public int compare(Suggestion lhs, Suggestion rhs) {
+                return lhs.mValue.compareTo(rhs.mValue);
+            }
+        });
+        DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            int cc = suggestions.size();
+            dos.writeInt(cc);
+            String last = ""; //$NON-NLS-1$
+            for (int i = 0; i < cc; i++) {
+                Suggestion s = suggestions.get(i);
+                int shared = 0;
+                int max = Math.min(Math.min(last.length(), s.mValue.length()), 0xffff);
+                while (shared < max && last.charAt(shared) == s.mValue.charAt(shared)) {
+                    shared++;
+                }
+                dos.writeByte(s.mKind.ordinal());
+                dos.writeShort(shared);
+                dos.writeUTF(s.mValue.substring(shared));
+                dos.writeInt(s.mUses);
+                dos.writeLong(s.mLastUsed);
+                last = s.mValue;
+            }
+        } finally {
+            try {
+                dos.close();
+            } catch (Exception ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that reads the entries from a file, and builds its keys.
+     *
+     * @param file The index file
+     * @throws IOException If the file isn't a valid index
+     */
+    synchronized void read(File file) throws IOException {
+        read(file, this.mSuggestions);
+        rebuild();
+    }
+
+    /**
+     * Method that reads the entries from a file.
+     *
+     * @param file The index file
+     * @param suggestions The read entries
+     * @throws IOException If the file isn't a valid index
+     */
+    static void read(File file, Map<String, Suggestion> suggestions) throws IOException {
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                throw new IOException("invalid suggestion index"); //$NON-NLS-1$
+            }
+            KIND[] kinds = KIND.values();
+            int cc = dis.readInt();
+            String last = ""; //$NON-NLS-1$
+            for (int i = 0; i < cc; i++) {
+                KIND kind = kinds[dis.readByte()];
+                int shared = dis.readUnsignedShort();
+                String value = last.substring(0, shared) + dis.readUTF();
+                int uses = dis.readInt();
+                long lastUsed = dis.readLong();
+                suggestions.put(getId(kind, value),
+                        new Suggestion(kind, value, uses, lastUsed));
+                last = value;
+            }
+        } finally {
+            try {
+                dis.close();
+            } catch (Exception ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that returns the folded keys of an entry: the search term, or the name and
+     * the path of a directory.
+     *
+     * @param s The entry
+     * @return String[] The keys
+     */
+    private static String[] getKeys(Suggestion s) {
+        String value = QueryMatcher.fold(s.mValue);
+        if (s.mKind == KIND.SEARCH) {
+            // A term like "*.mp3" is suggested by ".mp3" too
+            int pos = 0;
+            while (pos < value.length() && value.charAt(pos) == '*') {
+                pos++;
+            }
+            if (pos > 0 && pos < value.length()) {
+                return new String[]{value, value.substring(pos)};
+            }
+            return new String[]{value};
+        }
+        String name = QueryMatcher.fold(s.getText());
+        if (name.equals(value)) {
+            return new String[]{value};
+        }
+        return new String[]{value, name};
+    }
+
+    /**
+     * Method that returns the identifier of an entry.
+     */
+    private static String getId(KIND kind, String value) {
+        return kind.ordinal() + value;
+    }
+
+    /**
+     * Method that returns the position of the first key not lower than a key.
+     */
+    private static int lowerBound(String[] keys, String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cyanogenmod.filemanager.util;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.console.ExecutionException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class that copies a directory tree with a bounded pool of workers.<br/>
+ * <br/>
+ * The directories are created first, in order (every parent before its children), and
+ * then the files are copied concurrently. The files smaller than a copy chunk are bound
+ * by the latency of open and close them, so they are handed out in batches to all the
+ * workers. The large files are bound by the throughput of the device, so they are
+ * streamed one after another by a single worker (interleaving several streams only
+ * fragments the writes), which helps with the small files when it runs out of them.<br/>
+ * <br/>
+ * A failed file doesn't stop the copy. The failures are reported per file in the
+ * {@link Result} of the copy.<br/>
+ * <br/>
+ * In a move, every file is verified and its source is deleted as soon as it's copied,
+ * and the source directories are deleted at the end if they are empty.
+ */
+public final class TreeCopier {
+
+    private static final String TAG = "TreeCopier"; //$NON-NLS-1$
+
+    /**
+     * The number of workers when the source and the destination are in the same device.
+     * The reads and the writes compete for the same device, so a second worker is only
+     * used for hide the latency of the small files.
+     */
+    public static final int SAME_DEVICE_WORKERS = 2;
+
+    /**
+     * The number of workers when the source and the destination are in different devices
+     * (the reads of one device overlap with the writes of the other).
+     */
+    public static final int CROSS_DEVICE_WORKERS = 4;
+
+    /**
+     * The files below this size are copied in the batch lane.
+     */
+    static final long SMALL_FILE_SIZE = FileHelper.COPY_CHUNK_SIZE;
+
+    /**
+     * The number of small files that a worker takes at once (the files of a batch are
+     * usually of the same directory).
+     */
+    static final int BATCH_SIZE = 16;
+
+    /**
+     * The result of a copy.
+     */
+    public static class Result {
+        private final int mCopiedFiles;
+        private final List<String> mFailedFiles;
+
+        /**
+         * Constructor of <code>Result</code>.
+         *
+         * @param copiedFiles The number of files copied
+         * @param failedFiles The absolute paths of the files that weren't copied
+         */
+        Result(int copiedFiles, List<String> failedFiles) {
+            super();
+            this.mCopiedFiles = copiedFiles;
+            this.mFailedFiles = failedFiles;
+        }
+
+        /**
+         * Method that returns if all the files were copied.
+         *
+         * @return boolean If all the files were copied
+         */
+        public boolean isSuccess() {
+            return this.mFailedFiles.isEmpty();
+        }
+
+        /**
+         * Method that returns the number of files copied.
+         *
+         * @return int The number of files copied
+         */
+        public int getCopiedFiles() {
+            return this.mCopiedFiles;
+        }
+
+        /**
+         * Method that returns the source files and directories that weren't copied.
+         *
+         * @return List<String> The absolute paths of the files that weren't copied
+         */
+        public List<String> getFailedFiles() {
+            return this.mFailedFiles;
+        }
+    }
+
+    /**
+     * A file to copy.
+     */
+    private static class Task {
+        Task(File src, File dst) {
+            super();
+            this.mSrc = src;
+            this.mDst = dst;
+        }
+        final File mSrc;
+        final File mDst;
+    }
+
+    private final int mBufferSize;
+    private final int mWorkers;
+    private final FileHelper.OnCopyProgressListener mListener;
+    private final boolean mMove;
+    private CopyJournal mJournal;
+
+    private final List<File> mDirs;
+
+    private final List<Task> mSmallFiles;
+    private final List<Task> mLargeFiles;
+    private final AtomicInteger mNextSmall;
+    private final AtomicInteger mNextLarge;
+    private final AtomicInteger mCopied;
+    private final List<String> mFailed;
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>TreeCopier</code>.
+     *
+     * @param bufferSize The buffer size for the copy of the files
+     * @param workers The number of workers
+     * @param listener The listener of the progress (optional). It's invoked from all
+     * the workers
+     */
+    public TreeCopier(
+            int bufferSize, int workers, FileHelper.OnCopyProgressListener listener) {
+        this(bufferSize, workers, listener, false);
+    }
+
+    /**
+     * Constructor of <code>TreeCopier</code>.
+     *
+     * @param bufferSize The buffer size for the copy of the files
+     * @param workers The number of workers
+     * @param listener The listener of the progress (optional). It's invoked from all
+     * the workers
+     * @param move If the source must be deleted after its copy
+     */
+    public TreeCopier(
+            int bufferSize, int workers, FileHelper.OnCopyProgressListener listener,
+            boolean move) {
+        super();
+        this.mBufferSize = bufferSize;
+        this.mWorkers = Math.max(1, workers);
+        this.mListener = listener;
+        this.mMove = move;
+        this.mDirs = new ArrayList<File>();
+        this.mSmallFiles = new ArrayList<Task>();
+        this.mLargeFiles = new ArrayList<Task>();
+        this.mNextSmall = new AtomicInteger();
+        this.mNextLarge = new AtomicInteger();
+        this.mCopied = new AtomicInteger();
+        this.mFailed = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    /**
+     * Method that sets the journal of the copy. The files copied by an interrupted copy
+     * aren't copied again.
+     *
+     * @param journal The journal of the copy (optional)
+     */
+    public void setJournal(CopyJournal journal) {
+        this.mJournal = journal;
+    }
+
+    /**
+     * Method that returns the number of workers for a copy, depending on whether the
+     * source and the destination are in the same device.
+     *
+     * @param src The source directory
+     * @param dst The destination directory
+     * @return int The number of workers
+     */
+    public static int getWorkers(File src, File dst) {
+        return FileHelper.isSameMountPoint(src, dst)
+                ? SAME_DEVICE_WORKERS
+                : CROSS_DEVICE_WORKERS;
+    }
+
+    /**
+     * Method that copies a directory tree. The calling thread takes part of the copy.
+     *
+     * @param src The source directory
+     * @param dst The destination directory
+     * @return Result The result of the copy
+     * @throws ExecutionException If the destination exists but isn't a directory
+     * @throws InterruptedException If the listener cancelled the copy
+     */
+    public Result copy(File src, File dst) throws ExecutionException, InterruptedException {
+        if (dst.exists() && !dst.isDirectory()) {
+            Log.e(TAG,
+                    String.format("Failed to check destionation dir: %s", dst)); //$NON-NLS-1$
+            throw new ExecutionException("the path exists but is not a folder"); //$NON-NLS-1$
+        }
+
+        // Create the directories and collect the files
+        plan(src, dst);
+
+        // Copy the files
+        Thread[] workers = new Thread[this.mWorkers - 1];
+        for (int i = 0; i < workers.length; i++) {
+            // The first worker is the streaming lane
+            final boolean streaming = i == 0;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(streaming);
+                }
+            }, TAG + "-" + (i + 1)); //$NON-NLS-1$
+            workers[i].start();
+        }
+        work(workers.length == 0);
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException ex) {/**NON BLOCK**/}
+        }
+
+        if (this.mCancelled) {
+            throw new InterruptedException();
+        }
+        if (this.mMove) {
+            // Delete the source directories, children first (the directories with files
+            // not moved aren't empty, and aren't deleted)
+            for (int i = this.mDirs.size() - 1; i >= 0; i--) {
+                this.mDirs.get(i).delete();
+            }
+        }
+        return new Result(this.mCopied.get(), new ArrayList<String>(this.mFailed));
+    }
+
+    /**
+     * Method that creates the destination directories, in order, and collects the files
+     * to copy in their lane.
+     *
+     * @param src The source directory
+     * @param dst The destination directory
+     */
+    private void plan(File src, File dst) {
+        if (!dst.exists() && !dst.mkdir()) {
+            Log.e(TAG, String.format("Failed to create directory: %s", dst)); //$NON-NLS-1$
+            this.mFailed.add(src.getAbsolutePath());
+            return;
+        }
+        this.mDirs.add(src);
+        File[] files = src.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (int i = 0; i < files.length; i++) {
+            File d = new File(dst, files[i].getName());
+            if (files[i].isDirectory()) {
+                if (d.exists() && !d.isDirectory()) {
+                    Log.e(TAG, String.format(
+                            "Failed to check destionation dir: %s", d)); //$NON-NLS-1$
+                    this.mFailed.add(files[i].getAbsolutePath());
+                    continue;
+                }
+                plan(files[i], d);
+            } else if (files[i].length() < SMALL_FILE_SIZE) {
+                this.mSmallFiles.add(new Task(files[i], d));
+            } else {
+                this.mLargeFiles.add(new Task(files[i], d));
+            }
+        }
+    }
+
+    /**
+     * The worker loop.
+     *
+     * @param streaming If the worker is the streaming lane (it copies the large files
+     * before help with the small ones)
+     */
+    void work(boolean streaming) {
+        if (streaming) {
+            int next;
+            while (!this.mCancelled
+                    && (next = this.mNextLarge.getAndIncrement()) < this.mLargeFiles.size()) {
+                copyFile(this.mLargeFiles.get(next));
+            }
+        }
+        int start;
+        while (!this.mCancelled
+                && (start = this.mNextSmall.getAndAdd(BATCH_SIZE)) < this.mSmallFiles.size()) {
+            int end = Math.min(start + BATCH_SIZE, this.mSmallFiles.size());
+            for (int i = start; i < end && !this.mCancelled; i++) {
+                copyFile(this.mSmallFiles.get(i));
+            }
+        }
+    }
+
+    /**
+     * Method that copies a file, recording the result.
+     *
+     * @param task The file to copy
+     */
+    private void copyFile(Task task) {
+        try {
+            if (!FileHelper.bufferedCopy(
+                    task.mSrc, task.mDst, this.mBufferSize, this.mListener, this.mJournal)) {
+                this.mFailed.add(task.mSrc.getAbsolutePath());
+                return;
+            }
+            if (this.mMove) {
+                // Never delete a source that wasn't completely copied
+                if (!FileHelper.verifyCopy(task.mSrc, task.mDst)) {
+                    task.mDst.delete();
+                    this.mFailed.add(task.mSrc.getAbsolutePath());
+                    return;
+                }
+                if (!task.mSrc.delete()) {
+                    Log.w(TAG, String.format(
+                            "Failed to delete moved file %s", task.mSrc)); //$NON-NLS-1$
+                }
+            }
+            this.mCopied.incrementAndGet();
+        } catch (InterruptedException ex) {
+            // The listener cancelled the copy. Stop all the workers
+            this.mCancelled = true;
+        } catch (Throwable ex) {
+            Log.e(TAG, String.format("Failed to copy %s", task.mSrc), ex); //$NON-NLS-1$
+            this.mFailed.add(task.mSrc.getAbsolutePath());
+        }
+    }
+}
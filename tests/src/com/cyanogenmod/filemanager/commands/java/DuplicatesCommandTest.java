@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.Duplicates;
+import com.cyanogenmod.filemanager.model.Duplicates.STAGE;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A class for testing the search of duplicate files.
+ *
+ * @see DuplicatesCommand
+ */
+public class DuplicatesCommandTest extends android.test.AndroidTestCase {
+
+    private File mRoot;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mRoot = new File(getContext().getCacheDir(), "duplicates"); //$NON-NLS-1$
+        delete(this.mRoot);
+        assertTrue("root not created", this.mRoot.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        delete(this.mRoot);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the map of sizes.
+     */
+    @SmallTest
+    public void testSizeCounts() {
+        DuplicatesCommand.SizeCounts counts = new DuplicatesCommand.SizeCounts();
+        for (long size = 1; size <= 10000; size++) {
+            counts.add(size * 4096, 1);
+        }
+        DuplicatesCommand.SizeCounts other = new DuplicatesCommand.SizeCounts();
+        other.add(4096, 2);
+        other.add(Long.MAX_VALUE, 1);
+        counts.addAll(other);
+        assertEquals(3, counts.get(4096));
+        assertEquals(1, counts.get(10000 * 4096L));
+        assertEquals(1, counts.get(Long.MAX_VALUE));
+        assertEquals(0, counts.get(4095));
+    }
+
+    /**
+     * Method that checks that only the files with the same content are grouped, even
+     * if their head and tail are the same.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testFindDuplicates() throws Exception {
+        Random random = new Random(1);
+        byte[] small = "duplicate".getBytes(); //$NON-NLS-1$
+        byte[] large = new byte[100000];
+        random.nextBytes(large);
+        byte[] middle = large.clone();
+        middle[large.length / 2]++;
+
+        File a = new File(this.mRoot, "a"); //$NON-NLS-1$
+        File b = new File(this.mRoot, "b"); //$NON-NLS-1$
+        createFile(a, "small1", small); //$NON-NLS-1$
+        createFile(b, "small2", small); //$NON-NLS-1$
+        createFile(b, "other", "different".getBytes()); //$NON-NLS-1$ //$NON-NLS-2$
+        createFile(a, "large1", large); //$NON-NLS-1$
+        createFile(b, "large2", large); //$NON-NLS-1$
+        createFile(b, "middle", middle); //$NON-NLS-1$
+        createFile(a, "empty1", new byte[0]); //$NON-NLS-1$
+        createFile(b, "empty2", new byte[0]); //$NON-NLS-1$
+
+        // The nested folder is only walked once
+        DuplicatesCommand cmd = new DuplicatesCommand(
+                new String[]{a.getAbsolutePath(), this.mRoot.getAbsolutePath()}, null, 2);
+        cmd.setBufferSize(1024);
+        cmd.execute();
+        Duplicates duplicates = cmd.getDuplicates();
+        assertEquals(STAGE.DONE, duplicates.getStage());
+        assertEquals(6, duplicates.getScannedFiles());
+        assertEquals(6, duplicates.getCandidateFiles());
+
+        // The groups are found in parallel, in any order
+        List<Duplicates.Group> groups = duplicates.getGroups();
+        assertEquals(2, groups.size());
+        Duplicates.Group group = groups.get(0).getSize() > groups.get(1).getSize()
+                ? groups.get(0)
+                : groups.get(1);
+        assertEquals(large.length, group.getSize());
+        assertEquals(2, group.getPaths().size());
+        assertEquals(new File(a, "large1").getAbsolutePath(), //$NON-NLS-1$
+                group.getPaths().get(0));
+        assertEquals(new File(b, "large2").getAbsolutePath(), //$NON-NLS-1$
+                group.getPaths().get(1));
+        assertEquals(large.length, group.getWastedSize());
+    }
+
+    /**
+     * Method that creates a file.
+     */
+    private static void createFile(File dir, String name, byte[] data) throws Exception {
+        dir.mkdirs();
+        FileOutputStream fos = new FileOutputStream(new File(dir, name));
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Method that deletes a tree.
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A class for benchmark the parallel walk of the java find command over synthetic trees.
+ *
+ * @see FindCommand
+ * @see DirectoryWalker
+ */
+public class FindCommandBenchmarkTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "FindCommandBenchmarkTest"; //$NON-NLS-1$
+
+    private static final String FIND_TERM = "match"; //$NON-NLS-1$
+
+    private static final int[] WORKERS = {1, 2, 4, 8};
+
+    private File mRoot;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mRoot = new File(getContext().getCacheDir(), "find-benchmark"); //$NON-NLS-1$
+        delete(this.mRoot);
+        assertTrue("root not created", this.mRoot.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        delete(this.mRoot);
+        super.tearDown();
+    }
+
+    /**
+     * Method that benchmarks a deep tree (a binary tree of 10 levels with a few files
+     * in every directory).
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testDeepTree() throws Exception {
+        int expected = createDeepTree(this.mRoot, 10, 4);
+        benchmark("deep", expected); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that benchmarks a wide tree (200 directories of 50 files under the root).
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testWideTree() throws Exception {
+        int expected = 0;
+        for (int i = 0; i < 200; i++) {
+            expected += createFiles(new File(this.mRoot, "dir" + i), 50); //$NON-NLS-1$
+        }
+        benchmark("wide", expected); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that runs the find with every number of workers and checks the results.
+     *
+     * @param name The name of the tree
+     * @param expected The expected number of results
+     * @throws Exception If test failed
+     */
+    private void benchmark(String name, int expected) throws Exception {
+        Query query = new Query().setSlot(FIND_TERM, 0);
+        for (int i = 0; i < WORKERS.length; i++) {
+            final int[] found = new int[1];
+            FindCommand cmd = new FindCommand(
+                    this.mRoot.getAbsolutePath(), query, new AsyncResultListener() {
+                        @Override
+                        public void onAsyncStart() {/**NON BLOCK**/}
+                        @Override
+                        public void onAsyncEnd(boolean cancelled) {/**NON BLOCK**/}
+                        @Override
+                        public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+                        @Override
+                        public void onException(Exception cause) {
+                            fail(String.valueOf(cause));
+                        }
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public void onPartialResult(Object results) {
+                            found[0] += ((List<FileSystemObject>)results).size();
+                        }
+                    }, WORKERS[i]);
+            long start = System.currentTimeMillis();
+            cmd.execute();
+            long elapsed = System.currentTimeMillis() - start;
+            Log.i(TAG, String.format("%s tree, %d workers: %d ms", //$NON-NLS-1$
+                    name, Integer.valueOf(WORKERS[i]), Long.valueOf(elapsed)));
+            assertEquals(String.format("%d workers", Integer.valueOf(WORKERS[i])), //$NON-NLS-1$
+                    expected, found[0]);
+        }
+    }
+
+    /**
+     * Method that creates a binary tree of directories.
+     *
+     * @return int The number of files that match the find term
+     */
+    private static int createDeepTree(File dir, int depth, int files) throws Exception {
+        int matches = createFiles(dir, files);
+        if (depth > 0) {
+            matches += createDeepTree(new File(dir, "a"), depth - 1, files); //$NON-NLS-1$
+            matches += createDeepTree(new File(dir, "b"), depth - 1, files); //$NON-NLS-1$
+        }
+        return matches;
+    }
+
+    /**
+     * Method that creates a directory with files (one of every five matches the find term).
+     *
+     * @return int The number of files that match the find term
+     */
+    private static int createFiles(File dir, int files) throws Exception {
+        assertTrue(String.format("%s not created", dir), dir.mkdirs()); //$NON-NLS-1$
+        int matches = 0;
+        for (int i = 0; i < files; i++) {
+            boolean match = i % 5 == 0;
+            String name = (match ? FIND_TERM : "file") + i + ".txt"; //$NON-NLS-1$ //$NON-NLS-2$
+            assertTrue(new File(dir, name).createNewFile());
+            if (match) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Method that deletes a tree.
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
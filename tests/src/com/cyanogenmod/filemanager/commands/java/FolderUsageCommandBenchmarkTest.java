@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.model.FolderUsage;
+import com.cyanogenmod.filemanager.util.FolderSizeCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * A class for benchmark the parallel walk of the java folder usage command over a
+ * synthetic tree.
+ *
+ * @see FolderUsageCommand
+ * @see DirectoryWalker
+ */
+public class FolderUsageCommandBenchmarkTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "FolderUsageCommandBenchmarkTest"; //$NON-NLS-1$
+
+    private static final int[] WORKERS = {1, 2, 4, 8};
+
+    private File mRoot;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mRoot = new File(getContext().getCacheDir(), "usage-benchmark"); //$NON-NLS-1$
+        delete(this.mRoot);
+        assertTrue("root not created", this.mRoot.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        delete(this.mRoot);
+        super.tearDown();
+    }
+
+    /**
+     * Method that computes the usage of a tree (100 directories of 50 files, and a
+     * subdirectory of 10 files in every directory) with every number of workers, and
+     * checks the totals. The first computation fills the folder size cache, so the next
+     * ones only list again the directories modified just before.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testUsage() throws Exception {
+        long size = 0;
+        for (int i = 0; i < 100; i++) {
+            File dir = new File(this.mRoot, "dir" + i); //$NON-NLS-1$
+            size += createFiles(dir, 50);
+            size += createFiles(new File(dir, "sub"), 10); //$NON-NLS-1$
+        }
+
+        for (int i = 0; i < WORKERS.length; i++) {
+            final int[] partials = new int[1];
+            FolderUsageCommand cmd = new FolderUsageCommand(
+                    this.mRoot.getAbsolutePath(), new AsyncResultListener() {
+                        @Override
+                        public void onAsyncStart() {/**NON BLOCK**/}
+                        @Override
+                        public void onAsyncEnd(boolean cancelled) {/**NON BLOCK**/}
+                        @Override
+                        public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+                        @Override
+                        public void onException(Exception cause) {
+                            fail(String.valueOf(cause));
+                        }
+                        @Override
+                        public void onPartialResult(Object results) {
+                            partials[0]++;
+                        }
+                    }, FolderSizeCache.getInstance(getContext()), WORKERS[i]);
+            long start = System.currentTimeMillis();
+            cmd.execute();
+            long elapsed = System.currentTimeMillis() - start;
+            Log.i(TAG, String.format("%d workers: %d ms, %d partial results", //$NON-NLS-1$
+                    Integer.valueOf(WORKERS[i]), Long.valueOf(elapsed),
+                    Integer.valueOf(partials[0])));
+
+            FolderUsage usage = cmd.getFolderUsage();
+            String msg = String.format("%d workers", Integer.valueOf(WORKERS[i])); //$NON-NLS-1$
+            assertEquals(msg, 200, usage.getNumberOfFolders());
+            assertEquals(msg, 6000, usage.getNumberOfFiles());
+            assertEquals(msg, size, usage.getTotalSize());
+            // Partial results are throttled by time, not sent per entry
+            assertTrue(msg, partials[0] < 1000);
+        }
+    }
+
+    /**
+     * Method that creates a directory with files of different sizes.
+     *
+     * @return long The size of the files
+     */
+    private static long createFiles(File dir, int files) throws Exception {
+        assertTrue(String.format("%s not created", dir), dir.mkdirs()); //$NON-NLS-1$
+        long size = 0;
+        for (int i = 0; i < files; i++) {
+            FileOutputStream fos = new FileOutputStream(
+                    new File(dir, "file" + i + ".txt")); //$NON-NLS-1$ //$NON-NLS-2$
+            try {
+                fos.write(new byte[i]);
+            } finally {
+                fos.close();
+            }
+            size += i;
+        }
+        return size;
+    }
+
+    /**
+     * Method that deletes a tree.
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.java.JavaConsole;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.ContentQuery;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for testing the search over the content of the files, in the shell console
+ * and in the java console.
+ *
+ * @see ContentSearchCommand
+ * @see com.cyanogenmod.filemanager.commands.java.ContentSearchCommand
+ */
+public class ContentSearchCommandTest extends AbstractConsoleTest {
+
+    private static final String TERM = "needle"; //$NON-NLS-1$
+
+    // A name that looks like the "path:line:" prefix of the grep output
+    private static final String TRICKY_NAME = "odd:12:name.txt"; //$NON-NLS-1$
+
+    /**
+     * @hide
+     */
+    final Object mSync = new Object();
+    /**
+     * @hide
+     */
+    boolean mNormalEnd;
+
+    private File mDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mDir = new File(getContext().getCacheDir(), "contentsearch-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mDir);
+        assertTrue("dir not created", this.mDir.mkdirs()); //$NON-NLS-1$
+        createFile("notes.txt", //$NON-NLS-1$
+                "first line\nthe Needle here\nlast line\n"); //$NON-NLS-1$
+        createFile(TRICKY_NAME, "needle\n"); //$NON-NLS-1$
+        createFile("other.txt", "nothing to see\n"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the search in the shell console (the <code>contentsearch</code>
+     * command and the parse of the <code>grep</code> output).
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testSearchContentsShell() throws Exception {
+        checkMatches(searchContents(getConsole()));
+    }
+
+    /**
+     * Method that checks the search in the java console.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testSearchContentsJava() throws Exception {
+        JavaConsole console = new JavaConsole(
+                getContext(), getContext().getResources().getInteger(R.integer.buffer_size));
+        console.alloc();
+        try {
+            checkMatches(searchContents(console));
+        } finally {
+            console.dealloc();
+        }
+    }
+
+    /**
+     * Method that searches the term in the test directory.
+     *
+     * @param console The console in which execute the search
+     * @return List<ContentMatch> The matches
+     * @throws Exception If test failed
+     */
+    private List<ContentMatch> searchContents(Console console) throws Exception {
+        this.mNormalEnd = false;
+        ContentQuery query = new ContentQuery().addTerm(TERM).setIgnoreCase(true);
+        final List<ContentMatch> matches = new ArrayList<ContentMatch>();
+        CommandHelper.searchContents(
+                getContext(), this.mDir.getAbsolutePath(), query, new AsyncResultListener() {
+                    @Override
+                    public void onAsyncStart() {/**NON BLOCK**/}
+                    @Override
+                    public void onAsyncEnd(boolean cancelled) {
+                        synchronized (ContentSearchCommandTest.this.mSync) {
+                            ContentSearchCommandTest.this.mNormalEnd = true;
+                            ContentSearchCommandTest.this.mSync.notify();
+                        }
+                    }
+                    @Override
+                    public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+                    @Override
+                    public void onException(Exception cause) {
+                        fail(String.valueOf(cause));
+                    }
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void onPartialResult(Object results) {
+                        synchronized (matches) {
+                            matches.addAll((List<ContentMatch>)results);
+                        }
+                    }
+               }, console);
+        synchronized (this.mSync) {
+            if (!this.mNormalEnd) {
+                this.mSync.wait(15000L);
+            }
+        }
+        assertTrue("search not ended", this.mNormalEnd); //$NON-NLS-1$
+        return matches;
+    }
+
+    /**
+     * Method that checks the matches of the term in the test files.
+     *
+     * @param matches The matches
+     */
+    private void checkMatches(List<ContentMatch> matches) {
+        assertEquals("matches returned", 2, matches.size()); //$NON-NLS-1$
+        ContentMatch notes = findMatch(matches, "notes.txt"); //$NON-NLS-1$
+        assertNotNull("notes.txt not found", notes); //$NON-NLS-1$
+        assertEquals(2, notes.getLine());
+        assertEquals(4, notes.getColumn());
+        assertEquals("the Needle here", notes.getText()); //$NON-NLS-1$
+        ContentMatch tricky = findMatch(matches, TRICKY_NAME);
+        assertNotNull(String.format("%s not found", TRICKY_NAME), tricky); //$NON-NLS-1$
+        assertEquals(1, tricky.getLine());
+        assertEquals(TERM, tricky.getText());
+    }
+
+    /**
+     * Method that returns the match of a file.
+     */
+    private ContentMatch findMatch(List<ContentMatch> matches, String name) {
+        String path = new File(this.mDir, name).getAbsolutePath();
+        for (int i = 0; i < matches.size(); i++) {
+            if (matches.get(i).getPath().compareTo(path) == 0) {
+                return matches.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that creates a test file.
+     */
+    private void createFile(String name, String content) throws Exception {
+        FileOutputStream fos = new FileOutputStream(new File(this.mDir, name));
+        try {
+            fos.write(content.getBytes());
+        } finally {
+            fos.close();
+        }
+    }
+}
@@ -39,6 +39,7 @@ public class FindCommandTest extends AbstractConsoleTest {
     private static final String FIND_PATH =
                 Environment.getRootDirectory().getAbsolutePath();
     private static final String FIND_TERM_PARTIAL = "build"; //$NON-NLS-1$
+    private static final String FIND_TERM_SPECIAL = "special"; //$NON-NLS-1$
 
     private static final File TEST_FILE =
             new File (Environment.getRootDirectory(),
@@ -127,4 +128,76 @@ public class FindCommandTest extends AbstractConsoleTest {
         assertTrue(String.format("test file %s not found", TEST_FILE), found); //$NON-NLS-1$
     }
 
+    /**
+     * Method that checks that names with spaces and new lines are reported once and
+     * with their full names.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testFindNamesWithSpacesAndNewLines() throws Exception {
+        final String[] names = {
+                FIND_TERM_SPECIAL + " with spaces.txt", //$NON-NLS-1$
+                FIND_TERM_SPECIAL + "\nwith\nnew lines.txt", //$NON-NLS-1$
+                "a " + FIND_TERM_SPECIAL + ".txt" //$NON-NLS-1$ //$NON-NLS-2$
+        };
+        File dir = new File(getContext().getCacheDir(), "find-test"); //$NON-NLS-1$
+        dir.mkdirs();
+        try {
+            for (int i = 0; i < names.length; i++) {
+                assertTrue(new File(dir, names[i]).createNewFile());
+            }
+
+            this.mNormalEnd = false;
+            Query query = new Query().setSlot(FIND_TERM_SPECIAL, 0);
+            final List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+            CommandHelper.findFiles(
+                    getContext(), dir.getAbsolutePath(), query, new AsyncResultListener() {
+                        @Override
+                        public void onAsyncStart() {/**NON BLOCK**/}
+                        @Override
+                        public void onAsyncEnd(boolean cancelled) {
+                            synchronized (FindCommandTest.this.mSync) {
+                                FindCommandTest.this.mNormalEnd = true;
+                                FindCommandTest.this.mSync.notify();
+                            }
+                        }
+                        @Override
+                        public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+                        @Override
+                        public void onException(Exception cause) {
+                            fail(String.valueOf(cause));
+                        }
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public void onPartialResult(Object results) {
+                            files.addAll((List<FileSystemObject>)results);
+                        }
+                   }, getConsole());
+            synchronized (FindCommandTest.this.mSync) {
+                if (!this.mNormalEnd) {
+                    FindCommandTest.this.mSync.wait(15000L);
+                }
+            }
+            assertTrue("find not ended", this.mNormalEnd); //$NON-NLS-1$
+            assertEquals("objects returned", names.length, files.size()); //$NON-NLS-1$
+            for (int i = 0; i < names.length; i++) {
+                boolean found = false;
+                for (int j = 0; j < files.size(); j++) {
+                    if (files.get(j).getName().compareTo(names[i]) == 0) {
+                        found = true;
+                    }
+                }
+                assertTrue(String.format("file %s not found", names[i]), found); //$NON-NLS-1$
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    files[i].delete();
+                }
+            }
+            dir.delete();
+        }
+    }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.FolderUsage;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A class for testing the parser of the <code>ls -alR</code> output of the folder usage
+ * command, against the previous parser (split and collapse the spaces of every line).
+ *
+ * @see FolderUsageCommand
+ */
+public class FolderUsageParserTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "FolderUsageParserTest"; //$NON-NLS-1$
+
+    private static final String[] NAMES = {
+        "notes.txt", "IMG_0001.jpg", //$NON-NLS-1$ //$NON-NLS-2$
+        "track.mp3", "backup.tar.gz", //$NON-NLS-1$ //$NON-NLS-2$
+        "My Document.pdf", "README", //$NON-NLS-1$ //$NON-NLS-2$
+        ".hidden", "archive.zip" //$NON-NLS-1$ //$NON-NLS-2$
+    };
+
+    private static final String DIR_LINE =
+            "drwxrwxr-x    2 root     sdcard_rw      4096 Dec 30  2012 sub"; //$NON-NLS-1$
+    private static final String LINK_LINE =
+            "lrwxrwxrwx    1 root     root            7 Dec 30 00:49 l -> t\n"; //$NON-NLS-1$
+
+    private static final int BENCHMARK_SIZE = 8 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MimeTypeHelper.loadMimeTypes(getContext());
+    }
+
+    /**
+     * Method that checks the usage of a known output.
+     */
+    @SmallTest
+    public void testParse() {
+        String out =
+                "/sdcard/test:\n" + //$NON-NLS-1$
+                "total 12\n" + //$NON-NLS-1$
+                "drwxrwxr-x   3 root   sdcard_rw   4096 Dec 30 00:49 .\n" + //$NON-NLS-1$
+                "drwxrwxr-x   12 root   sdcard_rw   4096 Dec 30 00:49 ..\n" + //$NON-NLS-1$
+                "drwxrwxr-x   2 root   sdcard_rw   4096 Dec 30  2012 sub\n" + //$NON-NLS-1$
+                "-rw-rw-r--   1 root   sdcard_rw   100 Dec 30 00:49 a.txt\n" + //$NON-NLS-1$
+                "-rw-rw-r--   1 root   sdcard_rw   20 Dec 30 00:49 b c.txt\n" + //$NON-NLS-1$
+                "lrwxrwxrwx   1 root   root   7 Dec 30 00:49 l -> a.txt\n" + //$NON-NLS-1$
+                "crw-rw-rw-   1 root   root   1,   3 Dec 30 00:49 null\n" + //$NON-NLS-1$
+                "\n" + //$NON-NLS-1$
+                "/sdcard/test/sub:\n" + //$NON-NLS-1$
+                "-rw-rw-r--   1 root   sdcard_rw   3 Dec 30 00:49 .nomedia\n"; //$NON-NLS-1$
+        FolderUsage usage = new FolderUsage("/sdcard/test"); //$NON-NLS-1$
+        FolderUsageCommand.parse(out, usage);
+        assertEquals(1, usage.getNumberOfFolders());
+        assertEquals(5, usage.getNumberOfFiles());
+        assertEquals(123L, usage.getTotalSize());
+        assertEquals(1L, usage.getStatisticsForCategory(MimeTypeCategory.SYSTEM));
+        assertEquals(2L, usage.getStatisticsForCategory(
+                MimeTypeHelper.getCategoryFromExt(null, "txt"))); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that benchmarks the parser against the previous one with a multi-megabyte
+     * output, delivered in chunks of complete lines.
+     */
+    @LargeTest
+    public void testBenchmark() throws Exception {
+        String out = createOutput(new Random(1), BENCHMARK_SIZE);
+        List<String> chunks = new ArrayList<String>();
+        int pos = 0;
+        while (pos < out.length()) {
+            int end = Math.min(out.length(), pos + CHUNK_SIZE);
+            end = out.lastIndexOf('\n', end - 1) + 1;
+            chunks.add(out.substring(pos, end));
+            pos = end;
+        }
+
+        FolderUsage expected = new FolderUsage(""); //$NON-NLS-1$
+        long start = System.currentTimeMillis();
+        for (String chunk : chunks) {
+            parseLegacy(chunk, expected);
+        }
+        long legacy = System.currentTimeMillis() - start;
+
+        FolderUsage usage = new FolderUsage(""); //$NON-NLS-1$
+        start = System.currentTimeMillis();
+        for (String chunk : chunks) {
+            FolderUsageCommand.parse(chunk, usage);
+        }
+        long parser = System.currentTimeMillis() - start;
+
+        double mb = out.length() / (1024D * 1024D);
+        Log.i(TAG, String.format(
+                "%.1f MB: legacy %d ms (%.1f MB/s), parser %d ms (%.1f MB/s)", //$NON-NLS-1$
+                Double.valueOf(mb), Long.valueOf(legacy), Double.valueOf(mb * 1000 / legacy),
+                Long.valueOf(parser), Double.valueOf(mb * 1000 / Math.max(1, parser))));
+
+        assertEquals(expected.getNumberOfFolders(), usage.getNumberOfFolders());
+        assertEquals(expected.getNumberOfFiles(), usage.getNumberOfFiles());
+        assertEquals(expected.getTotalSize(), usage.getTotalSize());
+        MimeTypeCategory[] categories = MimeTypeCategory.values();
+        for (int i = 0; i < categories.length; i++) {
+            assertEquals(categories[i].name(),
+                    expected.getStatisticsForCategory(categories[i]),
+                    usage.getStatisticsForCategory(categories[i]));
+        }
+    }
+
+    /**
+     * Method that creates a random <code>ls -alR</code> output.
+     */
+    private static String createOutput(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 4096);
+        while (sb.length() < size) {
+            sb.append("/sdcard/dir").append(random.nextInt(100000)).append(":\n"); //$NON-NLS-1$
+            sb.append("total ").append(random.nextInt(5000)).append('\n'); //$NON-NLS-1$
+            sb.append("drwxrwxr-x   2 root   sdcard_rw   4096 Dec 30 00:49 .\n"); //$NON-NLS-1$
+            sb.append("drwxrwxr-x   12 root   sdcard_rw   4096 Dec 30 00:49 ..\n"); //$NON-NLS-1$
+            for (int i = 0; i < 40; i++) {
+                switch (random.nextInt(20)) {
+                    case 0:
+                        sb.append(DIR_LINE);
+                        sb.append(i).append('\n');
+                        break;
+                    case 1:
+                        sb.append(LINK_LINE);
+                        break;
+                    default:
+                        sb.append("-rw-rw-r--   1 root   sdcard_rw "); //$NON-NLS-1$
+                        sb.append(random.nextInt(10000000));
+                        sb.append(" Dec 30 00:49 "); //$NON-NLS-1$
+                        sb.append(NAMES[i % NAMES.length]).append('\n');
+                        break;
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The previous parser of the command, as reference.
+     */
+    private static void parseLegacy(String partialIn, FolderUsage usage) throws Exception {
+        BufferedReader br = new BufferedReader(new StringReader(partialIn));
+        List<String> lines = new ArrayList<String>();
+        String line = null;
+        while ((line = br.readLine()) != null) {
+            if (line.length() == 0 ||
+                line.startsWith(FileHelper.ROOT_DIRECTORY) ||
+                line.startsWith(FileHelper.CURRENT_DIRECTORY) ||
+                line.startsWith(FileHelper.PARENT_DIRECTORY)) {
+                continue;
+            }
+            lines.add(line);
+        }
+        while (lines.size() > 0) {
+            String szLine = lines.remove(0).trim();
+            while (szLine.indexOf("  ") != -1) { //$NON-NLS-1$
+                szLine = szLine.replaceAll("  ", " "); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (szLine.length() == 0 ||
+                szLine.endsWith(" " + FileHelper.CURRENT_DIRECTORY) || //$NON-NLS-1$
+                szLine.endsWith(" " + FileHelper.PARENT_DIRECTORY)) { //$NON-NLS-1$
+                continue;
+            }
+            char type = szLine.charAt(0);
+            if (type == 'l' || type == 'b' || type == 'c' || type == 's' || type == 'p') {
+                usage.addFile();
+                usage.addFileToCategory(
+                        type == 'l' ? MimeTypeCategory.NONE : MimeTypeCategory.SYSTEM);
+            } else if (type == 'd') {
+                usage.addFolder();
+            } else {
+                try {
+                    String[] fields = szLine.split(" "); //$NON-NLS-1$
+                    if (fields.length < 8) {
+                        continue;
+                    }
+                    long size = Long.parseLong(fields[4]);
+                    String ext = FileHelper.getExtension(fields[fields.length - 1]);
+                    usage.addFile();
+                    usage.addFileToCategory(MimeTypeHelper.getCategoryFromExt(null, ext));
+                    usage.addSize(size);
+                } catch (Exception e) {/**NON BLOCK**/}
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.model.StorageAnalysis.Item;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer;
+
+import java.util.List;
+
+/**
+ * A class for testing the analysis of the storage from the <code>ls -alR</code> output.
+ *
+ * @see StorageAnalysisCommand
+ * @see StorageAnalyzer
+ */
+public class StorageAnalysisParserTest extends android.test.AndroidTestCase {
+
+    private static final String OUT =
+            "/sdcard/test:\n" + //$NON-NLS-1$
+            "drwxrwxr-x   4 root   sdcard_rw   4096 Dec 30 00:49 .\n" + //$NON-NLS-1$
+            "drwxrwxr-x   12 root   sdcard_rw   4096 Dec 30 00:49 ..\n" + //$NON-NLS-1$
+            "drwxrwxr-x   3 root   sdcard_rw   4096 Dec 30  2012 a\n" + //$NON-NLS-1$
+            "drwxrwxr-x   2 root   sdcard_rw   4096 Dec 30  2012 b\n" + //$NON-NLS-1$
+            "-rw-rw-r--   1 root   sdcard_rw   100 Dec 30 00:49 top.txt\n" + //$NON-NLS-1$
+            "lrwxrwxrwx   1 root   root          7 Dec 30 00:49 l -> t\n" + //$NON-NLS-1$
+            "\n" + //$NON-NLS-1$
+            "/sdcard/test/a:\n" + //$NON-NLS-1$
+            "-rw-rw-r--   1 root   sdcard_rw   5000 Dec 30 00:49 My Song.MP3\n" + //$NON-NLS-1$
+            "drwxrwxr-x   2 root   sdcard_rw   4096 Dec 30  2012 c\n" + //$NON-NLS-1$
+            "\n" + //$NON-NLS-1$
+            "/sdcard/test/a/c:\n" + //$NON-NLS-1$
+            "-rw-rw-r--   1 root   sdcard_rw   2000000 Dec 30 00:49 movie.mp4\n" + //$NON-NLS-1$
+            "-rw-rw-r--   1 root   sdcard_rw   0 Dec 30 00:49 README\n" + //$NON-NLS-1$
+            "\n" + //$NON-NLS-1$
+            "/sdcard/test/b:\n" + //$NON-NLS-1$
+            "-rw-rw-r--   1 root   sdcard_rw   300 Dec 30 00:49 song.mp3\n"; //$NON-NLS-1$
+
+    /**
+     * Method that checks the analysis of a known output, received in chunks.
+     */
+    @SmallTest
+    public void testParse() {
+        StorageAnalyzer analyzer = new StorageAnalyzer("/sdcard/test", 10); //$NON-NLS-1$
+        StorageAnalysisCommand.Parser parser =
+                new StorageAnalysisCommand.Parser(analyzer.newAccumulator());
+        int split = OUT.indexOf("/sdcard/test/a/c:"); //$NON-NLS-1$
+        parser.parse(OUT.substring(0, split));
+        parser.parse(OUT.substring(split));
+        parser.finish();
+        StorageAnalysis analysis = analyzer.getAnalysis();
+
+        assertEquals(5, analysis.getNumberOfFiles());
+        assertEquals(3, analysis.getNumberOfFolders());
+        assertEquals(2005400, analysis.getTotalSize());
+
+        // The size of a folder includes its subfolders
+        List<Item> folders = analysis.getLargestFolders();
+        assertEquals(3, folders.size());
+        assertEquals("/sdcard/test/a", folders.get(0).getName()); //$NON-NLS-1$
+        assertEquals(2005000, folders.get(0).getSize());
+        assertEquals(3, folders.get(0).getCount());
+        assertEquals("/sdcard/test/a/c", folders.get(1).getName()); //$NON-NLS-1$
+        assertEquals(2000000, folders.get(1).getSize());
+        assertEquals("/sdcard/test/b", folders.get(2).getName()); //$NON-NLS-1$
+        assertEquals(300, folders.get(2).getSize());
+
+        // The names can contain spaces
+        List<Item> files = analysis.getLargestFiles();
+        assertEquals(5, files.size());
+        assertEquals("/sdcard/test/a/c/movie.mp4", files.get(0).getName()); //$NON-NLS-1$
+        assertEquals("/sdcard/test/a/My Song.MP3", files.get(1).getName()); //$NON-NLS-1$
+
+        // The extensions are case insensitive
+        List<Item> extensions = analysis.getExtensions();
+        assertEquals("mp4", extensions.get(0).getName()); //$NON-NLS-1$
+        assertEquals("mp3", extensions.get(1).getName()); //$NON-NLS-1$
+        assertEquals(5300, extensions.get(1).getSize());
+        assertEquals(2, extensions.get(1).getCount());
+
+        // 0, 100 and 300 bytes / 5000 bytes / 2000000 bytes
+        assertEquals(3, analysis.getHistogramCount(0));
+        assertEquals(1, analysis.getHistogramCount(
+                StorageAnalysis.getHistogramBucket(5000)));
+        assertEquals(4096, StorageAnalysis.getHistogramLowerBound(
+                StorageAnalysis.getHistogramBucket(5000)));
+        assertEquals(1, analysis.getHistogramCount(
+                StorageAnalysis.getHistogramBucket(2000000)));
+    }
+
+    /**
+     * Method that checks that only the largest files are kept.
+     */
+    @SmallTest
+    public void testLargestFiles() {
+        StorageAnalyzer analyzer = new StorageAnalyzer("/sdcard", 3); //$NON-NLS-1$
+        StorageAnalyzer.Accumulator accumulator = analyzer.newAccumulator();
+        for (int i = 0; i < 1000; i++) {
+            String name = "f" + i + ".e" + (i % 400); //$NON-NLS-1$//$NON-NLS-2$
+            accumulator.addFile("/sdcard", name, i); //$NON-NLS-1$
+        }
+        StorageAnalysis analysis = analyzer.getAnalysis();
+        List<Item> files = analysis.getLargestFiles();
+        assertEquals(3, files.size());
+        assertEquals(999, files.get(0).getSize());
+        assertEquals(998, files.get(1).getSize());
+        assertEquals(997, files.get(2).getSize());
+
+        // The extensions over the limit are accounted together
+        long count = 0;
+        for (Item extension : analysis.getExtensions()) {
+            count += extension.getCount();
+        }
+        assertEquals(1000, count);
+        assertTrue(analysis.getExtensions().size() <= 257);
+    }
+}
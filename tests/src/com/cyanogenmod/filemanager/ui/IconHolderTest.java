@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Looper;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.widget.ImageView;
+
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.util.MediaHelper;
+
+import java.util.Date;
+
+/**
+ * A class for testing the thumbnails retained by the icon holder.
+ *
+ * @see IconHolder
+ */
+public class IconHolderTest extends android.test.AndroidTestCase {
+
+    private static final String PARENT = "/data/local/tmp"; //$NON-NLS-1$
+    // A fixed modification time, so the keys of the files don't change
+    private static final long OLD_TIME = 1000000000000L;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The holder delivers the loaded thumbnails through a handler
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+    }
+
+    /**
+     * Method that checks that the thumbnails drawn by a holder are released on cleanup.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCleanupReleasesThumbnails() throws Exception {
+        ThumbnailCache cache = ThumbnailCache.getInstance(getContext());
+        int displayed = cache.getDisplayedCount();
+        IconHolder holder = new IconHolder(getContext(), true);
+
+        ImageView[] views = new ImageView[3];
+        for (int i = 0; i < views.length; i++) {
+            RegularFile fso = newFile("thumb" + i + ".png"); //$NON-NLS-1$ //$NON-NLS-2$
+            Bitmap thumb = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+            cache.putInMemory(getKey(fso), thumb);
+            views[i] = new ImageView(getContext());
+            holder.loadDrawable(views[i], fso, new ColorDrawable(0));
+        }
+        // The same thumbnail in two views
+        holder.loadDrawable(views[1], newFile("thumb0.png"), new ColorDrawable(0)); //$NON-NLS-1$
+        assertEquals(displayed + 2, cache.getDisplayedCount());
+
+        holder.cleanup();
+        assertEquals(displayed, cache.getDisplayedCount());
+        for (int i = 0; i < views.length; i++) {
+            assertNull(views[i].getDrawable());
+        }
+    }
+
+    /**
+     * Method that returns a new file.
+     */
+    private static RegularFile newFile(String name) {
+        return new RegularFile(name, PARENT, null, null, null, 1024,
+                new Date(OLD_TIME), new Date(OLD_TIME), new Date(OLD_TIME));
+    }
+
+    /**
+     * Method that returns the key of the thumbnail of a file.
+     */
+    private static String getKey(RegularFile fso) {
+        return ThumbnailCache.getKey(MediaHelper.normalizeMediaPath(fso.getFullPath()),
+                fso.getSize(), fso.getLastModifiedTime().getTime());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.ContentQuery;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A class for testing the content matcher.
+ *
+ * @see ContentMatcher
+ */
+public class ContentMatcherTest extends android.test.AndroidTestCase {
+
+    private static final String UTF8 = "UTF-8"; //$NON-NLS-1$
+
+    private static final String TEXT_CHARS = "abAB\n é"; //$NON-NLS-1$
+    private static final String TERM_CHARS = "abAé"; //$NON-NLS-1$
+
+    /**
+     * Method that checks that the literal terms report the same matches than a naive
+     * search, for random terms and texts split in random windows.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testLiteralTerms() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            ContentQuery query = new ContentQuery().setIgnoreCase(random.nextBoolean());
+            int count = 1 + random.nextInt(3);
+            List<byte[]> terms = new ArrayList<byte[]>();
+            for (int j = 0; j < count; j++) {
+                String term = randomString(random, TERM_CHARS, 1 + random.nextInt(3));
+                query.addTerm(term);
+                terms.add(term.getBytes(UTF8));
+            }
+            String text = randomString(random, TEXT_CHARS, random.nextInt(60));
+
+            // The first match of every line (the longest term that ends first)
+            List<String> expected = new ArrayList<String>();
+            String[] lines = text.split("\n", -1); //$NON-NLS-1$
+            long offset = 0;
+            for (int l = 0; l < lines.length; l++) {
+                byte[] line = lines[l].getBytes(UTF8);
+                for (int end = 1; end <= line.length; end++) {
+                    int found = -1;
+                    for (int t = 0; t < count; t++) {
+                        if (endsWith(line, end, terms.get(t), query.isIgnoreCase())
+                                && (found == -1
+                                    || terms.get(t).length > terms.get(found).length)) {
+                            found = t;
+                        }
+                    }
+                    if (found != -1) {
+                        long start = offset + end - terms.get(found).length;
+                        expected.add(found + "@" + (l + 1) + ":" + start); //$NON-NLS-1$//$NON-NLS-2$
+                        break;
+                    }
+                }
+                offset += line.length + 1;
+            }
+
+            List<String> matches = scan(query, text, random, false);
+            assertEquals(query.getTermsString() + " in " + text, expected, matches); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that checks that the regular expressions report the same matches and columns
+     * than the patterns matched line by line.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testRegExpTerms() throws Exception {
+        Random random = new Random(1);
+        String[] terms = {"a+b", "é."}; //$NON-NLS-1$ //$NON-NLS-2$
+        ContentQuery query = new ContentQuery().setRegExp(true);
+        Pattern[] patterns = new Pattern[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            query.addTerm(terms[i]);
+            patterns[i] = Pattern.compile(terms[i],
+                    Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+        for (int i = 0; i < 2000; i++) {
+            String text = randomString(random, TEXT_CHARS, random.nextInt(60));
+
+            List<String> expected = new ArrayList<String>();
+            String[] lines = text.split("\n", -1); //$NON-NLS-1$
+            long offset = 0;
+            for (int l = 0; l < lines.length; l++) {
+                int found = -1;
+                int column = Integer.MAX_VALUE;
+                for (int t = 0; t < patterns.length; t++) {
+                    Matcher m = patterns[t].matcher(lines[l]);
+                    if (m.find() && m.start() < column) {
+                        found = t;
+                        column = m.start();
+                    }
+                }
+                if (found != -1) {
+                    long start = offset + lines[l].substring(0, column).getBytes(UTF8).length;
+                    expected.add(found + "@" + (l + 1) + ":" + column //$NON-NLS-1$//$NON-NLS-2$
+                            + ":" + start); //$NON-NLS-1$
+                }
+                offset += lines[l].getBytes(UTF8).length + 1;
+            }
+
+            List<String> matches = scan(query, text, random, true);
+            assertEquals(text, expected, matches);
+        }
+    }
+
+    /**
+     * Method that checks that the scan of a file stops when the listener asks for it.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testStopScan() throws Exception {
+        ContentQuery query = new ContentQuery().addTerm("needle"); //$NON-NLS-1$
+        ContentMatcher.Scanner scanner = ContentMatcher.compile(query).newScanner();
+        final int[] count = new int[1];
+        byte[] text = "needle\nneedle\nneedle\n".getBytes(UTF8); //$NON-NLS-1$
+        boolean more = scanner.scan(ByteBuffer.wrap(text), 0, new ContentMatcher.Listener() {
+            @Override
+            public boolean onMatch(int term, int line, int column, long offset, String t) {
+                count[0]++;
+                return count[0] < 2;
+            }
+        });
+        assertFalse(more);
+        assertEquals(2, count[0]);
+        assertTrue(ContentMatcher.isBinary(ByteBuffer.wrap(new byte[]{'a', 0, 'b'}), 4096));
+        assertFalse(ContentMatcher.isBinary(ByteBuffer.wrap(text), 4096));
+    }
+
+    /**
+     * Method that scans a text split in random windows, and returns the matches
+     * as <code>term@line:offset</code> (or <code>term@line:column:offset</code>).
+     */
+    private static List<String> scan(ContentQuery query, String text, Random random,
+            final boolean columns) throws Exception {
+        final List<String> matches = new ArrayList<String>();
+        ContentMatcher.Listener listener = new ContentMatcher.Listener() {
+            @Override
+            public boolean onMatch(int term, int line, int column, long offset, String t) {
+                matches.add(term + "@" + line + ":" //$NON-NLS-1$//$NON-NLS-2$
+                        + (columns ? column + ":" : "") + offset); //$NON-NLS-1$//$NON-NLS-2$
+                return true;
+            }
+        };
+        ContentMatcher.Scanner scanner = ContentMatcher.compile(query).newScanner();
+        byte[] bytes = text.getBytes(UTF8);
+        int pos = 0;
+        while (pos < bytes.length) {
+            int len = 1 + random.nextInt(bytes.length - pos);
+            // A direct buffer with the window after its position, like a read buffer
+            ByteBuffer window = ByteBuffer.allocateDirect(len + 3);
+            window.position(3);
+            window.put(bytes, pos, len);
+            window.position(3);
+            assertTrue(scanner.scan(window, pos, listener));
+            pos += len;
+        }
+        assertTrue(scanner.finish(listener));
+        return matches;
+    }
+
+    /**
+     * Method that returns if the bytes of a line before a position end with a term.
+     */
+    private static boolean endsWith(byte[] line, int end, byte[] term, boolean ignoreCase) {
+        if (term.length > end) {
+            return false;
+        }
+        for (int i = 0; i < term.length; i++) {
+            byte a = line[end - term.length + i];
+            byte b = term[i];
+            if (ignoreCase) {
+                a = foldAscii(a);
+                b = foldAscii(b);
+            }
+            if (a != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that lowercases an ASCII letter.
+     */
+    private static byte foldAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte)(b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Method that returns a random string.
+     */
+    private static String randomString(Random random, String chars, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+}
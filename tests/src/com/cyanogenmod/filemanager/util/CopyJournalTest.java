@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A class for testing the resume of an interrupted copy.
+ *
+ * @see CopyJournal
+ */
+public class CopyJournalTest extends android.test.AndroidTestCase {
+
+    private static final int SIZE = (int)(CopyJournal.CHECKPOINT_INTERVAL * 2) + 123;
+
+    private File mRoot;
+    private File mSrc;
+    private File mDst;
+    private File mJournalFile;
+
+    /**
+     * A listener that fails the copy after a number of bytes (like an unmounted storage),
+     * or cancels it.
+     */
+    private static class FailingListener implements FileHelper.OnCopyProgressListener {
+        private final long mFailAt;
+        private final boolean mCancel;
+        long mCopied;
+
+        FailingListener(long failAt) {
+            this(failAt, false);
+        }
+
+        FailingListener(long failAt, boolean cancel) {
+            super();
+            this.mFailAt = failAt;
+            this.mCancel = cancel;
+        }
+
+        @Override
+        public void onFileStarted(File src) {/**NON BLOCK**/}
+
+        @Override
+        public boolean onBytesCopied(long bytes) {
+            this.mCopied += bytes;
+            if (this.mCopied >= this.mFailAt) {
+                if (this.mCancel) {
+                    return false;
+                }
+                throw new IllegalStateException("interrupted"); //$NON-NLS-1$
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onFileCopied(File src) {
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mRoot = new File(getContext().getCacheDir(), "journal"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mRoot);
+        assertTrue("root not created", this.mRoot.mkdirs()); //$NON-NLS-1$
+        this.mSrc = new File(this.mRoot, "src"); //$NON-NLS-1$
+        this.mDst = new File(this.mRoot, "dst"); //$NON-NLS-1$
+        this.mJournalFile = new File(this.mRoot, "copy.journal"); //$NON-NLS-1$
+        byte[] data = new byte[SIZE];
+        new Random(1).nextBytes(data);
+        FileOutputStream fos = new FileOutputStream(this.mSrc);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mRoot);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that an interrupted copy continues after its last checkpoint.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResume() throws Exception {
+        interruptCopy(CopyJournal.CHECKPOINT_INTERVAL + 1024 * 1024);
+
+        // The copy continues from the checkpoint
+        CopyJournal journal = newJournal();
+        journal.open(true);
+        assertEquals(CopyJournal.CHECKPOINT_INTERVAL,
+                journal.getCopiedLength(this.mSrc, this.mDst));
+        FailingListener listener = new FailingListener(Long.MAX_VALUE);
+        assertTrue(FileHelper.bufferedCopy(this.mSrc, this.mDst, 1024, listener, journal));
+        assertEquals(SIZE, listener.mCopied);
+        assertContentEquals();
+
+        // A completed file isn't copied again
+        journal.close();
+        journal = newJournal();
+        journal.open(true);
+        assertEquals(SIZE, journal.getCopiedLength(this.mSrc, this.mDst));
+        journal.delete();
+        assertFalse(this.mJournalFile.exists());
+    }
+
+    /**
+     * Method that checks that a cancelled copy keeps its partial file, and continues
+     * after the last chunk copied.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResumeCancelled() throws Exception {
+        long cancelAt = CopyJournal.CHECKPOINT_INTERVAL + 1024 * 1024;
+        CopyJournal journal = newJournal();
+        journal.open(false);
+        FailingListener listener = new FailingListener(cancelAt, true);
+        try {
+            FileHelper.bufferedCopy(this.mSrc, this.mDst, 1024, listener, journal);
+            fail("copy not cancelled"); //$NON-NLS-1$
+        } catch (InterruptedException e) {
+            // Expected
+        }
+        journal.close();
+        assertTrue(this.mDst.exists());
+        assertEquals(listener.mCopied, this.mDst.length());
+
+        // The copy continues from the cancelled chunk
+        journal = newJournal();
+        journal.open(true);
+        assertEquals(listener.mCopied, journal.getCopiedLength(this.mSrc, this.mDst));
+        listener = new FailingListener(Long.MAX_VALUE);
+        assertTrue(FileHelper.bufferedCopy(this.mSrc, this.mDst, 1024, listener, journal));
+        assertEquals(SIZE, listener.mCopied);
+        assertContentEquals();
+        journal.delete();
+    }
+
+    /**
+     * Method that checks that a copy starts from zero if the copied part can't be
+     * verified.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testVerify() throws Exception {
+        interruptCopy(CopyJournal.CHECKPOINT_INTERVAL + 1024 * 1024);
+
+        // A changed destination
+        RandomAccessFile raf = new RandomAccessFile(this.mDst, "rw"); //$NON-NLS-1$
+        try {
+            raf.seek(CopyJournal.CHECKPOINT_INTERVAL - 1);
+            int b = raf.read();
+            raf.seek(CopyJournal.CHECKPOINT_INTERVAL - 1);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        CopyJournal journal = newJournal();
+        journal.open(true);
+        assertEquals(0, journal.getCopiedLength(this.mSrc, this.mDst));
+
+        // A changed source
+        journal.close();
+        interruptCopy(CopyJournal.CHECKPOINT_INTERVAL + 1024 * 1024);
+        assertTrue(this.mSrc.setLastModified(this.mSrc.lastModified() - 10000));
+        journal = newJournal();
+        journal.open(true);
+        assertEquals(0, journal.getCopiedLength(this.mSrc, this.mDst));
+        journal.close();
+    }
+
+    /**
+     * Method that checks that a record partially written is ignored.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testTornRecord() throws Exception {
+        interruptCopy(CopyJournal.CHECKPOINT_INTERVAL * 2 + 1);
+        long length = this.mJournalFile.length();
+
+        // Cut the last record
+        RandomAccessFile raf = new RandomAccessFile(this.mJournalFile, "rw"); //$NON-NLS-1$
+        try {
+            raf.setLength(length - 3);
+        } finally {
+            raf.close();
+        }
+        CopyJournal journal = newJournal();
+        assertEquals(1, journal.read());
+        journal.open(true);
+        assertEquals(CopyJournal.CHECKPOINT_INTERVAL,
+                journal.getCopiedLength(this.mSrc, this.mDst));
+        journal.close();
+
+        // A journal of other copy isn't used
+        journal = new CopyJournal(this.mJournalFile, this.mSrc.getAbsolutePath(),
+                this.mRoot.getAbsolutePath());
+        journal.open(true);
+        assertEquals(0, journal.getCopiedLength(this.mSrc, this.mDst));
+        journal.close();
+    }
+
+    /**
+     * Method that starts a new copy and fails it after a number of bytes.
+     */
+    private void interruptCopy(long failAt) throws Exception {
+        CopyJournal journal = newJournal();
+        journal.open(false);
+        FailingListener listener = new FailingListener(failAt);
+        assertFalse(FileHelper.bufferedCopy(this.mSrc, this.mDst, 1024, listener, journal));
+        journal.close();
+        assertTrue(this.mDst.length() >= failAt);
+    }
+
+    /**
+     * Method that returns a new journal of the copy.
+     */
+    private CopyJournal newJournal() {
+        return new CopyJournal(
+                this.mJournalFile, this.mSrc.getAbsolutePath(), this.mDst.getAbsolutePath());
+    }
+
+    /**
+     * Method that checks that the destination is equal to the source.
+     */
+    private void assertContentEquals() throws Exception {
+        assertTrue(Arrays.equals(readFile(this.mSrc), readFile(this.mDst)));
+    }
+
+    /**
+     * Method that reads a file.
+     */
+    private static byte[] readFile(File file) throws Exception {
+        byte[] data = new byte[(int)file.length()];
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                read += fis.read(data, read, data.length - read);
+            }
+        } finally {
+            fis.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.CopyProgress;
+
+/**
+ * A class for testing the meter of the progress of a copy.
+ *
+ * @see CopyProgressMeter
+ */
+public class CopyProgressMeterTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that checks that the reports are throttled.
+     */
+    @SmallTest
+    public void testReportInterval() {
+        CopyProgressMeter meter = new CopyProgressMeter(1000);
+        assertFalse(meter.isReportNeeded(1000));
+        assertFalse(meter.isReportNeeded(1000 + CopyProgressMeter.REPORT_INTERVAL - 1));
+        assertTrue(meter.isReportNeeded(1000 + CopyProgressMeter.REPORT_INTERVAL));
+        assertFalse(meter.isReportNeeded(1000 + CopyProgressMeter.REPORT_INTERVAL + 1));
+    }
+
+    /**
+     * Method that checks the throughput and the remaining time of a copy.
+     */
+    @SmallTest
+    public void testProgress() {
+        CopyProgressMeter meter = new CopyProgressMeter(0);
+        meter.setTotals(2, 3000000);
+        CopyProgress progress = meter.getProgress(0);
+        assertEquals(0, progress.getThroughput());
+        assertEquals(CopyProgress.UNKNOWN_ETA, progress.getEta());
+
+        // 1MB per second
+        meter.onFileStarted("/a"); //$NON-NLS-1$
+        meter.onBytesCopied(1000000);
+        meter.onFileCopied();
+        progress = meter.getProgress(1000);
+        assertEquals("/a", progress.getCurrentFile()); //$NON-NLS-1$
+        assertEquals(1, progress.getFilesDone());
+        assertEquals(1000000, progress.getBytesDone());
+        assertEquals(1000000, progress.getThroughput());
+        assertEquals(2000, progress.getEta());
+
+        // The throughput is smoothed
+        meter.onBytesCopied(1000000);
+        progress = meter.getProgress(1500);
+        assertTrue(progress.getThroughput() > 1000000);
+        assertTrue(progress.getThroughput() < 2000000);
+
+        // The totals are never lower than the progress
+        meter.onFileStarted("/b"); //$NON-NLS-1$
+        meter.onBytesCopied(2000000);
+        meter.onFileCopied();
+        meter.onFileCopied();
+        progress = meter.getProgress(2000);
+        assertEquals(3, progress.getFilesTotal());
+        assertEquals(4000000, progress.getBytesTotal());
+        assertEquals(0, progress.getEta());
+    }
+}
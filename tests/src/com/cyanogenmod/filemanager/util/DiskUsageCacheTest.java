@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.DiskUsage;
+import com.cyanogenmod.filemanager.model.MountPoint;
+
+/**
+ * A class for testing the cache of disk usage.
+ *
+ * @see DiskUsageCache
+ */
+public class DiskUsageCacheTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that checks that the concurrent requests of a mount point share the same
+     * read, and that the cached usage is reused.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCoalescedReads() throws Exception {
+        final DiskUsageCache cache = new DiskUsageCache();
+        final MountPoint mp = new MountPoint(
+                "/", //$NON-NLS-1$
+                "rootfs", "rootfs", "ro", 0, 0); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertNull(cache.getCachedDiskUsage(mp.getMountPoint()));
+
+        final DiskUsage[] results = new DiskUsage[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int pos = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[pos] = cache.getDiskUsage(null, mp);
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        DiskUsage du = cache.getCachedDiskUsage(mp.getMountPoint());
+        assertNotNull(du);
+        assertTrue(du.getTotal() > 0);
+        for (int i = 0; i < results.length; i++) {
+            assertSame(du, results[i]);
+        }
+        assertSame(du, cache.getDiskUsage(null, mp));
+    }
+}
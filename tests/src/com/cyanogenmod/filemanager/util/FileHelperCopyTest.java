@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A class for testing the copy and the move of files.
+ *
+ * @see FileHelper#bufferedCopy(File, File, int)
+ * @see FileHelper#moveRecursive(File, File, int, FileHelper.OnCopyProgressListener)
+ */
+public class FileHelperCopyTest extends android.test.AndroidTestCase {
+
+    private File mRoot;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mRoot = new File(getContext().getCacheDir(), "copy"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mRoot);
+        assertTrue("root not created", this.mRoot.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mRoot);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that the chunks are aligned to the blocks of the destination.
+     */
+    @SmallTest
+    public void testCopyChunkSize() {
+        File dst = new File(this.mRoot, "dst"); //$NON-NLS-1$
+        int chunkSize = FileHelper.getCopyChunkSize(dst, 1024);
+        assertTrue(chunkSize >= FileHelper.COPY_CHUNK_SIZE);
+        chunkSize = FileHelper.getCopyChunkSize(dst, FileHelper.COPY_CHUNK_SIZE + 1);
+        assertTrue(chunkSize > FileHelper.COPY_CHUNK_SIZE);
+        assertEquals(0, chunkSize % 512);
+    }
+
+    /**
+     * Method that checks the copy of files of several sizes.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testBufferedCopy() throws Exception {
+        int[] sizes = {0, 1, 4096, FileHelper.COPY_CHUNK_SIZE * 2 + 3};
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = createData(sizes[i]);
+            File src = createFile("src" + i, data); //$NON-NLS-1$
+            File dst = new File(this.mRoot, "dst" + i); //$NON-NLS-1$
+            assertTrue(FileHelper.bufferedCopy(src, dst, 1024));
+            assertTrue(Arrays.equals(data, readFile(dst)));
+        }
+    }
+
+    /**
+     * Method that checks that the copy through a buffer continues a partial transfer.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testBufferCopyAfterTransfer() throws Exception {
+        byte[] data = createData(FileHelper.COPY_CHUNK_SIZE + 5);
+        File src = createFile("src", data); //$NON-NLS-1$
+        File dst = new File(this.mRoot, "dst"); //$NON-NLS-1$
+        FileInputStream fis = new FileInputStream(src);
+        FileOutputStream fos = new FileOutputStream(dst);
+        try {
+            FileChannel in = fis.getChannel();
+            FileChannel out = fos.getChannel();
+            in.transferTo(0, 3000, out);
+            FileHelper.bufferCopy(in, out, 2048, 1024, null);
+        } finally {
+            fis.close();
+            fos.close();
+        }
+        assertTrue(Arrays.equals(data, readFile(dst)));
+    }
+
+    /**
+     * Method that checks that a rename merges the source folder into an existing
+     * destination folder.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testRenameRecursive() throws Exception {
+        assertTrue(new File(this.mRoot, "src/a").mkdirs()); //$NON-NLS-1$
+        assertTrue(new File(this.mRoot, "dst/a").mkdirs()); //$NON-NLS-1$
+        byte[] data = createData(10);
+        createFile("src/a/new", data); //$NON-NLS-1$
+        createFile("src/a/same", data); //$NON-NLS-1$
+        createFile("dst/a/same", createData(20)); //$NON-NLS-1$
+        createFile("dst/a/other", data); //$NON-NLS-1$
+
+        File src = new File(this.mRoot, "src"); //$NON-NLS-1$
+        File dst = new File(this.mRoot, "dst"); //$NON-NLS-1$
+        assertTrue(FileHelper.renameRecursive(src, dst));
+        assertFalse(src.exists());
+        assertTrue(Arrays.equals(data, readFile(new File(dst, "a/new")))); //$NON-NLS-1$
+        assertTrue(Arrays.equals(data, readFile(new File(dst, "a/same")))); //$NON-NLS-1$
+        assertTrue(new File(dst, "a/other").exists()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that a move by copy deletes the sources of the copied files
+     * only.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testMoveRecursive() throws Exception {
+        assertTrue(new File(this.mRoot, "src/a/b").mkdirs()); //$NON-NLS-1$
+        assertTrue(new File(this.mRoot, "src/c").mkdirs()); //$NON-NLS-1$
+        byte[] data = createData(FileHelper.COPY_CHUNK_SIZE + 1);
+        createFile("src/a/b/large", data); //$NON-NLS-1$
+        createFile("src/a/small", createData(10)); //$NON-NLS-1$
+        createFile("src/c/fail", createData(10)); //$NON-NLS-1$
+
+        // A folder in the place of a file of the destination
+        assertTrue(new File(this.mRoot, "dst/c/fail").mkdirs()); //$NON-NLS-1$
+
+        File src = new File(this.mRoot, "src"); //$NON-NLS-1$
+        File dst = new File(this.mRoot, "dst"); //$NON-NLS-1$
+        assertFalse(FileHelper.moveRecursive(src, dst, 1024, null));
+        assertTrue(Arrays.equals(data, readFile(new File(dst, "a/b/large")))); //$NON-NLS-1$
+        assertTrue(new File(dst, "a/small").exists()); //$NON-NLS-1$
+        assertFalse(new File(src, "a").exists()); //$NON-NLS-1$
+        assertTrue(new File(src, "c/fail").exists()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that creates random data.
+     */
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Method that creates a file.
+     */
+    private File createFile(String name, byte[] data) throws Exception {
+        File file = new File(this.mRoot, name);
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+
+    /**
+     * Method that reads a file.
+     */
+    private static byte[] readFile(File file) throws Exception {
+        byte[] data = new byte[(int)file.length()];
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            int pos = 0;
+            while (pos < data.length) {
+                pos += fis.read(data, pos, data.length - pos);
+            }
+        } finally {
+            fis.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.FolderUsage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class for testing the folder size cache.
+ *
+ * @see FolderSizeCache
+ */
+public class FolderSizeCacheTest extends android.test.AndroidTestCase {
+
+    // A modification time old enough to be trusted
+    private static final long OLD_TIME = 1000000000000L;
+
+    private File mRoot;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mRoot = new File(getContext().getCacheDir(), "folder-sizes"); //$NON-NLS-1$
+        delete(this.mRoot);
+        assertTrue("root not created", this.mRoot.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        delete(this.mRoot);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that a rescan only lists the directories that changed, and
+     * that the totals of the tree reflect the changes.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testIncrementalScan() throws Exception {
+        File a = new File(this.mRoot, "a"); //$NON-NLS-1$
+        File b = new File(this.mRoot, "b"); //$NON-NLS-1$
+        File c = new File(a, "c"); //$NON-NLS-1$
+        createFile(this.mRoot, "root.txt", 10); //$NON-NLS-1$
+        createFile(a, "a.txt", 100); //$NON-NLS-1$
+        createFile(b, "b.txt", 1000); //$NON-NLS-1$
+        createFile(c, "c.txt", 10000); //$NON-NLS-1$
+        setOld(c, a, b, this.mRoot);
+
+        FolderSizeCache cache = new FolderSizeCache(null);
+        assertEquals(-1L, cache.getSize(this.mRoot.getAbsolutePath()));
+        cache.refresh(this.mRoot);
+        assertEquals(11110L, cache.getSize(this.mRoot.getAbsolutePath()));
+        assertEquals(10100L, cache.getSize(a.getAbsolutePath()));
+        FolderUsage usage = cache.getFolderUsage(this.mRoot.getAbsolutePath());
+        assertEquals(3, usage.getNumberOfFolders());
+        assertEquals(4, usage.getNumberOfFiles());
+        assertEquals(11110L, usage.getTotalSize());
+
+        // Unchanged directories come from the cache
+        FolderSizeCache.Entry entryB = cache.scan(b);
+        FolderSizeCache.Entry entryC = cache.scan(c);
+        createFile(c, "c2.txt", 5); //$NON-NLS-1$
+        c.setLastModified(OLD_TIME + 1000);
+        cache.refresh(this.mRoot);
+        assertTrue(entryB == cache.scan(b));
+        assertTrue(entryC != cache.scan(c));
+        assertEquals(11115L, cache.getSize(this.mRoot.getAbsolutePath()));
+        assertEquals(10105L, cache.getSize(a.getAbsolutePath()));
+
+        // A removed directory
+        delete(b);
+        this.mRoot.setLastModified(OLD_TIME + 1000);
+        cache.refresh(this.mRoot);
+        assertEquals(10115L, cache.getSize(this.mRoot.getAbsolutePath()));
+
+        // A directory modified just now is listed again on every scan
+        createFile(a, "a2.txt", 1); //$NON-NLS-1$
+        FolderSizeCache.Entry entryA = cache.scan(a);
+        assertTrue(entryA != cache.scan(a));
+        assertEquals(10116L, cache.getSize(this.mRoot.getAbsolutePath()));
+    }
+
+    /**
+     * Method that checks that a tree walked recently isn't walked again, unless
+     * something inside it was invalidated.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testRefreshIfStale() throws Exception {
+        File a = new File(this.mRoot, "a"); //$NON-NLS-1$
+        File c = new File(a, "c"); //$NON-NLS-1$
+        File d = new File(this.mRoot, "d"); //$NON-NLS-1$
+        createFile(c, "c.txt", 10); //$NON-NLS-1$
+        createFile(d, "d.txt", 100); //$NON-NLS-1$
+        setOld(c, a, d, this.mRoot);
+
+        FolderSizeCache cache = new FolderSizeCache(null);
+        assertTrue(cache.refreshIfStale(this.mRoot));
+        assertFalse(cache.refreshIfStale(this.mRoot));
+        assertFalse(cache.refreshIfStale(a));
+        assertFalse(cache.refreshIfStale(d));
+
+        // A written directory invalidates the trees that contain it
+        createFile(c, "c2.txt", 5); //$NON-NLS-1$
+        c.setLastModified(OLD_TIME + 1000);
+        cache.invalidate(c.getAbsolutePath());
+        assertTrue(cache.refreshIfStale(a));
+        assertEquals(15L, cache.getSize(a.getAbsolutePath()));
+        assertFalse(cache.refreshIfStale(a));
+        assertTrue(cache.refreshIfStale(this.mRoot));
+        assertEquals(115L, cache.getSize(this.mRoot.getAbsolutePath()));
+    }
+
+    /**
+     * Method that checks that the entries are the same after write and read them.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testPersist() throws Exception {
+        File a = new File(this.mRoot, "a"); //$NON-NLS-1$
+        createFile(this.mRoot, "root.txt", 10); //$NON-NLS-1$
+        createFile(a, "a.txt", 100); //$NON-NLS-1$
+        setOld(a, this.mRoot);
+
+        FolderSizeCache cache = new FolderSizeCache(null);
+        List<String> paths = new ArrayList<String>();
+        List<FolderSizeCache.Entry> entries = new ArrayList<FolderSizeCache.Entry>();
+        paths.add(this.mRoot.getAbsolutePath());
+        entries.add(cache.scan(this.mRoot));
+        paths.add(a.getAbsolutePath());
+        entries.add(cache.scan(a));
+        File file = new File(getContext().getCacheDir(), "folder-sizes.cache"); //$NON-NLS-1$
+        try {
+            FolderSizeCache.write(paths, entries, file);
+            Map<String, FolderSizeCache.Entry> read =
+                    new LinkedHashMap<String, FolderSizeCache.Entry>();
+            FolderSizeCache.read(file, read);
+            assertEquals(paths, new ArrayList<String>(read.keySet()));
+            for (int i = 0; i < paths.size(); i++) {
+                FolderSizeCache.Entry expected = entries.get(i);
+                FolderSizeCache.Entry actual = read.get(paths.get(i));
+                assertEquals(expected.mLastModified, actual.mLastModified);
+                assertEquals(expected.getNumberOfFiles(), actual.getNumberOfFiles());
+                assertEquals(expected.getSize(), actual.getSize());
+                assertEquals(expected.getDirectories().length, actual.getDirectories().length);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Method that creates a file of a size.
+     */
+    private static void createFile(File dir, String name, int size) throws Exception {
+        dir.mkdirs();
+        FileOutputStream fos = new FileOutputStream(new File(dir, name));
+        try {
+            fos.write(new byte[size]);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Method that sets an old modification time to directories.
+     */
+    private static void setOld(File... dirs) {
+        for (int i = 0; i < dirs.length; i++) {
+            assertTrue(dirs[i].setLastModified(OLD_TIME));
+        }
+    }
+
+    /**
+     * Method that deletes a tree.
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.MountPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for testing the index of mount points.
+ *
+ * @see MountPointHelper
+ */
+public class MountPointHelperTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that checks that a path resolves to the mount point of its longest
+     * prefix of path components.
+     */
+    @SmallTest
+    public void testLongestPrefix() {
+        List<MountPoint> mps = new ArrayList<MountPoint>();
+        mps.add(newMountPoint("/", "rootfs")); //$NON-NLS-1$ //$NON-NLS-2$
+        mps.add(newMountPoint("/mnt/sdcard", "sdcard")); //$NON-NLS-1$ //$NON-NLS-2$
+        mps.add(newMountPoint("/mnt/sdcard/ext", "ext")); //$NON-NLS-1$ //$NON-NLS-2$
+        mps.add(newMountPoint("/system", "system")); //$NON-NLS-1$ //$NON-NLS-2$
+        mps.add(newMountPoint("/system", "system-over")); //$NON-NLS-1$ //$NON-NLS-2$
+        MountPointHelper.MountPointIndex index =
+                new MountPointHelper.MountPointIndex(mps, -1, 0);
+
+        assertEquals("rootfs", index.find("/").getDevice()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("rootfs", index.find("/data/app").getDevice()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("sdcard", index.find("/mnt/sdcard").getDevice()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("sdcard", index.find("/mnt/sdcard/").getDevice()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("sdcard", //$NON-NLS-1$
+                index.find("/mnt/sdcard/extra/a.txt").getDevice()); //$NON-NLS-1$
+        assertEquals("ext", //$NON-NLS-1$
+                index.find("/mnt/sdcard/ext/a").getDevice()); //$NON-NLS-1$
+
+        // A sibling with the same prefix isn't part of the mount point
+        assertEquals("rootfs", index.find("/mnt/sdcard2").getDevice()); //$NON-NLS-1$ //$NON-NLS-2$
+
+        // The last mount over a folder hides the previous ones
+        assertEquals("system-over", //$NON-NLS-1$
+                index.find("/system/bin").getDevice()); //$NON-NLS-1$
+
+        // Without a root mount point, the paths outside the mount points have none
+        mps.remove(0);
+        index = new MountPointHelper.MountPointIndex(mps, -1, 0);
+        assertNull(index.find("/data")); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that creates a mount point.
+     */
+    private static MountPoint newMountPoint(String path, String device) {
+        return new MountPoint(path, device, "ext4", "rw", 0, 0); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
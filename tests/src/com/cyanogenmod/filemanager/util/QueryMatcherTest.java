@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A class for testing the compiled query matcher.
+ *
+ * @see QueryMatcher
+ */
+public class QueryMatcherTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "QueryMatcherTest"; //$NON-NLS-1$
+
+    private static final String[] WORDS =
+            "IMG_,DSC,photo,Music,track,document,readme,notes,backup,video" //$NON-NLS-1$
+            .split(","); //$NON-NLS-1$
+
+    private static final int BENCHMARK_NAMES = 2000000;
+
+    /**
+     * Method that checks that the matcher reports the same regions than the regular
+     * expressions of the terms, for random terms and names.
+     */
+    @SmallTest
+    public void testSameRegionsThanRegExp() {
+        final String termChars = "abAB.x*"; //$NON-NLS-1$
+        final String nameChars = "abABx."; //$NON-NLS-1$
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            List<String> terms = new ArrayList<String>();
+            int count = 1 + random.nextInt(3);
+            for (int j = 0; j < count; j++) {
+                terms.add(randomString(random, termChars, 1 + random.nextInt(5)));
+            }
+            String name = randomString(random, nameChars, random.nextInt(12));
+
+            Query query = new Query().fillSlots(terms);
+            QueryMatcher matcher = QueryMatcher.compile(query);
+            QueryMatcher.MatchResult result = matcher.newResult();
+            boolean matched = matcher.match(name, result);
+            boolean expected = false;
+            for (int j = 0; j < count; j++) {
+                Matcher m = toRegExp(terms.get(j)).matcher(name);
+                boolean found = m.find();
+                expected |= found;
+                String msg = terms.get(j) + " in " + name; //$NON-NLS-1$
+                assertEquals(msg, found ? m.start() : -1, result.getStart(j));
+                assertEquals(msg, found ? m.end() : -1, result.getEnd(j));
+            }
+            assertEquals(terms + " in " + name, expected, matched); //$NON-NLS-1$
+            assertEquals(terms + " in " + name, expected, matcher.matches(name)); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that benchmarks the matcher against one regular expression per term.
+     */
+    @LargeTest
+    public void testBenchmark() {
+        Random random = new Random(1);
+        String[] names = new String[10000];
+        for (int i = 0; i < names.length; i++) {
+            String extension = random.nextBoolean() ? ".jpg" : ".mp3"; //$NON-NLS-1$ //$NON-NLS-2$
+            names[i] = WORDS[random.nextInt(WORDS.length)] + "_" //$NON-NLS-1$
+                    + random.nextInt(1000000) + extension;
+        }
+        Query query = new Query();
+        query.setSlot("photo", 0); //$NON-NLS-1$
+        query.setSlot("*.mp3", 1); //$NON-NLS-1$
+        query.setSlot("track*12", 2); //$NON-NLS-1$
+        query.setSlot("readme", 3); //$NON-NLS-1$
+        query.setSlot("notes*5", 4); //$NON-NLS-1$
+
+        long start = System.currentTimeMillis();
+        QueryMatcher matcher = QueryMatcher.compile(query);
+        int matched = 0;
+        for (int i = 0; i < BENCHMARK_NAMES; i++) {
+            if (matcher.matches(names[i % names.length])) {
+                matched++;
+            }
+        }
+        long compiled = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        List<String> terms = query.getQueries();
+        Pattern[] patterns = new Pattern[terms.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            // The java find regexp drops the dots
+            String regexp = SearchHelper.toIgnoreCaseRegExp(terms.get(i), true);
+            patterns[i] = Pattern.compile(regexp);
+        }
+        int expected = 0;
+        for (int i = 0; i < BENCHMARK_NAMES; i++) {
+            for (int j = 0; j < patterns.length; j++) {
+                if (patterns[j].matcher(names[i % names.length]).matches()) {
+                    expected++;
+                    break;
+                }
+            }
+        }
+        long regexp = System.currentTimeMillis() - start;
+
+        Log.i(TAG, String.format("%d names: matcher %d ms, regexp %d ms", //$NON-NLS-1$
+                Integer.valueOf(BENCHMARK_NAMES), Long.valueOf(compiled), Long.valueOf(regexp)));
+        assertTrue("no matches", matched > 0); //$NON-NLS-1$
+        assertEquals(expected, matched);
+    }
+
+    /**
+     * Method that returns the regular expression of a term (the one used to highlight
+     * and score the results).
+     */
+    private static Pattern toRegExp(String term) {
+        StringBuilder sb = new StringBuilder();
+        String[] fragments = term.split("\\*", -1); //$NON-NLS-1$
+        for (int i = 0; i < fragments.length; i++) {
+            if (i > 0) {
+                sb.append(".*"); //$NON-NLS-1$
+            }
+            if (fragments[i].length() > 0) {
+                sb.append(Pattern.quote(fragments[i]));
+            }
+        }
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Method that returns a random string.
+     */
+    private static String randomString(Random random, String chars, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+}
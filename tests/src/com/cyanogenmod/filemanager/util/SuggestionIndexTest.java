@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A class for testing the suggestion index.
+ *
+ * @see SuggestionIndex
+ */
+public class SuggestionIndexTest extends android.test.AndroidTestCase {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Method that checks that the suggestions match the prefix by value or by name,
+     * and are ranked by kind, uses and recency.
+     */
+    @SmallTest
+    public void testSuggest() {
+        long now = System.currentTimeMillis();
+        SuggestionIndex index = new SuggestionIndex(null);
+        // More entries than the pending keys, so the sorted keys are merged
+        for (int i = 0; i < 200; i++) {
+            index.record(SuggestionIndex.KIND.DIRECTORY, "/sdcard/dir" + i, now - DAY); //$NON-NLS-1$
+        }
+        index.record(SuggestionIndex.KIND.SEARCH, "*.mp3", now); //$NON-NLS-1$
+        index.record(SuggestionIndex.KIND.SEARCH, "music", now - 60 * DAY); //$NON-NLS-1$
+        index.record(SuggestionIndex.KIND.BOOKMARK, "/sdcard/Music", now - 60 * DAY); //$NON-NLS-1$
+        index.record(SuggestionIndex.KIND.DIRECTORY, "/sdcard/Music", now); //$NON-NLS-1$
+
+        List<SuggestionIndex.Suggestion> suggestions = index.suggest("MU", 10); //$NON-NLS-1$
+        assertEquals(2, suggestions.size());
+        // The bookmark doesn't decay, and the directory is only suggested once
+        assertEquals(SuggestionIndex.KIND.BOOKMARK, suggestions.get(0).getKind());
+        assertEquals("Music", suggestions.get(0).getText()); //$NON-NLS-1$
+        assertEquals("/sdcard/Music", suggestions.get(0).getPath()); //$NON-NLS-1$
+        assertEquals("music", suggestions.get(1).getText()); //$NON-NLS-1$
+
+        suggestions = index.suggest(".mp", 10); //$NON-NLS-1$
+        assertEquals(1, suggestions.size());
+        assertEquals("*.mp3", suggestions.get(0).getText()); //$NON-NLS-1$
+
+        suggestions = index.suggest("/sdcard/dir1", 5); //$NON-NLS-1$
+        assertEquals(5, suggestions.size());
+        assertEquals(0, index.suggest("none", 5).size()); //$NON-NLS-1$
+
+        index.remove(SuggestionIndex.KIND.BOOKMARK, "/sdcard/Music"); //$NON-NLS-1$
+        index.clear(SuggestionIndex.KIND.SEARCH);
+        suggestions = index.suggest("mu", 10); //$NON-NLS-1$
+        assertEquals(1, suggestions.size());
+        assertEquals(SuggestionIndex.KIND.DIRECTORY, suggestions.get(0).getKind());
+    }
+
+    /**
+     * Method that checks that the changes recorded while the index is loading are
+     * applied once it's loaded.
+     */
+    @SmallTest
+    public void testBufferWhileLoading() {
+        long now = System.currentTimeMillis();
+        String path = "/sdcard/SuggestionIndexTest" + now; //$NON-NLS-1$
+        SuggestionIndex index = new SuggestionIndex(getContext());
+        index.record(SuggestionIndex.KIND.DIRECTORY, path, now);
+        index.record(SuggestionIndex.KIND.DIRECTORY, path, now);
+
+        // The test thread waits for the load
+        List<SuggestionIndex.Suggestion> suggestions = index.suggest(path, 10);
+        assertEquals(1, suggestions.size());
+        assertEquals(path, suggestions.get(0).getPath());
+
+        index.remove(SuggestionIndex.KIND.DIRECTORY, path);
+        assertEquals(0, index.suggest(path, 10).size());
+    }
+
+    /**
+     * Method that checks that the persisted index is read back.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testPersist() throws Exception {
+        long now = System.currentTimeMillis();
+        SuggestionIndex index = new SuggestionIndex(null);
+        index.record(SuggestionIndex.KIND.HISTORY, "/sdcard/Download", now); //$NON-NLS-1$
+        index.record(SuggestionIndex.KIND.HISTORY, "/sdcard/Download", now); //$NON-NLS-1$
+        index.record(SuggestionIndex.KIND.DIRECTORY, "/sdcard/Downloads", now); //$NON-NLS-1$
+        index.record(SuggestionIndex.KIND.SEARCH, "down", now); //$NON-NLS-1$
+
+        File file = new File(getContext().getCacheDir(), "suggestions.test"); //$NON-NLS-1$
+        try {
+            SuggestionIndex.write(index.copySuggestions(), file);
+            SuggestionIndex read = new SuggestionIndex(null);
+            read.read(file);
+            List<SuggestionIndex.Suggestion> expected = index.suggest("down", 10); //$NON-NLS-1$
+            List<SuggestionIndex.Suggestion> suggestions =
+                    read.suggest("down", 10); //$NON-NLS-1$
+            assertEquals(3, expected.size());
+            assertEquals(expected.size(), suggestions.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getKind(), suggestions.get(i).getKind());
+                assertEquals(expected.get(i).getText(), suggestions.get(i).getText());
+                assertEquals(expected.get(i).getPath(), suggestions.get(i).getPath());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
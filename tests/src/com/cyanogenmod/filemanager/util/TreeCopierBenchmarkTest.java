@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2013 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * A class for benchmark the concurrent copy of synthetic directory trees.
+ *
+ * @see TreeCopier
+ */
+public class TreeCopierBenchmarkTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "TreeCopierBenchmarkTest"; //$NON-NLS-1$
+
+    private static final int[] WORKERS = {1, 2, 4, 8};
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private File mRoot;
+    private File mSrc;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mRoot = new File(getContext().getCacheDir(), "copy-benchmark"); //$NON-NLS-1$
+        delete(this.mRoot);
+        this.mSrc = new File(this.mRoot, "src"); //$NON-NLS-1$
+        assertTrue("src not created", this.mSrc.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        delete(this.mRoot);
+        super.tearDown();
+    }
+
+    /**
+     * Method that benchmarks a tree of small files (100 directories of 100 files of 4KB).
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testSmallFiles() throws Exception {
+        long[] expected = new long[2];
+        for (int i = 0; i < 100; i++) {
+            createFiles(new File(this.mSrc, "dir" + i), 100, 4096, expected); //$NON-NLS-1$
+        }
+        benchmark("small files", expected); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that benchmarks a mixed tree (20 directories of 100 files of 4KB and 2 files
+     * of 4MB).
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testMixedFiles() throws Exception {
+        long[] expected = new long[2];
+        for (int i = 0; i < 20; i++) {
+            File dir = new File(this.mSrc, "dir" + i); //$NON-NLS-1$
+            createFiles(dir, 100, 4096, expected);
+            createFiles(new File(dir, "large"), 2, 4 * 1024 * 1024, expected); //$NON-NLS-1$
+        }
+        benchmark("mixed files", expected); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that a file that can't be copied doesn't stop the copy, and
+     * that it's reported.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testFailedFiles() throws Exception {
+        long[] expected = new long[2];
+        createFiles(new File(this.mSrc, "a"), 10, 10, expected); //$NON-NLS-1$
+        createFiles(new File(this.mSrc, "b"), 10, 10, expected); //$NON-NLS-1$
+
+        // A folder in the place of a file of the destination
+        File dst = new File(this.mRoot, "dst"); //$NON-NLS-1$
+        assertTrue(new File(dst, "a/file0").mkdirs()); //$NON-NLS-1$
+
+        TreeCopier.Result result = new TreeCopier(BUFFER_SIZE, 2, null).copy(this.mSrc, dst);
+        assertFalse(result.isSuccess());
+        assertEquals(19, result.getCopiedFiles());
+        assertEquals(1, result.getFailedFiles().size());
+        assertEquals(new File(this.mSrc, "a/file0").getAbsolutePath(), //$NON-NLS-1$
+                result.getFailedFiles().get(0));
+    }
+
+    /**
+     * Method that copies the tree with every number of workers and checks the copies.
+     *
+     * @param name The name of the tree
+     * @param expected The expected number of files and bytes
+     * @throws Exception If test failed
+     */
+    private void benchmark(String name, long[] expected) throws Exception {
+        for (int i = 0; i < WORKERS.length; i++) {
+            File dst = new File(this.mRoot, "dst" + WORKERS[i]); //$NON-NLS-1$
+            TreeCopier copier = new TreeCopier(BUFFER_SIZE, WORKERS[i], null);
+            long start = System.currentTimeMillis();
+            TreeCopier.Result result = copier.copy(this.mSrc, dst);
+            long elapsed = System.currentTimeMillis() - start;
+            Log.i(TAG, String.format("%s, %d workers: %d ms", //$NON-NLS-1$
+                    name, Integer.valueOf(WORKERS[i]), Long.valueOf(elapsed)));
+
+            String msg = String.format("%d workers", Integer.valueOf(WORKERS[i])); //$NON-NLS-1$
+            assertTrue(msg, result.isSuccess());
+            assertEquals(msg, expected[0], result.getCopiedFiles());
+            long[] copied = new long[2];
+            measure(dst, copied);
+            assertEquals(msg, expected[0], copied[0]);
+            assertEquals(msg, expected[1], copied[1]);
+            delete(dst);
+        }
+    }
+
+    /**
+     * Method that creates a directory with files.
+     */
+    private static void createFiles(File dir, int files, int size, long[] totals)
+            throws Exception {
+        assertTrue(String.format("%s not created", dir), dir.mkdirs()); //$NON-NLS-1$
+        byte[] data = new byte[size];
+        for (int i = 0; i < files; i++) {
+            FileOutputStream fos = new FileOutputStream(new File(dir, "file" + i)); //$NON-NLS-1$
+            try {
+                fos.write(data);
+            } finally {
+                fos.close();
+            }
+            totals[0]++;
+            totals[1] += size;
+        }
+    }
+
+    /**
+     * Method that measures the files and bytes of a tree.
+     */
+    private static void measure(File file, long[] totals) {
+        File[] files = file.listFiles();
+        if (files == null) {
+            totals[0]++;
+            totals[1] += file.length();
+            return;
+        }
+        for (int i = 0; i < files.length; i++) {
+            measure(files[i], totals);
+        }
+    }
+
+    /**
+     * Method that deletes a tree.
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}